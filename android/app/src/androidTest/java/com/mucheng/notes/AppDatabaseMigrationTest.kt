@@ -0,0 +1,192 @@
+package com.mucheng.notes
+
+import android.content.Context
+import androidx.room.Room
+import androidx.sqlite.db.SupportSQLiteDatabase
+import androidx.sqlite.db.SupportSQLiteOpenHelper
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import com.mucheng.notes.data.local.AppDatabase
+import com.mucheng.notes.data.local.DatabaseMigrations
+import com.mucheng.notes.data.local.DerivedDataBackfill
+import com.mucheng.notes.data.local.ItemChangeTracker
+import com.mucheng.notes.data.local.PayloadBlobStore
+import kotlinx.coroutines.runBlocking
+import net.zetetic.database.sqlcipher.SupportOpenHelperFactory
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * 数据库迁移测试
+ *
+ * 用 1.0 版本的建表语句创建旧数据库，再由 Room 打开：Room 执行全部迁移后用生成的
+ * 校验代码比对表结构与当前实体，不一致时抛出异常。同时验证已有数据保留、后台回填生效。
+ */
+@RunWith(AndroidJUnit4::class)
+class AppDatabaseMigrationTest {
+    
+    companion object {
+        private const val TEST_DB = "migration-test.db"
+        
+        /** 与 AppDatabase 的 version 保持一致 */
+        private const val LATEST_VERSION = 7
+        
+        private val PASSPHRASE = "migration-test".toByteArray()
+        
+        /**
+         * 1.0 版本 Room 创建的表（当时未导出 schema，由 1.0 的实体定义得出）
+         */
+        private val VERSION_1_SCHEMA = listOf(
+            "CREATE TABLE IF NOT EXISTS `items` (`id` TEXT NOT NULL, `type` TEXT NOT NULL, " +
+                "`created_time` INTEGER NOT NULL, `updated_time` INTEGER NOT NULL, `deleted_time` INTEGER, " +
+                "`payload` TEXT NOT NULL, `content_hash` TEXT NOT NULL, `sync_status` TEXT NOT NULL, " +
+                "`local_rev` INTEGER NOT NULL, `remote_rev` TEXT, `encryption_applied` INTEGER NOT NULL, " +
+                "`schema_version` INTEGER NOT NULL, PRIMARY KEY(`id`))",
+            "CREATE TABLE IF NOT EXISTS `resource_cache` (`resource_id` TEXT NOT NULL, `local_path` TEXT NOT NULL, " +
+                "`downloaded_at` INTEGER NOT NULL, `last_accessed_at` INTEGER NOT NULL, PRIMARY KEY(`resource_id`))"
+        )
+        
+        init {
+            System.loadLibrary("sqlcipher")
+        }
+    }
+    
+    private val context: Context = InstrumentationRegistry.getInstrumentation().targetContext
+    
+    @After
+    fun tearDown() {
+        context.deleteDatabase(TEST_DB)
+        context.getSharedPreferences("db_maintenance", Context.MODE_PRIVATE).edit().clear().commit()
+    }
+    
+    @Test
+    fun migrateFromVersion1_preservesItemsAndValidatesSchema() {
+        createVersion1Database { db ->
+            insertItem(db, "note-1", "note", """{"title":"Hello","content":"World","tags":["a"]}""")
+        }
+        
+        val database = openMigratedDatabase()
+        try {
+            val db = database.openHelper.writableDatabase
+            assertEquals(LATEST_VERSION, db.version)
+            db.query("SELECT payload, content_hash FROM items WHERE id = 'note-1'").use { cursor ->
+                assertTrue(cursor.moveToFirst())
+                assertEquals("""{"title":"Hello","content":"World","tags":["a"]}""", cursor.getString(0))
+                assertEquals("0123456789abcdef", cursor.getString(1))
+            }
+        } finally {
+            database.close()
+        }
+    }
+    
+    @Test
+    fun everyVersionStepIsRegistered() {
+        val steps = DatabaseMigrations.ALL.map { it.startVersion to it.endVersion }
+        assertEquals((1 until LATEST_VERSION).map { it to it + 1 }, steps)
+    }
+    
+    @Test
+    fun backfillPopulatesDerivedDataAfterMigration() {
+        createVersion1Database { db ->
+            insertItem(db, "msg-1", "ai_message", """{"conversation_id":"conv-1","role":"user","content":"hi","model":"","created_at":1000}""")
+            insertItem(db, "todo-1", "todo", """{"title":"Todo","quadrant":"urgent-important","completed":false,"due_date":2000,"reminder_time":1500,"reminder_enabled":true,"tags":["work"]}""")
+            insertItem(db, "note-2", "note", """{"title":"Offline edit","content":"","tags":[]}""", syncStatus = "modified")
+            insertItem(db, "diagram-1", "diagram", """{"name":"D","diagram_type":"mindmap","data":"{}","thumbnail":"aGVsbG8="}""")
+        }
+        
+        val database = openMigratedDatabase()
+        try {
+            val itemDao = database.itemDao()
+            val blobStore = PayloadBlobStore(database.itemBlobDao())
+            val tracker = ItemChangeTracker(database, itemDao, database.itemTagDao(), database.outboxDao(), blobStore)
+            val backfill = DerivedDataBackfill(context, itemDao, tracker)
+            
+            runBlocking {
+                assertTrue(backfill.isPending())
+                assertEquals(4, backfill.runIfNeeded())
+                assertFalse(backfill.isPending())
+                
+                // AI 消息按对话分页
+                assertEquals(listOf("msg-1"), itemDao.getMessagesPage("conv-1", Long.MAX_VALUE, "", 10).map { it.id })
+                
+                // 待办提醒和标签索引
+                assertEquals(listOf("todo-1"), itemDao.getUpcomingReminders(0, 10_000).map { it.id })
+                assertEquals(listOf("todo-1"), database.itemTagDao().getItemsWithTag("todo", "work").map { it.id })
+                
+                // 缩略图移出 payload，上传时可还原
+                val diagram = itemDao.getById("diagram-1")!!
+                assertFalse(diagram.payload.contains("aGVsbG8="))
+                assertEquals("aGVsbG8=", blobStore.load("diagram-1", PayloadBlobStore.FIELD_THUMBNAIL))
+                assertTrue(blobStore.inline(diagram).payload.contains("aGVsbG8="))
+                
+                // 升级前未推送的修改进入发件箱，已同步的行不入队
+                assertEquals(
+                    listOf("note-2"),
+                    database.outboxDao().getDue(Long.MAX_VALUE, listOf("note", "todo", "diagram", "ai_message"), 10).map { it.itemId }
+                )
+                
+                // 升级后没有正文未下载的项目
+                assertEquals(0, database.dehydratedItemDao().count())
+                
+                // 已完成时不再重复处理
+                assertEquals(0, backfill.runIfNeeded())
+            }
+        } finally {
+            database.close()
+        }
+    }
+    
+    /**
+     * 创建 1.0 版本（user_version = 1）的数据库并写入数据
+     */
+    private fun createVersion1Database(populate: (SupportSQLiteDatabase) -> Unit) {
+        val configuration = SupportSQLiteOpenHelper.Configuration.builder(context)
+            .name(TEST_DB)
+            .callback(object : SupportSQLiteOpenHelper.Callback(1) {
+                override fun onCreate(db: SupportSQLiteDatabase) {
+                    VERSION_1_SCHEMA.forEach { db.execSQL(it) }
+                }
+                
+                override fun onUpgrade(db: SupportSQLiteDatabase, oldVersion: Int, newVersion: Int) = Unit
+            })
+            .build()
+        val openHelper = SupportOpenHelperFactory(PASSPHRASE, null, false).create(configuration)
+        try {
+            populate(openHelper.writableDatabase)
+        } finally {
+            openHelper.close()
+        }
+    }
+    
+    /**
+     * 由 Room 打开并迁移到最新版本
+     * 迁移后的表结构与实体不一致时 Room 抛出 IllegalStateException（Migration didn't properly handle ...）
+     */
+    private fun openMigratedDatabase(): AppDatabase {
+        val database = Room.databaseBuilder(context, AppDatabase::class.java, TEST_DB)
+            .openHelperFactory(SupportOpenHelperFactory(PASSPHRASE, null, false))
+            .addMigrations(*DatabaseMigrations.ALL)
+            .build()
+        database.openHelper.writableDatabase
+        return database
+    }
+    
+    private fun insertItem(
+        db: SupportSQLiteDatabase,
+        id: String,
+        type: String,
+        payload: String,
+        syncStatus: String = "clean"
+    ) {
+        db.execSQL(
+            "INSERT INTO items (id, type, created_time, updated_time, deleted_time, payload, content_hash, " +
+                "sync_status, local_rev, remote_rev, encryption_applied, schema_version) " +
+                "VALUES (?, ?, 0, 0, NULL, ?, '0123456789abcdef', ?, 1, NULL, 0, 1)",
+            arrayOf<Any?>(id, type, payload, syncStatus)
+        )
+    }
+}
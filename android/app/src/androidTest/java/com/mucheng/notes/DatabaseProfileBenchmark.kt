@@ -0,0 +1,117 @@
+package com.mucheng.notes
+
+import android.content.Context
+import android.os.SystemClock
+import android.util.Log
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import com.mucheng.notes.data.local.AppDatabase
+import com.mucheng.notes.data.local.DatabaseProfile
+import com.mucheng.notes.data.local.entity.ItemEntity
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * 数据库配置基准
+ *
+ * 对 [DatabaseProfile.ALL] 中每个配置新建一个加密数据库，测量：
+ * - 打开耗时（含密钥派生和 schema 创建）
+ * - 批量 upsert 吞吐（条/秒）
+ * - 按主键点查平均耗时
+ *
+ * 结果输出到 logcat（tag: DatabaseProfileBenchmark），在真机上运行对比：
+ * ./gradlew connectedAndroidTest -Pandroid.testInstrumentationRunnerArguments.class=com.mucheng.notes.DatabaseProfileBenchmark
+ */
+@RunWith(AndroidJUnit4::class)
+class DatabaseProfileBenchmark {
+    
+    companion object {
+        private const val TAG = "DatabaseProfileBenchmark"
+        private const val ITEM_COUNT = 5_000
+        private const val UPSERT_BATCH = 500
+        private const val LOOKUP_COUNT = 2_000
+        
+        private val PASSPHRASE = "benchmark".toByteArray()
+        
+        init {
+            AppDatabase.loadNativeLibrary()
+        }
+    }
+    
+    private val context: Context = InstrumentationRegistry.getInstrumentation().targetContext
+    
+    @After
+    fun tearDown() {
+        DatabaseProfile.ALL.forEach { context.deleteDatabase(databaseName(it)) }
+    }
+    
+    @Test
+    fun compareProfiles() {
+        val results = DatabaseProfile.ALL.map { profile -> measure(profile) }
+        
+        results.forEach { Log.i(TAG, it.toString()) }
+        assertEquals(DatabaseProfile.ALL.size, results.size)
+    }
+    
+    private fun measure(profile: DatabaseProfile): Result = runBlocking {
+        context.deleteDatabase(databaseName(profile))
+        
+        var start = SystemClock.elapsedRealtimeNanos()
+        val database = AppDatabase.buildDatabase(context, PASSPHRASE, profile, databaseName(profile))
+        // Room 延迟打开，首次访问连接时才真正派生密钥并建表
+        database.openHelper.writableDatabase
+        val openMs = (SystemClock.elapsedRealtimeNanos() - start) / 1_000_000.0
+        
+        try {
+            val itemDao = database.itemDao()
+            val items = (0 until ITEM_COUNT).map { sampleItem(it) }
+            
+            start = SystemClock.elapsedRealtimeNanos()
+            items.chunked(UPSERT_BATCH).forEach { itemDao.upsertAll(it) }
+            val upsertSeconds = (SystemClock.elapsedRealtimeNanos() - start) / 1_000_000_000.0
+            
+            start = SystemClock.elapsedRealtimeNanos()
+            repeat(LOOKUP_COUNT) { i ->
+                assertNotNull(itemDao.getById(items[(i * 7919) % ITEM_COUNT].id))
+            }
+            val lookupUs = (SystemClock.elapsedRealtimeNanos() - start) / 1_000.0 / LOOKUP_COUNT
+            
+            Result(
+                profile = profile.name,
+                openMs = openMs,
+                upsertsPerSecond = ITEM_COUNT / upsertSeconds,
+                lookupMicros = lookupUs
+            )
+        } finally {
+            database.close()
+        }
+    }
+    
+    private fun sampleItem(index: Int): ItemEntity {
+        val payload = """{"title":"Note $index","content":"${"x".repeat(512)}","folder_id":null,"is_pinned":false,"tags":["t${index % 20}"]}"""
+        return ItemEntity(
+            id = "bench-%06d".format(index),
+            type = "note",
+            createdTime = index.toLong(),
+            updatedTime = index.toLong(),
+            payload = payload,
+            contentHash = index.toString(16).padStart(16, '0')
+        )
+    }
+    
+    private fun databaseName(profile: DatabaseProfile) = "benchmark-${profile.name}.db"
+    
+    private data class Result(
+        val profile: String,
+        val openMs: Double,
+        val upsertsPerSecond: Double,
+        val lookupMicros: Double
+    ) {
+        override fun toString(): String =
+            "%-12s open=%.1fms upsert=%.0f/s lookup=%.1fus".format(profile, openMs, upsertsPerSecond, lookupMicros)
+    }
+}
@@ -1,7 +1,77 @@
 package com.mucheng.notes
 
 import android.app.Application
+import com.mucheng.notes.data.local.DatabaseInitializer
+import com.mucheng.notes.data.local.DerivedDataBackfill
+import com.mucheng.notes.data.sync.FastPushCoordinator
+import com.mucheng.notes.data.sync.SyncScheduler
+import com.mucheng.notes.service.MaintenanceJobService
+import com.mucheng.notes.service.ReminderManager
 import dagger.hilt.android.HiltAndroidApp
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.launch
+import javax.inject.Inject
 
 @HiltAndroidApp
-class MuchengNotesApp : Application()
+class MuchengNotesApp : Application() {
+    
+    @Inject
+    lateinit var databaseInitializer: DatabaseInitializer
+    
+    @Inject
+    lateinit var derivedDataBackfill: DerivedDataBackfill
+    
+    @Inject
+    lateinit var syncScheduler: SyncScheduler
+    
+    @Inject
+    lateinit var fastPushCoordinator: FastPushCoordinator
+    
+    @Inject
+    lateinit var reminderManager: ReminderManager
+    
+    private val appScope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+    
+    override fun onCreate() {
+        super.onCreate()
+        
+        // 后台打开加密数据库，首帧不等待密钥派生
+        databaseInitializer.start(appScope)
+        
+        // 数据库升级后在后台分批回填派生数据
+        appScope.launch {
+            try {
+                databaseInitializer.await()
+                derivedDataBackfill.runIfNeeded()
+            } catch (e: Exception) {
+                android.util.Log.e("MuchengNotesApp", "Derived data backfill failed", e)
+            }
+        }
+        
+        // 墓碑清理、空间回收等维护在空闲或充电时执行
+        MaintenanceJobService.schedule(this)
+        
+        // 按同步间隔安排后台同步
+        appScope.launch {
+            try {
+                syncScheduler.reschedule()
+            } catch (e: Exception) {
+                android.util.Log.e("MuchengNotesApp", "Failed to schedule background sync", e)
+            }
+        }
+        
+        // 按提醒时间索引重新调度待办提醒（闹钟在应用更新、强制停止后会丢失）
+        appScope.launch {
+            try {
+                reminderManager.rescheduleUpcoming()
+            } catch (e: Exception) {
+                android.util.Log.e("MuchengNotesApp", "Failed to schedule reminders", e)
+            }
+        }
+        
+        // 编辑停止几秒后单独推送改动的项目
+        fastPushCoordinator.start(appScope)
+    }
+}
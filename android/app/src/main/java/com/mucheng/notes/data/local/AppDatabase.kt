@@ -4,11 +4,21 @@ import android.content.Context
 import androidx.room.Database
 import androidx.room.Room
 import androidx.room.RoomDatabase
+import com.mucheng.notes.data.local.dao.DehydratedItemDao
+import com.mucheng.notes.data.local.dao.ItemBlobDao
 import com.mucheng.notes.data.local.dao.ItemDao
+import com.mucheng.notes.data.local.dao.ItemTagDao
+import com.mucheng.notes.data.local.dao.OutboxDao
 import com.mucheng.notes.data.local.dao.ResourceCacheDao
+import com.mucheng.notes.data.local.entity.DehydratedItemEntity
+import com.mucheng.notes.data.local.entity.ItemBlobEntity
 import com.mucheng.notes.data.local.entity.ItemEntity
+import com.mucheng.notes.data.local.entity.ItemTagEntity
+import com.mucheng.notes.data.local.entity.OutboxEntity
 import com.mucheng.notes.data.local.entity.ResourceCacheEntity
 import net.zetetic.database.sqlcipher.SupportOpenHelperFactory
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
 
 /**
  * Room Database with SQLCipher encryption
@@ -16,15 +26,23 @@ import net.zetetic.database.sqlcipher.SupportOpenHelperFactory
 @Database(
     entities = [
         ItemEntity::class,
-        ResourceCacheEntity::class
+        ResourceCacheEntity::class,
+        ItemTagEntity::class,
+        ItemBlobEntity::class,
+        OutboxEntity::class,
+        DehydratedItemEntity::class
     ],
-    version = 1,
+    version = 7,
     exportSchema = true
 )
 abstract class AppDatabase : RoomDatabase() {
     
     abstract fun itemDao(): ItemDao
     abstract fun resourceCacheDao(): ResourceCacheDao
+    abstract fun itemTagDao(): ItemTagDao
+    abstract fun itemBlobDao(): ItemBlobDao
+    abstract fun outboxDao(): OutboxDao
+    abstract fun dehydratedItemDao(): DehydratedItemDao
     
     companion object {
         private const val DATABASE_NAME = "mucheng_notes.db"
@@ -36,13 +54,33 @@ abstract class AppDatabase : RoomDatabase() {
          * 获取加密数据库实例
          * @param context Application context
          * @param passphrase 数据库加密密码
+         * @param profile 性能配置，加密参数必须与数据库创建时一致
+         * @param queryExecutor 查询线程池，null 时按 [DatabaseProfile.readerConnections] 创建
          */
-        fun getInstance(context: Context, passphrase: ByteArray): AppDatabase {
+        fun getInstance(
+            context: Context,
+            passphrase: ByteArray,
+            profile: DatabaseProfile = DatabaseProfile.DEFAULT,
+            queryExecutor: Executor? = null
+        ): AppDatabase {
             return INSTANCE ?: synchronized(this) {
-                INSTANCE ?: buildDatabase(context, passphrase).also { INSTANCE = it }
+                INSTANCE ?: buildDatabase(
+                    context,
+                    passphrase,
+                    profile,
+                    DATABASE_NAME,
+                    queryExecutor ?: Executors.newFixedThreadPool(profile.readerConnections)
+                ).also { INSTANCE = it }
             }
         }
         
+        /**
+         * 加载 SQLCipher 原生库，必须在首次打开数据库前调用（耗时，勿在主线程）
+         */
+        fun loadNativeLibrary() {
+            System.loadLibrary("sqlcipher")
+        }
+        
         /**
          * 获取未加密数据库实例（仅用于测试）
          */
@@ -53,19 +91,38 @@ abstract class AppDatabase : RoomDatabase() {
             ).build()
         }
         
-        private fun buildDatabase(context: Context, passphrase: ByteArray): AppDatabase {
-            // 初始化 SQLCipher
-            System.loadLibrary("sqlcipher")
-            
-            val factory = SupportOpenHelperFactory(passphrase, null, false)
+        /**
+         * 按指定配置构建加密数据库（不走单例，供基准测试对比不同配置）
+         *
+         * 只创建 Room 对象，首次获取连接时才真正打开；调用前需先 [loadNativeLibrary]。
+         */
+        fun buildDatabase(
+            context: Context,
+            passphrase: ByteArray,
+            profile: DatabaseProfile,
+            name: String,
+            queryExecutor: Executor = Executors.newFixedThreadPool(profile.readerConnections)
+        ): AppDatabase {
+            val factory = SupportOpenHelperFactory(
+                passphrase,
+                profile.createHook(),
+                profile.writeAheadLogging
+            )
             
             return Room.databaseBuilder(
                 context.applicationContext,
                 AppDatabase::class.java,
-                DATABASE_NAME
+                name
             )
                 .openHelperFactory(factory)
-                .fallbackToDestructiveMigration() // TODO: 实现正式迁移策略
+                .setJournalMode(
+                    if (profile.writeAheadLogging) JournalMode.WRITE_AHEAD_LOGGING
+                    else JournalMode.TRUNCATE
+                )
+                // Flow / suspend 查询走独立线程池，WAL 下多个读连接可以并发
+                .setQueryExecutor(queryExecutor)
+                // 所有版本升级都走正式迁移，不再删库重建（否则需要重新全量同步）
+                .addMigrations(*DatabaseMigrations.ALL)
                 .build()
         }
         
@@ -0,0 +1,142 @@
+package com.mucheng.notes.data.local
+
+import android.content.Context
+import android.util.Log
+import dagger.hilt.android.qualifiers.ApplicationContext
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.launch
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicBoolean
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * 数据库异步打开
+ *
+ * 加载 SQLCipher 原生库、派生密钥、执行迁移都要数百毫秒，不能放在首帧路径上。
+ * 注入 [AppDatabase] 只会创建 Room 对象，不会真正打开；Room 的查询线程池由
+ * [GatedExecutor] 把守，打开完成前提交的查询先排队，suspend DAO 和 Flow
+ * 的调用方只是挂起等待，不会阻塞主线程。
+ *
+ * [start] 在 IO 线程依次完成：加载原生库 -> 打开数据库（含迁移）-> 预热笔记列表，
+ * 然后放行排队的查询并完成 [ready]。
+ */
+@Singleton
+class DatabaseInitializer @Inject constructor(
+    @ApplicationContext private val context: Context
+) {
+    
+    companion object {
+        private const val TAG = "DatabaseInitializer"
+        
+        /**
+         * 预热时读取的笔记条数，覆盖首屏及少量滚动
+         */
+        private const val PREWARM_NOTE_COUNT = 200
+    }
+    
+    private val profile = DatabaseProfile.DEFAULT
+    
+    private val gate = GatedExecutor(Executors.newFixedThreadPool(profile.readerConnections))
+    
+    private val started = AtomicBoolean(false)
+    
+    private val _ready = CompletableDeferred<AppDatabase>()
+    
+    /**
+     * 数据库打开并预热完成
+     */
+    val ready: Deferred<AppDatabase> = _ready
+    
+    /**
+     * Room 实例（未打开），由 DatabaseModule 提供给 DAO
+     */
+    val database: AppDatabase by lazy {
+        // TODO: 从 Android Keystore 或安全存储获取数据库密码
+        // 这里暂时使用固定密码，实际应用中需要安全处理
+        val passphrase = "mucheng_notes_db_key".toByteArray()
+        AppDatabase.getInstance(context, passphrase, profile, gate)
+    }
+    
+    /**
+     * 在后台打开数据库，重复调用只执行一次
+     */
+    fun start(scope: CoroutineScope) {
+        if (!started.compareAndSet(false, true)) return
+        
+        scope.launch(Dispatchers.IO) {
+            try {
+                AppDatabase.loadNativeLibrary()
+                val db = database
+                val startTime = System.currentTimeMillis()
+                // 首次获取连接时派生密钥并执行迁移
+                db.openHelper.writableDatabase
+                prewarm(db)
+                Log.i(TAG, "Database ready in ${System.currentTimeMillis() - startTime}ms")
+                gate.open()
+                _ready.complete(db)
+            } catch (e: Throwable) {
+                Log.e(TAG, "Failed to open database", e)
+                _ready.completeExceptionally(e)
+                // 放行排队的查询，让调用方拿到真实错误而不是一直挂起
+                gate.open()
+            }
+        }
+    }
+    
+    /**
+     * 等待数据库就绪
+     */
+    suspend fun await(): AppDatabase = ready.await()
+    
+    /**
+     * 按笔记列表的查询读取最近的笔记，把索引页和数据页解密进页缓存
+     */
+    private fun prewarm(db: AppDatabase) {
+        db.openHelper.writableDatabase.query(
+            "SELECT id, payload FROM items WHERE type = 'note' AND deleted_time IS NULL " +
+                "ORDER BY updated_time DESC LIMIT $PREWARM_NOTE_COUNT"
+        ).use { cursor ->
+            while (cursor.moveToNext()) {
+                cursor.getString(1)
+            }
+        }
+    }
+}
+
+/**
+ * 可延迟放行的线程池
+ *
+ * [open] 之前提交的任务先排队，之后统一交给 [delegate] 执行。
+ */
+internal class GatedExecutor(private val delegate: Executor) : Executor {
+    
+    private val pending = ArrayDeque<Runnable>()
+    
+    @Volatile
+    private var isOpen = false
+    
+    override fun execute(command: Runnable) {
+        if (!isOpen) {
+            synchronized(this) {
+                if (!isOpen) {
+                    pending.addLast(command)
+                    return
+                }
+            }
+        }
+        delegate.execute(command)
+    }
+    
+    fun open() {
+        val queued = synchronized(this) {
+            isOpen = true
+            pending.toList().also { pending.clear() }
+        }
+        queued.forEach(delegate::execute)
+    }
+}
@@ -0,0 +1,176 @@
+package com.mucheng.notes.data.local
+
+import android.content.Context
+import android.util.Log
+import androidx.room.withTransaction
+import androidx.sqlite.db.SupportSQLiteDatabase
+import com.mucheng.notes.data.local.dao.DehydratedItemDao
+import com.mucheng.notes.data.local.dao.ItemBlobDao
+import com.mucheng.notes.data.local.dao.ItemDao
+import com.mucheng.notes.data.local.dao.ItemTagDao
+import dagger.hilt.android.qualifiers.ApplicationContext
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.ensureActive
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.withContext
+import java.io.File
+import javax.inject.Inject
+import javax.inject.Singleton
+import kotlin.coroutines.coroutineContext
+
+/**
+ * 数据库维护结果
+ *
+ * @param purgedTombstones 物理删除的墓碑数
+ * @param reclaimedBytes 数据库文件（含 WAL）缩小的字节数
+ * @param analyzed 是否执行了 ANALYZE
+ */
+data class MaintenanceResult(
+    val purgedTombstones: Int,
+    val reclaimedBytes: Long,
+    val analyzed: Boolean
+)
+
+/**
+ * 数据库维护
+ *
+ * 由 MaintenanceJobService 在设备空闲或充电时调用：
+ * 1. 分批物理删除超过保留期且删除已同步的墓碑，连同其标签索引和大字段
+ * 2. 回收空闲页（PRAGMA incremental_vacuum），并截断 WAL
+ * 3. 批量删除后 ANALYZE 更新统计信息，否则只做 PRAGMA optimize
+ *
+ * 两次执行至少间隔 [MIN_INTERVAL_MS]。
+ */
+@Singleton
+class DatabaseMaintenance @Inject constructor(
+    @ApplicationContext private val context: Context,
+    private val databaseInitializer: DatabaseInitializer,
+    private val itemDao: ItemDao,
+    private val itemTagDao: ItemTagDao,
+    private val itemBlobDao: ItemBlobDao,
+    private val dehydratedItemDao: DehydratedItemDao
+) {
+    
+    companion object {
+        private const val TAG = "DatabaseMaintenance"
+        private const val PREFS_NAME = "db_maintenance"
+        private const val KEY_LAST_RUN = "maintenance_last_run"
+        private const val KEY_ANALYZED = "maintenance_analyzed"
+        
+        /**
+         * 墓碑保留期：远端和其他设备有足够时间拉取到删除
+         */
+        const val TOMBSTONE_RETENTION_MS = 30L * 24 * 60 * 60 * 1000
+        
+        const val MIN_INTERVAL_MS = 24L * 60 * 60 * 1000
+        
+        /**
+         * 每批删除条数，每批一个短事务，不长时间占用写锁
+         */
+        private const val PURGE_BATCH_SIZE = 500
+        
+        /**
+         * 删除达到此数量时执行 ANALYZE
+         */
+        private const val ANALYZE_THRESHOLD = 1000
+        
+        private const val AUTO_VACUUM_INCREMENTAL = 2L
+    }
+    
+    private val prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+    
+    private val mutex = Mutex()
+    
+    /**
+     * 距上次执行超过 [MIN_INTERVAL_MS] 时执行维护，否则返回 null
+     */
+    suspend fun runIfDue(): MaintenanceResult? {
+        val lastRun = prefs.getLong(KEY_LAST_RUN, 0)
+        if (System.currentTimeMillis() - lastRun < MIN_INTERVAL_MS) return null
+        return run()
+    }
+    
+    /**
+     * 立即执行一次维护
+     */
+    suspend fun run(): MaintenanceResult = withContext(Dispatchers.IO) {
+        mutex.withLock {
+            val database = databaseInitializer.await()
+            val db = database.openHelper.writableDatabase
+            val sizeBefore = databaseFileSize(db)
+            
+            val purged = purgeTombstones(database)
+            
+            reclaimFreePages(db)
+            
+            val analyzed = purged >= ANALYZE_THRESHOLD || !prefs.getBoolean(KEY_ANALYZED, false)
+            if (analyzed) {
+                db.execSQL("ANALYZE")
+            } else {
+                db.query("PRAGMA optimize").use { it.moveToFirst() }
+            }
+            
+            val result = MaintenanceResult(
+                purgedTombstones = purged,
+                reclaimedBytes = (sizeBefore - databaseFileSize(db)).coerceAtLeast(0),
+                analyzed = analyzed
+            )
+            prefs.edit()
+                .putLong(KEY_LAST_RUN, System.currentTimeMillis())
+                .putBoolean(KEY_ANALYZED, prefs.getBoolean(KEY_ANALYZED, false) || analyzed)
+                .apply()
+            Log.i(TAG, "Maintenance finished: $result")
+            result
+        }
+    }
+    
+    /**
+     * 分批删除可清除的墓碑，每批检查协程是否已取消（任务被系统停止）
+     */
+    private suspend fun purgeTombstones(database: AppDatabase): Int {
+        val threshold = System.currentTimeMillis() - TOMBSTONE_RETENTION_MS
+        var total = 0
+        while (true) {
+            coroutineContext.ensureActive()
+            val ids = itemDao.getPurgeableTombstoneIds(threshold, PURGE_BATCH_SIZE)
+            if (ids.isEmpty()) break
+            
+            total += database.withTransaction {
+                itemTagDao.deleteForItems(ids)
+                val deleted = itemDao.hardDeleteTombstones(ids)
+                // 行已删除，对应的大字段都变为未引用
+                itemBlobDao.deleteUnreferenced(ids)
+                dehydratedItemDao.remove(ids)
+                deleted
+            }
+            if (ids.size < PURGE_BATCH_SIZE) break
+        }
+        return total
+    }
+    
+    /**
+     * 回收空闲页
+     *
+     * 已有数据库创建时未开启 auto_vacuum，首次维护时切换为 INCREMENTAL，
+     * 切换必须执行一次完整 VACUUM；之后每次只做 incremental_vacuum。
+     */
+    private fun reclaimFreePages(db: SupportSQLiteDatabase) {
+        val autoVacuum = db.query("PRAGMA auto_vacuum").use { if (it.moveToFirst()) it.getLong(0) else 0L }
+        if (autoVacuum != AUTO_VACUUM_INCREMENTAL) {
+            db.execSQL("PRAGMA auto_vacuum = INCREMENTAL")
+            db.execSQL("VACUUM")
+        } else {
+            // incremental_vacuum 每一步释放一页，必须把结果集读完才会回收全部空闲页
+            db.query("PRAGMA incremental_vacuum").use { cursor ->
+                while (cursor.moveToNext()) { }
+            }
+        }
+        db.query("PRAGMA wal_checkpoint(TRUNCATE)").use { it.moveToFirst() }
+    }
+    
+    private fun databaseFileSize(db: SupportSQLiteDatabase): Long {
+        val path = db.path ?: return 0
+        return File(path).length() + File("$path-wal").length()
+    }
+}
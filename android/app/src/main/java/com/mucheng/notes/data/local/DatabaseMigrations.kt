@@ -0,0 +1,97 @@
+package com.mucheng.notes.data.local
+
+import androidx.room.migration.Migration
+import androidx.sqlite.db.SupportSQLiteDatabase
+
+/**
+ * 数据库版本迁移
+ *
+ * 迁移只负责表结构变更（加列、建表、建索引），必须在数秒内完成；
+ * 派生列、标签索引、大字段移出等数据回填由 [DerivedDataBackfill] 在后台分批执行。
+ * 新增派生数据时同时提升 [DerivedDataBackfill.DERIVED_DATA_VERSION]。
+ *
+ * 新增版本步骤：
+ * 1. 提升 AppDatabase.version 并在这里添加 MIGRATION_N_N+1
+ * 2. 将其加入 [ALL]
+ * 3. 补充 AppDatabaseMigrationTest（Room 打开迁移后的数据库时按实体校验表结构）；
+ *    构建时 Room 会把当前版本的 schema 导出到 schemas/，一并提交便于审查表结构变化
+ */
+object DatabaseMigrations {
+    
+    /**
+     * 1 -> 2：AI 消息的 conversation_id / created_at 派生列及索引
+     */
+    val MIGRATION_1_2 = object : Migration(1, 2) {
+        override fun migrate(db: SupportSQLiteDatabase) {
+            db.execSQL("ALTER TABLE items ADD COLUMN conversation_id TEXT")
+            db.execSQL("ALTER TABLE items ADD COLUMN created_at INTEGER")
+            db.execSQL("CREATE INDEX IF NOT EXISTS index_items_conversation_id_created_at ON items (conversation_id, created_at)")
+        }
+    }
+    
+    /**
+     * 2 -> 3：标签索引表 item_tags
+     */
+    val MIGRATION_2_3 = object : Migration(2, 3) {
+        override fun migrate(db: SupportSQLiteDatabase) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS item_tags (item_id TEXT NOT NULL, tag TEXT NOT NULL, PRIMARY KEY(item_id, tag))")
+            db.execSQL("CREATE INDEX IF NOT EXISTS index_item_tags_tag_item_id ON item_tags (tag, item_id)")
+        }
+    }
+    
+    /**
+     * 3 -> 4：待办的 due_date / reminder_time / completed / quadrant 派生列及索引
+     */
+    val MIGRATION_3_4 = object : Migration(3, 4) {
+        override fun migrate(db: SupportSQLiteDatabase) {
+            db.execSQL("ALTER TABLE items ADD COLUMN due_date INTEGER")
+            db.execSQL("ALTER TABLE items ADD COLUMN reminder_time INTEGER")
+            db.execSQL("ALTER TABLE items ADD COLUMN completed INTEGER")
+            db.execSQL("ALTER TABLE items ADD COLUMN quadrant TEXT")
+            db.execSQL("CREATE INDEX IF NOT EXISTS index_items_reminder_time ON items (reminder_time)")
+            db.execSQL("CREATE INDEX IF NOT EXISTS index_items_due_date ON items (due_date)")
+            db.execSQL("CREATE INDEX IF NOT EXISTS index_items_type_quadrant_completed ON items (type, quadrant, completed)")
+        }
+    }
+    
+    /**
+     * 4 -> 5：图表缩略图和大数据表 item_blobs
+     */
+    val MIGRATION_4_5 = object : Migration(4, 5) {
+        override fun migrate(db: SupportSQLiteDatabase) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS item_blobs (item_id TEXT NOT NULL, field TEXT NOT NULL, content_hash TEXT NOT NULL, data TEXT NOT NULL, PRIMARY KEY(item_id, field))")
+        }
+    }
+    
+    /**
+     * 5 -> 6：待推送操作表 outbox
+     */
+    val MIGRATION_5_6 = object : Migration(5, 6) {
+        override fun migrate(db: SupportSQLiteDatabase) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS outbox (item_id TEXT NOT NULL, kind TEXT NOT NULL, op TEXT NOT NULL, item_type TEXT NOT NULL, priority INTEGER NOT NULL, revision INTEGER NOT NULL, enqueued_at INTEGER NOT NULL, attempts INTEGER NOT NULL, next_attempt_at INTEGER NOT NULL, last_error TEXT, PRIMARY KEY(item_id, kind))")
+            db.execSQL("CREATE INDEX IF NOT EXISTS index_outbox_next_attempt_at ON outbox (next_attempt_at)")
+        }
+    }
+    
+    /**
+     * 6 -> 7：正文未下载项目表 dehydrated_items
+     */
+    val MIGRATION_6_7 = object : Migration(6, 7) {
+        override fun migrate(db: SupportSQLiteDatabase) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS dehydrated_items (item_id TEXT NOT NULL, type TEXT NOT NULL, remote_rev TEXT, queued_at INTEGER NOT NULL, PRIMARY KEY(item_id))")
+            db.execSQL("CREATE INDEX IF NOT EXISTS index_dehydrated_items_type_queued_at ON dehydrated_items (type, queued_at)")
+        }
+    }
+    
+    /**
+     * 所有迁移，按版本顺序排列
+     */
+    val ALL: Array<Migration> = arrayOf(
+        MIGRATION_1_2,
+        MIGRATION_2_3,
+        MIGRATION_3_4,
+        MIGRATION_4_5,
+        MIGRATION_5_6,
+        MIGRATION_6_7
+    )
+}
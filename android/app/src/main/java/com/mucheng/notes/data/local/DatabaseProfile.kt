@@ -0,0 +1,77 @@
+package com.mucheng.notes.data.local
+
+import net.zetetic.database.sqlcipher.SQLiteConnection
+import net.zetetic.database.sqlcipher.SQLiteDatabaseHook
+
+/**
+ * 数据库性能配置
+ *
+ * 打开数据库时应用。注意 [cipherPageSize] 和 [kdfIter] 决定了加密文件的格式，
+ * 只能在创建数据库时选择，已有数据库必须使用创建时的值才能打开；
+ * 日志模式、同步级别、读连接数等可以随时调整。
+ *
+ * @param writeAheadLogging 是否启用 WAL（读写并发，Flow 查询不被写入阻塞）
+ * @param synchronous PRAGMA synchronous 取值，WAL 下 NORMAL 即可保证一致性
+ * @param cipherPageSize 加密页大小，null 表示 SQLCipher 默认值（4096）
+ * @param kdfIter 口令派生迭代次数，null 表示 SQLCipher 默认值（256000）
+ * @param cipherMemorySecurity 是否在释放内存时清零，null 表示 SQLCipher 默认值
+ * @param readerConnections 查询线程数（WAL 下即并发读连接数）
+ */
+data class DatabaseProfile(
+    val name: String,
+    val writeAheadLogging: Boolean,
+    val synchronous: String? = null,
+    val cipherPageSize: Int? = null,
+    val kdfIter: Int? = null,
+    val cipherMemorySecurity: Boolean? = null,
+    val readerConnections: Int = 1
+) {
+    
+    companion object {
+        /**
+         * 原有配置：回滚日志、单查询线程，其余使用默认值（用于基准对比）
+         */
+        val LEGACY = DatabaseProfile(
+            name = "legacy",
+            writeAheadLogging = false
+        )
+        
+        /**
+         * 默认配置：WAL + 多读连接，加密参数保持 SQLCipher 默认值以兼容已有数据库
+         */
+        val DEFAULT = DatabaseProfile(
+            name = "default",
+            writeAheadLogging = true,
+            synchronous = "NORMAL",
+            cipherMemorySecurity = false,
+            readerConnections = 4
+        )
+        
+        /**
+         * 大页配置：仅适用于新建数据库，大 payload 行跨页更少
+         */
+        val LARGE_PAGE = DEFAULT.copy(
+            name = "large_page",
+            cipherPageSize = 8192
+        )
+        
+        val ALL = listOf(LEGACY, DEFAULT, LARGE_PAGE)
+    }
+    
+    /**
+     * 在设置密钥后应用加密相关 PRAGMA 和同步级别
+     * 每个连接（写连接和 WAL 下的各个读连接）打开时都会执行
+     */
+    internal fun createHook(): SQLiteDatabaseHook = object : SQLiteDatabaseHook {
+        override fun preKey(connection: SQLiteConnection) {}
+        
+        override fun postKey(connection: SQLiteConnection) {
+            cipherPageSize?.let { connection.execute("PRAGMA cipher_page_size = $it", null, null) }
+            kdfIter?.let { connection.execute("PRAGMA kdf_iter = $it", null, null) }
+            cipherMemorySecurity?.let {
+                connection.execute("PRAGMA cipher_memory_security = ${if (it) "ON" else "OFF"}", null, null)
+            }
+            synchronous?.let { connection.execute("PRAGMA synchronous = $it", null, null) }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.mucheng.notes.data.local
+
+import android.content.Context
+import android.util.Log
+import com.mucheng.notes.data.local.dao.ItemDao
+import dagger.hilt.android.qualifiers.ApplicationContext
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.withContext
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * 派生数据后台回填
+ *
+ * 数据库升级后，迁移只做表结构变更；已有行的派生列、标签索引和大字段
+ * 由这里按 rowid 顺序分批重建。每批一个事务，提交后记录进度，
+ * 进程被杀后下次启动从上次位置继续，不会重复处理已完成的批次。
+ *
+ * 新写入的行在写入事务中已经生成派生数据，回填只影响升级前的存量数据。
+ */
+@Singleton
+class DerivedDataBackfill @Inject constructor(
+    @ApplicationContext context: Context,
+    private val itemDao: ItemDao,
+    private val changeTracker: ItemChangeTracker
+) {
+    
+    companion object {
+        private const val TAG = "DerivedDataBackfill"
+        private const val PREFS_NAME = "db_maintenance"
+        private const val KEY_VERSION = "derived_data_version"
+        private const val KEY_LAST_ROW_ID = "derived_data_last_row_id"
+        private const val KEY_RUNNING_VERSION = "derived_data_running_version"
+        
+        /**
+         * 派生数据版本，派生列/派生表的生成规则变化时提升，触发一次全量回填
+         */
+        const val DERIVED_DATA_VERSION = 6
+        
+        /** 每批处理的行数 */
+        const val BATCH_SIZE = 500
+    }
+    
+    private val prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+    private val mutex = Mutex()
+    
+    /**
+     * 是否还有未完成的回填
+     */
+    fun isPending(): Boolean = prefs.getInt(KEY_VERSION, 0) < DERIVED_DATA_VERSION
+    
+    /**
+     * 需要时执行回填，已完成时立即返回
+     * @return 本次处理的行数
+     */
+    suspend fun runIfNeeded(): Int = withContext(Dispatchers.IO) {
+        mutex.withLock {
+            if (!isPending()) return@withLock 0
+            
+            // 进度只对同一目标版本有效，版本变化时从头开始
+            if (prefs.getInt(KEY_RUNNING_VERSION, 0) != DERIVED_DATA_VERSION) {
+                prefs.edit()
+                    .putInt(KEY_RUNNING_VERSION, DERIVED_DATA_VERSION)
+                    .putLong(KEY_LAST_ROW_ID, 0L)
+                    .apply()
+            }
+            
+            var lastRowId = prefs.getLong(KEY_LAST_ROW_ID, 0L)
+            var processed = 0
+            Log.d(TAG, "Backfill to version $DERIVED_DATA_VERSION starting after rowid $lastRowId")
+            
+            while (true) {
+                val batch = itemDao.getRowIdsAfter(lastRowId, BATCH_SIZE)
+                if (batch.isEmpty()) break
+                
+                changeTracker.rebuildDerivedData(batch.map { it.id })
+                lastRowId = batch.last().rowId
+                processed += batch.size
+                prefs.edit().putLong(KEY_LAST_ROW_ID, lastRowId).apply()
+            }
+            
+            prefs.edit()
+                .putInt(KEY_VERSION, DERIVED_DATA_VERSION)
+                .putLong(KEY_LAST_ROW_ID, 0L)
+                .apply()
+            
+            // 列表内容（如图表缩略图）可能变化，通知所有订阅方重新查询
+            if (processed > 0) {
+                changeTracker.publish(ItemChangeSet.ALL)
+            }
+            Log.d(TAG, "Backfill completed, $processed rows")
+            processed
+        }
+    }
+}
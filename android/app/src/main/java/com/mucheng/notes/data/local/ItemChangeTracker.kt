@@ -0,0 +1,304 @@
+package com.mucheng.notes.data.local
+
+import androidx.room.withTransaction
+import com.mucheng.notes.data.local.dao.ItemDao
+import com.mucheng.notes.data.local.dao.ItemTagDao
+import com.mucheng.notes.data.local.dao.OutboxDao
+import com.mucheng.notes.data.local.entity.ItemEntity
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.MutableSharedFlow
+import kotlinx.coroutines.flow.SharedFlow
+import kotlinx.coroutines.flow.asSharedFlow
+import kotlinx.coroutines.flow.conflate
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.flow.mapNotNull
+import kotlinx.coroutines.flow.onSubscription
+import kotlinx.coroutines.withContext
+import javax.inject.Inject
+import javax.inject.Singleton
+import kotlin.coroutines.AbstractCoroutineContextElement
+import kotlin.coroutines.CoroutineContext
+import kotlin.coroutines.coroutineContext
+
+/**
+ * 单一类型在一次事务中的变更（增量 diff）
+ */
+data class TypeChanges(
+    val type: String,
+    val inserted: Set<String> = emptySet(),
+    val updated: Set<String> = emptySet(),
+    val removed: Set<String> = emptySet(),
+    /** 为 true 时表示无法描述为增量，订阅方需要整表重新查询 */
+    val fullReload: Boolean = false
+) {
+    val size: Int get() = inserted.size + updated.size + removed.size
+}
+
+/**
+ * 一次事务提交后的变更集合，按类型分组
+ */
+data class ItemChangeSet(
+    val byType: Map<String, TypeChanges>,
+    /** 为 true 时所有类型都需要重新查询（如物理清理、数据库重置） */
+    val all: Boolean = false
+) {
+    fun forType(type: String): TypeChanges? {
+        if (all) return TypeChanges(type, fullReload = true)
+        return byType[type]
+    }
+    
+    companion object {
+        val ALL = ItemChangeSet(emptyMap(), all = true)
+    }
+}
+
+/**
+ * 事务内的变更记录器
+ *
+ * 作为协程上下文元素挂在事务协程上，嵌套的 [ItemChangeTracker.transaction]
+ * 会复用外层记录器，保证只有最外层事务提交后才统一发布。
+ */
+class ItemChangeRecorder : AbstractCoroutineContextElement(Key) {
+    
+    companion object Key : CoroutineContext.Key<ItemChangeRecorder>
+    
+    private enum class Kind { INSERTED, UPDATED, REMOVED }
+    
+    private val changes = LinkedHashMap<String, LinkedHashMap<String, Kind>>()
+    private var invalidateAll = false
+    
+    fun inserted(type: String, id: String) = record(type, id, Kind.INSERTED)
+    
+    fun updated(type: String, id: String) = record(type, id, Kind.UPDATED)
+    
+    fun removed(type: String, id: String) = record(type, id, Kind.REMOVED)
+    
+    /**
+     * 记录一次 upsert；带 deleted_time 的行对列表而言是移除
+     */
+    fun upserted(item: ItemEntity, isNew: Boolean) {
+        when {
+            item.deletedTime != null -> removed(item.type, item.id)
+            isNew -> inserted(item.type, item.id)
+            else -> updated(item.type, item.id)
+        }
+    }
+    
+    /**
+     * 标记本次事务影响了所有类型
+     */
+    fun invalidateAll() {
+        invalidateAll = true
+    }
+    
+    /**
+     * 本次事务触及的项目 ID
+     */
+    fun touchedIds(): Set<String> = changes.values.flatMapTo(LinkedHashSet()) { it.keys }
+    
+    private fun record(type: String, id: String, kind: Kind) {
+        val byId = changes.getOrPut(type) { LinkedHashMap() }
+        val previous = byId[id]
+        byId[id] = when {
+            // 同一事务内先插入再更新，对订阅方仍是插入
+            previous == Kind.INSERTED && kind == Kind.UPDATED -> Kind.INSERTED
+            else -> kind
+        }
+    }
+    
+    internal fun build(): ItemChangeSet? {
+        if (invalidateAll) return ItemChangeSet.ALL
+        if (changes.isEmpty()) return null
+        
+        val byType = changes.mapValues { (type, byId) ->
+            TypeChanges(
+                type = type,
+                inserted = byId.filterValues { it == Kind.INSERTED }.keys,
+                updated = byId.filterValues { it == Kind.UPDATED }.keys,
+                removed = byId.filterValues { it == Kind.REMOVED }.keys
+            )
+        }
+        return ItemChangeSet(byType)
+    }
+}
+
+/**
+ * items 表的按类型变更通知
+ *
+ * 所有类型共用一张 items 表，Room 的 Flow 在任意写入后都会让全部 getByType
+ * 查询失效。这里改为由写入方在事务中记录触及的类型和 ID，提交后只通知受影响的
+ * 类型，订阅方按增量 diff 更新列表，无关页面不做任何工作。
+ */
+@Singleton
+class ItemChangeTracker @Inject constructor(
+    private val database: AppDatabase,
+    private val itemDao: ItemDao,
+    private val itemTagDao: ItemTagDao,
+    private val outboxDao: OutboxDao,
+    private val payloadBlobStore: PayloadBlobStore
+) {
+    
+    companion object {
+        private const val AI_MESSAGE_TYPE = "ai_message"
+        
+        /** 单次变更超过该数量时直接整表重新查询 */
+        private const val FULL_RELOAD_THRESHOLD = 200
+        
+        /** SQLite 绑定参数上限以内的批量查询大小 */
+        private const val ID_QUERY_CHUNK = 500
+    }
+    
+    private val _changes = MutableSharedFlow<ItemChangeSet>(extraBufferCapacity = 64)
+    
+    /**
+     * 所有已提交事务的变更
+     */
+    val changes: SharedFlow<ItemChangeSet> = _changes.asSharedFlow()
+    
+    /**
+     * 在事务中执行写入并记录变更，提交后发布
+     */
+    suspend fun <T> transaction(block: suspend ItemChangeRecorder.() -> T): T {
+        val outer = coroutineContext[ItemChangeRecorder]
+        if (outer != null) {
+            return database.withTransaction { outer.block() }
+        }
+        
+        val recorder = ItemChangeRecorder()
+        val result = withContext(recorder) {
+            database.withTransaction {
+                val value = recorder.block()
+                refreshDerivedData(recorder.touchedIds())
+                value
+            }
+        }
+        recorder.build()?.let { publish(it) }
+        return result
+    }
+    
+    /**
+     * 在独立事务中重建指定项目的派生数据（用于升级后的后台回填）
+     * 只修改本地派生数据，不发布变更
+     */
+    suspend fun rebuildDerivedData(ids: List<String>) {
+        database.withTransaction { refreshDerivedData(ids) }
+    }
+    
+    /**
+     * 在同一事务内移出大字段，刷新本次写入行的派生列和标签索引，
+     * 并为待推送的行写入发件箱
+     */
+    private suspend fun refreshDerivedData(ids: Collection<String>) {
+        val now = System.currentTimeMillis()
+        for (chunk in ids.chunked(ID_QUERY_CHUNK)) {
+            payloadBlobStore.externalize(chunk)
+            itemDao.refreshDerivedColumns(chunk)
+            itemTagDao.refreshForItems(chunk)
+            outboxDao.enqueueItems(chunk, now)
+            outboxDao.enqueueResources(chunk, now)
+        }
+    }
+    
+    /**
+     * 观察某类型上的自定义查询
+     * 订阅时执行一次，之后该类型每次有变更都重新执行（适用于带 LIMIT 的索引查询）
+     */
+    fun <T> observeQuery(type: String, query: suspend () -> T): Flow<T> = flow {
+        changes
+            .onSubscription { emit(ItemChangeSet.ALL) }
+            .mapNotNull { it.forType(type) }
+            .conflate()
+            .collect { emit(query()) }
+    }
+    
+    /**
+     * 发布变更（用于事务之外的批量操作）
+     */
+    suspend fun publish(changeSet: ItemChangeSet) {
+        _changes.emit(changeSet)
+    }
+    
+    /**
+     * 观察单一类型的增量变更
+     */
+    fun observeChanges(type: String): Flow<TypeChanges> {
+        return changes.mapNotNull { it.forType(type) }
+    }
+    
+    /**
+     * 观察单一类型的未删除项目列表
+     *
+     * 首次订阅时整表查询，之后只在该类型有变更时按 ID 拉取变化的行并合并，
+     * 排序与 [ItemDao.getByType] 保持一致（updated_time DESC）。
+     */
+    fun observeType(type: String): Flow<List<ItemEntity>> = flow {
+        var current: List<ItemEntity>? = null
+        
+        changes
+            .onSubscription { emit(ItemChangeSet.ALL) }
+            .mapNotNull { it.forType(type) }
+            .collect { change ->
+                val previous = current
+                val next = if (previous == null || change.fullReload || change.size > FULL_RELOAD_THRESHOLD) {
+                    itemDao.getByTypeOnce(type)
+                } else {
+                    applyChanges(previous, change)
+                }
+                current = next
+                emit(next)
+            }
+    }
+    
+    /**
+     * 观察对话中从游标 (sinceCreatedAt, sinceId)（含）起的消息，按创建时间正序
+     *
+     * 只处理触及该对话的 ai_message 变更：按 ID 取回变化的行后与当前窗口合并，
+     * 其他对话的消息写入只多一次主键查询，不会重新查询整个窗口。
+     */
+    fun observeConversation(conversationId: String, sinceCreatedAt: Long, sinceId: String): Flow<List<ItemEntity>> = flow {
+        var current: List<ItemEntity>? = null
+        
+        changes
+            .onSubscription { emit(ItemChangeSet.ALL) }
+            .mapNotNull { it.forType(AI_MESSAGE_TYPE) }
+            .collect { change ->
+                val previous = current
+                val next = if (previous == null || change.fullReload || change.size > FULL_RELOAD_THRESHOLD) {
+                    itemDao.getMessagesSince(conversationId, sinceCreatedAt, sinceId)
+                } else {
+                    val touched = (change.inserted + change.updated + change.removed).chunked(ID_QUERY_CHUNK)
+                        .flatMap { itemDao.getByIdsInConversation(it, conversationId) }
+                    if (touched.isEmpty()) return@collect
+                    
+                    val touchedIds = touched.mapTo(HashSet()) { it.id }
+                    val merged = ArrayList<ItemEntity>(previous.size + touched.size)
+                    previous.filterTo(merged) { it.id !in touchedIds }
+                    touched.filterTo(merged) { it.deletedTime == null && it.isAtOrAfter(sinceCreatedAt, sinceId) }
+                    merged.sortWith(compareBy<ItemEntity> { it.createdAt }.thenBy { it.id })
+                    merged
+                }
+                current = next
+                emit(next)
+            }
+    }
+    
+    private fun ItemEntity.isAtOrAfter(createdAt: Long, id: String): Boolean {
+        val time = this.createdAt ?: return false
+        return time > createdAt || (time == createdAt && this.id >= id)
+    }
+    
+    private suspend fun applyChanges(current: List<ItemEntity>, change: TypeChanges): List<ItemEntity> {
+        val changedIds = change.inserted + change.updated
+        val fetched = changedIds.chunked(ID_QUERY_CHUNK)
+            .flatMap { itemDao.getByIdsNotDeleted(it) }
+            .filter { it.type == change.type }
+        
+        val dropped = change.removed + changedIds
+        val merged = ArrayList<ItemEntity>(current.size + fetched.size)
+        current.filterTo(merged) { it.id !in dropped }
+        merged.addAll(fetched)
+        merged.sortByDescending { it.updatedTime }
+        
+        return merged
+    }
+}
@@ -0,0 +1,157 @@
+package com.mucheng.notes.data.local
+
+import android.content.Context
+import android.os.Process
+import android.os.SystemClock
+import android.util.Log
+import com.mucheng.notes.security.KeystoreManager
+import dagger.hilt.android.qualifiers.ApplicationContext
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.withContext
+import kotlinx.serialization.SerialName
+import kotlinx.serialization.Serializable
+import kotlinx.serialization.json.Json
+import java.io.File
+import java.util.concurrent.atomic.AtomicBoolean
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * 冷启动列表快照中的笔记摘要
+ */
+@Serializable
+data class SnapshotNote(
+    val id: String,
+    val title: String,
+    val preview: String,
+    @SerialName("folder_id")
+    val folderId: String?,
+    @SerialName("is_pinned")
+    val isPinned: Boolean,
+    @SerialName("is_locked")
+    val isLocked: Boolean,
+    val tags: List<String>,
+    @SerialName("updated_time")
+    val updatedTime: Long
+)
+
+/**
+ * 冷启动列表快照中的文件夹
+ */
+@Serializable
+data class SnapshotFolder(
+    val id: String,
+    val name: String,
+    @SerialName("parent_id")
+    val parentId: String?,
+    val icon: String? = null,
+    val color: String? = null
+)
+
+/**
+ * 冷启动列表快照
+ */
+@Serializable
+data class ListSnapshot(
+    val version: Int = ListSnapshotStore.SNAPSHOT_VERSION,
+    @SerialName("saved_at")
+    val savedAt: Long,
+    val notes: List<SnapshotNote>,
+    val folders: List<SnapshotFolder>
+)
+
+/**
+ * 冷启动列表快照存储
+ *
+ * 上一次会话把最近的 [MAX_NOTES] 条笔记摘要和完整文件夹树写入私有目录，
+ * 用 Keystore 主密钥（AES-GCM）加密。冷启动时无需等待 SQLCipher 打开和查询，
+ * 直接读取快照绘制首屏，随后由实时 Flow 的结果替换。
+ *
+ * 快照只在每个进程的第一次读取时返回，之后数据库已就绪，不再使用。
+ */
+@Singleton
+class ListSnapshotStore @Inject constructor(
+    @ApplicationContext private val context: Context,
+    private val keystoreManager: KeystoreManager
+) {
+    
+    companion object {
+        private const val TAG = "ListSnapshotStore"
+        private const val FILE_NAME = "list_snapshot.bin"
+        
+        const val SNAPSHOT_VERSION = 1
+        
+        /**
+         * 快照保存的笔记条数（按更新时间倒序），覆盖首屏即可
+         */
+        const val MAX_NOTES = 50
+        
+        /**
+         * 笔记预览最大长度
+         */
+        const val PREVIEW_LENGTH = 200
+    }
+    
+    private val json = Json { ignoreUnknownKeys = true }
+    
+    private val file: File get() = File(context.noBackupFilesDir, FILE_NAME)
+    
+    private val coldStartConsumed = AtomicBoolean(false)
+    
+    private val firstPaintRecorded = AtomicBoolean(false)
+    
+    /**
+     * 读取冷启动快照，每个进程只返回一次；不存在、版本不符或解密失败时返回 null
+     */
+    suspend fun takeColdStartSnapshot(): ListSnapshot? {
+        if (!coldStartConsumed.compareAndSet(false, true)) return null
+        
+        return withContext(Dispatchers.IO) {
+            try {
+                if (!file.exists() || !keystoreManager.hasMasterKey()) return@withContext null
+                val plain = keystoreManager.decrypt(file.readBytes())
+                json.decodeFromString<ListSnapshot>(plain.decodeToString())
+                    .takeIf { it.version == SNAPSHOT_VERSION }
+            } catch (e: Exception) {
+                Log.w(TAG, "Discarding unreadable list snapshot", e)
+                file.delete()
+                null
+            }
+        }
+    }
+    
+    /**
+     * 写入快照（先写临时文件再替换，避免进程被杀时留下半个文件）
+     */
+    suspend fun save(notes: List<SnapshotNote>, folders: List<SnapshotFolder>) {
+        withContext(Dispatchers.IO) {
+            try {
+                keystoreManager.generateMasterKey()
+                val snapshot = ListSnapshot(
+                    savedAt = System.currentTimeMillis(),
+                    notes = notes.sortedByDescending { it.updatedTime }.take(MAX_NOTES),
+                    folders = folders
+                )
+                val encrypted = keystoreManager.encrypt(json.encodeToString(ListSnapshot.serializer(), snapshot).encodeToByteArray())
+                val temp = File(file.parentFile, "$FILE_NAME.tmp")
+                temp.writeBytes(encrypted)
+                if (!temp.renameTo(file)) {
+                    temp.delete()
+                }
+            } catch (e: Exception) {
+                Log.w(TAG, "Failed to save list snapshot", e)
+            }
+        }
+    }
+    
+    /**
+     * 记录进程启动到列表首次有内容的耗时，每个进程只记录一次
+     *
+     * @param source 首屏数据来源（snapshot / database）
+     */
+    fun recordFirstPaint(source: String) {
+        if (!firstPaintRecorded.compareAndSet(false, true)) return
+        val elapsed = SystemClock.elapsedRealtime() - Process.getStartElapsedRealtime()
+        Log.i(TAG, "First meaningful list after ${elapsed}ms (source=$source)")
+    }
+}
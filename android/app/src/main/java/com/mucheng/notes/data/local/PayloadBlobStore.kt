@@ -0,0 +1,81 @@
+package com.mucheng.notes.data.local
+
+import com.mucheng.notes.data.local.dao.ItemBlobDao
+import com.mucheng.notes.data.local.entity.ItemEntity
+import kotlinx.serialization.json.Json
+import kotlinx.serialization.json.JsonObject
+import kotlinx.serialization.json.JsonPrimitive
+import kotlinx.serialization.json.buildJsonObject
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * payload 大字段存储
+ *
+ * 图表的缩略图（以及超过 [LARGE_DATA_THRESHOLD] 的 data）在写入事务结束时
+ * 由 [ItemChangeTracker] 移到 item_blobs 表，payload 中只留下 _blob_<字段名> 标记。
+ * 界面按需通过 [load] 读取；上传前通过 [inline] 恢复为桌面端的原始格式。
+ */
+@Singleton
+class PayloadBlobStore @Inject constructor(
+    private val itemBlobDao: ItemBlobDao
+) {
+    
+    companion object {
+        const val FIELD_THUMBNAIL = "thumbnail"
+        const val FIELD_DATA = "data"
+        
+        /** payload 中标记已移出字段的键前缀 */
+        const val MARKER_PREFIX = "_blob_"
+        
+        /** 图表 data 超过该字符数时移出 payload */
+        const val LARGE_DATA_THRESHOLD = 64 * 1024
+    }
+    
+    private val json = Json { ignoreUnknownKeys = true }
+    
+    /**
+     * 在事务中移出指定项目的大字段
+     */
+    suspend fun externalize(ids: List<String>) {
+        itemBlobDao.externalizeForItems(ids, LARGE_DATA_THRESHOLD)
+    }
+    
+    /**
+     * 懒加载被移出的字段
+     */
+    suspend fun load(itemId: String, field: String): String? {
+        return itemBlobDao.getData(itemId, field)
+    }
+    
+    /**
+     * 将移出的字段内联回 payload 并去掉标记
+     * payload 没有标记时原样返回
+     */
+    suspend fun inline(item: ItemEntity): ItemEntity {
+        if (!item.payload.contains(MARKER_PREFIX)) return item
+        
+        val payload = try {
+            json.parseToJsonElement(item.payload) as? JsonObject
+        } catch (e: Exception) {
+            null
+        } ?: return item
+        
+        val markedFields = payload.keys
+            .filter { it.startsWith(MARKER_PREFIX) }
+            .map { it.removePrefix(MARKER_PREFIX) }
+        if (markedFields.isEmpty()) return item
+        
+        val blobs = itemBlobDao.getForItem(item.id).associate { it.field to it.data }
+        val inlined = buildJsonObject {
+            for ((key, value) in payload) {
+                if (!key.startsWith(MARKER_PREFIX)) put(key, value)
+            }
+            // 已存在的键（如置空的 data）保持原位置被覆盖
+            for (field in markedFields) {
+                blobs[field]?.let { put(field, JsonPrimitive(it)) }
+            }
+        }
+        return item.copy(payload = inlined.toString())
+    }
+}
@@ -0,0 +1,54 @@
+package com.mucheng.notes.data.local.dao
+
+import androidx.room.Dao
+import androidx.room.Insert
+import androidx.room.OnConflictStrategy
+import androidx.room.Query
+import com.mucheng.notes.data.local.entity.DehydratedItemEntity
+
+/**
+ * Room DAO for dehydrated_items table
+ * 记录正文尚未下载的项目
+ */
+@Dao
+interface DehydratedItemDao {
+    
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    suspend fun upsertAll(entries: List<DehydratedItemEntity>)
+    
+    /**
+     * 项目正文是否未下载
+     */
+    @Query("SELECT EXISTS(SELECT 1 FROM dehydrated_items WHERE item_id = :id)")
+    suspend fun isDehydrated(id: String): Boolean
+    
+    /**
+     * 在给定 ID 中筛选正文未下载的项目
+     */
+    @Query("SELECT item_id FROM dehydrated_items WHERE item_id IN (:ids)")
+    suspend fun filterDehydrated(ids: List<String>): List<String>
+    
+    /**
+     * 某个 AI 对话中正文未下载的消息
+     */
+    @Query("SELECT d.item_id FROM dehydrated_items d INNER JOIN items i ON i.id = d.item_id WHERE i.conversation_id = :conversationId")
+    suspend fun getForConversation(conversationId: String): List<String>
+    
+    /**
+     * 后台下载队列：按类型优先级由调用方传入，同类型按登记顺序
+     */
+    @Query("SELECT item_id FROM dehydrated_items WHERE type IN (:types) ORDER BY queued_at ASC LIMIT :limit")
+    suspend fun getPending(types: List<String>, limit: Int): List<String>
+    
+    @Query("SELECT COUNT(*) FROM dehydrated_items")
+    suspend fun count(): Int
+    
+    @Query("DELETE FROM dehydrated_items WHERE item_id IN (:ids)")
+    suspend fun remove(ids: List<String>)
+    
+    /**
+     * 清理对应项目已不存在的记录
+     */
+    @Query("DELETE FROM dehydrated_items WHERE item_id NOT IN (SELECT id FROM items)")
+    suspend fun removeOrphans(): Int
+}
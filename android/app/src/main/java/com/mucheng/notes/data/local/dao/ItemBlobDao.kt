@@ -0,0 +1,69 @@
+package com.mucheng.notes.data.local.dao
+
+import androidx.room.Dao
+import androidx.room.Query
+import androidx.room.Transaction
+import com.mucheng.notes.data.local.entity.ItemBlobEntity
+
+/**
+ * Room DAO for item_blobs table
+ * 图表缩略图和大数据字段的移出与读取
+ */
+@Dao
+interface ItemBlobDao {
+    
+    /**
+     * 获取单个大字段
+     */
+    @Query("SELECT data FROM item_blobs WHERE item_id = :itemId AND field = :field")
+    suspend fun getData(itemId: String, field: String): String?
+    
+    /**
+     * 获取项目的所有大字段
+     */
+    @Query("SELECT * FROM item_blobs WHERE item_id = :itemId")
+    suspend fun getForItem(itemId: String): List<ItemBlobEntity>
+    
+    /**
+     * 保存 payload 中的图表缩略图
+     */
+    @Query("INSERT OR REPLACE INTO item_blobs (item_id, field, content_hash, data) SELECT id, 'thumbnail', content_hash, json_extract(payload, '$.thumbnail') FROM items WHERE id IN (:ids) AND type = 'diagram' AND deleted_time IS NULL AND json_valid(payload) AND json_type(payload, '$.thumbnail') = 'text'")
+    suspend fun extractThumbnails(ids: List<String>)
+    
+    /**
+     * 从 payload 中移除已保存的缩略图并打上标记
+     */
+    @Query("UPDATE items SET payload = json_set(json_remove(payload, '$.thumbnail'), '$._blob_thumbnail', json('true')) WHERE id IN (:ids) AND type = 'diagram' AND deleted_time IS NULL AND json_valid(payload) AND json_type(payload, '$.thumbnail') = 'text'")
+    suspend fun stripThumbnails(ids: List<String>)
+    
+    /**
+     * 保存超过阈值的图表数据
+     */
+    @Query("INSERT OR REPLACE INTO item_blobs (item_id, field, content_hash, data) SELECT id, 'data', content_hash, json_extract(payload, '$.data') FROM items WHERE id IN (:ids) AND type = 'diagram' AND deleted_time IS NULL AND json_valid(payload) AND json_type(payload, '$.data') = 'text' AND length(json_extract(payload, '$.data')) > :threshold")
+    suspend fun extractLargeData(ids: List<String>, threshold: Int)
+    
+    /**
+     * 将已保存的图表数据在 payload 中置空并打上标记
+     */
+    @Query("UPDATE items SET payload = json_set(payload, '$.data', '', '$._blob_data', json('true')) WHERE id IN (:ids) AND type = 'diagram' AND deleted_time IS NULL AND json_valid(payload) AND json_type(payload, '$.data') = 'text' AND length(json_extract(payload, '$.data')) > :threshold")
+    suspend fun stripLargeData(ids: List<String>, threshold: Int)
+    
+    /**
+     * 删除 payload 中已不再标记的大字段（项目被删除或字段被清空）
+     */
+    @Query("DELETE FROM item_blobs WHERE item_id IN (:ids) AND NOT EXISTS (SELECT 1 FROM items WHERE items.id = item_blobs.item_id AND items.deleted_time IS NULL AND json_valid(items.payload) AND json_extract(items.payload, '$._blob_' || item_blobs.field) = 1)")
+    suspend fun deleteUnreferenced(ids: List<String>)
+    
+    /**
+     * 将指定项目 payload 中的大字段移到 item_blobs
+     * @param threshold data 字段超过该长度（字符数）时移出
+     */
+    @Transaction
+    suspend fun externalizeForItems(ids: List<String>, threshold: Int) {
+        extractThumbnails(ids)
+        stripThumbnails(ids)
+        extractLargeData(ids, threshold)
+        stripLargeData(ids, threshold)
+        deleteUnreferenced(ids)
+    }
+}
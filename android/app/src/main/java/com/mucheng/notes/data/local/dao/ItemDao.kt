@@ -5,6 +5,10 @@ import androidx.room.Insert
 import androidx.room.OnConflictStrategy
 import androidx.room.Query
 import com.mucheng.notes.data.local.entity.ItemEntity
+import com.mucheng.notes.data.local.entity.ItemRef
+import com.mucheng.notes.data.local.entity.ItemRowId
+import com.mucheng.notes.data.local.entity.QuadrantCount
+import com.mucheng.notes.data.local.entity.TodoReminder
 import kotlinx.coroutines.flow.Flow
 
 /**
@@ -38,6 +42,24 @@ interface ItemDao {
     @Query("SELECT * FROM items WHERE id = :id AND deleted_time IS NULL")
     suspend fun getByIdNotDeleted(id: String): ItemEntity?
     
+    /**
+     * 按 ID 列表批量获取未删除的项目（用于增量刷新列表）
+     */
+    @Query("SELECT * FROM items WHERE id IN (:ids) AND deleted_time IS NULL")
+    suspend fun getByIdsNotDeleted(ids: List<String>): List<ItemEntity>
+    
+    /**
+     * 按 ID 列表批量获取项目（包括已删除）
+     */
+    @Query("SELECT * FROM items WHERE id IN (:ids)")
+    suspend fun getByIds(ids: List<String>): List<ItemEntity>
+    
+    /**
+     * 返回给定 ID 中已存在于本地的 ID（包括已删除）
+     */
+    @Query("SELECT id FROM items WHERE id IN (:ids)")
+    suspend fun getExistingIds(ids: List<String>): List<String>
+    
     /**
      * 获取所有待同步的项目（modified 或 deleted 状态）
      */
@@ -68,12 +90,140 @@ interface ItemDao {
     @Query("UPDATE items SET deleted_time = :time, sync_status = 'deleted', local_rev = local_rev + 1 WHERE id = :id")
     suspend fun softDelete(id: String, time: Long)
     
+    /**
+     * 按 ID 列表获取未删除项目的引用
+     */
+    @Query("SELECT id, type FROM items WHERE id IN (:ids) AND deleted_time IS NULL")
+    suspend fun getRefsNotDeleted(ids: List<String>): List<ItemRef>
+    
+    /**
+     * 按 ID 列表获取项目引用（含已删除，用于拉取时按本地类型排优先级）
+     */
+    @Query("SELECT id, type FROM items WHERE id IN (:ids)")
+    suspend fun getRefs(ids: List<String>): List<ItemRef>
+    
+    /**
+     * 按 rowid 顺序获取 [afterRowId] 之后的一批项目 ID
+     */
+    @Query("SELECT rowid AS row_id, id FROM items WHERE rowid > :afterRowId ORDER BY rowid LIMIT :limit")
+    suspend fun getRowIdsAfter(afterRowId: Long, limit: Int): List<ItemRowId>
+    
+    /**
+     * 获取 payload 中引用字段等于指定父 ID 的未删除项目 ID
+     * @param path JSON 路径，如 $.conversation_id
+     */
+    @Query("SELECT id FROM items WHERE type = :type AND deleted_time IS NULL AND json_extract(payload, :path) = :parentId")
+    suspend fun getIdsByReference(type: String, path: String, parentId: String): List<String>
+    
+    /**
+     * 批量软删除
+     * @return 受影响的行数
+     */
+    @Query("UPDATE items SET deleted_time = :time, sync_status = 'deleted', local_rev = local_rev + 1 WHERE id IN (:ids) AND deleted_time IS NULL")
+    suspend fun softDeleteByIds(ids: List<String>, time: Long): Int
+    
+    /**
+     * 批量设置 payload 中的单个字段
+     * @return 受影响的行数
+     */
+    @Query("UPDATE items SET payload = json_set(payload, :path, json(:valueJson)) WHERE id IN (:ids) AND deleted_time IS NULL")
+    suspend fun setPayloadFieldForIds(ids: List<String>, path: String, valueJson: String): Int
+    
+    /**
+     * 按 (created_at, id) 游标分页获取对话消息（倒序，走 conversation_id + created_at 索引）
+     * @param beforeCreatedAt 只返回排在游标之前的消息，首页传 Long.MAX_VALUE
+     * @param beforeId 游标消息 ID，created_at 相同时按 ID 区分先后
+     */
+    @Query("SELECT * FROM items WHERE conversation_id = :conversationId AND (created_at < :beforeCreatedAt OR (created_at = :beforeCreatedAt AND id < :beforeId)) AND type = 'ai_message' AND deleted_time IS NULL ORDER BY created_at DESC, id DESC LIMIT :limit")
+    suspend fun getMessagesPage(conversationId: String, beforeCreatedAt: Long, beforeId: String, limit: Int): List<ItemEntity>
+    
+    /**
+     * 获取对话中从游标（含）起的全部消息（正序）
+     */
+    @Query("SELECT * FROM items WHERE conversation_id = :conversationId AND (created_at > :sinceCreatedAt OR (created_at = :sinceCreatedAt AND id >= :sinceId)) AND type = 'ai_message' AND deleted_time IS NULL ORDER BY created_at ASC, id ASC")
+    suspend fun getMessagesSince(conversationId: String, sinceCreatedAt: Long, sinceId: String): List<ItemEntity>
+    
+    /**
+     * 按 ID 列表获取属于指定对话的消息（含已删除，用于判断变更是否触及该对话）
+     */
+    @Query("SELECT * FROM items WHERE id IN (:ids) AND conversation_id = :conversationId")
+    suspend fun getByIdsInConversation(ids: List<String>, conversationId: String): List<ItemEntity>
+    
+    /**
+     * 获取时间窗口内的待办提醒（未完成、已启用提醒，按提醒时间升序）
+     * @param from 窗口起点（含）
+     * @param to 窗口终点（不含）
+     */
+    @Query("SELECT id, json_extract(payload, '$.title') AS title, reminder_time FROM items WHERE reminder_time >= :from AND reminder_time < :to AND type = 'todo' AND completed = 0 AND deleted_time IS NULL ORDER BY reminder_time ASC")
+    suspend fun getUpcomingReminders(from: Long, to: Long): List<TodoReminder>
+    
+    /**
+     * 获取某象限的待办（按更新时间倒序，走 type + quadrant + completed 索引）
+     * @param quadrant 象限序列化名，如 urgent-important
+     */
+    @Query("SELECT * FROM items WHERE type = 'todo' AND quadrant = :quadrant AND completed = :completed AND deleted_time IS NULL ORDER BY updated_time DESC")
+    suspend fun getTodosInQuadrant(quadrant: String, completed: Boolean): List<ItemEntity>
+    
+    /**
+     * 获取已完成的待办（按更新时间倒序）
+     */
+    @Query("SELECT * FROM items WHERE type = 'todo' AND completed = 1 AND deleted_time IS NULL ORDER BY updated_time DESC")
+    suspend fun getCompletedTodos(): List<ItemEntity>
+    
+    /**
+     * 按象限统计待办数量
+     */
+    @Query("SELECT quadrant, COUNT(*) AS count FROM items WHERE type = 'todo' AND completed = :completed AND deleted_time IS NULL GROUP BY quadrant")
+    suspend fun getQuadrantCounts(completed: Boolean): List<QuadrantCount>
+    
+    /**
+     * 根据 payload 刷新派生列
+     * payload 不是合法 JSON（如解密失败的密文）时派生列置空
+     */
+    @Query("UPDATE items SET conversation_id = CASE WHEN type = 'ai_message' AND json_valid(payload) THEN json_extract(payload, '$.conversation_id') END, created_at = CASE WHEN type = 'ai_message' AND json_valid(payload) THEN json_extract(payload, '$.created_at') END, due_date = CASE WHEN type = 'todo' AND json_valid(payload) THEN json_extract(payload, '$.due_date') END, reminder_time = CASE WHEN type = 'todo' AND json_valid(payload) AND json_extract(payload, '$.reminder_enabled') THEN json_extract(payload, '$.reminder_time') END, completed = CASE WHEN type = 'todo' AND json_valid(payload) THEN coalesce(json_extract(payload, '$.completed'), 0) END, quadrant = CASE WHEN type = 'todo' AND json_valid(payload) THEN json_extract(payload, '$.quadrant') END WHERE id IN (:ids)")
+    suspend fun refreshDerivedColumns(ids: List<String>)
+    
+    /**
+     * 设置 payload 中的单个字段（SQLite JSON1 json_set）
+     * @param path JSON 路径，如 $.is_pinned
+     * @param valueJson 字段值的 JSON 文本
+     * @return 受影响的行数
+     */
+    @Query("UPDATE items SET payload = json_set(payload, :path, json(:valueJson)) WHERE id = :id AND deleted_time IS NULL")
+    suspend fun setPayloadField(id: String, path: String, valueJson: String): Int
+    
+    /**
+     * 将 payload 中的布尔字段取反（缺失或 false 时置为 true）
+     * @return 受影响的行数
+     */
+    @Query("UPDATE items SET payload = json_set(payload, :path, json(CASE WHEN json_extract(payload, :path) THEN 'false' ELSE 'true' END)) WHERE id = :id AND deleted_time IS NULL")
+    suspend fun togglePayloadField(id: String, path: String): Int
+    
+    /**
+     * 字段补丁完成后更新哈希并标记为待同步
+     */
+    @Query("UPDATE items SET content_hash = :contentHash, updated_time = :time, sync_status = 'modified', local_rev = local_rev + 1 WHERE id = :id")
+    suspend fun markPatched(id: String, contentHash: String, time: Long)
+    
     /**
      * 标记为已同步
      */
     @Query("UPDATE items SET sync_status = 'clean', remote_rev = :remoteRev WHERE id = :id")
     suspend fun markSynced(id: String, remoteRev: String)
     
+    /**
+     * 更新远端版本号（内容未变，不改变同步状态）
+     */
+    @Query("UPDATE items SET remote_rev = :remoteRev WHERE id = :id")
+    suspend fun updateRemoteRev(id: String, remoteRev: String)
+    
+    /**
+     * 标记为已同步，仅当上传期间没有新的本地修改（local_rev 未变）
+     * @return 更新的行数，0 表示项目已再次修改，仍需推送
+     */
+    @Query("UPDATE items SET sync_status = 'clean', remote_rev = :remoteRev WHERE id = :id AND local_rev = :localRev")
+    suspend fun markSyncedAtRevision(id: String, remoteRev: String, localRev: Int): Int
+    
     /**
      * 更新同步状态
      */
@@ -122,9 +272,29 @@ interface ItemDao {
     @Query("DELETE FROM items WHERE deleted_time IS NOT NULL AND deleted_time < :threshold")
     suspend fun cleanupDeleted(threshold: Long)
     
+    /**
+     * 获取可清除的墓碑 ID：删除早于 threshold 且删除已同步（sync_status = 'clean'）
+     * 未同步的删除仍需推送到远端，不在此列
+     */
+    @Query("SELECT id FROM items WHERE deleted_time IS NOT NULL AND deleted_time < :threshold AND sync_status = 'clean' LIMIT :limit")
+    suspend fun getPurgeableTombstoneIds(threshold: Long, limit: Int): List<String>
+    
+    /**
+     * 按 ID 批量物理删除墓碑
+     * @return 实际删除的行数
+     */
+    @Query("DELETE FROM items WHERE id IN (:ids) AND deleted_time IS NOT NULL")
+    suspend fun hardDeleteTombstones(ids: List<String>): Int
+    
     /**
      * 获取项目数量
      */
     @Query("SELECT COUNT(*) FROM items WHERE type = :type AND deleted_time IS NULL")
     suspend fun countByType(type: String): Int
+    
+    /**
+     * 已与远端同步过的项目数量（为 0 表示本机从未拉取或推送过）
+     */
+    @Query("SELECT COUNT(*) FROM items WHERE remote_rev IS NOT NULL")
+    suspend fun countSynced(): Int
 }
@@ -0,0 +1,77 @@
+package com.mucheng.notes.data.local.dao
+
+import androidx.room.Dao
+import androidx.room.Query
+import androidx.room.Transaction
+import com.mucheng.notes.data.local.entity.ItemEntity
+import com.mucheng.notes.data.local.entity.TagCount
+
+/**
+ * Room DAO for item_tags table
+ * 标签索引的维护与查询
+ */
+@Dao
+interface ItemTagDao {
+    
+    /**
+     * 获取带有指定标签的项目
+     */
+    @Query("SELECT items.* FROM item_tags INNER JOIN items ON items.id = item_tags.item_id WHERE item_tags.tag = :tag AND items.type = :type AND items.deleted_time IS NULL ORDER BY items.updated_time DESC")
+    suspend fun getItemsWithTag(type: String, tag: String): List<ItemEntity>
+    
+    /**
+     * 获取同时带有所有指定标签的项目
+     * @param tagCount 去重后的标签数量
+     */
+    @Query("SELECT * FROM items WHERE id IN (SELECT item_id FROM item_tags WHERE tag IN (:tags) GROUP BY item_id HAVING COUNT(*) = :tagCount) AND type = :type AND deleted_time IS NULL ORDER BY updated_time DESC")
+    suspend fun getItemsWithAllTags(type: String, tags: List<String>, tagCount: Int): List<ItemEntity>
+    
+    /**
+     * 标签云：每个标签在指定类型中的使用次数
+     */
+    @Query("SELECT item_tags.tag AS tag, COUNT(*) AS count FROM item_tags INNER JOIN items ON items.id = item_tags.item_id WHERE items.type = :type AND items.deleted_time IS NULL GROUP BY item_tags.tag ORDER BY count DESC, tag ASC")
+    suspend fun getTagCounts(type: String): List<TagCount>
+    
+    /**
+     * 删除指定项目的标签索引
+     */
+    @Query("DELETE FROM item_tags WHERE item_id IN (:ids)")
+    suspend fun deleteForItems(ids: List<String>)
+    
+    /**
+     * 从 payload 的 tags 数组生成指定项目的标签索引
+     * 已删除的项目和非法 JSON 不生成索引
+     */
+    @Query("INSERT OR IGNORE INTO item_tags (item_id, tag) SELECT items.id, je.value FROM items, json_each(CASE WHEN json_valid(items.payload) THEN items.payload ELSE '{}' END, '$.tags') AS je WHERE items.id IN (:ids) AND items.deleted_time IS NULL AND je.type = 'text'")
+    suspend fun insertForItems(ids: List<String>)
+    
+    /**
+     * 重建指定项目的标签索引
+     */
+    @Transaction
+    suspend fun refreshForItems(ids: List<String>) {
+        deleteForItems(ids)
+        insertForItems(ids)
+    }
+    
+    /**
+     * 清空标签索引
+     */
+    @Query("DELETE FROM item_tags")
+    suspend fun deleteAll()
+    
+    /**
+     * 从所有未删除项目生成标签索引
+     */
+    @Query("INSERT OR IGNORE INTO item_tags (item_id, tag) SELECT items.id, je.value FROM items, json_each(CASE WHEN json_valid(items.payload) THEN items.payload ELSE '{}' END, '$.tags') AS je WHERE items.deleted_time IS NULL AND je.type = 'text'")
+    suspend fun insertForAllItems()
+    
+    /**
+     * 全量重建标签索引
+     */
+    @Transaction
+    suspend fun rebuildAll() {
+        deleteAll()
+        insertForAllItems()
+    }
+}
@@ -0,0 +1,62 @@
+package com.mucheng.notes.data.local.dao
+
+import androidx.room.Dao
+import androidx.room.Query
+import com.mucheng.notes.data.local.entity.OutboxEntity
+
+/**
+ * Room DAO for outbox table
+ * 待推送操作的入队、按优先级取出与重试记录
+ */
+@Dao
+interface OutboxDao {
+    
+    /**
+     * 为有待推送状态的项目入队（同一项目覆盖旧记录，重置重试状态）
+     * 已同步（clean）的行不会入队，拉取写入不会产生推送
+     */
+    @Query("INSERT OR REPLACE INTO outbox (item_id, kind, op, item_type, priority, revision, enqueued_at, attempts, next_attempt_at, last_error) SELECT id, 'item', CASE WHEN sync_status = 'deleted' THEN 'delete' ELSE 'upsert' END, type, CASE WHEN sync_status = 'deleted' THEN 0 ELSE 1 END, local_rev, :now, 0, :now, NULL FROM items WHERE id IN (:ids) AND sync_status IN ('modified', 'deleted')")
+    suspend fun enqueueItems(ids: List<String>, now: Long)
+    
+    /**
+     * 为本地修改的资源入队文件上传
+     */
+    @Query("INSERT OR REPLACE INTO outbox (item_id, kind, op, item_type, priority, revision, enqueued_at, attempts, next_attempt_at, last_error) SELECT id, 'resource', 'upload', type, 2, local_rev, :now, 0, :now, NULL FROM items WHERE id IN (:ids) AND type = 'resource' AND sync_status = 'modified' AND deleted_time IS NULL")
+    suspend fun enqueueResources(ids: List<String>, now: Long)
+    
+    /**
+     * 获取已到重试时间的操作，按优先级、入队顺序排列
+     */
+    @Query("SELECT * FROM outbox WHERE next_attempt_at <= :now AND item_type IN (:types) ORDER BY priority ASC, enqueued_at ASC LIMIT :limit")
+    suspend fun getDue(now: Long, types: List<String>, limit: Int): List<OutboxEntity>
+    
+    /**
+     * 获取指定项目的某类操作（不考虑重试时间，用于编辑后的快速推送）
+     */
+    @Query("SELECT * FROM outbox WHERE item_id IN (:ids) AND kind = :kind ORDER BY priority ASC, enqueued_at ASC")
+    suspend fun getForItems(ids: List<String>, kind: String): List<OutboxEntity>
+    
+    /**
+     * 操作完成后出队；推送期间项目又被修改（revision 更大）时保留，下次继续推送
+     */
+    @Query("DELETE FROM outbox WHERE item_id = :itemId AND kind = :kind AND revision <= :revision")
+    suspend fun complete(itemId: String, kind: String, revision: Int)
+    
+    /**
+     * 移除项目的所有操作（项目已物理删除或不再需要推送）
+     */
+    @Query("DELETE FROM outbox WHERE item_id = :itemId")
+    suspend fun removeForItem(itemId: String)
+    
+    /**
+     * 记录一次失败并延后重试
+     */
+    @Query("UPDATE outbox SET attempts = attempts + 1, next_attempt_at = :nextAttemptAt, last_error = :error WHERE item_id = :itemId AND kind = :kind")
+    suspend fun markFailed(itemId: String, kind: String, nextAttemptAt: Long, error: String?)
+    
+    /**
+     * 待推送操作数量
+     */
+    @Query("SELECT COUNT(*) FROM outbox")
+    suspend fun count(): Int
+}
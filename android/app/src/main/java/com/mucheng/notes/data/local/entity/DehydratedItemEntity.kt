@@ -0,0 +1,31 @@
+package com.mucheng.notes.data.local.entity
+
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.Index
+import androidx.room.PrimaryKey
+
+/**
+ * 正文未下载的项目（按需下载模式）
+ * 
+ * 此表不参与同步。按需下载模式下拉取只根据远端清单写入不含正文的 items 行，
+ * 并在这里登记；打开项目、推送前或后台下载补全正文后删除对应行。
+ */
+@Entity(
+    tableName = "dehydrated_items",
+    indices = [Index(value = ["type", "queued_at"])]
+)
+data class DehydratedItemEntity(
+    @PrimaryKey
+    @ColumnInfo(name = "item_id")
+    val itemId: String,
+    
+    @ColumnInfo(name = "type")
+    val type: String,
+    
+    @ColumnInfo(name = "remote_rev")
+    val remoteRev: String?,    // 清单对应的远端文件版本
+    
+    @ColumnInfo(name = "queued_at")
+    val queuedAt: Long
+)
@@ -0,0 +1,29 @@
+package com.mucheng.notes.data.local.entity
+
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+
+/**
+ * 项目大字段实体
+ * 
+ * 此表不参与同步。图表缩略图等大字段从 payload 中移出单独存放，
+ * 列表查询、变更通知和哈希计算都不再携带这些数据；
+ * payload 中以 _blob_<字段名> 标记，上传时再内联回原字段，保持与桌面端格式一致。
+ */
+@Entity(
+    tableName = "item_blobs",
+    primaryKeys = ["item_id", "field"]
+)
+data class ItemBlobEntity(
+    @ColumnInfo(name = "item_id")
+    val itemId: String,
+    
+    @ColumnInfo(name = "field")
+    val field: String,         // payload 中的原字段名，如 thumbnail
+    
+    @ColumnInfo(name = "content_hash")
+    val contentHash: String,   // 移出时项目的内容哈希，可用作界面缓存键
+    
+    @ColumnInfo(name = "data")
+    val data: String
+)
@@ -2,18 +2,31 @@ package com.mucheng.notes.data.local.entity
 
 import androidx.room.ColumnInfo
 import androidx.room.Entity
+import androidx.room.Index
 import androidx.room.PrimaryKey
 import kotlinx.serialization.SerialName
 import kotlinx.serialization.Serializable
+import kotlinx.serialization.Transient
 
 /**
  * 统一数据实体 - 与桌面端 ItemBase 完全一致
  * 所有可同步数据都存储在这个表中
  * 
  * 注意：使用 @SerialName 注解映射桌面端的 snake_case 字段名
+ * 
+ * 派生列（@Transient）只存在于本地，由 payload 生成用于建立索引，
+ * 不参与同步；写入后由 ItemChangeTracker 在同一事务内用 json_extract 刷新
  */
 @Serializable
-@Entity(tableName = "items")
+@Entity(
+    tableName = "items",
+    indices = [
+        Index(value = ["conversation_id", "created_at"]),
+        Index(value = ["reminder_time"]),
+        Index(value = ["due_date"]),
+        Index(value = ["type", "quadrant", "completed"])
+    ]
+)
 data class ItemEntity(
     @PrimaryKey
     val id: String,
@@ -58,5 +71,35 @@ data class ItemEntity(
     
     @SerialName("schema_version")
     @ColumnInfo(name = "schema_version")
-    val schemaVersion: Int = 1
+    val schemaVersion: Int = 1,
+    
+    /** 派生列：AI 消息所属对话 ID */
+    @Transient
+    @ColumnInfo(name = "conversation_id")
+    val conversationId: String? = null,
+    
+    /** 派生列：AI 消息创建时间 */
+    @Transient
+    @ColumnInfo(name = "created_at")
+    val createdAt: Long? = null,
+    
+    /** 派生列：待办到期时间 */
+    @Transient
+    @ColumnInfo(name = "due_date")
+    val dueDate: Long? = null,
+    
+    /** 派生列：待办提醒时间（仅在 reminder_enabled 时有值） */
+    @Transient
+    @ColumnInfo(name = "reminder_time")
+    val reminderTime: Long? = null,
+    
+    /** 派生列：待办是否完成 */
+    @Transient
+    @ColumnInfo(name = "completed")
+    val completed: Boolean? = null,
+    
+    /** 派生列：待办象限（序列化名，如 urgent-important） */
+    @Transient
+    @ColumnInfo(name = "quadrant")
+    val quadrant: String? = null
 )
@@ -0,0 +1,21 @@
+package com.mucheng.notes.data.local.entity
+
+import androidx.room.ColumnInfo
+
+/**
+ * 项目引用（只含 ID 与类型）
+ * 批量操作时用于记录变更，避免读取整行 payload
+ */
+data class ItemRef(
+    @ColumnInfo(name = "id") val id: String,
+    @ColumnInfo(name = "type") val type: String
+)
+
+/**
+ * 项目 ID 及其 rowid
+ * 用于按 rowid 顺序分批遍历 items 表，可从上次位置继续
+ */
+data class ItemRowId(
+    @ColumnInfo(name = "row_id") val rowId: Long,
+    @ColumnInfo(name = "id") val id: String
+)
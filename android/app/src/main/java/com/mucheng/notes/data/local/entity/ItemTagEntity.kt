@@ -0,0 +1,34 @@
+package com.mucheng.notes.data.local.entity
+
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.Index
+
+/**
+ * 项目标签索引实体
+ * 
+ * 此表不参与同步，由 payload 中的 tags 数组生成，
+ * 在每次写入项目的同一事务内维护，用于按标签筛选和统计。
+ */
+@Entity(
+    tableName = "item_tags",
+    primaryKeys = ["item_id", "tag"],
+    indices = [
+        Index(value = ["tag", "item_id"])
+    ]
+)
+data class ItemTagEntity(
+    @ColumnInfo(name = "item_id")
+    val itemId: String,
+    
+    @ColumnInfo(name = "tag")
+    val tag: String
+)
+
+/**
+ * 标签及其使用次数
+ */
+data class TagCount(
+    @ColumnInfo(name = "tag") val tag: String,
+    @ColumnInfo(name = "count") val count: Int
+)
@@ -0,0 +1,75 @@
+package com.mucheng.notes.data.local.entity
+
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.Index
+
+/**
+ * 待推送操作实体（发件箱）
+ * 
+ * 此表不参与同步。每个项目每类操作只保留一行：同一项目离线期间的多次编辑、
+ * 编辑后删除等都合并为最后一次的状态，推送时读取项目当前内容。
+ * 由 ItemChangeTracker 在写入事务中根据 sync_status 生成，推送成功后删除，
+ * 失败时记录次数并按退避时间延后，重试只扫描本表。
+ */
+@Entity(
+    tableName = "outbox",
+    primaryKeys = ["item_id", "kind"],
+    indices = [Index(value = ["next_attempt_at"])]
+)
+data class OutboxEntity(
+    @ColumnInfo(name = "item_id")
+    val itemId: String,
+    
+    @ColumnInfo(name = "kind")
+    val kind: String,          // item：项目记录；resource：资源文件
+    
+    @ColumnInfo(name = "op")
+    val op: String,            // upsert / delete / upload
+    
+    @ColumnInfo(name = "item_type")
+    val itemType: String,
+    
+    @ColumnInfo(name = "priority")
+    val priority: Int,         // 越小越先推送
+    
+    @ColumnInfo(name = "revision")
+    val revision: Int,         // 入队时项目的 local_rev
+    
+    @ColumnInfo(name = "enqueued_at")
+    val enqueuedAt: Long,
+    
+    @ColumnInfo(name = "attempts")
+    val attempts: Int = 0,
+    
+    @ColumnInfo(name = "next_attempt_at")
+    val nextAttemptAt: Long,
+    
+    @ColumnInfo(name = "last_error")
+    val lastError: String? = null
+) {
+    companion object {
+        const val KIND_ITEM = "item"
+        const val KIND_RESOURCE = "resource"
+        
+        const val OP_UPSERT = "upsert"
+        const val OP_DELETE = "delete"
+        const val OP_UPLOAD = "upload"
+        
+        /** 删除最先推送（远端不再保留已删除内容），资源文件体积大放在最后 */
+        const val PRIORITY_DELETE = 0
+        const val PRIORITY_UPSERT = 1
+        const val PRIORITY_RESOURCE = 2
+        
+        private const val BASE_BACKOFF_MS = 30_000L
+        private const val MAX_BACKOFF_MS = 6L * 60 * 60 * 1000
+        
+        /**
+         * 第 attempts 次失败后的重试间隔：30 秒起指数增长，最长 6 小时
+         */
+        fun backoffMs(attempts: Int): Long {
+            val shift = (attempts - 1).coerceIn(0, 20)
+            return (BASE_BACKOFF_MS shl shift).coerceAtMost(MAX_BACKOFF_MS)
+        }
+    }
+}
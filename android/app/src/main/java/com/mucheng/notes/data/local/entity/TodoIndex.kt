@@ -0,0 +1,20 @@
+package com.mucheng.notes.data.local.entity
+
+import androidx.room.ColumnInfo
+
+/**
+ * 待办提醒（由索引列直接查询，无需解码 payload）
+ */
+data class TodoReminder(
+    @ColumnInfo(name = "id") val id: String,
+    @ColumnInfo(name = "title") val title: String?,
+    @ColumnInfo(name = "reminder_time") val reminderTime: Long
+)
+
+/**
+ * 象限及其待办数量
+ */
+data class QuadrantCount(
+    @ColumnInfo(name = "quadrant") val quadrant: String?,
+    @ColumnInfo(name = "count") val count: Int
+)
@@ -1,5 +1,6 @@
 package com.mucheng.notes.data.remote
 
+import com.mucheng.notes.di.AiHttpClient
 import com.mucheng.notes.domain.model.payload.AIChannel
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.flow.Flow
@@ -14,7 +15,6 @@ import okhttp3.OkHttpClient
 import okhttp3.Request
 import okhttp3.RequestBody.Companion.toRequestBody
 import java.io.IOException
-import java.util.concurrent.TimeUnit
 import javax.inject.Inject
 import javax.inject.Singleton
 
@@ -75,19 +75,15 @@ data class Usage(
  * 支持 OpenAI、Anthropic 和自定义 API
  */
 @Singleton
-class AIApiClient @Inject constructor() {
+class AIApiClient @Inject constructor(
+    @AiHttpClient private val httpClient: OkHttpClient
+) {
     
     private val json = Json { 
         ignoreUnknownKeys = true
         encodeDefaults = true
     }
     
-    private val httpClient = OkHttpClient.Builder()
-        .connectTimeout(30, TimeUnit.SECONDS)
-        .readTimeout(60, TimeUnit.SECONDS)
-        .writeTimeout(30, TimeUnit.SECONDS)
-        .build()
-    
     /**
      * 发送聊天请求（流式响应）
      */
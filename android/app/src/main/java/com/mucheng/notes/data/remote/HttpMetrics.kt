@@ -0,0 +1,107 @@
+package com.mucheng.notes.data.remote
+
+import okhttp3.Call
+import okhttp3.Connection
+import okhttp3.EventListener
+import okhttp3.Handshake
+import okhttp3.Protocol
+import java.io.IOException
+import java.net.InetSocketAddress
+import java.net.Proxy
+import java.util.concurrent.atomic.AtomicLong
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * HTTP 连接统计（累计值）
+ */
+data class HttpStats(
+    val calls: Long = 0,
+    val failedCalls: Long = 0,
+    val connectionsAcquired: Long = 0,
+    val connectionsOpened: Long = 0,
+    val tlsHandshakes: Long = 0,
+    val http2Connections: Long = 0
+) {
+    /** 复用已有连接的请求数 */
+    val connectionsReused: Long get() = (connectionsAcquired - connectionsOpened).coerceAtLeast(0)
+    
+    /**
+     * 两次统计之间的增量
+     */
+    operator fun minus(other: HttpStats): HttpStats {
+        return HttpStats(
+            calls = calls - other.calls,
+            failedCalls = failedCalls - other.failedCalls,
+            connectionsAcquired = connectionsAcquired - other.connectionsAcquired,
+            connectionsOpened = connectionsOpened - other.connectionsOpened,
+            tlsHandshakes = tlsHandshakes - other.tlsHandshakes,
+            http2Connections = http2Connections - other.http2Connections
+        )
+    }
+    
+    override fun toString(): String {
+        return "$calls calls ($failedCalls failed), $connectionsOpened new connections " +
+            "($http2Connections HTTP/2, $tlsHandshakes TLS handshakes), $connectionsReused reused"
+    }
+}
+
+/**
+ * 共享 HTTP 栈的连接复用统计
+ *
+ * 作为基础 OkHttpClient 的 EventListener，所有派生客户端（同步、AI、证书固定）共用一份计数。
+ * 新建连接远少于请求数说明连接池在起作用；每次同步都有 TLS 握手说明连接没能保持。
+ */
+@Singleton
+class HttpMetrics @Inject constructor() : EventListener.Factory {
+    
+    private val calls = AtomicLong()
+    private val failedCalls = AtomicLong()
+    private val connectionsAcquired = AtomicLong()
+    private val connectionsOpened = AtomicLong()
+    private val tlsHandshakes = AtomicLong()
+    private val http2Connections = AtomicLong()
+    
+    /** 只更新计数，无状态，所有请求共用一个实例 */
+    private val listener = object : EventListener() {
+        
+        override fun callStart(call: Call) {
+            calls.incrementAndGet()
+        }
+        
+        override fun callFailed(call: Call, ioe: IOException) {
+            failedCalls.incrementAndGet()
+        }
+        
+        override fun connectionAcquired(call: Call, connection: Connection) {
+            connectionsAcquired.incrementAndGet()
+        }
+        
+        override fun secureConnectEnd(call: Call, handshake: Handshake?) {
+            tlsHandshakes.incrementAndGet()
+        }
+        
+        override fun connectEnd(call: Call, inetSocketAddress: InetSocketAddress, proxy: Proxy, protocol: Protocol?) {
+            connectionsOpened.incrementAndGet()
+            if (protocol == Protocol.HTTP_2 || protocol == Protocol.H2_PRIOR_KNOWLEDGE) {
+                http2Connections.incrementAndGet()
+            }
+        }
+    }
+    
+    override fun create(call: Call): EventListener = listener
+    
+    /**
+     * 当前累计值，两次调用相减得到期间的增量
+     */
+    fun snapshot(): HttpStats {
+        return HttpStats(
+            calls = calls.get(),
+            failedCalls = failedCalls.get(),
+            connectionsAcquired = connectionsAcquired.get(),
+            connectionsOpened = connectionsOpened.get(),
+            tlsHandshakes = tlsHandshakes.get(),
+            http2Connections = http2Connections.get()
+        )
+    }
+}
@@ -0,0 +1,103 @@
+package com.mucheng.notes.data.remote
+
+import com.mucheng.notes.data.local.entity.ItemEntity
+import kotlinx.serialization.json.Json
+import java.io.ByteArrayOutputStream
+import java.nio.ByteBuffer
+import java.util.zip.Deflater
+import java.util.zip.DeflaterOutputStream
+import java.util.zip.InflaterInputStream
+
+/**
+ * 项目文件的压缩二进制编码
+ *
+ * JSON 格式下加密的 payload 是 JSON 中再嵌套 Base64 密文，体积约为明文的 1.4 倍且无法压缩。
+ * 压缩编码先 deflate 明文 payload 再加密，密文直接以二进制存放：
+ *
+ * ```
+ * "MCZ" + 格式版本 (4 bytes) | flags (1 byte) | 头部长度 (4 bytes, big-endian) | 头部 | 正文
+ * ```
+ *
+ * 头部为去掉 payload 的项目 JSON；正文为 deflate 后的 payload，flags 的 [FLAG_ENCRYPTED]
+ * 置位时再整体加密。文件名仍为 `<id>.json`，只在工作区启用 item-deflate 能力时写入。
+ */
+object ItemCodec {
+    
+    private val MAGIC = byteArrayOf('M'.code.toByte(), 'C'.code.toByte(), 'Z'.code.toByte(), 1)
+    
+    private const val FLAG_ENCRYPTED = 0x01
+    
+    private const val PREFIX_SIZE = 9
+    
+    private val json = Json {
+        ignoreUnknownKeys = true
+        encodeDefaults = true
+    }
+    
+    /**
+     * 是否为压缩编码（否则按 JSON 解析）
+     */
+    fun isEncoded(data: ByteArray): Boolean {
+        if (data.size < PREFIX_SIZE) return false
+        return MAGIC.indices.all { data[it] == MAGIC[it] }
+    }
+    
+    /**
+     * 编码项目，[item] 的 payload 为明文；提供 [encrypt] 时正文加密
+     */
+    fun encode(item: ItemEntity, encrypt: ((ByteArray) -> ByteArray)? = null): ByteArray {
+        val header = json.encodeToString(
+            ItemEntity.serializer(),
+            item.copy(payload = "", encryptionApplied = if (encrypt != null) 1 else 0)
+        ).toByteArray()
+        val deflated = deflate(item.payload.toByteArray())
+        val body = encrypt?.invoke(deflated) ?: deflated
+        
+        return ByteBuffer.allocate(PREFIX_SIZE + header.size + body.size)
+            .put(MAGIC)
+            .put((if (encrypt != null) FLAG_ENCRYPTED else 0).toByte())
+            .putInt(header.size)
+            .put(header)
+            .put(body)
+            .array()
+    }
+    
+    /**
+     * 解码项目，返回的 payload 为明文（encryption_applied 为 0）
+     * 正文加密时需提供 [decrypt]，解密失败时抛出异常
+     */
+    fun decode(data: ByteArray, decrypt: ((ByteArray) -> ByteArray)? = null): ItemEntity {
+        require(isEncoded(data)) { "Not an encoded item" }
+        val buffer = ByteBuffer.wrap(data, MAGIC.size, data.size - MAGIC.size)
+        val encrypted = (buffer.get().toInt() and FLAG_ENCRYPTED) != 0
+        val headerSize = buffer.int
+        require(headerSize in 0..buffer.remaining()) { "Invalid header size" }
+        
+        val header = ByteArray(headerSize).also { buffer.get(it) }
+        val body = ByteArray(buffer.remaining()).also { buffer.get(it) }
+        val deflated = if (encrypted) {
+            requireNotNull(decrypt) { "Encrypted item needs a key" }.invoke(body)
+        } else {
+            body
+        }
+        
+        val item = json.decodeFromString(ItemEntity.serializer(), header.toString(Charsets.UTF_8))
+        return item.copy(payload = inflate(deflated).toString(Charsets.UTF_8), encryptionApplied = 0)
+    }
+    
+    private fun deflate(data: ByteArray): ByteArray {
+        val out = ByteArrayOutputStream(data.size / 2 + 16)
+        val deflater = Deflater(Deflater.BEST_COMPRESSION)
+        try {
+            DeflaterOutputStream(out, deflater).use { it.write(data) }
+        } finally {
+            // 自行创建的 Deflater 不会随流关闭释放本地内存
+            deflater.end()
+        }
+        return out.toByteArray()
+    }
+    
+    private fun inflate(data: ByteArray): ByteArray {
+        return InflaterInputStream(data.inputStream()).use { it.readBytes() }
+    }
+}
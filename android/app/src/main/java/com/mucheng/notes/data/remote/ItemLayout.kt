@@ -0,0 +1,31 @@
+package com.mucheng.notes.data.remote
+
+/**
+ * 远端项目文件的目录结构（workspace.json 的 item_layout）
+ *
+ * 平铺结构下所有项目文件都在 items/ 下，数万个文件时一次 Depth-1 PROPFIND 会返回数 MB 的 XML，
+ * 部分服务器（Nextcloud、坚果云）响应很慢甚至截断。分目录结构按 ID 前两个字符存放为
+ * items/ab/<id>.json，UUID 下最多 256 个子目录，可以并行列出，集合 ETag 未变化的子目录直接跳过。
+ */
+object ItemLayout {
+    
+    const val FLAT = "flat"
+    
+    const val SHARDED = "sharded"
+    
+    private val SHARD_NAME = Regex("[0-9a-z_]{2}")
+    
+    /**
+     * 项目所在的子目录名，ID 中的其他字符替换为下划线
+     */
+    fun shardOf(id: String): String {
+        return id.take(2).lowercase().padEnd(2, '_')
+            .map { if (it in '0'..'9' || it in 'a'..'z') it else '_' }
+            .joinToString("")
+    }
+    
+    /**
+     * 目录名是否为分目录（items/ 下的其他目录不参与同步）
+     */
+    fun isShardName(name: String): Boolean = SHARD_NAME.matches(name)
+}
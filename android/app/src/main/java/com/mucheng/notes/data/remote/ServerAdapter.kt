@@ -0,0 +1,465 @@
+package com.mucheng.notes.data.remote
+
+import com.mucheng.notes.data.local.entity.ItemEntity
+import com.mucheng.notes.data.sync.WorkspaceCapabilities
+import com.mucheng.notes.di.SyncHttpClient
+import com.mucheng.notes.domain.model.SyncConfig
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
+import kotlinx.coroutines.withContext
+import kotlinx.serialization.SerialName
+import kotlinx.serialization.Serializable
+import kotlinx.serialization.encodeToString
+import kotlinx.serialization.json.Json
+import okhttp3.HttpUrl
+import okhttp3.HttpUrl.Companion.toHttpUrl
+import okhttp3.MediaType.Companion.toMediaType
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.RequestBody
+import okhttp3.RequestBody.Companion.toRequestBody
+import okhttp3.Response
+import java.io.IOException
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * 同步服务器适配器（SyncConfig.type 为 "server"）
+ *
+ * 与桌面端 ServerAdapter 使用同一套 REST 接口：/api/changes 变更日志、/api/items/{id} 项目、
+ * /api/sync/lock 同步锁，以 X-API-Key 认证。变更日志按游标分页，不需要像 WebDAV 那样扫描目录；
+ * 使用共享的同步 HTTP 客户端（见 NetworkModule），HTTP/2 下多个并发下载在一条长连接上多路复用。
+ *
+ * 与同步引擎的约定：
+ * - 项目版本号为变更日志中的 content_hash，上传后返回上传内容的 content_hash
+ * - [RemoteItemFile.modified] 为 change_id，引擎游标为“从该 change_id 起”，
+ *   与服务端游标（最后处理的 change_id）在 [toServerCursor] / [fromServerCursor] 中换算，
+ *   写回 /api/sync/cursor 的仍是服务端格式，与桌面端共用
+ * - 服务端没有快照、正文清单和资源列表接口，对应方法返回空结果，引擎退回逐项拉取
+ */
+@Singleton
+class ServerAdapter @Inject constructor(
+    @SyncHttpClient private val httpClient: OkHttpClient
+) : WebDAVAdapter {
+    
+    companion object {
+        /** 每页变更数 */
+        private const val CHANGES_PAGE_SIZE = 500
+        
+        /** listChanges 中并发读取项目的请求数 */
+        private const val FETCH_CONCURRENCY = 8
+        
+        private val JSON_MEDIA_TYPE = "application/json".toMediaType()
+        private val OCTET_STREAM_MEDIA_TYPE = "application/octet-stream".toMediaType()
+    }
+    
+    private val json = Json {
+        ignoreUnknownKeys = true
+        encodeDefaults = true
+        isLenient = true
+    }
+    
+    private var config: SyncConfig? = null
+    
+    /**
+     * 初始化服务器连接
+     */
+    override fun initialize(syncConfig: SyncConfig) {
+        config = syncConfig
+    }
+    
+    private fun getConfig(): SyncConfig {
+        return config ?: throw IllegalStateException("Sync server not initialized")
+    }
+    
+    private fun url(path: String): HttpUrl {
+        return (getConfig().url.trimEnd('/') + path).toHttpUrl()
+    }
+    
+    /**
+     * 执行请求，非 2xx 响应抛出 [ServerResponseException]
+     */
+    private fun <T> execute(method: String, url: HttpUrl, body: RequestBody? = null, handle: (Response) -> T): T {
+        val request = Request.Builder()
+            .url(url)
+            .method(method, body)
+            .apply {
+                getConfig().apiKey?.takeIf { it.isNotBlank() }?.let { header("X-API-Key", it) }
+            }
+            .build()
+        return httpClient.newCall(request).execute().use { response ->
+            if (!response.isSuccessful) {
+                throw ServerResponseException(response.code, "Server request failed: ${response.code} $method ${url.encodedPath}")
+            }
+            handle(response)
+        }
+    }
+    
+    private fun readText(method: String, path: String, body: RequestBody? = null): String {
+        return execute(method, url(path), body) { it.body?.string().orEmpty() }
+    }
+    
+    private inline fun <reified T> jsonBody(value: T): RequestBody {
+        return json.encodeToString(value).toRequestBody(JSON_MEDIA_TYPE)
+    }
+    
+    /**
+     * 404 时返回 null，其他错误照常抛出
+     */
+    private inline fun <T> orNullIfMissing(block: () -> T): T? {
+        return try {
+            block()
+        } catch (e: ServerResponseException) {
+            if (e.statusCode == 404) null else throw e
+        }
+    }
+    
+    override suspend fun testConnection(): Boolean = withContext(Dispatchers.IO) {
+        try {
+            readText("GET", "/api/health")
+            true
+        } catch (e: Exception) {
+            android.util.Log.e("SyncServer", "Connection test failed: ${e.message}")
+            false
+        }
+    }
+    
+    override suspend fun getItem(id: String): ItemEntity? = withContext(Dispatchers.IO) {
+        try {
+            orNullIfMissing { json.decodeFromString<ItemEntity>(readText("GET", "/api/items/$id")) }
+        } catch (e: Exception) {
+            android.util.Log.e("SyncServer", "Failed to get item $id: ${e.message}")
+            null
+        }
+    }
+    
+    override suspend fun putItem(item: ItemEntity): Result<String> {
+        return putItemData(item.id, json.encodeToString(item).toByteArray())
+    }
+    
+    override suspend fun getItemData(id: String): ByteArray? = withContext(Dispatchers.IO) {
+        orNullIfMissing {
+            execute("GET", url("/api/items/$id")) { it.body?.bytes() ?: ByteArray(0) }
+        }
+    }
+    
+    /**
+     * 服务端接口没有条件写入；有 [expected] 时先读取版本比较再写入，
+     * 两次请求之间其他设备的写入仍会被覆盖（后写者胜）
+     */
+    override suspend fun putItemData(id: String, data: ByteArray, expected: ExpectedRevision?): Result<String> = withContext(Dispatchers.IO) {
+        try {
+            // 服务端按 JSON 存储项目，不登记 item-deflate 能力，不会收到压缩编码
+            require(!ItemCodec.isEncoded(data)) { "Sync server does not accept encoded items" }
+            val item = json.decodeFromString<ItemEntity>(data.toString(Charsets.UTF_8))
+            if (expected != null && getItemRevision(id) != expected.revision) {
+                throw RevisionConflictException(id)
+            }
+            val body = readText("PUT", "/api/items/$id", data.toRequestBody(JSON_MEDIA_TYPE))
+            // 以服务端返回的 remoteRev 作为版本号（与桌面端一致），未返回时退回内容哈希
+            val remoteRev = runCatching { json.decodeFromString<PutItemResponse>(body).remoteRev }.getOrNull()
+            Result.success(remoteRev ?: item.contentHash)
+        } catch (e: Exception) {
+            Result.failure(e)
+        }
+    }
+    
+    override suspend fun getItemRevision(id: String): String? = withContext(Dispatchers.IO) {
+        // 接口没有只读元数据的请求，读取项目取 content_hash
+        orNullIfMissing { json.decodeFromString<ItemEntity>(readText("GET", "/api/items/$id")).contentHash }
+    }
+    
+    override suspend fun deleteItem(id: String): Boolean = withContext(Dispatchers.IO) {
+        try {
+            orNullIfMissing { readText("DELETE", "/api/items/$id") }
+            true
+        } catch (e: Exception) {
+            android.util.Log.e("SyncServer", "Failed to delete item $id: ${e.message}")
+            false
+        }
+    }
+    
+    /**
+     * 读取一页变更日志，[cursor] 为服务端游标
+     */
+    private fun fetchChangePage(cursor: String?, limit: Int): ServerChangePage {
+        val pageUrl = url("/api/changes").newBuilder()
+            .apply { if (cursor != null) addQueryParameter("cursor", cursor) }
+            .addQueryParameter("limit", limit.toString())
+            .build()
+        return execute("GET", pageUrl) { json.decodeFromString<ServerChangePage>(it.body?.string().orEmpty()) }
+    }
+    
+    /**
+     * 读取一页变更及其项目内容，游标为服务端游标（与桌面端 listChanges 一致）
+     */
+    override suspend fun listChanges(cursor: String?, limit: Int): ChangeListResult = withContext(Dispatchers.IO) {
+        try {
+            val page = fetchChangePage(cursor, limit)
+            val permits = Semaphore(FETCH_CONCURRENCY)
+            val changes = coroutineScope {
+                page.changes.map { change ->
+                    async {
+                        permits.withPermit {
+                            val item = getItem(change.itemId) ?: return@withPermit null
+                            RemoteChange(
+                                id = change.itemId,
+                                type = change.type,
+                                action = if (change.deletedTime != null) "delete" else "update",
+                                item = item.copy(remoteRev = change.contentHash),
+                                timestamp = change.updatedTime
+                            )
+                        }
+                    }
+                }.awaitAll().filterNotNull()
+            }
+            ChangeListResult(changes, page.nextCursor, page.hasMore)
+        } catch (e: Exception) {
+            android.util.Log.e("SyncServer", "Failed to list changes: ${e.message}")
+            ChangeListResult(emptyList(), null, false)
+        }
+    }
+    
+    /**
+     * 按游标分页读取变更日志直到没有更多，同一项目只保留最后一次变更
+     */
+    override suspend fun listItemFiles(cursor: String?): List<RemoteItemFile> = withContext(Dispatchers.IO) {
+        val from = cursor?.toLongOrNull() ?: 0L
+        val latest = LinkedHashMap<String, ServerChange>()
+        var serverCursor = toServerCursor(cursor)
+        var pages = 0
+        
+        while (true) {
+            val page = fetchChangePage(serverCursor, CHANGES_PAGE_SIZE)
+            pages++
+            for (change in page.changes) {
+                // 服务端游标是否包含边界由实现决定，这里按 change_id 再过滤一次
+                if (change.changeId < from) continue
+                val previous = latest[change.itemId]
+                if (previous == null || change.changeId > previous.changeId) {
+                    latest[change.itemId] = change
+                }
+            }
+            // 游标不前进时停止，避免服务端异常导致死循环
+            if (!page.hasMore || page.nextCursor == null || page.nextCursor == serverCursor) break
+            serverCursor = page.nextCursor
+        }
+        
+        android.util.Log.d("SyncServer", "Found ${latest.size} changed items in $pages pages (cursor: $cursor)")
+        latest.values.map { RemoteItemFile(id = it.itemId, etag = it.contentHash, modified = it.changeId) }
+    }
+    
+    /**
+     * 引擎游标（从该 change_id 起）换算为服务端游标（最后处理的 change_id）
+     */
+    private fun toServerCursor(cursor: String?): String? {
+        return cursor?.toLongOrNull()?.minus(1)?.takeIf { it > 0 }?.toString()
+    }
+    
+    /**
+     * 服务端游标换算为引擎游标，无法识别的游标视为没有游标
+     */
+    private fun fromServerCursor(cursor: String): String? {
+        return cursor.toLongOrNull()?.plus(1)?.toString()
+    }
+    
+    override val supportedCapabilities: List<String> = WorkspaceCapabilities.BASE
+    
+    // 服务端没有目录，项目按 ID 存取
+    
+    override fun setShardedLayout(sharded: Boolean) = Unit
+    
+    override suspend fun migrateItemLayout(sharded: Boolean): Boolean = true
+    
+    // 服务端没有正文清单和快照接口
+    
+    override suspend fun getBodyManifest(): String? = null
+    
+    override suspend fun putBodyManifest(content: String): Boolean = false
+    
+    override suspend fun getSnapshotFile(name: String): ByteArray? = null
+    
+    override suspend fun putSnapshotFile(name: String, data: ByteArray): Boolean = false
+    
+    override suspend fun deleteSnapshotFile(name: String): Boolean = true
+    
+    override suspend fun acquireLock(deviceId: String, timeout: Long): Boolean = withContext(Dispatchers.IO) {
+        try {
+            val response = readText("POST", "/api/sync/lock", jsonBody(LockRequest(deviceId, timeout)))
+            json.decodeFromString<LockResponse>(response).acquired
+        } catch (e: Exception) {
+            android.util.Log.e("SyncServer", "Failed to acquire lock: ${e.message}")
+            false
+        }
+    }
+    
+    override suspend fun releaseLock(deviceId: String): Boolean = withContext(Dispatchers.IO) {
+        try {
+            readText("DELETE", "/api/sync/lock", jsonBody(LockRequest(deviceId)))
+            true
+        } catch (e: Exception) {
+            android.util.Log.e("SyncServer", "Failed to release lock: ${e.message}")
+            false
+        }
+    }
+    
+    override suspend fun getSyncCursor(): SyncCursor? = withContext(Dispatchers.IO) {
+        try {
+            val cursor = orNullIfMissing { json.decodeFromString<SyncCursor>(readText("GET", "/api/sync/cursor")) }
+                ?: return@withContext null
+            fromServerCursor(cursor.cursor)?.let { SyncCursor(it, cursor.timestamp) }
+        } catch (e: Exception) {
+            android.util.Log.e("SyncServer", "Failed to get sync cursor: ${e.message}")
+            null
+        }
+    }
+    
+    override suspend fun setSyncCursor(cursor: SyncCursor): Boolean = withContext(Dispatchers.IO) {
+        try {
+            val serverCursor = toServerCursor(cursor.cursor) ?: "0"
+            readText("PUT", "/api/sync/cursor", jsonBody(SyncCursor(serverCursor, cursor.timestamp)))
+            true
+        } catch (e: Exception) {
+            android.util.Log.e("SyncServer", "Failed to set sync cursor: ${e.message}")
+            false
+        }
+    }
+    
+    // 资源文件操作
+    
+    override suspend fun uploadResource(resourceId: String, data: ByteArray): Result<String> = withContext(Dispatchers.IO) {
+        try {
+            execute("PUT", url("/api/resources/$resourceId"), data.toRequestBody(OCTET_STREAM_MEDIA_TYPE)) { }
+            Result.success(resourceId)
+        } catch (e: Exception) {
+            Result.failure(e)
+        }
+    }
+    
+    override suspend fun downloadResource(resourceId: String): Result<ByteArray> = withContext(Dispatchers.IO) {
+        try {
+            Result.success(execute("GET", url("/api/resources/$resourceId")) { it.body?.bytes() ?: ByteArray(0) })
+        } catch (e: Exception) {
+            Result.failure(e)
+        }
+    }
+    
+    override suspend fun deleteResource(resourceId: String): Boolean = withContext(Dispatchers.IO) {
+        try {
+            orNullIfMissing { readText("DELETE", "/api/resources/$resourceId") }
+            true
+        } catch (e: Exception) {
+            false
+        }
+    }
+    
+    override suspend fun listResources(): List<String> = emptyList()
+    
+    // 密钥标识符与工作区元数据（/api/meta，对应 workspace.json）
+    
+    override suspend fun getKeyIdentifier(): String? = withContext(Dispatchers.IO) {
+        try {
+            getWorkspaceMeta()?.key_identifier
+        } catch (e: Exception) {
+            android.util.Log.e("SyncServer", "Failed to get key identifier: ${e.message}")
+            null
+        }
+    }
+    
+    override suspend fun setKeyIdentifier(keyId: String): Boolean = withContext(Dispatchers.IO) {
+        try {
+            val existingMeta = try {
+                getWorkspaceMeta() ?: WorkspaceMeta()
+            } catch (e: Exception) {
+                WorkspaceMeta()
+            }
+            val now = System.currentTimeMillis()
+            putWorkspaceMeta(existingMeta.copy(key_identifier = keyId, last_sync_time = now, legacy_sync_time = now))
+        } catch (e: Exception) {
+            android.util.Log.e("SyncServer", "Failed to set key identifier: ${e.message}")
+            false
+        }
+    }
+    
+    override suspend fun getWorkspaceMeta(): WorkspaceMeta? = withContext(Dispatchers.IO) {
+        orNullIfMissing { json.decodeFromString<WorkspaceMeta>(readText("GET", "/api/meta")) }
+    }
+    
+    override suspend fun putWorkspaceMeta(meta: WorkspaceMeta): Boolean = withContext(Dispatchers.IO) {
+        try {
+            readText("PUT", "/api/meta", jsonBody(meta))
+            true
+        } catch (e: Exception) {
+            android.util.Log.e("SyncServer", "Failed to write workspace meta: ${e.message}")
+            false
+        }
+    }
+    
+    override suspend fun hasData(): Boolean = withContext(Dispatchers.IO) {
+        try {
+            val count = json.decodeFromString<ItemCountResponse>(readText("GET", "/api/items/count"))
+            count.hasData || count.itemCount > 0
+        } catch (e: Exception) {
+            // 接口不存在时与桌面端一样退回检查元数据
+            try {
+                getWorkspaceMeta()?.last_sync_time != null
+            } catch (e: Exception) {
+                false
+            }
+        }
+    }
+}
+
+/**
+ * 服务端返回非 2xx 状态
+ */
+class ServerResponseException(val statusCode: Int, message: String) : IOException(message)
+
+/**
+ * 变更日志记录 - 与桌面端 RemoteChange 一致
+ */
+@Serializable
+internal data class ServerChange(
+    @SerialName("change_id") val changeId: Long,
+    @SerialName("item_id") val itemId: String,
+    val type: String,
+    @SerialName("updated_time") val updatedTime: Long,
+    @SerialName("deleted_time") val deletedTime: Long? = null,
+    @SerialName("content_hash") val contentHash: String = ""
+)
+
+/**
+ * 一页变更日志
+ */
+@Serializable
+internal data class ServerChangePage(
+    val changes: List<ServerChange> = emptyList(),
+    val nextCursor: String? = null,
+    val hasMore: Boolean = false
+)
+
+@Serializable
+private data class LockRequest(
+    val deviceId: String,
+    val timeout: Long? = null
+)
+
+@Serializable
+private data class LockResponse(
+    val acquired: Boolean = false
+)
+
+@Serializable
+private data class PutItemResponse(
+    val remoteRev: String? = null
+)
+
+@Serializable
+private data class ItemCountResponse(
+    val hasData: Boolean = false,
+    val itemCount: Int = 0
+)
@@ -0,0 +1,97 @@
+package com.mucheng.notes.data.remote
+
+import com.mucheng.notes.data.local.entity.ItemEntity
+import com.mucheng.notes.domain.model.SyncConfig
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * 按 SyncConfig.type 选择同步适配器
+ *
+ * "server" 使用 [ServerAdapter]，其余使用 [WebDAVAdapterImpl]。同步引擎和资源同步只依赖
+ * [WebDAVAdapter] 接口，切换同步类型后由 [initialize] 改变转发目标。
+ */
+@Singleton
+class SyncAdapterRouter @Inject constructor(
+    private val webDAVAdapter: WebDAVAdapterImpl,
+    private val serverAdapter: ServerAdapter
+) : WebDAVAdapter {
+    
+    @Volatile
+    private var current: WebDAVAdapter = webDAVAdapter
+    
+    /**
+     * 初始化对应类型的适配器并切换转发目标
+     */
+    override fun initialize(syncConfig: SyncConfig) {
+        current = if (syncConfig.type == "server") {
+            serverAdapter.initialize(syncConfig)
+            serverAdapter
+        } else {
+            webDAVAdapter.initialize(syncConfig)
+            webDAVAdapter
+        }
+    }
+    
+    override suspend fun testConnection(): Boolean = current.testConnection()
+    
+    override suspend fun getItem(id: String): ItemEntity? = current.getItem(id)
+    
+    override suspend fun putItem(item: ItemEntity): Result<String> = current.putItem(item)
+    
+    override suspend fun getItemData(id: String): ByteArray? = current.getItemData(id)
+    
+    override suspend fun putItemData(id: String, data: ByteArray, expected: ExpectedRevision?): Result<String> =
+        current.putItemData(id, data, expected)
+    
+    override suspend fun getItemRevision(id: String): String? = current.getItemRevision(id)
+    
+    override suspend fun deleteItem(id: String): Boolean = current.deleteItem(id)
+    
+    override suspend fun listChanges(cursor: String?, limit: Int): ChangeListResult = current.listChanges(cursor, limit)
+    
+    override suspend fun listItemFiles(cursor: String?): List<RemoteItemFile> = current.listItemFiles(cursor)
+    
+    override val supportedCapabilities: List<String> get() = current.supportedCapabilities
+    
+    override fun setShardedLayout(sharded: Boolean) = current.setShardedLayout(sharded)
+    
+    override suspend fun migrateItemLayout(sharded: Boolean): Boolean = current.migrateItemLayout(sharded)
+    
+    override suspend fun getBodyManifest(): String? = current.getBodyManifest()
+    
+    override suspend fun putBodyManifest(content: String): Boolean = current.putBodyManifest(content)
+    
+    override suspend fun getSnapshotFile(name: String): ByteArray? = current.getSnapshotFile(name)
+    
+    override suspend fun putSnapshotFile(name: String, data: ByteArray): Boolean = current.putSnapshotFile(name, data)
+    
+    override suspend fun deleteSnapshotFile(name: String): Boolean = current.deleteSnapshotFile(name)
+    
+    override suspend fun acquireLock(deviceId: String, timeout: Long): Boolean = current.acquireLock(deviceId, timeout)
+    
+    override suspend fun releaseLock(deviceId: String): Boolean = current.releaseLock(deviceId)
+    
+    override suspend fun getSyncCursor(): SyncCursor? = current.getSyncCursor()
+    
+    override suspend fun setSyncCursor(cursor: SyncCursor): Boolean = current.setSyncCursor(cursor)
+    
+    override suspend fun uploadResource(resourceId: String, data: ByteArray): Result<String> =
+        current.uploadResource(resourceId, data)
+    
+    override suspend fun downloadResource(resourceId: String): Result<ByteArray> = current.downloadResource(resourceId)
+    
+    override suspend fun deleteResource(resourceId: String): Boolean = current.deleteResource(resourceId)
+    
+    override suspend fun listResources(): List<String> = current.listResources()
+    
+    override suspend fun getKeyIdentifier(): String? = current.getKeyIdentifier()
+    
+    override suspend fun setKeyIdentifier(keyId: String): Boolean = current.setKeyIdentifier(keyId)
+    
+    override suspend fun getWorkspaceMeta(): WorkspaceMeta? = current.getWorkspaceMeta()
+    
+    override suspend fun putWorkspaceMeta(meta: WorkspaceMeta): Boolean = current.putWorkspaceMeta(meta)
+    
+    override suspend fun hasData(): Boolean = current.hasData()
+}
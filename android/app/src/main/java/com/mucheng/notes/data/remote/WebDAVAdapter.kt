@@ -1,6 +1,8 @@
 package com.mucheng.notes.data.remote
 
 import com.mucheng.notes.data.local.entity.ItemEntity
+import com.mucheng.notes.domain.model.SyncConfig
+import java.io.IOException
 
 /**
  * 远程变更记录
@@ -13,6 +15,25 @@ data class RemoteChange(
     val timestamp: Long
 )
 
+/**
+ * 条件写入的前提：远端项目文件应有的版本号，为 null 时要求远端文件不存在
+ */
+data class ExpectedRevision(val revision: String?)
+
+/**
+ * 条件写入时远端版本与预期不一致，说明其他设备已修改
+ */
+class RevisionConflictException(val id: String) : IOException("Remote revision of $id changed")
+
+/**
+ * 远端项目文件（目录列表中的元数据，不含内容）
+ */
+data class RemoteItemFile(
+    val id: String,
+    val etag: String?,
+    val modified: Long
+)
+
 /**
  * 变更列表结果
  */
@@ -31,19 +52,53 @@ data class SyncCursor(
     val timestamp: Long
 )
 
+/**
+ * 工作区元数据 - 与桌面端 workspace.json 格式一致
+ *
+ * [clients] 之后的字段只由移动端读写（桌面端读写时保留原有字段）：
+ * 支持能力协商的客户端在 [clients] 中登记自己支持的能力，见 WorkspaceCapabilities。
+ */
+@kotlinx.serialization.Serializable
+data class WorkspaceMeta(
+    val version: String = "1.0",
+    val capabilities: List<String> = listOf("items", "resources", "changes"),
+    val last_sync_time: Long? = null,
+    val key_identifier: String? = null,
+    val clients: Map<String, WorkspaceClient> = emptyMap(),
+    val legacy_sync_time: Long? = null, // 能力协商时看到的 last_sync_time，之后变化说明有未登记的客户端同步过
+    val legacy_seen_at: Long? = null, // 最近一次发现未登记客户端同步的时间
+    val deflate_cleanup: Boolean = false, // 停用压缩编码后，需把远端的压缩文件改写回 JSON
+    val item_layout: String = ItemLayout.FLAT // 远端项目文件当前的目录结构，迁移完成后才改写
+)
+
+/**
+ * 工作区中登记的客户端
+ */
+@kotlinx.serialization.Serializable
+data class WorkspaceClient(
+    val capabilities: List<String>,
+    val requested: List<String> = emptyList(), // 该客户端设置中要求启用的可选能力
+    val seen_at: Long
+)
+
 /**
  * WebDAV 适配器接口
  * 提供与 WebDAV 服务器的交互
  */
 interface WebDAVAdapter {
     
+    /**
+     * 按同步配置初始化连接，同步配置变化后重新调用
+     */
+    fun initialize(syncConfig: SyncConfig)
+    
     /**
      * 测试连接
      */
     suspend fun testConnection(): Boolean
     
     /**
-     * 获取单个项目
+     * 获取单个项目（仅 JSON 格式的文件，压缩编码的文件需要用 [getItemData] 读取后解码）
      */
     suspend fun getItem(id: String): ItemEntity?
     
@@ -53,6 +108,23 @@ interface WebDAVAdapter {
      */
     suspend fun putItem(item: ItemEntity): Result<String>
     
+    /**
+     * 读取项目文件原始内容（JSON 或 ItemCodec 压缩编码），不存在时返回 null
+     */
+    suspend fun getItemData(id: String): ByteArray?
+    
+    /**
+     * 写入项目文件原始内容
+     * @param expected 不为 null 时只在远端版本与之一致时写入，否则失败为 [RevisionConflictException]
+     * @return 远程版本号 (etag)
+     */
+    suspend fun putItemData(id: String, data: ByteArray, expected: ExpectedRevision? = null): Result<String>
+    
+    /**
+     * 获取远端项目文件的版本号（ETag），文件不存在时返回 null
+     */
+    suspend fun getItemRevision(id: String): String?
+    
     /**
      * 删除项目
      */
@@ -63,6 +135,55 @@ interface WebDAVAdapter {
      */
     suspend fun listChanges(cursor: String?, limit: Int = 100): ChangeListResult
     
+    /**
+     * 列出游标之后修改过的项目文件（一次目录请求，不下载内容）
+     * 游标为 null 时返回全部文件
+     */
+    suspend fun listItemFiles(cursor: String?): List<RemoteItemFile>
+    
+    /**
+     * 适配器支持的工作区能力（见 WorkspaceCapabilities），能力协商时登记
+     */
+    val supportedCapabilities: List<String>
+    
+    /**
+     * 设置项目文件的目录结构（由同步引擎按 workspace.json 的 item_layout 设置），
+     * 之后所有项目文件操作都按该结构定位
+     */
+    fun setShardedLayout(sharded: Boolean)
+    
+    /**
+     * 把远端项目文件迁移到指定目录结构（服务器端 MOVE，不下载内容），中断后可重复执行
+     * 两种结构下都有同一项目时保留修改时间较新的文件。完成后适配器改用新结构
+     * @return 是否全部迁移完成
+     */
+    suspend fun migrateItemLayout(sharded: Boolean): Boolean
+    
+    /**
+     * 读取正文清单文件原文，不存在时返回 null
+     */
+    suspend fun getBodyManifest(): String?
+    
+    /**
+     * 写入正文清单文件
+     */
+    suspend fun putBodyManifest(content: String): Boolean
+    
+    /**
+     * 读取快照目录（snapshots/）下的文件，不存在时返回 null
+     */
+    suspend fun getSnapshotFile(name: String): ByteArray?
+    
+    /**
+     * 写入快照目录下的文件，目录不存在时自动创建
+     */
+    suspend fun putSnapshotFile(name: String, data: ByteArray): Boolean
+    
+    /**
+     * 删除快照目录下的文件
+     */
+    suspend fun deleteSnapshotFile(name: String): Boolean
+    
     /**
      * 获取同步锁
      */
@@ -117,6 +238,16 @@ interface WebDAVAdapter {
      */
     suspend fun setKeyIdentifier(keyId: String): Boolean
     
+    /**
+     * 读取 workspace.json，不存在时返回 null
+     */
+    suspend fun getWorkspaceMeta(): WorkspaceMeta?
+    
+    /**
+     * 写入 workspace.json
+     */
+    suspend fun putWorkspaceMeta(meta: WorkspaceMeta): Boolean
+    
     /**
      * 检查远端是否有数据
      * 用于判断是否为首次同步
@@ -1,22 +1,44 @@
 package com.mucheng.notes.data.remote
 
 import com.mucheng.notes.data.local.entity.ItemEntity
+import com.mucheng.notes.data.sync.WorkspaceCapabilities
+import com.mucheng.notes.di.SyncHttpClient
 import com.mucheng.notes.domain.model.SyncConfig
+import com.thegrizzlylabs.sardineandroid.DavResource
 import com.thegrizzlylabs.sardineandroid.Sardine
 import com.thegrizzlylabs.sardineandroid.impl.OkHttpSardine
+import com.thegrizzlylabs.sardineandroid.impl.SardineException
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
 import kotlinx.coroutines.withContext
 import kotlinx.serialization.encodeToString
 import kotlinx.serialization.json.Json
+import okhttp3.Credentials
+import okhttp3.MediaType.Companion.toMediaType
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.RequestBody.Companion.toRequestBody
+import java.util.concurrent.ConcurrentHashMap
 import javax.inject.Inject
 import javax.inject.Singleton
 
 /**
  * WebDAV 适配器实现
- * 使用 Sardine 库进行 WebDAV 操作
+ * 使用 Sardine 库进行 WebDAV 操作，底层使用共享的同步 HTTP 客户端，重新配置后连接仍可复用
  */
 @Singleton
-class WebDAVAdapterImpl @Inject constructor() : WebDAVAdapter {
+class WebDAVAdapterImpl @Inject constructor(
+    @SyncHttpClient private val httpClient: OkHttpClient
+) : WebDAVAdapter {
+    
+    companion object {
+        /** 列出分目录和迁移时的并发请求数 */
+        private const val LIST_CONCURRENCY = 6
+    }
     
     private val json = Json { 
         ignoreUnknownKeys = true
@@ -27,16 +49,41 @@ class WebDAVAdapterImpl @Inject constructor() : WebDAVAdapter {
     private var sardine: Sardine? = null
     private var config: SyncConfig? = null
     
+    /** 直接发送的请求使用的 Basic 认证头，与 Sardine 使用相同的凭据 */
+    private var authorization: String? = null
+    
+    /** 项目文件是否按分目录结构存放，由同步引擎按 workspace.json 设置 */
+    @Volatile
+    private var shardedLayout = false
+    
+    /** 各分目录上次的列表结果，集合 ETag 未变化时直接复用 */
+    private val shardListings = ConcurrentHashMap<String, ShardListing>()
+    
+    /** 本机写入或删除过文件、之后还没有重新列出的分目录 */
+    private val dirtyShards = ConcurrentHashMap.newKeySet<String>()
+    
+    /** 服务器的集合 ETag 是否随子文件变化，发现不变化后不再复用列表结果 */
+    @Volatile
+    private var collectionEtagsReliable = true
+    
     /**
      * 初始化 WebDAV 连接
      */
-    fun initialize(syncConfig: SyncConfig) {
+    override fun initialize(syncConfig: SyncConfig) {
         config = syncConfig
-        sardine = OkHttpSardine().apply {
+        sardine = OkHttpSardine(httpClient).apply {
             if (!syncConfig.username.isNullOrEmpty() && !syncConfig.password.isNullOrEmpty()) {
                 setCredentials(syncConfig.username, syncConfig.password)
             }
         }
+        authorization = if (!syncConfig.username.isNullOrEmpty() && !syncConfig.password.isNullOrEmpty()) {
+            Credentials.basic(syncConfig.username, syncConfig.password)
+        } else {
+            null
+        }
+        shardListings.clear()
+        dirtyShards.clear()
+        collectionEtagsReliable = true
     }
     
     private fun getSardine(): Sardine {
@@ -52,6 +99,14 @@ class WebDAVAdapterImpl @Inject constructor() : WebDAVAdapter {
         return "${cfg.url}${cfg.syncPath}/items"
     }
     
+    private fun getItemPath(id: String, sharded: Boolean = shardedLayout): String {
+        return if (sharded) {
+            "${getItemsPath()}/${ItemLayout.shardOf(id)}/$id.json"
+        } else {
+            "${getItemsPath()}/$id.json"
+        }
+    }
+    
     private fun getResourcesPath(): String {
         val cfg = getConfig()
         return "${cfg.url}${cfg.syncPath}/resources"
@@ -72,6 +127,21 @@ class WebDAVAdapterImpl @Inject constructor() : WebDAVAdapter {
         return "${cfg.url}${cfg.syncPath}/sync-cursor.json"
     }
     
+    private fun getBodyManifestPath(): String {
+        val cfg = getConfig()
+        return "${cfg.url}${cfg.syncPath}/manifest.json"
+    }
+    
+    private fun getWorkspaceMetaPath(): String {
+        val cfg = getConfig()
+        return "${cfg.url}${cfg.syncPath}/workspace.json"
+    }
+    
+    private fun getSnapshotsPath(): String {
+        val cfg = getConfig()
+        return "${cfg.url}${cfg.syncPath}/snapshots"
+    }
+    
     private fun getLockFilePath(): String {
         return "${getLocksPath()}/lock.json"
     }
@@ -100,14 +170,18 @@ class WebDAVAdapterImpl @Inject constructor() : WebDAVAdapter {
     override suspend fun getItem(id: String): ItemEntity? = withContext(Dispatchers.IO) {
         try {
             val sardine = getSardine()
-            val path = "${getItemsPath()}/$id.json"
-            
-            if (!sardine.exists(path)) {
-                android.util.Log.d("WebDAV", "getItem: file does not exist: $path")
-                return@withContext null
+            val path = getItemPath(id)
+            
+            // 直接读取，不存在时由 404 判断，省去一次 exists 请求
+            val inputStream = try {
+                sardine.get(path)
+            } catch (e: SardineException) {
+                if (e.statusCode == 404) {
+                    android.util.Log.d("WebDAV", "getItem: file does not exist: $path")
+                    return@withContext null
+                }
+                throw e
             }
-            
-            val inputStream = sardine.get(path)
             val content = inputStream.bufferedReader().use { it.readText() }
             android.util.Log.d("WebDAV", "getItem: read content for $id, length=${content.length}")
             
@@ -121,28 +195,48 @@ class WebDAVAdapterImpl @Inject constructor() : WebDAVAdapter {
         }
     }
     
-    override suspend fun putItem(item: ItemEntity): Result<String> = withContext(Dispatchers.IO) {
+    override suspend fun putItem(item: ItemEntity): Result<String> {
+        return putItemData(item.id, json.encodeToString(item).toByteArray())
+    }
+    
+    override suspend fun getItemData(id: String): ByteArray? = withContext(Dispatchers.IO) {
         try {
-            val sardine = getSardine()
-            val path = "${getItemsPath()}/${item.id}.json"
-            val content = json.encodeToString(item)
-            
-            sardine.put(path, content.toByteArray(), "application/json")
-            
-            // 返回时间戳作为版本号
-            Result.success(System.currentTimeMillis().toString())
+            getSardine().get(getItemPath(id)).use { it.readBytes() }
+        } catch (e: SardineException) {
+            if (e.statusCode == 404) null else throw e
+        }
+    }
+    
+    override suspend fun putItemData(id: String, data: ByteArray, expected: ExpectedRevision?): Result<String> = withContext(Dispatchers.IO) {
+        try {
+            val contentType = if (ItemCodec.isEncoded(data)) "application/octet-stream" else "application/json"
+            // 以 ETag 作为版本号，多数服务器在 PUT 响应中直接返回；条件写入的下次检查需要准确的版本号
+            val etag = putItemFile(id, data, contentType, expected)
+                ?: if (expected != null) getSardine().list(getItemPath(id), 0).firstOrNull()?.etag else null
+            // 服务器不提供时退回时间戳，下次拉取时按目录列表的 ETag 对齐
+            Result.success(etag ?: System.currentTimeMillis().toString())
         } catch (e: Exception) {
             Result.failure(e)
         }
     }
     
+    override suspend fun getItemRevision(id: String): String? = withContext(Dispatchers.IO) {
+        val path = getItemPath(id)
+        try {
+            getSardine().list(path, 0).firstOrNull()?.etag
+        } catch (e: SardineException) {
+            if (e.statusCode == 404) null else throw e
+        }
+    }
+    
     override suspend fun deleteItem(id: String): Boolean = withContext(Dispatchers.IO) {
         try {
             val sardine = getSardine()
-            val path = "${getItemsPath()}/$id.json"
+            val path = getItemPath(id)
             
             if (sardine.exists(path)) {
                 sardine.delete(path)
+                markShardDirty(id)
             }
             true
         } catch (e: Exception) {
@@ -150,53 +244,96 @@ class WebDAVAdapterImpl @Inject constructor() : WebDAVAdapter {
         }
     }
     
+    /**
+     * 写入项目文件，分目录结构下子目录不存在时创建后重试
+     * @return 响应中的 ETag，服务器未返回时为 null
+     */
+    private fun putItemFile(id: String, data: ByteArray, contentType: String, expected: ExpectedRevision? = null): String? {
+        val path = getItemPath(id)
+        val etag = try {
+            putFile(id, path, data, contentType, expected)
+        } catch (e: ServerResponseException) {
+            // 父目录不存在时按规范返回 409，部分服务器返回 404
+            if (!shardedLayout || (e.statusCode != 409 && e.statusCode != 404)) throw e
+            createDirectoryIfMissing("${getItemsPath()}/${ItemLayout.shardOf(id)}")
+            putFile(id, path, data, contentType, expected)
+        }
+        markShardDirty(id)
+        return etag
+    }
+    
+    /**
+     * 直接发送 PUT 请求，返回响应头中的 ETag（Sardine 的 put 不返回响应头）
+     *
+     * 有 [expected] 时以 If-Match / If-None-Match 让服务器原子地检查版本，不一致时返回 412。
+     */
+    private fun putFile(id: String, path: String, data: ByteArray, contentType: String, expected: ExpectedRevision?): String? {
+        val request = Request.Builder()
+            .url(path)
+            .put(data.toRequestBody(contentType.toMediaType()))
+            .apply { authorization?.let { header("Authorization", it) } }
+            .apply {
+                when {
+                    expected == null -> Unit
+                    expected.revision == null -> header("If-None-Match", "*")
+                    else -> header("If-Match", quoteEtag(expected.revision))
+                }
+            }
+            .build()
+        httpClient.newCall(request).execute().use { response ->
+            if (response.code == 412) {
+                throw RevisionConflictException(id)
+            }
+            if (!response.isSuccessful) {
+                throw ServerResponseException(response.code, "PUT $path failed: HTTP ${response.code}")
+            }
+            return response.header("ETag")
+        }
+    }
+    
+    /**
+     * 部分服务器的 getetag 不带引号，条件请求头中的 ETag 必须带引号
+     */
+    private fun quoteEtag(etag: String): String {
+        return if (etag.startsWith("\"") || etag.startsWith("W/")) etag else "\"$etag\""
+    }
+    
+    private fun createDirectoryIfMissing(path: String) {
+        try {
+            getSardine().createDirectory(path)
+        } catch (e: SardineException) {
+            // 405：目录已存在
+            if (e.statusCode != 405) throw e
+        }
+    }
+    
+    private fun markShardDirty(id: String) {
+        if (shardedLayout) {
+            dirtyShards.add(ItemLayout.shardOf(id))
+        }
+    }
+    
     override suspend fun listChanges(cursor: String?, limit: Int): ChangeListResult = withContext(Dispatchers.IO) {
         try {
-            val sardine = getSardine()
-            val itemsPath = getItemsPath()
+            val filesToSync = listItemFiles(cursor)
             
-            // 检查 items 目录是否存在
-            if (!sardine.exists(itemsPath)) {
-                android.util.Log.d("WebDAV", "Items directory does not exist")
-                return@withContext ChangeListResult(emptyList(), null, false)
-            }
-            
-            // 列出所有项目文件
-            val resources = sardine.list(itemsPath)
-            
-            // 解析游标
-            val cursorTime = cursor?.toLongOrNull() ?: 0L
-            val isFirstSync = cursorTime == 0L
-            
-            // 过滤出需要同步的文件
-            val filesToSync = resources
-                .filter { !it.isDirectory && it.name.endsWith(".json") }
-                .filter { resource ->
-                    val modified = resource.modified?.time ?: System.currentTimeMillis()
-                    isFirstSync || modified >= cursorTime
-                }
-            
-            android.util.Log.d("WebDAV", "Found ${filesToSync.size} files to sync (total: ${resources.size}, cursor: $cursor)")
-            
-            // 批量读取文件内容
+            // 逐个读取文件内容
             val changes = mutableListOf<RemoteChange>()
-            for (resource in filesToSync) {
-                val id = resource.name.removeSuffix(".json")
-                val modified = resource.modified?.time ?: System.currentTimeMillis()
-                
+            for (file in filesToSync) {
                 try {
-                    val item = getItem(id)
+                    // 以文件 ETag 作为远端版本号
+                    val item = getItem(file.id)?.let { it.copy(remoteRev = file.etag ?: it.remoteRev) }
                     if (item != null) {
                         changes.add(RemoteChange(
-                            id = id,
+                            id = file.id,
                             type = item.type,
                             action = if (item.deletedTime != null) "delete" else "update",
                             item = item,
-                            timestamp = modified
+                            timestamp = file.modified
                         ))
                     }
                 } catch (e: Exception) {
-                    android.util.Log.e("WebDAV", "Failed to get item $id: ${e.message}")
+                    android.util.Log.e("WebDAV", "Failed to get item ${file.id}: ${e.message}")
                 }
             }
             
@@ -220,6 +357,156 @@ class WebDAVAdapterImpl @Inject constructor() : WebDAVAdapter {
         }
     }
     
+    override suspend fun listItemFiles(cursor: String?): List<RemoteItemFile> = withContext(Dispatchers.IO) {
+        val sardine = getSardine()
+        val itemsPath = getItemsPath()
+        
+        // 检查 items 目录是否存在
+        if (!sardine.exists(itemsPath)) {
+            android.util.Log.d("WebDAV", "Items directory does not exist")
+            return@withContext emptyList()
+        }
+        
+        // 列出所有项目文件
+        val allFiles = if (shardedLayout) listShardedFiles() else listFlatFiles()
+        
+        // 解析游标
+        val cursorTime = cursor?.toLongOrNull() ?: 0L
+        val isFirstSync = cursorTime == 0L
+        
+        // 过滤出需要同步的文件
+        val files = allFiles.filter { isFirstSync || it.modified >= cursorTime }
+        
+        android.util.Log.d("WebDAV", "Found ${files.size} files to sync (total: ${allFiles.size}, cursor: $cursor)")
+        files
+    }
+    
+    private fun listFlatFiles(): List<RemoteItemFile> {
+        return getSardine().list(getItemsPath())
+            .filter { !it.isDirectory && it.name.endsWith(".json") }
+            .map { it.toItemFile() }
+    }
+    
+    /**
+     * 并行列出所有分目录，集合 ETag 与上次相同的分目录复用上次的列表结果
+     */
+    private suspend fun listShardedFiles(): List<RemoteItemFile> = coroutineScope {
+        val itemsPath = getItemsPath()
+        val shards = getSardine().list(itemsPath).filter { it.isDirectory && ItemLayout.isShardName(it.name) }
+        val permits = Semaphore(LIST_CONCURRENCY)
+        
+        shards.map { shard ->
+            async {
+                permits.withPermit { listShard(itemsPath, shard.name, shard.etag) }
+            }
+        }.awaitAll().flatten()
+    }
+    
+    private fun listShard(itemsPath: String, name: String, etag: String?): List<RemoteItemFile> {
+        val cached = shardListings[name]
+        val written = dirtyShards.remove(name)
+        if (etag != null && cached?.etag == etag) {
+            // 本机写入过的分目录 ETag 却没有变化，说明服务器不随子文件更新集合 ETag
+            if (written) {
+                android.util.Log.w("WebDAV", "Collection ETag of shard $name did not change after a write, disabling listing reuse")
+                collectionEtagsReliable = false
+            }
+            if (collectionEtagsReliable) return cached.files
+        }
+        
+        val files = getSardine().list("$itemsPath/$name")
+            .filter { !it.isDirectory && it.name.endsWith(".json") }
+            .map { it.toItemFile() }
+        if (etag != null) {
+            shardListings[name] = ShardListing(etag, files)
+        } else {
+            shardListings.remove(name)
+        }
+        return files
+    }
+    
+    private fun DavResource.toItemFile(): RemoteItemFile {
+        return RemoteItemFile(
+            id = name.removeSuffix(".json"),
+            etag = etag,
+            modified = modified?.time ?: System.currentTimeMillis()
+        )
+    }
+    
+    override val supportedCapabilities: List<String> = WorkspaceCapabilities.SUPPORTED
+    
+    override fun setShardedLayout(sharded: Boolean) {
+        if (shardedLayout != sharded) {
+            shardListings.clear()
+            dirtyShards.clear()
+            shardedLayout = sharded
+        }
+    }
+    
+    override suspend fun migrateItemLayout(sharded: Boolean): Boolean = withContext(Dispatchers.IO) {
+        try {
+            val sardine = getSardine()
+            val itemsPath = getItemsPath()
+            if (!sardine.exists(itemsPath)) {
+                setShardedLayout(sharded)
+                return@withContext true
+            }
+            
+            val flatFiles = listFlatFiles()
+            val shardedFiles = listShardedFiles()
+            val (sources, targets) = if (sharded) flatFiles to shardedFiles else shardedFiles to flatFiles
+            val existing = targets.associateBy { it.id }
+            android.util.Log.d("WebDAV", "Moving ${sources.size} item files to ${if (sharded) ItemLayout.SHARDED else ItemLayout.FLAT} layout")
+            
+            val permits = Semaphore(LIST_CONCURRENCY)
+            coroutineScope {
+                if (sharded) {
+                    val present = targets.mapTo(HashSet()) { ItemLayout.shardOf(it.id) }
+                    sources.map { ItemLayout.shardOf(it.id) }.distinct().filter { it !in present }.map { shard ->
+                        async { permits.withPermit { createDirectoryIfMissing("$itemsPath/$shard") } }
+                    }.awaitAll()
+                }
+                
+                sources.map { file ->
+                    async {
+                        permits.withPermit {
+                            val from = getItemPath(file.id, !sharded)
+                            val target = existing[file.id]
+                            if (target != null && target.modified > file.modified) {
+                                sardine.delete(from)
+                            } else {
+                                sardine.move(from, getItemPath(file.id, sharded), true)
+                            }
+                        }
+                    }
+                }.awaitAll()
+                
+                // 迁回平铺结构后删除已清空的分目录，期间有新写入的分目录保留
+                if (!sharded) {
+                    sardine.list(itemsPath)
+                        .filter { it.isDirectory && ItemLayout.isShardName(it.name) }
+                        .map { shard ->
+                            async {
+                                permits.withPermit {
+                                    val path = "$itemsPath/${shard.name}"
+                                    if (sardine.list(path).none { !it.isDirectory }) {
+                                        sardine.delete(path)
+                                    }
+                                }
+                            }
+                        }.awaitAll()
+                }
+            }
+            
+            shardListings.clear()
+            setShardedLayout(sharded)
+            true
+        } catch (e: Exception) {
+            android.util.Log.e("WebDAV", "Failed to migrate item layout: ${e.message}")
+            false
+        }
+    }
+    
     override suspend fun acquireLock(deviceId: String, timeout: Long): Boolean = withContext(Dispatchers.IO) {
         try {
             val sardine = getSardine()
@@ -380,6 +667,58 @@ class WebDAVAdapterImpl @Inject constructor() : WebDAVAdapter {
         }
     }
     
+    override suspend fun getBodyManifest(): String? = withContext(Dispatchers.IO) {
+        try {
+            getSardine().get(getBodyManifestPath()).bufferedReader().use { it.readText() }
+        } catch (e: SardineException) {
+            if (e.statusCode == 404) null else throw e
+        }
+    }
+    
+    override suspend fun putBodyManifest(content: String): Boolean = withContext(Dispatchers.IO) {
+        try {
+            getSardine().put(getBodyManifestPath(), content.toByteArray(), "application/json")
+            true
+        } catch (e: Exception) {
+            android.util.Log.e("WebDAV", "Failed to write body manifest: ${e.message}")
+            false
+        }
+    }
+    
+    override suspend fun getSnapshotFile(name: String): ByteArray? = withContext(Dispatchers.IO) {
+        try {
+            getSardine().get("${getSnapshotsPath()}/$name").use { it.readBytes() }
+        } catch (e: SardineException) {
+            if (e.statusCode == 404) null else throw e
+        }
+    }
+    
+    override suspend fun putSnapshotFile(name: String, data: ByteArray): Boolean = withContext(Dispatchers.IO) {
+        try {
+            val sardine = getSardine()
+            val snapshotsPath = getSnapshotsPath()
+            if (!sardine.exists(snapshotsPath)) {
+                sardine.createDirectory(snapshotsPath)
+            }
+            sardine.put("$snapshotsPath/$name", data, "application/octet-stream")
+            true
+        } catch (e: Exception) {
+            android.util.Log.e("WebDAV", "Failed to write snapshot file $name: ${e.message}")
+            false
+        }
+    }
+    
+    override suspend fun deleteSnapshotFile(name: String): Boolean = withContext(Dispatchers.IO) {
+        try {
+            getSardine().delete("${getSnapshotsPath()}/$name")
+            true
+        } catch (e: SardineException) {
+            e.statusCode == 404
+        } catch (e: Exception) {
+            false
+        }
+    }
+    
     // 资源文件操作
     
     override suspend fun uploadResource(resourceId: String, data: ByteArray): Result<String> = withContext(Dispatchers.IO) {
@@ -437,16 +776,7 @@ class WebDAVAdapterImpl @Inject constructor() : WebDAVAdapter {
     
     override suspend fun getKeyIdentifier(): String? = withContext(Dispatchers.IO) {
         try {
-            val sardine = getSardine()
-            val cfg = getConfig()
-            val metaPath = "${cfg.url}${cfg.syncPath}/workspace.json"
-            
-            if (!sardine.exists(metaPath)) return@withContext null
-            
-            val inputStream = sardine.get(metaPath)
-            val content = inputStream.bufferedReader().use { it.readText() }
-            val meta = json.decodeFromString<WorkspaceMeta>(content)
-            meta.key_identifier
+            getWorkspaceMeta()?.key_identifier
         } catch (e: Exception) {
             android.util.Log.e("WebDAV", "Failed to get key identifier: ${e.message}")
             null
@@ -455,38 +785,48 @@ class WebDAVAdapterImpl @Inject constructor() : WebDAVAdapter {
     
     override suspend fun setKeyIdentifier(keyId: String): Boolean = withContext(Dispatchers.IO) {
         try {
-            val sardine = getSardine()
-            val cfg = getConfig()
-            val metaPath = "${cfg.url}${cfg.syncPath}/workspace.json"
-            
             // 读取现有的 workspace.json 或创建新的
             val existingMeta = try {
-                if (sardine.exists(metaPath)) {
-                    val inputStream = sardine.get(metaPath)
-                    val content = inputStream.bufferedReader().use { it.readText() }
-                    json.decodeFromString<WorkspaceMeta>(content)
-                } else {
-                    WorkspaceMeta()
-                }
+                getWorkspaceMeta() ?: WorkspaceMeta()
             } catch (e: Exception) {
                 WorkspaceMeta()
             }
             
-            // 更新 key_identifier
+            // 更新 key_identifier；同时记录 legacy_sync_time，能力协商不会把本次写入当作旧客户端同步
+            val now = System.currentTimeMillis()
             val updatedMeta = existingMeta.copy(
                 key_identifier = keyId,
-                last_sync_time = System.currentTimeMillis()
+                last_sync_time = now,
+                legacy_sync_time = now
             )
             
-            val content = json.encodeToString(updatedMeta)
-            sardine.put(metaPath, content.toByteArray(), "application/json")
-            true
+            putWorkspaceMeta(updatedMeta)
         } catch (e: Exception) {
             android.util.Log.e("WebDAV", "Failed to set key identifier: ${e.message}")
             false
         }
     }
     
+    override suspend fun getWorkspaceMeta(): WorkspaceMeta? = withContext(Dispatchers.IO) {
+        val content = try {
+            getSardine().get(getWorkspaceMetaPath()).bufferedReader().use { it.readText() }
+        } catch (e: SardineException) {
+            if (e.statusCode == 404) return@withContext null
+            throw e
+        }
+        json.decodeFromString<WorkspaceMeta>(content)
+    }
+    
+    override suspend fun putWorkspaceMeta(meta: WorkspaceMeta): Boolean = withContext(Dispatchers.IO) {
+        try {
+            getSardine().put(getWorkspaceMetaPath(), json.encodeToString(meta).toByteArray(), "application/json")
+            true
+        } catch (e: Exception) {
+            android.util.Log.e("WebDAV", "Failed to write workspace meta: ${e.message}")
+            false
+        }
+    }
+    
     override suspend fun hasData(): Boolean = withContext(Dispatchers.IO) {
         try {
             val sardine = getSardine()
@@ -498,8 +838,10 @@ class WebDAVAdapterImpl @Inject constructor() : WebDAVAdapter {
             }
             
             val items = sardine.list(itemsPath)
-            // 过滤掉目录本身，只检查文件
-            items.any { !it.isDirectory && it.name.endsWith(".json") }
+            // 过滤掉目录本身，只检查文件和分目录
+            items.any {
+                (!it.isDirectory && it.name.endsWith(".json")) || (it.isDirectory && ItemLayout.isShardName(it.name))
+            }
         } catch (e: Exception) {
             // 出错时假设没有数据，允许首次同步
             false
@@ -507,6 +849,14 @@ class WebDAVAdapterImpl @Inject constructor() : WebDAVAdapter {
     }
 }
 
+/**
+ * 分目录的列表结果
+ */
+private data class ShardListing(
+    val etag: String,
+    val files: List<RemoteItemFile>
+)
+
 /**
  * 锁信息 - 与桌面端格式一致
  */
@@ -516,14 +866,3 @@ private data class LockInfo(
     val acquired: Long,
     val expires: Long
 )
-
-/**
- * 工作区元数据 - 与桌面端 workspace.json 格式一致
- */
-@kotlinx.serialization.Serializable
-private data class WorkspaceMeta(
-    val version: String = "1.0",
-    val capabilities: List<String> = listOf("items", "resources", "changes"),
-    val last_sync_time: Long? = null,
-    val key_identifier: String? = null
-)
@@ -0,0 +1,126 @@
+package com.mucheng.notes.data.repository
+
+import com.mucheng.notes.data.local.entity.ItemEntity
+import kotlinx.serialization.DeserializationStrategy
+import kotlinx.serialization.json.Json
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * 全局已解码 Payload 缓存
+ *
+ * 以 (id, content_hash) 为键缓存 decodeFromString 的结果，列表每次发射时
+ * 只有内容真正变化的行才需要重新解析 JSON。按条目数做 LRU 淘汰。
+ *
+ * 缓存的值必须是不可变对象（各 Payload data class 均满足）。
+ */
+@Singleton
+class DecodedPayloadCache @Inject constructor() {
+    
+    companion object {
+        const val DEFAULT_MAX_ENTRIES = 2048
+    }
+    
+    /**
+     * 与各 ViewModel 原有配置一致的共享 Json 实例
+     */
+    val json = Json {
+        ignoreUnknownKeys = true
+        isLenient = true
+        coerceInputValues = true  // 将 null 转换为默认值
+    }
+    
+    private var maxEntries = DEFAULT_MAX_ENTRIES
+    
+    /**
+     * 每个 ID 只保留最新内容哈希对应的解码结果，旧版本随之替换
+     */
+    private class Entry(
+        val contentHash: String,
+        val serialName: String,
+        val value: Any?
+    )
+    
+    private val entries = object : LinkedHashMap<String, Entry>(256, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, Entry>): Boolean {
+            return size > maxEntries
+        }
+    }
+    
+    private var hits = 0L
+    private var misses = 0L
+    
+    /**
+     * 解码项目 payload，命中缓存时直接返回
+     */
+    fun <T> decode(item: ItemEntity, deserializer: DeserializationStrategy<T>): T {
+        val serialName = deserializer.descriptor.serialName
+        
+        synchronized(entries) {
+            val cached = entries[item.id]
+            if (cached != null && cached.contentHash == item.contentHash && cached.serialName == serialName) {
+                hits++
+                @Suppress("UNCHECKED_CAST")
+                return cached.value as T
+            }
+            misses++
+        }
+        
+        // 解码放在锁外，避免大 payload 阻塞其他线程
+        val value = json.decodeFromString(deserializer, item.payload)
+        synchronized(entries) {
+            entries[item.id] = Entry(item.contentHash, serialName, value)
+        }
+        return value
+    }
+    
+    /**
+     * 移除指定项目的缓存
+     */
+    fun invalidate(id: String) {
+        synchronized(entries) {
+            entries.remove(id)
+        }
+    }
+    
+    /**
+     * 清空缓存
+     */
+    fun clear() {
+        synchronized(entries) {
+            entries.clear()
+        }
+    }
+    
+    /**
+     * 调整容量上限（内存紧张时可调小）
+     */
+    fun resize(newMaxEntries: Int) {
+        synchronized(entries) {
+            maxEntries = newMaxEntries.coerceAtLeast(1)
+            val iterator = entries.entries.iterator()
+            while (entries.size > maxEntries && iterator.hasNext()) {
+                iterator.next()
+                iterator.remove()
+            }
+        }
+    }
+    
+    /**
+     * 获取缓存统计信息
+     */
+    fun getStats(): PayloadCacheStats {
+        synchronized(entries) {
+            return PayloadCacheStats(size = entries.size, hits = hits, misses = misses)
+        }
+    }
+}
+
+/**
+ * Payload 缓存统计信息
+ */
+data class PayloadCacheStats(
+    val size: Int,
+    val hits: Long,
+    val misses: Long
+)
@@ -1,10 +1,22 @@
 package com.mucheng.notes.data.repository
 
+import com.mucheng.notes.data.local.ItemChangeRecorder
+import com.mucheng.notes.data.local.ItemChangeTracker
+import com.mucheng.notes.data.local.PayloadBlobStore
+import com.mucheng.notes.data.local.TypeChanges
 import com.mucheng.notes.data.local.dao.ItemDao
+import com.mucheng.notes.data.local.dao.ItemTagDao
 import com.mucheng.notes.data.local.entity.ItemEntity
+import com.mucheng.notes.data.local.entity.QuadrantCount
+import com.mucheng.notes.data.local.entity.TagCount
+import com.mucheng.notes.data.local.entity.TodoReminder
 import com.mucheng.notes.domain.model.ItemType
 import com.mucheng.notes.domain.repository.ItemRepository
 import kotlinx.coroutines.flow.Flow
+import kotlinx.serialization.DeserializationStrategy
+import kotlinx.serialization.json.JsonElement
+import kotlinx.serialization.json.JsonNull
+import kotlinx.serialization.json.JsonPrimitive
 import java.security.MessageDigest
 import java.util.UUID
 import javax.inject.Inject
@@ -15,18 +27,56 @@ import javax.inject.Singleton
  */
 @Singleton
 class ItemRepositoryImpl @Inject constructor(
-    private val itemDao: ItemDao
+    private val itemDao: ItemDao,
+    private val itemTagDao: ItemTagDao,
+    private val changeTracker: ItemChangeTracker,
+    private val payloadCache: DecodedPayloadCache,
+    private val payloadBlobStore: PayloadBlobStore
 ) : ItemRepository {
     
+    companion object {
+        /** 单条 SQL 中 IN 参数的最大数量（SQLite 默认上限 999） */
+        private const val BULK_CHUNK_SIZE = 500
+    }
+    
     override fun getByType(type: ItemType): Flow<List<ItemEntity>> {
-        return itemDao.getByType(type.value)
+        return changeTracker.observeType(type.value)
+    }
+    
+    override fun observeChanges(type: ItemType): Flow<TypeChanges> {
+        return changeTracker.observeChanges(type.value)
+    }
+    
+    override fun observeConversationMessages(
+        conversationId: String,
+        sinceCreatedAt: Long,
+        sinceId: String
+    ): Flow<List<ItemEntity>> {
+        return changeTracker.observeConversation(conversationId, sinceCreatedAt, sinceId)
+    }
+    
+    override suspend fun getMessagesBefore(
+        conversationId: String,
+        beforeCreatedAt: Long,
+        beforeId: String,
+        limit: Int
+    ): List<ItemEntity> {
+        return itemDao.getMessagesPage(conversationId, beforeCreatedAt, beforeId, limit).asReversed()
+    }
+    
+    override fun <T> decodePayload(item: ItemEntity, deserializer: DeserializationStrategy<T>): T {
+        return payloadCache.decode(item, deserializer)
+    }
+    
+    override suspend fun loadBlob(id: String, field: String): String? {
+        return payloadBlobStore.load(id, field)
     }
     
     override suspend fun getById(id: String): ItemEntity? {
         return itemDao.getByIdNotDeleted(id)
     }
     
-    override suspend fun create(type: ItemType, payload: String): ItemEntity {
+    override suspend fun create(type: ItemType, payload: String, contentHash: String?): ItemEntity {
         val now = System.currentTimeMillis()
         val item = ItemEntity(
             id = UUID.randomUUID().toString(),
@@ -35,35 +85,153 @@ class ItemRepositoryImpl @Inject constructor(
             updatedTime = now,
             deletedTime = null,
             payload = payload,
-            contentHash = computeContentHash(payload),
+            contentHash = contentHash ?: computeContentHash(payload),
             syncStatus = "modified",
             localRev = 1,
             remoteRev = null,
             encryptionApplied = 0,
             schemaVersion = 1
         )
-        itemDao.upsert(item)
+        changeTracker.transaction {
+            itemDao.upsert(item)
+            inserted(item.type, item.id)
+        }
         return item
     }
     
-    override suspend fun update(id: String, payload: String): ItemEntity? {
-        val existing = itemDao.getByIdNotDeleted(id) ?: return null
+    override suspend fun update(id: String, payload: String, contentHash: String?): ItemEntity? {
+        return changeTracker.transaction {
+            val existing = itemDao.getByIdNotDeleted(id) ?: return@transaction null
+            
+            val newItem = existing.copy(
+                payload = payload,
+                updatedTime = System.currentTimeMillis(),
+                contentHash = contentHash ?: computeContentHash(payload),
+                syncStatus = "modified",
+                localRev = existing.localRev + 1
+            )
+            itemDao.upsert(newItem)
+            updated(newItem.type, newItem.id)
+            newItem
+        }
+    }
+    
+    override suspend fun patch(id: String, fields: Map<String, JsonElement>): ItemEntity? {
+        if (fields.isEmpty()) return getById(id)
         
-        val updated = existing.copy(
-            payload = payload,
+        return changeTracker.transaction {
+            for ((field, value) in fields) {
+                val affected = itemDao.setPayloadField(id, payloadPath(field), value.toString())
+                if (affected == 0) return@transaction null
+            }
+            finishPatch(id)
+        }
+    }
+    
+    override suspend fun toggle(id: String, field: String): ItemEntity? {
+        return changeTracker.transaction {
+            val affected = itemDao.togglePayloadField(id, payloadPath(field))
+            if (affected == 0) return@transaction null
+            finishPatch(id)
+        }
+    }
+    
+    /**
+     * 字段写入后读回 payload，计算一次哈希并标记为待同步
+     */
+    private suspend fun ItemChangeRecorder.finishPatch(id: String): ItemEntity? {
+        val patched = itemDao.getByIdNotDeleted(id) ?: return null
+        val newItem = patched.copy(
             updatedTime = System.currentTimeMillis(),
-            contentHash = computeContentHash(payload),
+            contentHash = computeContentHash(payloadBlobStore.inline(patched).payload),
             syncStatus = "modified",
-            localRev = existing.localRev + 1
+            localRev = patched.localRev + 1
         )
-        itemDao.upsert(updated)
-        return updated
+        itemDao.markPatched(id, newItem.contentHash, newItem.updatedTime)
+        updated(newItem.type, newItem.id)
+        return newItem
     }
     
     override suspend fun softDelete(id: String): Boolean {
-        val existing = itemDao.getByIdNotDeleted(id) ?: return false
-        itemDao.softDelete(id, System.currentTimeMillis())
-        return true
+        return changeTracker.transaction {
+            val existing = itemDao.getByIdNotDeleted(id) ?: return@transaction false
+            itemDao.softDelete(id, System.currentTimeMillis())
+            removed(existing.type, id)
+            true
+        }
+    }
+    
+    override suspend fun softDeleteAll(ids: List<String>): Int {
+        if (ids.isEmpty()) return 0
+        
+        return changeTracker.transaction {
+            softDeleteIds(ids.distinct())
+        }
+    }
+    
+    override suspend fun moveToFolder(ids: List<String>, folderId: String?, field: String): Int {
+        if (ids.isEmpty()) return 0
+        
+        return changeTracker.transaction {
+            patchIds(ids.distinct(), payloadPath(field), JsonPrimitive(folderId))
+        }
+    }
+    
+    override suspend fun deleteConversationCascade(conversationId: String): Boolean {
+        return changeTracker.transaction {
+            val conversation = itemDao.getByIdNotDeleted(conversationId) ?: return@transaction false
+            val messageIds = itemDao.getIdsByReference(ItemType.AI_MESSAGE.value, payloadPath("conversation_id"), conversationId)
+            softDeleteIds(messageIds)
+            itemDao.softDelete(conversationId, System.currentTimeMillis())
+            removed(conversation.type, conversationId)
+            true
+        }
+    }
+    
+    override suspend fun deleteFolderCascade(folderId: String, itemType: ItemType): Boolean {
+        return changeTracker.transaction {
+            val folder = itemDao.getByIdNotDeleted(folderId) ?: return@transaction false
+            val folderPath = payloadPath("folder_id")
+            patchIds(itemDao.getIdsByReference(itemType.value, folderPath, folderId), folderPath, JsonNull)
+            val parentPath = payloadPath("parent_id")
+            patchIds(itemDao.getIdsByReference(folder.type, parentPath, folderId), parentPath, JsonNull)
+            itemDao.softDelete(folderId, System.currentTimeMillis())
+            removed(folder.type, folderId)
+            true
+        }
+    }
+    
+    /**
+     * 分块软删除并记录变更
+     */
+    private suspend fun ItemChangeRecorder.softDeleteIds(ids: List<String>): Int {
+        val now = System.currentTimeMillis()
+        var count = 0
+        for (chunk in ids.chunked(BULK_CHUNK_SIZE)) {
+            val refs = itemDao.getRefsNotDeleted(chunk)
+            if (refs.isEmpty()) continue
+            count += itemDao.softDeleteByIds(refs.map { it.id }, now)
+            refs.forEach { removed(it.type, it.id) }
+        }
+        return count
+    }
+    
+    /**
+     * 分块设置同一字段，并逐行重新计算哈希
+     */
+    private suspend fun ItemChangeRecorder.patchIds(ids: List<String>, path: String, value: JsonElement): Int {
+        val now = System.currentTimeMillis()
+        val valueJson = value.toString()
+        var count = 0
+        for (chunk in ids.chunked(BULK_CHUNK_SIZE)) {
+            if (itemDao.setPayloadFieldForIds(chunk, path, valueJson) == 0) continue
+            for (row in itemDao.getByIdsNotDeleted(chunk)) {
+                itemDao.markPatched(row.id, computeContentHash(payloadBlobStore.inline(row).payload), now)
+                updated(row.type, row.id)
+                count++
+            }
+        }
+        return count
     }
     
     override suspend fun search(query: String, type: ItemType?): List<ItemEntity> {
@@ -74,6 +242,45 @@ class ItemRepositoryImpl @Inject constructor(
         }
     }
     
+    override fun observeByTags(type: ItemType, tags: List<String>): Flow<List<ItemEntity>> {
+        val distinctTags = tags.distinct()
+        return changeTracker.observeQuery(type.value) {
+            when (distinctTags.size) {
+                0 -> emptyList()
+                1 -> itemTagDao.getItemsWithTag(type.value, distinctTags.first())
+                else -> itemTagDao.getItemsWithAllTags(type.value, distinctTags, distinctTags.size)
+            }
+        }
+    }
+    
+    override fun observeTagCounts(type: ItemType): Flow<List<TagCount>> {
+        return changeTracker.observeQuery(type.value) {
+            itemTagDao.getTagCounts(type.value)
+        }
+    }
+    
+    override suspend fun getUpcomingReminders(from: Long, to: Long): List<TodoReminder> {
+        return itemDao.getUpcomingReminders(from, to)
+    }
+    
+    override fun observeTodosInQuadrant(quadrant: String, completed: Boolean): Flow<List<ItemEntity>> {
+        return changeTracker.observeQuery(ItemType.TODO.value) {
+            itemDao.getTodosInQuadrant(quadrant, completed)
+        }
+    }
+    
+    override fun observeCompletedTodos(): Flow<List<ItemEntity>> {
+        return changeTracker.observeQuery(ItemType.TODO.value) {
+            itemDao.getCompletedTodos()
+        }
+    }
+    
+    override fun observeQuadrantCounts(completed: Boolean): Flow<List<QuadrantCount>> {
+        return changeTracker.observeQuery(ItemType.TODO.value) {
+            itemDao.getQuadrantCounts(completed)
+        }
+    }
+    
     override suspend fun getByFolderId(type: ItemType, folderId: String): List<ItemEntity> {
         return itemDao.getByFolderId(type.value, folderId)
     }
@@ -87,20 +294,37 @@ class ItemRepositoryImpl @Inject constructor(
     }
     
     override suspend fun markSynced(id: String, remoteRev: String) {
+        // 只修改同步状态，列表内容不变，无需通知
         itemDao.markSynced(id, remoteRev)
     }
     
     override suspend fun upsertAll(items: List<ItemEntity>) {
-        itemDao.upsertAll(items)
+        changeTracker.transaction {
+            val existingIds = items.map { it.id }.chunked(BULK_CHUNK_SIZE)
+                .flatMap { itemDao.getExistingIds(it) }
+                .toSet()
+            itemDao.upsertAll(items)
+            items.forEach { upserted(it, isNew = it.id !in existingIds) }
+        }
+    }
+    
+    /**
+     * 字段名转为 JSON 路径，只接受序列化字段名（字母、数字、下划线）
+     */
+    private fun payloadPath(field: String): String {
+        require(field.isNotEmpty() && field.all { it.isLetterOrDigit() || it == '_' }) {
+            "Invalid payload field: $field"
+        }
+        return "\$.$field"
     }
     
     /**
      * 计算内容哈希（SHA-256 前 16 字符）
      * 与桌面端保持一致
      */
-    private fun computeContentHash(content: String): String {
+    override fun computeContentHash(payload: String): String {
         val digest = MessageDigest.getInstance("SHA-256")
-        val hashBytes = digest.digest(content.toByteArray(Charsets.UTF_8))
+        val hashBytes = digest.digest(payload.toByteArray(Charsets.UTF_8))
         return hashBytes.joinToString("") { "%02x".format(it) }.take(16)
     }
 }
@@ -1,6 +1,7 @@
 package com.mucheng.notes.data.repository
 
 import com.mucheng.notes.data.sync.SyncEngine
+import com.mucheng.notes.data.sync.SyncScheduler
 import com.mucheng.notes.domain.model.SyncResult
 import com.mucheng.notes.domain.model.SyncStatus
 import com.mucheng.notes.domain.repository.SyncRepository
@@ -15,7 +16,8 @@ import javax.inject.Singleton
  */
 @Singleton
 class SyncRepositoryImpl @Inject constructor(
-    private val syncEngine: SyncEngine
+    private val syncEngine: SyncEngine,
+    private val syncScheduler: SyncScheduler
 ) : SyncRepository {
     
     private val _syncStatus = MutableStateFlow(SyncStatus.IDLE)
@@ -31,6 +33,9 @@ class SyncRepositoryImpl @Inject constructor(
             SyncStatus.FAILED
         }
         
+        // 手动和后台同步都按结果调整下次后台同步时间
+        syncScheduler.onSyncFinished(result)
+        
         return result
     }
     
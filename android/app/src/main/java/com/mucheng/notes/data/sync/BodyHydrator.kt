@@ -0,0 +1,72 @@
+package com.mucheng.notes.data.sync
+
+import android.util.Log
+import com.mucheng.notes.data.local.dao.DehydratedItemDao
+import com.mucheng.notes.domain.model.SyncPullPriority
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * 按需下载模式的正文下载入口
+ *
+ * 打开笔记、AI 对话时下载对应正文；后台同步结束后在不计流量的网络上分批补全。
+ * 进程刚启动、还没有执行过同步时从设置中加载同步配置。
+ */
+@Singleton
+class BodyHydrator @Inject constructor(
+    private val syncEngine: SyncEngine,
+    private val syncSettings: SyncSettings,
+    private val dehydratedItemDao: DehydratedItemDao
+) {
+    
+    companion object {
+        private const val TAG = "BodyHydrator"
+        
+        /** 后台每次补全的项目数 */
+        const val BACKGROUND_BATCH = 100
+    }
+    
+    /**
+     * 确保项目正文可用
+     * @return false 表示正文未下载且当前无法下载（离线或未配置同步）
+     */
+    suspend fun ensureHydrated(id: String): Boolean {
+        if (!dehydratedItemDao.isDehydrated(id)) return true
+        if (!prepare()) return false
+        return syncEngine.hydrateItem(id)
+    }
+    
+    /**
+     * 下载某个 AI 对话中正文未下载的消息
+     */
+    suspend fun hydrateConversation(conversationId: String) {
+        val ids = dehydratedItemDao.getForConversation(conversationId)
+        if (ids.isEmpty() || !prepare()) return
+        syncEngine.hydrateItems(ids)
+    }
+    
+    /**
+     * 后台补全一批正文，按拉取优先级先笔记后 AI 历史
+     * @return 本次补全的数量
+     */
+    suspend fun hydrateInBackground(limit: Int = BACKGROUND_BATCH): Int {
+        if (dehydratedItemDao.count() == 0 || !prepare()) return 0
+        
+        val ids = mutableListOf<String>()
+        for (type in LazyBodies.TYPES.sortedBy { SyncPullPriority.tierOf(it) }) {
+            if (ids.size >= limit) break
+            ids += dehydratedItemDao.getPending(listOf(type), limit - ids.size)
+        }
+        val hydrated = syncEngine.hydrateItems(ids)
+        Log.d(TAG, "Downloaded $hydrated/${ids.size} bodies in background")
+        return hydrated
+    }
+    
+    private fun prepare(): Boolean {
+        if (syncEngine.isConfigured) return true
+        val config = syncSettings.loadConfig() ?: return false
+        syncSettings.ensureMasterKey()
+        syncEngine.setConfig(config)
+        return true
+    }
+}
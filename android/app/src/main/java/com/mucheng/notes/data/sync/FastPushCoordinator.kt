@@ -0,0 +1,83 @@
+package com.mucheng.notes.data.sync
+
+import android.util.Log
+import com.mucheng.notes.data.local.ItemChangeTracker
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.FlowPreview
+import kotlinx.coroutines.flow.debounce
+import kotlinx.coroutines.flow.filterNot
+import kotlinx.coroutines.flow.onEach
+import kotlinx.coroutines.launch
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * 编辑后的快速推送
+ *
+ * 订阅本地变更，编辑停止 [DEBOUNCE_MS] 后把这段时间内触及的项目交给
+ * [SyncEngine.pushItems] 单独上传，不等下一次完整同步。拉取写入的行是已同步状态，
+ * 不在发件箱中，pushItems 会直接跳过。离线、未配置同步或上传被跳过的项目仍留在
+ * 发件箱，由完整同步处理。
+ */
+@Singleton
+class FastPushCoordinator @Inject constructor(
+    private val changeTracker: ItemChangeTracker,
+    private val syncEngine: SyncEngine,
+    private val syncSettings: SyncSettings,
+    private val offlineQueueManager: OfflineQueueManager
+) {
+    
+    companion object {
+        private const val TAG = "FastPushCoordinator"
+        
+        const val DEBOUNCE_MS = 3_000L
+    }
+    
+    private val pending = LinkedHashSet<String>()
+    
+    /**
+     * 开始监听本地变更（应用启动时调用一次）
+     */
+    @OptIn(FlowPreview::class)
+    fun start(scope: CoroutineScope) {
+        scope.launch {
+            changeTracker.changes
+                .filterNot { it.all }
+                .onEach { changeSet ->
+                    synchronized(pending) {
+                        changeSet.byType.values.forEach { change ->
+                            pending.addAll(change.inserted)
+                            pending.addAll(change.updated)
+                            pending.addAll(change.removed)
+                        }
+                    }
+                }
+                .debounce(DEBOUNCE_MS)
+                .collect { flush() }
+        }
+    }
+    
+    private suspend fun flush() {
+        val ids = synchronized(pending) {
+            pending.toList().also { pending.clear() }
+        }
+        if (ids.isEmpty() || !offlineQueueManager.isOnline()) return
+        
+        try {
+            if (!syncEngine.isConfigured) {
+                val config = syncSettings.loadConfig() ?: return
+                syncSettings.ensureMasterKey()
+                syncEngine.setConfig(config)
+            }
+            
+            val result = syncEngine.pushItems(ids)
+            if (result.pushed > 0) {
+                Log.d(TAG, "Pushed ${result.pushed} item(s) in ${result.duration}ms")
+            } else if (result.error != null) {
+                Log.d(TAG, "Fast push skipped: ${result.error}")
+            }
+        } catch (e: Exception) {
+            Log.e(TAG, "Fast push failed", e)
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.mucheng.notes.data.sync
+
+import com.mucheng.notes.data.local.PayloadBlobStore
+import kotlinx.serialization.SerialName
+import kotlinx.serialization.Serializable
+import kotlinx.serialization.json.Json
+import kotlinx.serialization.json.JsonElement
+import kotlinx.serialization.json.JsonObject
+import kotlinx.serialization.json.JsonPrimitive
+import kotlinx.serialization.json.buildJsonObject
+
+/**
+ * 远端正文清单中的一项
+ *
+ * [stub] 是去掉正文后的 payload（保留标题、文件夹、标签等列表展示需要的字段），
+ * 按需下载模式下直接写入本地；[rev] 为生成清单时项目文件的 ETag，
+ * 与目录列表中的 ETag 一致才说明清单仍是最新的。
+ */
+@Serializable
+data class BodyManifestEntry(
+    val type: String,
+    @SerialName("created_time") val createdTime: Long,
+    @SerialName("updated_time") val updatedTime: Long,
+    @SerialName("deleted_time") val deletedTime: Long? = null,
+    @SerialName("content_hash") val contentHash: String,
+    val rev: String,
+    val stub: String
+)
+
+/**
+ * 远端正文清单（manifest.json）
+ *
+ * 由移动端在完整同步时维护：上传或完整下载过的正文类型项目都会登记。
+ * 桌面端不写入清单，未登记或版本不一致的项目按原方式完整下载。
+ * 开启加密时整个清单加密后存放，标题不会以明文出现在服务器上。
+ */
+@Serializable
+data class BodyManifest(
+    val version: Int = 1,
+    val entries: Map<String, BodyManifestEntry> = emptyMap()
+)
+
+/**
+ * 清单文件外层：加密时 data 为密文
+ */
+@Serializable
+data class BodyManifestFile(
+    val encrypted: Boolean,
+    val data: String
+)
+
+/**
+ * 按需下载的正文字段
+ */
+object LazyBodies {
+    
+    /**
+     * 类型到正文字段及占位值；占位为 null 的字段直接去掉（Payload 中为可选字段）
+     * 必填字段置为空字符串，去掉正文后仍可按原 Payload 类型解码
+     */
+    private val BODY_FIELDS: Map<String, Map<String, JsonElement?>> = mapOf(
+        "note" to mapOf("content" to JsonPrimitive("")),
+        "ai_message" to mapOf("content" to JsonPrimitive("")),
+        "diagram" to mapOf("data" to JsonPrimitive(""), "thumbnail" to null)
+    )
+    
+    /** 可按需下载正文的类型 */
+    val TYPES: List<String> = BODY_FIELDS.keys.toList()
+    
+    private val json = Json { ignoreUnknownKeys = true }
+    
+    fun isLazyType(type: String): Boolean = type in BODY_FIELDS
+    
+    /**
+     * 去掉正文得到清单中的 payload，解析失败时返回 null（该项目只能完整下载）
+     */
+    fun stub(type: String, payload: String): String? {
+        val fields = BODY_FIELDS[type] ?: return null
+        val obj = parse(payload) ?: return null
+        return buildJsonObject {
+            for ((key, value) in obj) {
+                // 本地移出大字段的标记不进入清单
+                if (key !in fields && !key.startsWith(PayloadBlobStore.MARKER_PREFIX)) put(key, value)
+            }
+            for ((key, placeholder) in fields) {
+                if (placeholder != null) put(key, placeholder)
+            }
+        }.toString()
+    }
+    
+    /**
+     * 把下载到的正文合并进本地 payload
+     *
+     * 正文未下载期间本地可能改过置顶、文件夹等字段，这些字段保留本地值，
+     * 只有正文字段取远端值。
+     */
+    fun mergeBody(type: String, local: String, remote: String): String {
+        val fields = BODY_FIELDS[type] ?: return remote
+        val localObj = parse(local) ?: return remote
+        val remoteObj = parse(remote) ?: return local
+        return buildJsonObject {
+            for ((key, value) in localObj) {
+                if (key !in fields) put(key, value)
+            }
+            for (key in fields.keys) {
+                remoteObj[key]?.let { put(key, it) }
+            }
+        }.toString()
+    }
+    
+    private fun parse(payload: String): JsonObject? {
+        return try {
+            json.parseToJsonElement(payload) as? JsonObject
+        } catch (e: Exception) {
+            null
+        }
+    }
+}
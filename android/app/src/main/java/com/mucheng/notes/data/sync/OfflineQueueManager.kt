@@ -6,6 +6,7 @@ import android.net.Network
 import android.net.NetworkCapabilities
 import android.net.NetworkRequest
 import androidx.core.content.getSystemService
+import com.mucheng.notes.data.local.dao.OutboxDao
 import com.mucheng.notes.domain.repository.SyncRepository
 import dagger.hilt.android.qualifiers.ApplicationContext
 import kotlinx.coroutines.CoroutineScope
@@ -45,6 +46,11 @@ interface OfflineQueueManager {
      */
     suspend fun processQueue()
     
+    /**
+     * 发件箱中待推送的操作数
+     */
+    suspend fun pendingCount(): Int
+    
     /**
      * 启动网络监听
      */
@@ -60,10 +66,12 @@ interface OfflineQueueManager {
  * 离线队列管理器实现
  * 
  * 监听网络状态变化，在网络恢复时自动触发同步。
+ * 待推送的操作持久化在发件箱（outbox 表），同步时由 SyncEngine 按优先级取出。
  */
 @Singleton
 class OfflineQueueManagerImpl @Inject constructor(
-    @ApplicationContext private val context: Context
+    @ApplicationContext private val context: Context,
+    private val outboxDao: OutboxDao
 ) : OfflineQueueManager {
     
     private val connectivityManager = context.getSystemService<ConnectivityManager>()
@@ -134,6 +142,8 @@ class OfflineQueueManagerImpl @Inject constructor(
         }
     }
     
+    override suspend fun pendingCount(): Int = outboxDao.count()
+    
     override fun startMonitoring() {
         if (networkCallback != null) return
         
@@ -0,0 +1,88 @@
+package com.mucheng.notes.data.sync
+
+import com.mucheng.notes.data.local.entity.ItemEntity
+import kotlinx.serialization.SerialName
+import kotlinx.serialization.Serializable
+import kotlinx.serialization.builtins.ListSerializer
+import kotlinx.serialization.json.Json
+import java.io.ByteArrayOutputStream
+import java.util.Base64
+import java.util.zip.GZIPInputStream
+import java.util.zip.GZIPOutputStream
+
+/**
+ * 快照索引（snapshots/snapshot.json）
+ *
+ * 分片中包含 [watermark] 之前修改的全部远端项目文件。新设备先导入分片，
+ * 再从 watermark 起增量拉取。写入方未能包含的文件（本地有未推送修改、正文未下载等）
+ * 会把 watermark 拉低到其修改时间，保证增量拉取不遗漏。
+ */
+@Serializable
+data class SnapshotIndex(
+    val version: Int = SnapshotBundle.FORMAT_VERSION,
+    @SerialName("created_at") val createdAt: Long,
+    val watermark: Long,
+    val encrypted: Boolean,
+    @SerialName("item_count") val itemCount: Int,
+    val parts: List<SnapshotPart>
+)
+
+/**
+ * 快照分片
+ */
+@Serializable
+data class SnapshotPart(
+    val name: String,
+    val count: Int,
+    val bytes: Int
+)
+
+/**
+ * 快照分片的打包格式
+ *
+ * 项目按远端文件的格式（remote_rev 为文件 ETag）序列化为 JSON 数组后 gzip 压缩；
+ * 加密时再把压缩结果 Base64 后整体加密，类型和时间等元数据也不以明文出现在服务器上。
+ */
+object SnapshotBundle {
+    
+    const val FORMAT_VERSION = 1
+    
+    const val INDEX_FILE = "snapshot.json"
+    
+    /** 每个分片的项目数，引导时每个分片一次请求 */
+    const val PART_SIZE = 1000
+    
+    private val itemsSerializer = ListSerializer(ItemEntity.serializer())
+    
+    /**
+     * 分片文件名带上快照时间，写入新快照时不覆盖旧索引仍在引用的分片
+     */
+    fun partName(createdAt: Long, index: Int): String = "snapshot-$createdAt-$index.bin"
+    
+    /**
+     * 打包一个分片，提供 [encrypt] 时整体加密
+     */
+    fun pack(items: List<ItemEntity>, json: Json, encrypt: ((String) -> String)? = null): ByteArray {
+        val buffer = ByteArrayOutputStream()
+        GZIPOutputStream(buffer).use { it.write(json.encodeToString(itemsSerializer, items).toByteArray()) }
+        val compressed = buffer.toByteArray()
+        return if (encrypt == null) {
+            compressed
+        } else {
+            encrypt(Base64.getEncoder().encodeToString(compressed)).toByteArray()
+        }
+    }
+    
+    /**
+     * 解开一个分片，分片加密时需提供 [decrypt]
+     */
+    fun unpack(data: ByteArray, json: Json, decrypt: ((String) -> String)? = null): List<ItemEntity> {
+        val compressed = if (decrypt == null) {
+            data
+        } else {
+            Base64.getDecoder().decode(decrypt(data.toString(Charsets.UTF_8)))
+        }
+        val text = GZIPInputStream(compressed.inputStream()).use { it.readBytes() }.toString(Charsets.UTF_8)
+        return json.decodeFromString(itemsSerializer, text)
+    }
+}
@@ -1,21 +1,43 @@
 package com.mucheng.notes.data.sync
 
+import com.mucheng.notes.data.local.ItemChangeTracker
+import com.mucheng.notes.data.local.PayloadBlobStore
+import com.mucheng.notes.data.local.dao.DehydratedItemDao
 import com.mucheng.notes.data.local.dao.ItemDao
+import com.mucheng.notes.data.local.dao.OutboxDao
+import com.mucheng.notes.data.local.entity.DehydratedItemEntity
 import com.mucheng.notes.data.local.entity.ItemEntity
+import com.mucheng.notes.data.local.entity.OutboxEntity
+import com.mucheng.notes.data.remote.ExpectedRevision
+import com.mucheng.notes.data.remote.ItemCodec
+import com.mucheng.notes.data.remote.ItemLayout
+import com.mucheng.notes.data.remote.RemoteItemFile
+import com.mucheng.notes.data.remote.RevisionConflictException
 import com.mucheng.notes.data.remote.SyncCursor
 import com.mucheng.notes.data.remote.WebDAVAdapter
+import com.mucheng.notes.data.remote.WorkspaceMeta
 import com.mucheng.notes.domain.model.ItemType
 import com.mucheng.notes.domain.model.SyncConfig
 import com.mucheng.notes.domain.model.SyncModuleTypes
+import com.mucheng.notes.domain.model.SyncPullPriority
 import com.mucheng.notes.domain.model.SyncResult
 import com.mucheng.notes.security.CryptoEngine
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.sync.withPermit
 import kotlinx.coroutines.withContext
+import kotlinx.serialization.encodeToString
 import kotlinx.serialization.json.Json
 import kotlinx.serialization.json.JsonObject
 import kotlinx.serialization.json.JsonPrimitive
 import kotlinx.serialization.json.jsonObject
 import java.util.UUID
+import java.util.concurrent.atomic.AtomicLong
 import javax.inject.Inject
 import javax.inject.Singleton
 
@@ -27,8 +49,40 @@ import javax.inject.Singleton
 class SyncEngine @Inject constructor(
     private val webDAVAdapter: WebDAVAdapter,
     private val itemDao: ItemDao,
-    private val cryptoEngine: CryptoEngine
+    private val cryptoEngine: CryptoEngine,
+    private val changeTracker: ItemChangeTracker,
+    private val payloadBlobStore: PayloadBlobStore,
+    private val outboxDao: OutboxDao,
+    private val resourceSyncManager: ResourceSyncManager,
+    private val dehydratedItemDao: DehydratedItemDao,
+    private val syncSettings: SyncSettings
 ) {
+    companion object {
+        /** 拉取时每个事务写入的最大变更数，提交后即通知列表刷新 */
+        private const val PULL_BATCH_SIZE = 200
+        
+        /** 每次从发件箱取出的操作数 */
+        private const val PUSH_BATCH_SIZE = 100
+        
+        /** 拉取时同时下载的文件数 */
+        private const val DOWNLOAD_CONCURRENCY = 6
+        
+        /** SQLite 绑定参数上限以内的批量查询大小 */
+        private const val ID_QUERY_CHUNK = 500
+        
+        /** 两次检查是否需要重写快照的最小间隔 */
+        private const val SNAPSHOT_CHECK_INTERVAL_MS = 24 * 60 * 60 * 1000L
+        
+        /** 远端文件少于该数量时逐个下载已足够快，不写快照 */
+        private const val SNAPSHOT_MIN_ITEMS = 200
+        
+        /** watermark 之后变化的文件超过该数量时重写快照 */
+        private const val SNAPSHOT_STALE_FILES = 500
+        
+        /** 快照超过该时间且之后有变化时重写 */
+        private const val SNAPSHOT_MAX_AGE_MS = 7 * 24 * 60 * 60 * 1000L
+    }
+    
     private val deviceId = UUID.randomUUID().toString()
     private val json = Json { 
         ignoreUnknownKeys = true 
@@ -38,21 +92,56 @@ class SyncEngine @Inject constructor(
     
     private var config: SyncConfig? = null
     
+    private val downloadPermits = Semaphore(DOWNLOAD_CONCURRENCY)
+    
+    /** 待写入远端正文清单的登记和移除，在下一次完整同步持锁时写入 */
+    private val pendingManifest = LinkedHashMap<String, BodyManifestEntry>()
+    private val pendingManifestRemovals = LinkedHashSet<String>()
+    
+    /** 工作区是否启用压缩编码，由完整同步协商，快速推送沿用上次结果 */
+    @Volatile
+    private var itemDeflate = false
+    
+    /** 本进程内是否已读取远端目录结构，之前的快速推送需先读取 workspace.json */
+    @Volatile
+    private var layoutLoaded = false
+    
+    /** 本次同步或推送传输的项目文件字节数 */
+    private val bytesUploaded = AtomicLong()
+    private val bytesDownloaded = AtomicLong()
+    
+    /** 上次检查快照的时间，只在持有 syncMutex 时读写 */
+    private var lastSnapshotCheckAt = 0L
+    
+    /** 完整同步与快速推送互斥，同一时间只有一个在写远端 */
+    private val syncMutex = Mutex()
+    
+    /** 本进程内是否已验证过远端密钥标识，快速推送只需验证一次 */
+    @Volatile
+    private var keyVerified = false
+    
+    /**
+     * 是否已设置同步配置
+     */
+    val isConfigured: Boolean get() = config != null
+    
     /**
      * 设置同步配置
      */
     fun setConfig(syncConfig: SyncConfig) {
         config = syncConfig
-        // 初始化 WebDAV 适配器
-        if (webDAVAdapter is com.mucheng.notes.data.remote.WebDAVAdapterImpl) {
-            webDAVAdapter.initialize(syncConfig)
-        }
+        keyVerified = false
+        layoutLoaded = false
+        // 按同步类型初始化 WebDAV 或服务器适配器
+        webDAVAdapter.initialize(syncConfig)
     }
     
     /**
      * 执行同步
      */
-    suspend fun sync(): SyncResult = withContext(Dispatchers.IO) {
+    suspend fun sync(): SyncResult = syncMutex.withLock { syncLocked() }
+    
+    private suspend fun syncLocked(): SyncResult = withContext(Dispatchers.IO) {
         val cfg = config ?: return@withContext SyncResult(error = "同步未配置")
         
         if (!cfg.enabled) {
@@ -65,10 +154,12 @@ class SyncEngine @Inject constructor(
         if (!cryptoEngine.hasMasterKey()) {
             android.util.Log.d("SyncEngine", "Master key not set, initializing with default key")
             // 使用默认密钥（与桌面端保持一致）
-            cryptoEngine.initMasterKey("mucheng-default-vault-key-2024")
+            cryptoEngine.initMasterKey(SyncSettings.DEFAULT_VAULT_KEY)
         }
         
         val startTime = System.currentTimeMillis()
+        bytesUploaded.set(0)
+        bytesDownloaded.set(0)
         var pushed = 0
         var pulled = 0
         var conflicts = 0
@@ -91,20 +182,38 @@ class SyncEngine @Inject constructor(
                     if (!keyValid) {
                         return@withContext SyncResult(error = keyError ?: "密钥验证失败")
                     }
+                    keyVerified = true
                 }
                 
+                // 协商工作区能力（压缩编码、目录结构等）
+                negotiateCapabilities(cfg)
+                
+                // 推送会写入 remote_rev，需在推送前判断本机是否从未同步过
+                val firstSync = itemDao.countSynced() == 0
+                
                 // 3. Push 本地变更
                 val pushResult = pushChanges(cfg)
                 pushed = pushResult.count
                 
-                // 4. Pull 远端变更
-                val pullResult = pullChanges(cfg)
+                // 4. Pull 远端变更（按需下载模式先读取正文清单）
+                val manifest = if (cfg.lazyBodies) loadBodyManifest() else null
+                val pullResult = pullChanges(cfg, manifest, firstSync)
                 pulled = pullResult.count
                 conflicts = pullResult.conflicts
                 decryptionFailed = pullResult.decryptionFailed
                 
+                // 无论本机是否启用按需下载都维护正文清单，供其他设备按需下载和新设备排列下载顺序
+                flushBodyManifest(cfg, manifest)
+                
+                // 5. 按需更新快照，供新设备引导；失败不影响本次同步结果
+                try {
+                    maybeWriteSnapshot(cfg)
+                } catch (e: Exception) {
+                    android.util.Log.w("SyncEngine", "Snapshot update failed: ${e.message}")
+                }
+            
             } finally {
-                // 5. 释放锁
+                // 6. 释放锁
                 webDAVAdapter.releaseLock(deviceId)
             }
             
@@ -114,6 +223,8 @@ class SyncEngine @Inject constructor(
                 pulled = pulled,
                 conflicts = conflicts,
                 decryptionFailed = decryptionFailed,
+                bytesUploaded = bytesUploaded.get(),
+                bytesDownloaded = bytesDownloaded.get(),
                 duration = System.currentTimeMillis() - startTime
             )
         } catch (e: Exception) {
@@ -126,28 +237,31 @@ class SyncEngine @Inject constructor(
     
     /**
      * 推送本地变更到远端
+     *
+     * 从发件箱按优先级取出已到重试时间的操作，每个项目只推送其当前状态；
+     * 失败的操作记录次数并按退避时间延后，不影响其他操作。
      */
     private suspend fun pushChanges(cfg: SyncConfig): PushResult {
         val enabledTypes = SyncModuleTypes.getEnabledTypes(cfg.syncModules)
-        val pendingItems = itemDao.getPendingSync()
-            .filter { it.type in enabledTypes }
+        val now = System.currentTimeMillis()
         
         var count = 0
-        for (item in pendingItems) {
-            val itemToUpload = prepareForUpload(item, cfg)
+        while (true) {
+            // 处理过的操作要么出队要么延后到 now 之后，不会被再次取出
+            val due = outboxDao.getDue(now, enabledTypes, PUSH_BATCH_SIZE)
+            if (due.isEmpty()) break
             
-            if (item.syncStatus == "deleted") {
-                // 删除远端项目
-                if (webDAVAdapter.deleteItem(item.id)) {
-                    itemDao.hardDelete(item.id)
-                    count++
-                }
-            } else {
-                // 上传项目
-                val result = webDAVAdapter.putItem(itemToUpload)
-                if (result.isSuccess) {
-                    itemDao.markSynced(item.id, result.getOrThrow())
-                    count++
+            for (entry in due) {
+                try {
+                    if (pushEntry(entry, cfg)) count++
+                } catch (e: Exception) {
+                    android.util.Log.w("SyncEngine", "Push failed for ${entry.kind} ${entry.itemId}: ${e.message}")
+                    outboxDao.markFailed(
+                        entry.itemId,
+                        entry.kind,
+                        System.currentTimeMillis() + OutboxEntity.backoffMs(entry.attempts + 1),
+                        e.message
+                    )
                 }
             }
         }
@@ -155,116 +269,844 @@ class SyncEngine @Inject constructor(
         return PushResult(count)
     }
     
+    /**
+     * 快速推送指定项目
+     *
+     * 本地编辑后由 FastPushCoordinator 防抖调用，只上传这些项目在发件箱中的记录，
+     * 不获取锁、不拉取、不扫描远端目录。采用乐观并发：以本地记录的 remote_rev 做条件写入，
+     * 远端版本不一致说明其他设备已修改，跳过并保留发件箱记录，留给完整同步处理冲突。
+     * 完整同步进行中时直接返回，由完整同步推送。
+     */
+    suspend fun pushItems(ids: Collection<String>): SyncResult = withContext(Dispatchers.IO) {
+        val cfg = config ?: return@withContext SyncResult(error = "同步未配置")
+        if (!cfg.enabled) {
+            return@withContext SyncResult(error = "同步已禁用")
+        }
+        if (!syncMutex.tryLock()) {
+            return@withContext SyncResult(error = "正在同步")
+        }
+        
+        val startTime = System.currentTimeMillis()
+        bytesUploaded.set(0)
+        bytesDownloaded.set(0)
+        try {
+            val enabledTypes = SyncModuleTypes.getEnabledTypes(cfg.syncModules)
+            val entries = ids.toList().chunked(PUSH_BATCH_SIZE)
+                .flatMap { outboxDao.getForItems(it, OutboxEntity.KIND_ITEM) }
+                .filter { it.itemType in enabledTypes }
+            if (entries.isEmpty()) {
+                return@withContext SyncResult(success = true)
+            }
+            
+            if (cfg.encryptionEnabled && !keyVerified) {
+                val (keyValid, keyError) = verifyEncryptionKey()
+                if (!keyValid) {
+                    return@withContext SyncResult(error = keyError ?: "密钥验证失败")
+                }
+                keyVerified = true
+            }
+            
+            // 不知道目录结构时不能定位远端文件
+            if (!layoutLoaded) {
+                loadWorkspaceLayout()
+            }
+            
+            var pushed = 0
+            for (entry in entries) {
+                val item = itemDao.getById(entry.itemId) ?: continue
+                // 删除没有条件请求，仍先比较远端版本
+                if (item.syncStatus == "deleted" && webDAVAdapter.getItemRevision(item.id) != item.remoteRev) {
+                    android.util.Log.d("SyncEngine", "Remote changed for ${item.id}, leaving it to full sync")
+                    continue
+                }
+                try {
+                    if (pushEntry(entry, cfg, conditional = true)) pushed++
+                } catch (e: RevisionConflictException) {
+                    android.util.Log.d("SyncEngine", "Remote changed for ${item.id}, leaving it to full sync")
+                } catch (e: Exception) {
+                    outboxDao.markFailed(
+                        entry.itemId,
+                        entry.kind,
+                        System.currentTimeMillis() + OutboxEntity.backoffMs(entry.attempts + 1),
+                        e.message
+                    )
+                }
+            }
+            
+            SyncResult(
+                success = true,
+                pushed = pushed,
+                bytesUploaded = bytesUploaded.get(),
+                bytesDownloaded = bytesDownloaded.get(),
+                duration = System.currentTimeMillis() - startTime
+            )
+        } catch (e: Exception) {
+            SyncResult(
+                error = e.message ?: "推送失败",
+                duration = System.currentTimeMillis() - startTime
+            )
+        } finally {
+            syncMutex.unlock()
+        }
+    }
+    
+    /**
+     * 推送单个发件箱操作，失败时抛出异常
+     * @param conditional 是否以本地记录的远端版本做条件写入（快速推送不持锁）
+     * @return 是否向远端写入了内容
+     */
+    private suspend fun pushEntry(entry: OutboxEntity, cfg: SyncConfig, conditional: Boolean = false): Boolean {
+        val item = itemDao.getById(entry.itemId)
+        
+        if (entry.kind == OutboxEntity.KIND_RESOURCE) {
+            // 资源记录可能已先于文件推送并标记为 clean，这里只看是否已删除
+            if (item == null || item.deletedTime != null) {
+                outboxDao.complete(entry.itemId, entry.kind, Int.MAX_VALUE)
+                return false
+            }
+            resourceSyncManager.uploadResource(item.id).getOrThrow()
+            outboxDao.complete(entry.itemId, entry.kind, item.localRev)
+            return true
+        }
+        
+        if (item == null || item.syncStatus == "clean") {
+            // 项目已不存在或已被同步（如被远端版本覆盖），无需推送
+            outboxDao.complete(entry.itemId, entry.kind, Int.MAX_VALUE)
+            return false
+        }
+        
+        if (item.syncStatus == "deleted") {
+            // 删除远端项目
+            if (!webDAVAdapter.deleteItem(item.id)) {
+                throw IllegalStateException("Remote delete failed")
+            }
+            itemDao.hardDelete(item.id)
+            dehydratedItemDao.remove(listOf(item.id))
+            outboxDao.removeForItem(item.id)
+            synchronized(pendingManifest) {
+                pendingManifest.remove(item.id)
+                pendingManifestRemovals.add(item.id)
+            }
+            return true
+        }
+        
+        // 正文未下载时（如在列表中改了置顶）先补全正文，避免用不含正文的 payload 覆盖远端
+        val upload = if (dehydratedItemDao.isDehydrated(item.id)) {
+            if (!hydrate(item.id, cfg)) {
+                throw IllegalStateException("Body not downloaded")
+            }
+            itemDao.getById(item.id) ?: return false
+        } else {
+            item
+        }
+        
+        // 上传项目
+        val remoteRev = uploadItem(upload, cfg, if (conditional) ExpectedRevision(upload.remoteRev) else null)
+        // 上传期间又有新修改时保持 modified，发件箱中的新版本会再次推送
+        itemDao.markSyncedAtRevision(upload.id, remoteRev, upload.localRev)
+        outboxDao.complete(entry.itemId, entry.kind, upload.localRev)
+        recordManifestEntry(upload, remoteRev)
+        return true
+    }
+    
     /**
      * 拉取远端变更到本地
+     *
+     * 先用一次目录请求列出变更文件，再并发下载内容。按 [SyncPullPriority] 分层写入：
+     * 笔记、文件夹下载到即提交并通知界面，其余各层每攒满一批提交一次，内存中每层最多保留一批。
+     * 下载顺序按下载前已知的类型排列：本地已有（含快照导入）的项目按本地类型，其余按正文清单，
+     * 仍未知类型的文件放到最后一轮下载，首次同步时笔记列表不必等待大量 AI 消息。
+     *
+     * 按需下载模式下，正文清单中版本与目录列表一致的项目只写入不含正文的行，不下载文件。
+     *
+     * 本机从未同步过时先用远端快照引导，再从快照的 watermark 起增量拉取。
      */
-    private suspend fun pullChanges(cfg: SyncConfig): PullResult {
+    private suspend fun pullChanges(cfg: SyncConfig, manifest: BodyManifest?, firstSync: Boolean): PullResult {
         val enabledTypes = SyncModuleTypes.getEnabledTypes(cfg.syncModules)
         
-        // 首次同步时使用 null 游标，获取所有文件
-        // 后续同步时从 WebDAV 服务器读取游标
-        val serverCursor = webDAVAdapter.getSyncCursor()
-        // 如果服务器游标为空或时间戳为 0，视为首次同步
-        val cursor = if (serverCursor == null || serverCursor.timestamp == 0L) null else serverCursor.cursor
+        val stats = PullStats()
         
-        var count = 0
-        var conflicts = 0
-        var decryptionFailed = 0
-        var nextCursor = cursor
+        // 本机从未同步过时不使用远端游标（游标由各设备共用），有快照时先导入快照
+        // 后续同步时从 WebDAV 服务器读取游标
+        val bootstrap = if (firstSync) bootstrapFromSnapshot(cfg, stats) else null
+        val cursor = when {
+            bootstrap != null -> bootstrap.watermark.toString()
+            firstSync -> null
+            else -> {
+                val serverCursor = webDAVAdapter.getSyncCursor()
+                // 如果服务器游标为空或时间戳为 0，视为首次同步
+                if (serverCursor == null || serverCursor.timestamp == 0L) null else serverCursor.cursor
+            }
+        }
         
         android.util.Log.d("SyncEngine", "Starting pull, cursor=$cursor, isFirstSync=${cursor == null}, enabledTypes=$enabledTypes")
         android.util.Log.d("SyncEngine", "SyncModules: notes=${cfg.syncModules.notes}, bookmarks=${cfg.syncModules.bookmarks}, vault=${cfg.syncModules.vault}")
         
-        do {
-            val result = webDAVAdapter.listChanges(nextCursor)
-            android.util.Log.d("SyncEngine", "Got ${result.changes.size} changes, hasMore=${result.hasMore}")
-            
-            // 打印所有变更的类型，帮助调试
-            result.changes.forEach { change ->
-                android.util.Log.d("SyncEngine", "Change available: id=${change.id}, type=${change.type}, inEnabled=${change.type in enabledTypes}")
-            }
-            
-            for (change in result.changes) {
-                if (change.type !in enabledTypes) {
-                    android.util.Log.d("SyncEngine", "Skipping change ${change.id}, type ${change.type} not enabled")
+        val listed = webDAVAdapter.listItemFiles(cursor)
+        if (listed.isEmpty()) {
+            return PullResult(stats.count, stats.conflicts, stats.decryptionFailed)
+        }
+        
+        // 快照中已有相同版本的文件不再下载
+        val changed = if (bootstrap != null) listed.filter { it.etag == null || bootstrap.revisions[it.id] != it.etag } else listed
+        val files = if (manifest != null) applyManifestStubs(changed, manifest, enabledTypes, stats) else changed
+        
+        // 下载前确定各文件所在的层；本机首次同步时即使未启用按需下载也读取正文清单作为类型提示
+        val knownTiers = HashMap<String, Int>()
+        val typeHints = (manifest ?: if (firstSync) loadBodyManifest() else null)?.entries.orEmpty()
+        for (file in files) {
+            typeHints[file.id]?.let { knownTiers[file.id] = SyncPullPriority.tierOf(it.type) }
+        }
+        files.map { it.id }
+            .chunked(ID_QUERY_CHUNK)
+            .flatMap { itemDao.getRefs(it) }
+            .forEach { knownTiers[it.id] = SyncPullPriority.tierOf(it.type) }
+        val (hinted, unknown) = files.partition { it.id in knownTiers }
+        val ordered = hinted.sortedBy { knownTiers.getValue(it.id) } + unknown
+        
+        val pendingTiers = List(SyncPullPriority.TIERS.size) { mutableListOf<ItemEntity>() }
+        var failedFrom: Long? = null
+        
+        for (window in ordered.chunked(PULL_BATCH_SIZE)) {
+            val fetched = fetchItems(window)
+            for ((file, remoteItem) in fetched) {
+                if (remoteItem == null) {
+                    // 下载失败的文件不推进游标，下次同步重新拉取
+                    failedFrom = minOf(failedFrom ?: file.modified, file.modified)
                     continue
                 }
-                
-                val remoteItem = change.item
-                if (remoteItem == null) {
-                    android.util.Log.w("SyncEngine", "Change ${change.id} has no item data")
+                if (remoteItem.type !in enabledTypes) {
+                    android.util.Log.d("SyncEngine", "Skipping change ${remoteItem.id}, type ${remoteItem.type} not enabled")
                     continue
                 }
-                
-                val localItem = itemDao.getById(remoteItem.id)
-                android.util.Log.d("SyncEngine", "Processing change: id=${remoteItem.id}, type=${remoteItem.type}, localExists=${localItem != null}, localStatus=${localItem?.syncStatus}")
-                
-                if (localItem == null) {
-                    // 本地不存在，直接插入
-                    val decryptedItem = prepareForLocal(remoteItem, cfg)
-                    if (decryptedItem == null) {
-                        android.util.Log.e("SyncEngine", "Failed to decrypt new item ${remoteItem.id}, skipping")
-                        decryptionFailed++
-                        continue
+                pendingTiers[SyncPullPriority.tierOf(remoteItem.type)].add(remoteItem)
+            }
+            
+            // 第一层下载到即写入，其余各层攒满一批写入
+            for ((tier, pending) in pendingTiers.withIndex()) {
+                if (tier == 0 || pending.size >= PULL_BATCH_SIZE) {
+                    applyRemoteItems(pending, cfg, stats)
+                    pending.clear()
+                }
+            }
+        }
+        
+        // 按层顺序提交各层剩余的项目
+        for (tier in 1 until pendingTiers.size) {
+            applyRemoteItems(pendingTiers[tier], cfg, stats)
+        }
+        
+        // 更新同步游标
+        val nextCursor = failedFrom ?: (listed.maxOf { it.modified } + 1)
+        webDAVAdapter.setSyncCursor(SyncCursor(nextCursor.toString(), System.currentTimeMillis()))
+        
+        android.util.Log.d("SyncEngine", "Pull completed: count=${stats.count}, conflicts=${stats.conflicts}, decryptionFailed=${stats.decryptionFailed}")
+        return PullResult(stats.count, stats.conflicts, stats.decryptionFailed)
+    }
+    
+    /**
+     * 并发下载一批项目文件，失败的文件对应 null
+     *
+     * 列出后已不存在的文件（其他设备刚删除，或服务器变更日志指向已清除的项目）重试也无法拉取，
+     * 直接跳过，不阻塞游标。
+     */
+    private suspend fun fetchItems(files: List<RemoteItemFile>): List<Pair<RemoteItemFile, ItemEntity?>> = coroutineScope {
+        files.map { file ->
+            async {
+                downloadPermits.withPermit {
+                    val item = try {
+                        readItem(file.id) ?: return@withPermit null
+                    } catch (e: Exception) {
+                        android.util.Log.e("SyncEngine", "Failed to download item ${file.id}: ${e.message}")
+                        null
                     }
-                    itemDao.upsert(decryptedItem.copy(syncStatus = "clean"))
-                    android.util.Log.d("SyncEngine", "Inserted new item: ${remoteItem.id}")
-                    count++
-                } else if (localItem.syncStatus == "clean") {
-                    // 本地未修改，检查内容是否有变化
-                    if (localItem.contentHash != remoteItem.contentHash) {
-                        // 内容有变化，更新
+                    // 以文件 ETag 作为远端版本号
+                    file to item?.let { it.copy(remoteRev = file.etag ?: it.remoteRev) }
+                }
+            }
+        }.awaitAll().filterNotNull()
+    }
+    
+    /**
+     * 将一批远端项目写入本地，每个事务提交后只通知受影响的类型
+     */
+    private suspend fun applyRemoteItems(items: List<ItemEntity>, cfg: SyncConfig, stats: PullStats) {
+        for (batch in items.sortedBy { it.updatedTime }.chunked(PULL_BATCH_SIZE)) {
+            changeTracker.transaction {
+                val dehydrated = dehydratedItemDao.filterDehydrated(batch.map { it.id }).toSet()
+                val hydrated = mutableListOf<String>()
+                for (remoteItem in batch) {
+                    val localItem = itemDao.getById(remoteItem.id)
+                    android.util.Log.d("SyncEngine", "Processing change: id=${remoteItem.id}, type=${remoteItem.type}, localExists=${localItem != null}, localStatus=${localItem?.syncStatus}")
+                    
+                    if (localItem == null) {
+                        // 本地不存在，直接插入
                         val decryptedItem = prepareForLocal(remoteItem, cfg)
                         if (decryptedItem == null) {
-                            android.util.Log.e("SyncEngine", "Failed to decrypt updated item ${remoteItem.id}, skipping")
-                            decryptionFailed++
+                            android.util.Log.e("SyncEngine", "Failed to decrypt new item ${remoteItem.id}, skipping")
+                            stats.decryptionFailed++
                             continue
                         }
                         itemDao.upsert(decryptedItem.copy(syncStatus = "clean"))
-                        android.util.Log.d("SyncEngine", "Updated existing item: ${remoteItem.id}")
-                        count++
+                        upserted(decryptedItem, isNew = true)
+                        recordManifestEntry(decryptedItem, remoteItem.remoteRev)
+                        android.util.Log.d("SyncEngine", "Inserted new item: ${remoteItem.id}")
+                        stats.count++
+                    } else if (localItem.id in dehydrated && localItem.syncStatus != "clean") {
+                        // 正文未下载时本地只可能改过列表字段，合并远端正文后仍待推送
+                        val decryptedItem = prepareForLocal(remoteItem, cfg)
+                        if (decryptedItem == null) {
+                            android.util.Log.e("SyncEngine", "Failed to decrypt body for ${remoteItem.id}, skipping")
+                            stats.decryptionFailed++
+                            continue
+                        }
+                        itemDao.upsert(withBody(localItem, decryptedItem))
+                        updated(localItem.type, localItem.id)
+                        hydrated.add(localItem.id)
+                        stats.count++
+                    } else if (localItem.syncStatus == "clean") {
+                        // 本地未修改，检查内容是否有变化；正文未下载的行总是用完整内容替换
+                        if (localItem.contentHash != remoteItem.contentHash || localItem.id in dehydrated) {
+                            // 内容有变化，更新
+                            val decryptedItem = prepareForLocal(remoteItem, cfg)
+                            if (decryptedItem == null) {
+                                android.util.Log.e("SyncEngine", "Failed to decrypt updated item ${remoteItem.id}, skipping")
+                                stats.decryptionFailed++
+                                continue
+                            }
+                            itemDao.upsert(decryptedItem.copy(syncStatus = "clean"))
+                            upserted(decryptedItem, isNew = false)
+                            if (localItem.id in dehydrated) hydrated.add(localItem.id)
+                            recordManifestEntry(decryptedItem, remoteItem.remoteRev)
+                            android.util.Log.d("SyncEngine", "Updated existing item: ${remoteItem.id}")
+                            stats.count++
+                        } else {
+                            android.util.Log.d("SyncEngine", "Skipping unchanged item: ${remoteItem.id}")
+                            // 内容相同但远端版本号不同（如旧版本以时间戳作为版本号），对齐后快速推送才能比较
+                            if (remoteItem.remoteRev != null && remoteItem.remoteRev != localItem.remoteRev) {
+                                itemDao.updateRemoteRev(localItem.id, remoteItem.remoteRev)
+                            }
+                        }
                     } else {
-                        android.util.Log.d("SyncEngine", "Skipping unchanged item: ${remoteItem.id}")
+                        // 冲突处理：创建冲突副本
+                        android.util.Log.d("SyncEngine", "Conflict detected for item: ${remoteItem.id}")
+                        // 副本使用新 ID，需带上完整的大字段
+                        val conflictItem = createConflictCopy(payloadBlobStore.inline(localItem))
+                        itemDao.upsert(conflictItem)
+                        inserted(conflictItem.type, conflictItem.id)
+                        
+                        val decryptedItem = prepareForLocal(remoteItem, cfg)
+                        if (decryptedItem == null) {
+                            android.util.Log.e("SyncEngine", "Failed to decrypt conflicting item ${remoteItem.id}, skipping")
+                            stats.decryptionFailed++
+                            continue
+                        }
+                        itemDao.upsert(decryptedItem.copy(syncStatus = "clean"))
+                        upserted(decryptedItem, isNew = false)
+                        
+                        stats.count++
+                        stats.conflicts++
                     }
-                } else {
-                    // 冲突处理：创建冲突副本
-                    android.util.Log.d("SyncEngine", "Conflict detected for item: ${remoteItem.id}")
-                    val conflictItem = createConflictCopy(localItem)
-                    itemDao.upsert(conflictItem)
-                    
-                    val decryptedItem = prepareForLocal(remoteItem, cfg)
-                    if (decryptedItem == null) {
-                        android.util.Log.e("SyncEngine", "Failed to decrypt conflicting item ${remoteItem.id}, skipping")
-                        decryptionFailed++
-                        continue
+                }
+                if (hydrated.isNotEmpty()) {
+                    dehydratedItemDao.remove(hydrated)
+                }
+            }
+        }
+    }
+    
+    /**
+     * 按正文清单写入不含正文的行，返回仍需完整下载的文件
+     *
+     * 清单版本与目录列表的 ETag 一致时，本地不存在或正文本就未下载的项目直接写入清单中的
+     * 内容并登记到 dehydrated_items；本地已有完整正文或有未推送修改的项目照常下载。
+     */
+    private suspend fun applyManifestStubs(
+        files: List<RemoteItemFile>,
+        manifest: BodyManifest,
+        enabledTypes: List<String>,
+        stats: PullStats
+    ): List<RemoteItemFile> {
+        val candidates = files.mapNotNull { file ->
+            val entry = manifest.entries[file.id] ?: return@mapNotNull null
+            if (file.etag == null || entry.rev != file.etag) return@mapNotNull null
+            if (entry.type !in enabledTypes || !LazyBodies.isLazyType(entry.type)) return@mapNotNull null
+            file to entry
+        }
+        if (candidates.isEmpty()) return files
+        
+        val download = HashSet<String>()
+        val now = System.currentTimeMillis()
+        for (batch in candidates.sortedBy { SyncPullPriority.tierOf(it.second.type) }.chunked(PULL_BATCH_SIZE)) {
+            changeTracker.transaction {
+                val dehydrated = dehydratedItemDao.filterDehydrated(batch.map { it.first.id }).toSet()
+                val stubs = mutableListOf<DehydratedItemEntity>()
+                for ((file, entry) in batch) {
+                    val localItem = itemDao.getById(file.id)
+                    when {
+                        localItem != null && localItem.syncStatus == "clean" && localItem.contentHash == entry.contentHash -> {
+                            if (localItem.remoteRev != file.etag) {
+                                itemDao.updateRemoteRev(localItem.id, file.etag!!)
+                            }
+                        }
+                        localItem == null || (localItem.id in dehydrated && localItem.syncStatus == "clean") -> {
+                            val stub = ItemEntity(
+                                id = file.id,
+                                type = entry.type,
+                                createdTime = entry.createdTime,
+                                updatedTime = entry.updatedTime,
+                                deletedTime = entry.deletedTime,
+                                payload = entry.stub,
+                                contentHash = entry.contentHash,
+                                syncStatus = "clean",
+                                remoteRev = file.etag
+                            )
+                            itemDao.upsert(stub)
+                            upserted(stub, isNew = localItem == null)
+                            stubs.add(DehydratedItemEntity(file.id, entry.type, file.etag, now))
+                            stats.count++
+                        }
+                        else -> download.add(file.id)
                     }
-                    itemDao.upsert(decryptedItem.copy(syncStatus = "clean"))
-                    
-                    count++
-                    conflicts++
+                }
+                if (stubs.isNotEmpty()) {
+                    dehydratedItemDao.upsertAll(stubs)
                 }
             }
-            
-            nextCursor = result.nextCursor
-        } while (result.hasMore && nextCursor != null)
+        }
         
-        // 更新同步游标
-        if (nextCursor != null) {
-            webDAVAdapter.setSyncCursor(SyncCursor(nextCursor, System.currentTimeMillis()))
+        val stubbed = candidates.mapTo(HashSet()) { it.first.id } - download
+        android.util.Log.d("SyncEngine", "Applied ${stubbed.size} items from body manifest without downloading")
+        return files.filter { it.id !in stubbed }
+    }
+    
+    /**
+     * 把远端正文合并进正文未下载的本地行，本地改过的列表字段保留
+     */
+    private fun withBody(localItem: ItemEntity, remoteItem: ItemEntity): ItemEntity {
+        val payload = LazyBodies.mergeBody(localItem.type, localItem.payload, remoteItem.payload)
+        // 与 ItemRepositoryImpl 的内容哈希一致（SHA-256 前 16 位）
+        return localItem.copy(payload = payload, contentHash = cryptoEngine.computeHash(payload).take(16))
+    }
+    
+    /**
+     * 下载正文未下载项目的完整内容（打开项目时调用）
+     * @return 正文是否已可用
+     */
+    suspend fun hydrateItem(id: String): Boolean {
+        if (!dehydratedItemDao.isDehydrated(id)) return true
+        return hydrateItems(listOf(id)) == 1
+    }
+    
+    /**
+     * 并发下载多个项目的正文，返回成功数
+     */
+    suspend fun hydrateItems(ids: List<String>): Int = withContext(Dispatchers.IO) {
+        val cfg = config ?: return@withContext 0
+        coroutineScope {
+            ids.map { id ->
+                async {
+                    downloadPermits.withPermit {
+                        try {
+                            hydrate(id, cfg)
+                        } catch (e: Exception) {
+                            android.util.Log.e("SyncEngine", "Failed to download body for $id: ${e.message}")
+                            false
+                        }
+                    }
+                }
+            }.awaitAll()
+        }.count { it }
+    }
+    
+    private suspend fun hydrate(id: String, cfg: SyncConfig): Boolean {
+        val remoteItem = downloadItem(id) ?: return false
+        val decryptedItem = prepareForLocal(remoteItem, cfg) ?: return false
+        
+        changeTracker.transaction {
+            val localItem = itemDao.getById(id)
+            if (localItem != null && dehydratedItemDao.isDehydrated(id)) {
+                // 远端版本号保持本地记录的值，下次拉取时按哈希对齐
+                val full = if (localItem.syncStatus == "clean") {
+                    decryptedItem.copy(syncStatus = "clean", remoteRev = localItem.remoteRev)
+                } else {
+                    withBody(localItem, decryptedItem)
+                }
+                itemDao.upsert(full)
+                upserted(full, isNew = false)
+            }
+            dehydratedItemDao.remove(listOf(id))
+        }
+        return true
+    }
+    
+    /**
+     * 登记一项到待写入的正文清单（[item] 为明文 payload）
+     */
+    private fun recordManifestEntry(item: ItemEntity, rev: String?) {
+        if (rev == null || !LazyBodies.isLazyType(item.type)) return
+        val stub = LazyBodies.stub(item.type, item.payload) ?: return
+        val entry = BodyManifestEntry(
+            type = item.type,
+            createdTime = item.createdTime,
+            updatedTime = item.updatedTime,
+            deletedTime = item.deletedTime,
+            contentHash = item.contentHash,
+            rev = rev,
+            stub = stub
+        )
+        synchronized(pendingManifest) {
+            pendingManifest[item.id] = entry
+            pendingManifestRemovals.remove(item.id)
+        }
+    }
+    
+    /**
+     * 读取远端正文清单，不存在时返回空清单，无法解析时返回 null
+     */
+    private suspend fun loadBodyManifest(): BodyManifest? {
+        return try {
+            val raw = webDAVAdapter.getBodyManifest() ?: return BodyManifest()
+            val file = json.decodeFromString<BodyManifestFile>(raw)
+            val data = if (file.encrypted) cryptoEngine.decryptPayload(file.data) else file.data
+            json.decodeFromString<BodyManifest>(data)
+        } catch (e: Exception) {
+            android.util.Log.w("SyncEngine", "Body manifest unavailable: ${e.message}")
+            null
+        }
+    }
+    
+    /**
+     * 将登记的变化写入远端正文清单（持锁时调用）
+     */
+    private suspend fun flushBodyManifest(cfg: SyncConfig, base: BodyManifest?) {
+        val (updates, removals) = synchronized(pendingManifest) {
+            val snapshot = HashMap(pendingManifest) to HashSet(pendingManifestRemovals)
+            pendingManifest.clear()
+            pendingManifestRemovals.clear()
+            snapshot
         }
+        if (updates.isEmpty() && removals.isEmpty()) return
+        
+        val entries = HashMap((base ?: loadBodyManifest() ?: BodyManifest()).entries)
+        entries.putAll(updates)
+        removals.forEach { entries.remove(it) }
         
-        android.util.Log.d("SyncEngine", "Pull completed: count=$count, conflicts=$conflicts, decryptionFailed=$decryptionFailed")
-        return PullResult(count, conflicts, decryptionFailed)
+        val data = json.encodeToString(BodyManifest(entries = entries))
+        val encrypt = cfg.encryptionEnabled && cryptoEngine.hasMasterKey()
+        val file = BodyManifestFile(encrypt, if (encrypt) cryptoEngine.encryptPayload(data) else data)
+        if (!webDAVAdapter.putBodyManifest(json.encodeToString(file))) {
+            // 写入失败时保留登记，下次同步再写
+            synchronized(pendingManifest) {
+                updates.forEach { (id, entry) -> pendingManifest.putIfAbsent(id, entry) }
+                pendingManifestRemovals.addAll(removals)
+            }
+        }
     }
     
     /**
-     * 准备上传的项目（加密处理）
+     * 从远端快照导入项目（本机首次同步时调用）
+     *
+     * 每个分片一次请求，分片已按 [SyncPullPriority] 排序，笔记最先写入。
+     * 没有快照或读取失败时返回 null，按原方式完整拉取；已写入的部分与远端一致，
+     * 完整拉取时按内容哈希跳过。
      */
-    private fun prepareForUpload(item: ItemEntity, cfg: SyncConfig): ItemEntity {
-        val isSensitive = ItemType.SENSITIVE_TYPES.any { it.value == item.type }
-        val shouldEncrypt = (cfg.encryptionEnabled || isSensitive) && cryptoEngine.hasMasterKey()
+    private suspend fun bootstrapFromSnapshot(cfg: SyncConfig, stats: PullStats): SnapshotBootstrap? {
+        val index = loadSnapshotIndex() ?: return null
+        if (index.encrypted && !cryptoEngine.hasMasterKey()) return null
+        
+        val enabledTypes = SyncModuleTypes.getEnabledTypes(cfg.syncModules)
+        val decrypt: ((String) -> String)? = if (index.encrypted) cryptoEngine::decryptPayload else null
+        val revisions = HashMap<String, String?>()
+        return try {
+            for (part in index.parts) {
+                val data = webDAVAdapter.getSnapshotFile(part.name)
+                    ?: throw IllegalStateException("Missing snapshot part ${part.name}")
+                bytesDownloaded.addAndGet(data.size.toLong())
+                val items = SnapshotBundle.unpack(data, json, decrypt).filter { it.type in enabledTypes }
+                applyRemoteItems(items, cfg, stats)
+                items.forEach { revisions[it.id] = it.remoteRev }
+            }
+            android.util.Log.d("SyncEngine", "Bootstrapped ${revisions.size} items from snapshot, watermark=${index.watermark}")
+            SnapshotBootstrap(index.watermark, revisions)
+        } catch (e: Exception) {
+            android.util.Log.w("SyncEngine", "Snapshot bootstrap failed, falling back to full pull: ${e.message}")
+            null
+        }
+    }
+    
+    /**
+     * 读取远端快照索引，不存在、无法解析或格式版本更新时返回 null
+     */
+    private suspend fun loadSnapshotIndex(): SnapshotIndex? {
+        return try {
+            val raw = webDAVAdapter.getSnapshotFile(SnapshotBundle.INDEX_FILE) ?: return null
+            json.decodeFromString<SnapshotIndex>(raw.toString(Charsets.UTF_8))
+                .takeIf { it.version <= SnapshotBundle.FORMAT_VERSION }
+        } catch (e: Exception) {
+            android.util.Log.w("SyncEngine", "Snapshot index unavailable: ${e.message}")
+            null
+        }
+    }
+    
+    /**
+     * 按需重写远端快照（完整同步持锁时调用）
+     *
+     * 每 [SNAPSHOT_CHECK_INTERVAL_MS] 最多检查一次。远端文件达到 [SNAPSHOT_MIN_ITEMS] 个时，
+     * 没有快照、watermark 之后变化的文件超过 [SNAPSHOT_STALE_FILES] 个、
+     * 或快照超过 [SNAPSHOT_MAX_AGE_MS] 且之后有变化时重写。按需下载模式下本地正文不全，不写快照。
+     */
+    private suspend fun maybeWriteSnapshot(cfg: SyncConfig) {
+        if (cfg.lazyBodies) return
+        val now = System.currentTimeMillis()
+        if (now - lastSnapshotCheckAt < SNAPSHOT_CHECK_INTERVAL_MS) return
+        lastSnapshotCheckAt = now
+        
+        val files = webDAVAdapter.listItemFiles(null)
+        if (files.size < SNAPSHOT_MIN_ITEMS) return
+        
+        val current = loadSnapshotIndex()
+        if (current != null) {
+            val changedSince = files.count { it.modified >= current.watermark }
+            val expired = now - current.createdAt >= SNAPSHOT_MAX_AGE_MS
+            if (changedSince < SNAPSHOT_STALE_FILES && !(expired && changedSince > 0)) return
+        }
+        writeSnapshot(cfg, files, current)
+    }
+    
+    /**
+     * 用本地已与远端一致的项目写入新快照
+     *
+     * 只打包同步状态为 clean 且 remote_rev 与文件 ETag 相同的项目，不需要下载任何文件；
+     * 其余文件的修改时间拉低 watermark。未能打包的文件超过一成时（如未启用全部同步模块）
+     * 快照意义不大，放弃写入。先写分片再写索引，最后删除旧快照的分片。
+     */
+    private suspend fun writeSnapshot(cfg: SyncConfig, files: List<RemoteItemFile>, previous: SnapshotIndex?) {
+        val createdAt = System.currentTimeMillis()
+        var watermark = files.maxOf { it.modified } + 1
+        
+        // 第一遍只确定可打包的项目及其层级，不一次载入全部内容
+        val eligible = mutableListOf<Pair<RemoteItemFile, Int>>()
+        for (chunk in files.chunked(ID_QUERY_CHUNK)) {
+            val ids = chunk.map { it.id }
+            val local = itemDao.getByIds(ids).associateBy { it.id }
+            val dehydrated = dehydratedItemDao.filterDehydrated(ids).toSet()
+            for (file in chunk) {
+                val item = local[file.id]
+                if (item != null && file.id !in dehydrated && isSnapshotReady(item, file)) {
+                    eligible.add(file to SyncPullPriority.tierOf(item.type))
+                } else {
+                    watermark = minOf(watermark, file.modified)
+                }
+            }
+        }
+        if (files.size - eligible.size > files.size / 10) {
+            android.util.Log.d("SyncEngine", "Skipping snapshot: only ${eligible.size}/${files.size} files are up to date locally")
+            return
+        }
+        
+        val encrypt = cfg.encryptionEnabled && cryptoEngine.hasMasterKey()
+        val seal: ((String) -> String)? = if (encrypt) cryptoEngine::encryptPayload else null
+        val parts = mutableListOf<SnapshotPart>()
+        var itemCount = 0
+        val ordered = eligible.sortedBy { it.second }.map { it.first }
+        for ((index, chunk) in ordered.chunked(SnapshotBundle.PART_SIZE).withIndex()) {
+            val local = chunk.map { it.id }
+                .chunked(ID_QUERY_CHUNK)
+                .flatMap { itemDao.getByIds(it) }
+                .associateBy { it.id }
+            val items = mutableListOf<ItemEntity>()
+            for (file in chunk) {
+                // 两遍之间被本地修改的项目不再打包
+                val item = local[file.id]
+                if (item != null && isSnapshotReady(item, file)) {
+                    items.add(prepareForUpload(item, cfg).copy(remoteRev = file.etag))
+                } else {
+                    watermark = minOf(watermark, file.modified)
+                }
+            }
+            
+            val name = SnapshotBundle.partName(createdAt, index)
+            val data = SnapshotBundle.pack(items, json, seal)
+            if (!webDAVAdapter.putSnapshotFile(name, data)) {
+                parts.forEach { webDAVAdapter.deleteSnapshotFile(it.name) }
+                return
+            }
+            bytesUploaded.addAndGet(data.size.toLong())
+            parts.add(SnapshotPart(name, items.size, data.size))
+            itemCount += items.size
+        }
+        
+        val index = SnapshotIndex(
+            createdAt = createdAt,
+            watermark = watermark,
+            encrypted = encrypt,
+            itemCount = itemCount,
+            parts = parts
+        )
+        if (!webDAVAdapter.putSnapshotFile(SnapshotBundle.INDEX_FILE, json.encodeToString(index).toByteArray())) {
+            parts.forEach { webDAVAdapter.deleteSnapshotFile(it.name) }
+            return
+        }
+        previous?.parts?.forEach { webDAVAdapter.deleteSnapshotFile(it.name) }
+        android.util.Log.d("SyncEngine", "Wrote snapshot: $itemCount items in ${parts.size} parts, watermark=$watermark")
+    }
+    
+    private fun isSnapshotReady(item: ItemEntity, file: RemoteItemFile): Boolean {
+        return item.syncStatus == "clean" && file.etag != null && item.remoteRev == file.etag
+    }
+    
+    /**
+     * 上传一个项目文件，工作区启用压缩编码时使用 [ItemCodec]，否则为 JSON
+     * @return 远端版本号
+     */
+    private suspend fun uploadItem(localItem: ItemEntity, cfg: SyncConfig, expected: ExpectedRevision?): String {
+        // 恢复移出到 item_blobs 的缩略图等字段，保持与桌面端格式一致
+        val item = payloadBlobStore.inline(localItem)
+        val data = if (itemDeflate) {
+            ItemCodec.encode(item, if (shouldEncrypt(item, cfg)) cryptoEngine::encryptBytes else null)
+        } else {
+            encodeJson(item, cfg)
+        }
+        val remoteRev = webDAVAdapter.putItemData(item.id, data, expected).getOrThrow()
+        bytesUploaded.addAndGet(data.size.toLong())
+        return remoteRev
+    }
+    
+    /**
+     * 下载并解析一个项目文件，文件不存在或无法读取时返回 null
+     *
+     * 兼容 JSON 和压缩编码；压缩编码的加密正文在这里解密，返回的 payload 已是明文。
+     */
+    private suspend fun downloadItem(id: String): ItemEntity? {
+        return try {
+            readItem(id)
+        } catch (e: Exception) {
+            android.util.Log.e("SyncEngine", "Failed to download item $id: ${e.message}")
+            null
+        }
+    }
+    
+    /**
+     * 下载并解码项目文件，不存在时返回 null，其他错误抛出异常
+     */
+    private suspend fun readItem(id: String): ItemEntity? {
+        val data = webDAVAdapter.getItemData(id) ?: return null
+        bytesDownloaded.addAndGet(data.size.toLong())
+        return if (ItemCodec.isEncoded(data)) {
+            ItemCodec.decode(data, cryptoEngine::decryptBytes)
+        } else {
+            json.decodeFromString<ItemEntity>(data.toString(Charsets.UTF_8))
+        }
+    }
+    
+    /**
+     * 登记本机能力并协商工作区能力（持锁时调用）
+     *
+     * 按协商结果迁移远端目录结构，停用压缩编码后把远端压缩文件改写回 JSON。
+     * 压缩编码协商失败时按 JSON 上传；读取不到 workspace.json 或目录迁移失败且无法回退时
+     * 抛出异常中止同步，避免按错误的目录结构读写项目文件。
+     */
+    private suspend fun negotiateCapabilities(cfg: SyncConfig) {
+        val meta = webDAVAdapter.getWorkspaceMeta() ?: WorkspaceMeta()
+        val sharded = meta.item_layout == ItemLayout.SHARDED
+        webDAVAdapter.setShardedLayout(sharded)
+        itemDeflate = false
+        layoutLoaded = true
+        
+        val requested = buildSet {
+            if (cfg.compressItems) add(WorkspaceCapabilities.ITEM_DEFLATE)
+            if (cfg.shardedLayout) add(WorkspaceCapabilities.SHARDED_LAYOUT)
+        }
+        val result = WorkspaceCapabilities.negotiate(
+            meta,
+            syncSettings.deviceId,
+            requested,
+            System.currentTimeMillis(),
+            webDAVAdapter.supportedCapabilities
+        )
+        var updated = result.meta
+        
+        if (result.shardedLayout != sharded) {
+            if (webDAVAdapter.migrateItemLayout(result.shardedLayout)) {
+                updated = updated.copy(item_layout = if (result.shardedLayout) ItemLayout.SHARDED else ItemLayout.FLAT)
+            } else if (webDAVAdapter.migrateItemLayout(sharded)) {
+                // 已移动的文件移回原结构，本次按原结构同步，下次同步再迁移
+                android.util.Log.w("SyncEngine", "Item layout migration failed, staying on ${meta.item_layout}")
+            } else {
+                throw IllegalStateException("远端目录迁移未完成，请稍后重试")
+            }
+        }
         
-        return if (shouldEncrypt) {
+        try {
+            if (updated.deflate_cleanup && rewriteEncodedItems(cfg)) {
+                updated = updated.copy(deflate_cleanup = false)
+            }
+            // 未能登记时不启用压缩编码，JSON 所有客户端都能读取
+            val registered = updated == meta || webDAVAdapter.putWorkspaceMeta(updated)
+            itemDeflate = registered && result.itemDeflate
+        } catch (e: Exception) {
+            android.util.Log.w("SyncEngine", "Capability negotiation failed: ${e.message}")
+        }
+    }
+    
+    /**
+     * 读取工作区当前的目录结构和压缩编码，不登记、不迁移
+     * 供本进程内第一次完整同步之前的快速推送使用
+     */
+    private suspend fun loadWorkspaceLayout() {
+        val meta = webDAVAdapter.getWorkspaceMeta() ?: WorkspaceMeta()
+        webDAVAdapter.setShardedLayout(meta.item_layout == ItemLayout.SHARDED)
+        itemDeflate = WorkspaceCapabilities.ITEM_DEFLATE in meta.capabilities
+        layoutLoaded = true
+    }
+    
+    /**
+     * 把远端压缩编码的项目文件改写为 JSON，让不支持的客户端能读取
+     * 需要下载全部文件才能判断编码，只在停用压缩编码后执行一次
+     * @return 是否全部改写完成
+     */
+    private suspend fun rewriteEncodedItems(cfg: SyncConfig): Boolean = coroutineScope {
+        val files = webDAVAdapter.listItemFiles(null)
+        android.util.Log.d("SyncEngine", "Rewriting compressed item files as JSON, checking ${files.size} files")
+        files.map { file ->
+            async {
+                downloadPermits.withPermit {
+                    try {
+                        val data = webDAVAdapter.getItemData(file.id) ?: return@withPermit true
+                        bytesDownloaded.addAndGet(data.size.toLong())
+                        if (!ItemCodec.isEncoded(data)) return@withPermit true
+                        
+                        val encoded = encodeJson(ItemCodec.decode(data, cryptoEngine::decryptBytes), cfg)
+                        webDAVAdapter.putItemData(file.id, encoded).getOrThrow()
+                        bytesUploaded.addAndGet(encoded.size.toLong())
+                        true
+                    } catch (e: Exception) {
+                        android.util.Log.w("SyncEngine", "Failed to rewrite ${file.id}: ${e.message}")
+                        false
+                    }
+                }
+            }
+        }.awaitAll().all { it }
+    }
+    
+    /**
+     * 准备上传的项目（内联大字段、加密处理）
+     */
+    private suspend fun prepareForUpload(localItem: ItemEntity, cfg: SyncConfig): ItemEntity {
+        // 恢复移出到 item_blobs 的缩略图等字段，保持与桌面端格式一致
+        return encryptForUpload(payloadBlobStore.inline(localItem), cfg)
+    }
+    
+    /**
+     * 按 JSON 格式编码明文项目
+     */
+    private fun encodeJson(item: ItemEntity, cfg: SyncConfig): ByteArray {
+        return json.encodeToString(encryptForUpload(item, cfg)).toByteArray()
+    }
+    
+    private fun encryptForUpload(item: ItemEntity, cfg: SyncConfig): ItemEntity {
+        return if (shouldEncrypt(item, cfg)) {
             item.copy(
                 payload = cryptoEngine.encryptPayload(item.payload),
                 encryptionApplied = 1
@@ -274,6 +1116,14 @@ class SyncEngine @Inject constructor(
         }
     }
     
+    /**
+     * 敏感类型即使未启用全局加密也总是加密
+     */
+    private fun shouldEncrypt(item: ItemEntity, cfg: SyncConfig): Boolean {
+        val isSensitive = ItemType.SENSITIVE_TYPES.any { it.value == item.type }
+        return (cfg.encryptionEnabled || isSensitive) && cryptoEngine.hasMasterKey()
+    }
+    
     /**
      * 准备本地存储的项目（解密处理）
      * 
@@ -424,3 +1274,17 @@ class SyncEngine @Inject constructor(
 
 private data class PushResult(val count: Int)
 private data class PullResult(val count: Int, val conflicts: Int, val decryptionFailed: Int)
+
+/**
+ * 拉取过程中累计的计数
+ */
+private class PullStats {
+    var count = 0
+    var conflicts = 0
+    var decryptionFailed = 0
+}
+
+/**
+ * 快照引导结果：增量拉取的起点和已导入文件的版本
+ */
+private data class SnapshotBootstrap(val watermark: Long, val revisions: Map<String, String?>)
@@ -0,0 +1,119 @@
+package com.mucheng.notes.data.sync
+
+import android.app.job.JobInfo
+import android.app.job.JobScheduler
+import android.content.ComponentName
+import android.content.Context
+import android.util.Log
+import com.mucheng.notes.data.local.dao.OutboxDao
+import com.mucheng.notes.domain.model.SyncResult
+import com.mucheng.notes.service.SyncJobService
+import dagger.hilt.android.qualifiers.ApplicationContext
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * 后台同步调度
+ *
+ * 以设置中的同步间隔为基准，每次同步结束后按结果重新计算下次时间：
+ * - 失败：按失败次数指数退避
+ * - 本地有待推送：使用基准间隔
+ * - 连续没有任何变更：间隔逐步放大（最多 [MAX_QUIET_SHIFT] 次翻倍），
+ *   放大到上限后只在设备空闲时执行
+ * - 拉取到远端变更：恢复基准间隔
+ *
+ * 所有任务都要求有网络且电量不低。同步间隔为“手动”或同步未启用时取消任务。
+ */
+@Singleton
+class SyncScheduler @Inject constructor(
+    @ApplicationContext private val context: Context,
+    private val syncSettings: SyncSettings,
+    private val outboxDao: OutboxDao
+) {
+    
+    companion object {
+        private const val TAG = "SyncScheduler"
+        private const val PREFS_NAME = "sync_scheduler"
+        private const val KEY_FAILURES = "failures"
+        private const val KEY_QUIET_STREAK = "quiet_streak"
+        
+        const val JOB_ID = 2001
+        
+        /** 无变更时间隔最多翻倍的次数 */
+        const val MAX_QUIET_SHIFT = 3
+        
+        /** 失败退避最多翻倍的次数 */
+        private const val MAX_FAILURE_SHIFT = 6
+        
+        const val MAX_DELAY_MS = 6L * 60 * 60 * 1000
+        
+        /**
+         * 计算下次同步的延迟
+         *
+         * @param intervalMinutes 设置的同步间隔
+         * @param failures 连续失败次数
+         * @param quietStreak 连续无变更的同步次数
+         * @param hasPending 本地是否有待推送的操作
+         */
+        fun computeDelayMs(intervalMinutes: Int, failures: Int, quietStreak: Int, hasPending: Boolean): Long {
+            val base = intervalMinutes * 60_000L
+            val shift = when {
+                failures > 0 -> failures.coerceAtMost(MAX_FAILURE_SHIFT)
+                hasPending -> 0
+                else -> quietStreak.coerceIn(0, MAX_QUIET_SHIFT)
+            }
+            return (base shl shift).coerceAtMost(MAX_DELAY_MS)
+        }
+    }
+    
+    private val prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+    
+    private val jobScheduler: JobScheduler? get() = context.getSystemService(JobScheduler::class.java)
+    
+    /**
+     * 按当前设置和状态重新安排下次同步（设置变更、应用启动时调用）
+     */
+    suspend fun reschedule() {
+        val interval = syncSettings.syncIntervalMinutes
+        if (interval <= 0 || syncSettings.loadConfig() == null) {
+            jobScheduler?.cancel(JOB_ID)
+            return
+        }
+        
+        val failures = prefs.getInt(KEY_FAILURES, 0)
+        val quietStreak = prefs.getInt(KEY_QUIET_STREAK, 0)
+        val hasPending = outboxDao.count() > 0
+        val delay = computeDelayMs(interval, failures, quietStreak, hasPending)
+        val quiet = failures == 0 && !hasPending && quietStreak >= MAX_QUIET_SHIFT
+        
+        val job = JobInfo.Builder(JOB_ID, ComponentName(context, SyncJobService::class.java))
+            .setMinimumLatency(delay)
+            .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+            .setRequiresBatteryNotLow(true)
+            .setRequiresDeviceIdle(quiet)
+            .setPersisted(true)
+            .build()
+        jobScheduler?.schedule(job)
+        Log.d(TAG, "Next sync in ${delay / 1000}s (failures=$failures, quiet=$quietStreak, pending=$hasPending)")
+    }
+    
+    /**
+     * 记录同步结果并安排下一次
+     */
+    suspend fun onSyncFinished(result: SyncResult) {
+        val editor = prefs.edit()
+        if (result.success) {
+            editor.putInt(KEY_FAILURES, 0)
+            val quietStreak = if (result.pushed == 0 && result.pulled == 0) {
+                prefs.getInt(KEY_QUIET_STREAK, 0) + 1
+            } else {
+                0
+            }
+            editor.putInt(KEY_QUIET_STREAK, quietStreak)
+        } else {
+            editor.putInt(KEY_FAILURES, prefs.getInt(KEY_FAILURES, 0) + 1)
+        }
+        editor.apply()
+        reschedule()
+    }
+}
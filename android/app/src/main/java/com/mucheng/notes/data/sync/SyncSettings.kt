@@ -0,0 +1,127 @@
+package com.mucheng.notes.data.sync
+
+import android.content.Context
+import android.content.SharedPreferences
+import com.mucheng.notes.domain.model.SyncConfig
+import com.mucheng.notes.domain.model.SyncModules
+import com.mucheng.notes.security.CryptoEngine
+import dagger.hilt.android.qualifiers.ApplicationContext
+import java.util.UUID
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * 同步设置读取
+ *
+ * 设置页把同步配置保存在 app_settings 中；后台同步没有界面，
+ * 从同一份设置构建 [SyncConfig] 并准备加密主密钥。
+ */
+@Singleton
+class SyncSettings @Inject constructor(
+    @ApplicationContext context: Context,
+    private val cryptoEngine: CryptoEngine
+) {
+    
+    companion object {
+        const val PREFS_NAME = "app_settings"
+        
+        // 同步设置键，设置页写入、这里读取
+        const val KEY_SYNC_ENABLED = "sync_enabled"
+        const val KEY_SYNC_TYPE = "sync_type"
+        const val KEY_WEBDAV_URL = "webdav_url"
+        const val KEY_USERNAME = "username"
+        const val KEY_PASSWORD = "password"
+        const val KEY_SYNC_PATH = "sync_path"
+        const val KEY_API_KEY = "api_key"
+        const val KEY_ENCRYPTION_ENABLED = "encryption_enabled"
+        const val KEY_ENCRYPTION_PASSWORD = "encryption_password"
+        const val KEY_SYNC_INTERVAL = "sync_interval"
+        const val KEY_LAST_SYNC_TIME = "last_sync_time"
+        const val KEY_SYNC_NOTES = "sync_notes"
+        const val KEY_SYNC_BOOKMARKS = "sync_bookmarks"
+        const val KEY_SYNC_VAULT = "sync_vault"
+        const val KEY_SYNC_DIAGRAMS = "sync_diagrams"
+        const val KEY_SYNC_TODOS = "sync_todos"
+        const val KEY_SYNC_AI = "sync_ai"
+        const val KEY_LAZY_BODIES = "lazy_bodies"
+        const val KEY_COMPRESS_ITEMS = "compress_items"
+        const val KEY_SHARDED_LAYOUT = "sharded_layout"
+        private const val KEY_DEVICE_ID = "sync_device_id"
+        
+        const val DEFAULT_SYNC_PATH = "/mucheng-notes"
+        
+        /** 未设置同步密钥时使用的默认密钥（与桌面端保持一致） */
+        const val DEFAULT_VAULT_KEY = "mucheng-default-vault-key-2024"
+    }
+    
+    private val prefs: SharedPreferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+    
+    /**
+     * 同步间隔（分钟），0 表示仅手动同步
+     */
+    val syncIntervalMinutes: Int get() = prefs.getInt(KEY_SYNC_INTERVAL, 5)
+    
+    /**
+     * 本机在工作区中的标识（用于能力协商登记，首次读取时生成并保存）
+     */
+    val deviceId: String
+        get() = prefs.getString(KEY_DEVICE_ID, null) ?: UUID.randomUUID().toString().also {
+            prefs.edit().putString(KEY_DEVICE_ID, it).apply()
+        }
+    
+    /**
+     * 读取同步配置，未启用或地址无效时返回 null
+     */
+    fun loadConfig(): SyncConfig? {
+        if (!prefs.getBoolean(KEY_SYNC_ENABLED, false)) return null
+        val url = prefs.getString(KEY_WEBDAV_URL, "") ?: ""
+        if (!url.startsWith("http://") && !url.startsWith("https://")) return null
+        
+        return SyncConfig(
+            enabled = true,
+            type = prefs.getString(KEY_SYNC_TYPE, "webdav") ?: "webdav",
+            url = url,
+            syncPath = prefs.getString(KEY_SYNC_PATH, DEFAULT_SYNC_PATH) ?: DEFAULT_SYNC_PATH,
+            username = prefs.getString(KEY_USERNAME, "")?.ifBlank { null },
+            password = prefs.getString(KEY_PASSWORD, "")?.ifBlank { null },
+            apiKey = prefs.getString(KEY_API_KEY, "")?.ifBlank { null },
+            encryptionEnabled = prefs.getBoolean(KEY_ENCRYPTION_ENABLED, true),
+            syncInterval = syncIntervalMinutes,
+            syncModules = SyncModules(
+                notes = prefs.getBoolean(KEY_SYNC_NOTES, true),
+                bookmarks = prefs.getBoolean(KEY_SYNC_BOOKMARKS, true),
+                vault = prefs.getBoolean(KEY_SYNC_VAULT, true),
+                diagrams = prefs.getBoolean(KEY_SYNC_DIAGRAMS, true),
+                todos = prefs.getBoolean(KEY_SYNC_TODOS, true),
+                ai = prefs.getBoolean(KEY_SYNC_AI, true)
+            ),
+            lazyBodies = prefs.getBoolean(KEY_LAZY_BODIES, false),
+            compressItems = prefs.getBoolean(KEY_COMPRESS_ITEMS, false),
+            shardedLayout = prefs.getBoolean(KEY_SHARDED_LAYOUT, false)
+        )
+    }
+    
+    /**
+     * 进程重启后主密钥不在内存中，按设置中的同步密钥重新派生
+     */
+    fun ensureMasterKey() {
+        if (cryptoEngine.hasMasterKey()) return
+        initMasterKey()
+    }
+    
+    /**
+     * 按设置中的同步密钥派生主密钥，未设置时使用默认密钥
+     * 即使未启用全局加密也需要主密钥，密码库等敏感数据始终加密
+     */
+    fun initMasterKey() {
+        val password = prefs.getString(KEY_ENCRYPTION_PASSWORD, "") ?: ""
+        cryptoEngine.initMasterKey(password.ifBlank { DEFAULT_VAULT_KEY })
+    }
+    
+    /**
+     * 记录同步成功时间（界面显示的“上次同步”）
+     */
+    fun recordSyncTime(time: Long) {
+        prefs.edit().putLong(KEY_LAST_SYNC_TIME, time).apply()
+    }
+}
@@ -0,0 +1,99 @@
+package com.mucheng.notes.data.sync
+
+import com.mucheng.notes.data.remote.WorkspaceClient
+import com.mucheng.notes.data.remote.WorkspaceMeta
+
+/**
+ * 工作区能力协商结果
+ */
+data class CapabilityNegotiation(
+    val meta: WorkspaceMeta,
+    /** 本次同步起生效的可选能力 */
+    val enabled: Set<String>
+) {
+    /** 上传项目时是否使用压缩编码 */
+    val itemDeflate: Boolean get() = WorkspaceCapabilities.ITEM_DEFLATE in enabled
+    
+    /** 项目文件是否按 ID 前缀分目录存放 */
+    val shardedLayout: Boolean get() = WorkspaceCapabilities.SHARDED_LAYOUT in enabled
+}
+
+/**
+ * 工作区能力协商（workspace.json 的 capabilities）
+ *
+ * 每个支持协商的客户端在 clients 中登记自己支持和要求启用的能力。可选能力只有在
+ * 有客户端要求、所有登记的客户端都支持、且近期没有未登记的客户端同步过时才写入 capabilities。
+ * 桌面端和旧版本不登记，但每次同步都会改写 last_sync_time，与 legacy_sync_time 不一致即视为
+ * 有未登记的客户端，此后 [LEGACY_HOLD_MS] 内停用可选能力；整个保持期内没有再发现才重新启用。
+ */
+object WorkspaceCapabilities {
+    
+    /** 所有客户端都支持的基础能力（桌面端写入的默认值） */
+    val BASE = listOf("items", "resources", "changes")
+    
+    /** 项目文件可使用压缩二进制编码（见 ItemCodec） */
+    const val ITEM_DEFLATE = "item-deflate"
+    
+    /** 项目文件按 ID 前缀分目录存放（items/ab/<id>.json，见 ItemLayout） */
+    const val SHARDED_LAYOUT = "items-sharded"
+    
+    /** 需要协商才能启用的可选能力 */
+    val OPTIONAL = listOf(ITEM_DEFLATE, SHARDED_LAYOUT)
+    
+    /** 本客户端支持的能力 */
+    val SUPPORTED = BASE + OPTIONAL
+    
+    /** 超过该时间未同步的客户端不再参与协商 */
+    const val CLIENT_EXPIRY_MS = 90 * 24 * 60 * 60 * 1000L
+    
+    /** 发现未登记的客户端同步后，在该时间内不启用可选能力 */
+    const val LEGACY_HOLD_MS = 90 * 24 * 60 * 60 * 1000L
+    
+    /** 登记时间的刷新间隔，避免每次同步都改写 workspace.json */
+    const val SEEN_REFRESH_MS = 24 * 60 * 60 * 1000L
+    
+    /**
+     * 登记本客户端并重新计算工作区能力
+     *
+     * 返回的 meta 与传入的相同时无需写回。[supported] 为本机当前适配器支持的能力。
+     */
+    fun negotiate(
+        meta: WorkspaceMeta,
+        deviceId: String,
+        requestedCapabilities: Set<String>,
+        now: Long,
+        supported: List<String> = SUPPORTED
+    ): CapabilityNegotiation {
+        val requested = OPTIONAL.filter { it in requestedCapabilities && it in supported }
+        val clients = meta.clients.filterValues { now - it.seen_at < CLIENT_EXPIRY_MS }.toMutableMap()
+        val self = clients[deviceId]
+        if (self == null || self.capabilities != supported || self.requested != requested || now - self.seen_at >= SEEN_REFRESH_MS) {
+            clients[deviceId] = WorkspaceClient(capabilities = supported, requested = requested, seen_at = now)
+        }
+        
+        // 支持协商的客户端改写 last_sync_time 时同时写入 legacy_sync_time，两者不一致说明有未登记的客户端同步过；
+        // 第一次登记时没有基准，已有的 last_sync_time 同样视为未登记的客户端同步，从此刻开始保持期
+        val legacySynced = meta.last_sync_time != null && meta.last_sync_time != meta.legacy_sync_time
+        val legacySeenAt = if (legacySynced) now else meta.legacy_seen_at
+        val legacyActive = legacySeenAt != null && now - legacySeenAt < LEGACY_HOLD_MS
+        
+        val enabled = if (legacyActive) {
+            emptySet()
+        } else {
+            OPTIONAL.filterTo(LinkedHashSet()) { capability ->
+                clients.values.all { capability in it.capabilities } && clients.values.any { capability in it.requested }
+            }
+        }
+        
+        val capabilities = meta.capabilities.filter { it !in OPTIONAL } + OPTIONAL.filter { it in enabled }
+        val updated = meta.copy(
+            capabilities = capabilities,
+            clients = clients,
+            legacy_sync_time = meta.last_sync_time,
+            legacy_seen_at = legacySeenAt,
+            // 停用后远端可能留有压缩文件，由下一次同步改写；重新启用则无需改写
+            deflate_cleanup = if (ITEM_DEFLATE in enabled) false else meta.deflate_cleanup || ITEM_DEFLATE in meta.capabilities
+        )
+        return CapabilityNegotiation(updated, enabled)
+    }
+}
@@ -1,13 +1,16 @@
 package com.mucheng.notes.di
 
-import android.content.Context
 import com.mucheng.notes.data.local.AppDatabase
+import com.mucheng.notes.data.local.DatabaseInitializer
+import com.mucheng.notes.data.local.dao.DehydratedItemDao
+import com.mucheng.notes.data.local.dao.ItemBlobDao
 import com.mucheng.notes.data.local.dao.ItemDao
+import com.mucheng.notes.data.local.dao.ItemTagDao
+import com.mucheng.notes.data.local.dao.OutboxDao
 import com.mucheng.notes.data.local.dao.ResourceCacheDao
 import dagger.Module
 import dagger.Provides
 import dagger.hilt.InstallIn
-import dagger.hilt.android.qualifiers.ApplicationContext
 import dagger.hilt.components.SingletonComponent
 import javax.inject.Singleton
 
@@ -20,17 +23,16 @@ object DatabaseModule {
     
     /**
      * 提供数据库实例
-     * 注意: 实际使用时需要从安全存储获取密码
+     *
+     * 只创建 Room 对象，不在注入线程上打开；真正的打开由 [DatabaseInitializer]
+     * 在应用启动时放到后台完成，此前的查询会挂起等待。
      */
     @Provides
     @Singleton
     fun provideAppDatabase(
-        @ApplicationContext context: Context
+        initializer: DatabaseInitializer
     ): AppDatabase {
-        // TODO: 从 Android Keystore 或安全存储获取数据库密码
-        // 这里暂时使用固定密码，实际应用中需要安全处理
-        val passphrase = "mucheng_notes_db_key".toByteArray()
-        return AppDatabase.getInstance(context, passphrase)
+        return initializer.database
     }
     
     @Provides
@@ -44,4 +46,28 @@ object DatabaseModule {
     fun provideResourceCacheDao(database: AppDatabase): ResourceCacheDao {
         return database.resourceCacheDao()
     }
+    
+    @Provides
+    @Singleton
+    fun provideItemTagDao(database: AppDatabase): ItemTagDao {
+        return database.itemTagDao()
+    }
+    
+    @Provides
+    @Singleton
+    fun provideItemBlobDao(database: AppDatabase): ItemBlobDao {
+        return database.itemBlobDao()
+    }
+    
+    @Provides
+    @Singleton
+    fun provideOutboxDao(database: AppDatabase): OutboxDao {
+        return database.outboxDao()
+    }
+    
+    @Provides
+    @Singleton
+    fun provideDehydratedItemDao(database: AppDatabase): DehydratedItemDao {
+        return database.dehydratedItemDao()
+    }
 }
@@ -1,13 +1,35 @@
 package com.mucheng.notes.di
 
+import com.mucheng.notes.data.remote.HttpMetrics
+import com.mucheng.notes.data.remote.SyncAdapterRouter
 import com.mucheng.notes.data.remote.WebDAVAdapter
-import com.mucheng.notes.data.remote.WebDAVAdapterImpl
 import dagger.Binds
 import dagger.Module
+import dagger.Provides
 import dagger.hilt.InstallIn
 import dagger.hilt.components.SingletonComponent
+import okhttp3.ConnectionPool
+import okhttp3.Dispatcher
+import okhttp3.OkHttpClient
+import okhttp3.Protocol
+import java.util.concurrent.TimeUnit
+import javax.inject.Qualifier
 import javax.inject.Singleton
 
+/**
+ * 同步（WebDAV、同步服务器）使用的 HTTP 客户端
+ */
+@Qualifier
+@Retention(AnnotationRetention.BINARY)
+annotation class SyncHttpClient
+
+/**
+ * AI 接口使用的 HTTP 客户端
+ */
+@Qualifier
+@Retention(AnnotationRetention.BINARY)
+annotation class AiHttpClient
+
 /**
  * Hilt Module for Network dependencies
  */
@@ -15,9 +37,70 @@ import javax.inject.Singleton
 @InstallIn(SingletonComponent::class)
 abstract class NetworkModule {
     
+    /**
+     * 同步引擎使用的适配器，按同步类型转发到 WebDAV 或同步服务器
+     */
     @Binds
     @Singleton
     abstract fun bindWebDAVAdapter(
-        impl: WebDAVAdapterImpl
+        impl: SyncAdapterRouter
     ): WebDAVAdapter
+    
+    companion object {
+        
+        /** 连接池保留的空闲连接数和保持时间，默认同步间隔（5 分钟）内的下一次同步可复用连接 */
+        private const val MAX_IDLE_CONNECTIONS = 8
+        private const val KEEP_ALIVE_MINUTES = 5L
+        
+        /**
+         * 共享的基础客户端
+         *
+         * 其他客户端都由它 newBuilder() 派生，共用连接池、调度器和线程，只调整超时、
+         * 证书固定等配置。连接池按地址（含证书固定配置）区分连接，不同配置的客户端不会误用彼此的连接。
+         */
+        @Provides
+        @Singleton
+        fun provideOkHttpClient(metrics: HttpMetrics): OkHttpClient {
+            return OkHttpClient.Builder()
+                .connectionPool(ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                .dispatcher(Dispatcher().apply {
+                    maxRequests = 64
+                    // HTTP/2 下同一主机的并发请求在一条连接上多路复用
+                    maxRequestsPerHost = 16
+                })
+                .protocols(listOf(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .eventListenerFactory(metrics)
+                .connectTimeout(15, TimeUnit.SECONDS)
+                .readTimeout(60, TimeUnit.SECONDS)
+                .writeTimeout(60, TimeUnit.SECONDS)
+                .build()
+        }
+        
+        /**
+         * 同步客户端，快照分片等大文件的读写超时更长
+         */
+        @Provides
+        @Singleton
+        @SyncHttpClient
+        fun provideSyncHttpClient(base: OkHttpClient): OkHttpClient {
+            return base.newBuilder()
+                .readTimeout(120, TimeUnit.SECONDS)
+                .writeTimeout(120, TimeUnit.SECONDS)
+                .build()
+        }
+        
+        /**
+         * AI 客户端，流式响应两次数据之间最多等待 60 秒
+         */
+        @Provides
+        @Singleton
+        @AiHttpClient
+        fun provideAiHttpClient(base: OkHttpClient): OkHttpClient {
+            return base.newBuilder()
+                .connectTimeout(30, TimeUnit.SECONDS)
+                .readTimeout(60, TimeUnit.SECONDS)
+                .writeTimeout(30, TimeUnit.SECONDS)
+                .build()
+        }
+    }
 }
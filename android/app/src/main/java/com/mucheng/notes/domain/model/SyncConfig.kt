@@ -32,7 +32,10 @@ data class SyncConfig(
     @SerialName("sync_interval") val syncInterval: Int = 5, // minutes
     @SerialName("last_sync_time") val lastSyncTime: Long? = null,
     @SerialName("sync_cursor") val syncCursor: String? = null,
-    @SerialName("sync_modules") val syncModules: SyncModules = SyncModules()
+    @SerialName("sync_modules") val syncModules: SyncModules = SyncModules(),
+    @SerialName("lazy_bodies") val lazyBodies: Boolean = false, // 按需下载正文
+    @SerialName("compress_items") val compressItems: Boolean = false, // 压缩同步数据（需所有设备支持）
+    @SerialName("sharded_layout") val shardedLayout: Boolean = false // 远端项目分目录存放（需所有设备支持）
 )
 
 /**
@@ -61,6 +64,27 @@ object SyncModuleTypes {
     }
 }
 
+/**
+ * 拉取优先级分层（数字越小越先写入并通知界面）
+ *
+ * 首次同步时先让笔记列表可用，再写入待办、书签，最后是密码库和 AI 历史。
+ */
+object SyncPullPriority {
+    val TIERS = listOf(
+        listOf("folder", "note", "tag"),
+        listOf("todo", "bookmark", "bookmark_folder", "diagram", "resource"),
+        listOf("vault_entry", "vault_folder", "ai_config", "ai_conversation", "ai_message")
+    )
+    
+    /**
+     * 类型所在的层，未知类型放在最后
+     */
+    fun tierOf(type: String): Int {
+        val index = TIERS.indexOfFirst { type in it }
+        return if (index < 0) TIERS.lastIndex else index
+    }
+}
+
 /**
  * 同步状态
  */
@@ -82,6 +106,8 @@ data class SyncResult(
     val pulled: Int = 0,
     val conflicts: Int = 0,
     val decryptionFailed: Int = 0,  // 解密失败的项目数
+    val bytesUploaded: Long = 0,    // 上传的项目文件字节数
+    val bytesDownloaded: Long = 0,  // 下载的项目文件字节数
     val error: String? = null,
     val duration: Long = 0
 )
@@ -20,6 +20,9 @@ enum class DiagramType {
 
 /**
  * 图表 Payload - 与桌面端 DiagramPayload 完全一致
+ * 
+ * 本地存储时 thumbnail 和较大的 data 会被移到 item_blobs 表，
+ * 解码得到的 thumbnail 为 null、data 为空，需要时通过 ItemRepository.loadBlob 加载
  */
 @Serializable
 data class DiagramPayload(
@@ -1,8 +1,15 @@
 package com.mucheng.notes.domain.repository
 
+import com.mucheng.notes.data.local.TypeChanges
 import com.mucheng.notes.data.local.entity.ItemEntity
+import com.mucheng.notes.data.local.entity.QuadrantCount
+import com.mucheng.notes.data.local.entity.TagCount
+import com.mucheng.notes.data.local.entity.TodoReminder
 import com.mucheng.notes.domain.model.ItemType
 import kotlinx.coroutines.flow.Flow
+import kotlinx.serialization.DeserializationStrategy
+import kotlinx.serialization.json.JsonElement
+import kotlinx.serialization.serializer
 
 /**
  * Item Repository 接口
@@ -12,9 +19,39 @@ interface ItemRepository {
     
     /**
      * 按类型获取所有项目（实时流）
+     * 只在该类型有变更时重新发射，其他类型的写入不会触发
      */
     fun getByType(type: ItemType): Flow<List<ItemEntity>>
     
+    /**
+     * 观察指定类型的增量变更（插入/更新/移除的 ID）
+     */
+    fun observeChanges(type: ItemType): Flow<TypeChanges>
+    
+    /**
+     * 观察对话中从游标 (sinceCreatedAt, sinceId)（含）到最新的消息（按创建时间正序）
+     * 只在该对话的消息变化时更新，按 ID 合并变化的行，不重新查询整个窗口
+     */
+    fun observeConversationMessages(conversationId: String, sinceCreatedAt: Long, sinceId: String): Flow<List<ItemEntity>>
+    
+    /**
+     * 获取对话中排在游标 (beforeCreatedAt, beforeId) 之前的一页消息（按创建时间正序）
+     * 按 (conversation_id, created_at) 索引做 keyset 分页，首页传 Long.MAX_VALUE 和空 ID
+     */
+    suspend fun getMessagesBefore(conversationId: String, beforeCreatedAt: Long, beforeId: String, limit: Int): List<ItemEntity>
+    
+    /**
+     * 解码项目 payload
+     * 结果按 (id, content_hash) 全局缓存，未变化的行不会重复解析
+     */
+    fun <T> decodePayload(item: ItemEntity, deserializer: DeserializationStrategy<T>): T
+    
+    /**
+     * 懒加载被移出 payload 的大字段（如图表缩略图 thumbnail、大图表 data）
+     * @return 字段内容，未移出或不存在时返回 null
+     */
+    suspend fun loadBlob(id: String, field: String): String?
+    
     /**
      * 按 ID 获取单个项目
      */
@@ -24,17 +61,41 @@ interface ItemRepository {
      * 创建新项目
      * @param type 项目类型
      * @param payload JSON 格式的业务数据
+     * @param contentHash 调用方已用 [computeContentHash] 算好的哈希，为 null 时在写入时计算
      * @return 创建的项目
      */
-    suspend fun create(type: ItemType, payload: String): ItemEntity
+    suspend fun create(type: ItemType, payload: String, contentHash: String? = null): ItemEntity
     
     /**
      * 更新项目
      * @param id 项目 ID
      * @param payload 新的 JSON 格式业务数据
+     * @param contentHash 调用方已用 [computeContentHash] 算好的哈希，为 null 时在写入时计算
      * @return 更新后的项目，如果不存在返回 null
      */
-    suspend fun update(id: String, payload: String): ItemEntity?
+    suspend fun update(id: String, payload: String, contentHash: String? = null): ItemEntity?
+    
+    /**
+     * 计算 payload 的内容哈希，与写入时记录的 content_hash 一致
+     */
+    fun computeContentHash(payload: String): String
+    
+    /**
+     * 按字段修改 payload，无需读取、解码、编码整个 payload
+     * 所有字段在同一事务中写入，local_rev 与内容哈希只更新一次
+     * @param id 项目 ID
+     * @param fields payload 字段名（序列化名，如 is_pinned）到新值的映射
+     * @return 修改后的项目，如果不存在返回 null
+     */
+    suspend fun patch(id: String, fields: Map<String, JsonElement>): ItemEntity?
+    
+    /**
+     * 将 payload 中的布尔字段取反
+     * @param id 项目 ID
+     * @param field payload 字段名（序列化名）
+     * @return 修改后的项目，如果不存在返回 null
+     */
+    suspend fun toggle(id: String, field: String): ItemEntity?
     
     /**
      * 软删除项目
@@ -43,6 +104,39 @@ interface ItemRepository {
      */
     suspend fun softDelete(id: String): Boolean
     
+    /**
+     * 批量软删除
+     * 单个事务、单次变更通知
+     * @param ids 项目 ID 列表
+     * @return 实际删除的数量
+     */
+    suspend fun softDeleteAll(ids: List<String>): Int
+    
+    /**
+     * 批量移动项目到文件夹
+     * @param ids 项目 ID 列表
+     * @param folderId 目标文件夹 ID，null 表示根目录
+     * @param field payload 中的文件夹字段名（文件夹自身为 parent_id）
+     * @return 实际移动的数量
+     */
+    suspend fun moveToFolder(ids: List<String>, folderId: String?, field: String = "folder_id"): Int
+    
+    /**
+     * 删除对话及其全部消息
+     * 单个事务、单次变更通知
+     * @return 对话是否存在并被删除
+     */
+    suspend fun deleteConversationCascade(conversationId: String): Boolean
+    
+    /**
+     * 删除文件夹，其中的项目和子文件夹移到根目录
+     * 单个事务、单次变更通知
+     * @param folderId 文件夹 ID
+     * @param itemType 文件夹中的项目类型（项目以 folder_id 引用文件夹，子文件夹以 parent_id 引用）
+     * @return 文件夹是否存在并被删除
+     */
+    suspend fun deleteFolderCascade(folderId: String, itemType: ItemType): Boolean
+    
     /**
      * 搜索项目
      * @param query 搜索关键词
@@ -51,6 +145,39 @@ interface ItemRepository {
      */
     suspend fun search(query: String, type: ItemType? = null): List<ItemEntity>
     
+    /**
+     * 观察同时带有所有指定标签的项目（走 item_tags 索引）
+     * @param tags 标签列表，只有一个标签时即按单个标签筛选
+     */
+    fun observeByTags(type: ItemType, tags: List<String>): Flow<List<ItemEntity>>
+    
+    /**
+     * 观察指定类型的标签云（标签及使用次数，按次数降序）
+     */
+    fun observeTagCounts(type: ItemType): Flow<List<TagCount>>
+    
+    /**
+     * 获取时间窗口内需要触发的待办提醒（走 reminder_time 索引）
+     */
+    suspend fun getUpcomingReminders(from: Long, to: Long): List<TodoReminder>
+    
+    /**
+     * 观察某象限的待办（走 type + quadrant + completed 索引，只读取该象限的行）
+     * @param quadrant 象限序列化名，如 urgent-important
+     */
+    fun observeTodosInQuadrant(quadrant: String, completed: Boolean): Flow<List<ItemEntity>>
+    
+    /**
+     * 观察已完成的待办
+     */
+    fun observeCompletedTodos(): Flow<List<ItemEntity>>
+    
+    /**
+     * 观察各象限的待办数量
+     * @param completed 统计已完成还是未完成的待办
+     */
+    fun observeQuadrantCounts(completed: Boolean): Flow<List<QuadrantCount>>
+    
     /**
      * 按文件夹 ID 获取项目
      */
@@ -76,3 +203,17 @@ interface ItemRepository {
      */
     suspend fun upsertAll(items: List<ItemEntity>)
 }
+
+/**
+ * 修改 payload 中的单个字段
+ */
+suspend fun ItemRepository.patch(id: String, field: String, value: JsonElement): ItemEntity? {
+    return patch(id, mapOf(field to value))
+}
+
+/**
+ * 按 reified 类型解码项目 payload
+ */
+inline fun <reified T> ItemRepository.decodePayload(item: ItemEntity): T {
+    return decodePayload(item, serializer<T>())
+}
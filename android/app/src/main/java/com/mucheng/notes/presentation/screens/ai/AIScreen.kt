@@ -56,6 +56,7 @@ import androidx.compose.runtime.mutableFloatStateOf
 import androidx.compose.runtime.mutableStateOf
 import androidx.compose.runtime.remember
 import androidx.compose.runtime.setValue
+import androidx.compose.runtime.snapshotFlow
 import androidx.compose.ui.Alignment
 import androidx.compose.ui.Modifier
 import androidx.compose.ui.draw.clip
@@ -532,24 +533,30 @@ private fun ConversationScreen(
     viewModel: AIViewModel,
     onBack: () -> Unit
 ) {
-    val allMessages by viewModel.messages.collectAsState()
+    // ViewModel 只查询当前对话的消息，已按创建时间排序
+    val messages by viewModel.currentMessages.collectAsState()
     val uiState by viewModel.uiState.collectAsState()
     var inputText by remember { mutableStateOf("") }
     
-    // 过滤当前对话的消息
-    val messages = allMessages
-        .filter { it.conversationId == conversationId }
-        .sortedBy { it.createdAt }
-    
     val listState = rememberLazyListState()
     
-    // 新消息时滚动到底部
-    LaunchedEffect(messages.size) {
+    // 新消息时滚动到底部（加载更早的消息时不滚动）
+    LaunchedEffect(messages.lastOrNull()?.id) {
         if (messages.isNotEmpty()) {
             listState.animateScrollToItem(messages.size - 1)
         }
     }
     
+    // 滚动到顶部时加载更早的消息
+    LaunchedEffect(listState) {
+        snapshotFlow { listState.firstVisibleItemIndex }
+            .collect { index ->
+                if (index == 0 && listState.layoutInfo.totalItemsCount > 0) {
+                    viewModel.loadOlderMessages()
+                }
+            }
+    }
+    
     Scaffold(
         topBar = {
             TopAppBar(
@@ -652,7 +659,7 @@ private fun ConversationScreen(
                 verticalArrangement = Arrangement.spacedBy(8.dp),
                 contentPadding = PaddingValues(vertical = 8.dp)
             ) {
-                items(messages) { message ->
+                items(messages, key = { it.id }) { message ->
                     MessageBubble(message = message)
                 }
             }
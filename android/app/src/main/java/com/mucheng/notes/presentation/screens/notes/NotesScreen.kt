@@ -16,6 +16,7 @@ import androidx.compose.foundation.layout.height
 import androidx.compose.foundation.layout.padding
 import androidx.compose.foundation.layout.width
 import androidx.compose.foundation.lazy.LazyColumn
+import androidx.compose.foundation.lazy.LazyRow
 import androidx.compose.foundation.lazy.items
 import androidx.compose.foundation.text.KeyboardActions
 import androidx.compose.foundation.text.KeyboardOptions
@@ -31,12 +32,14 @@ import androidx.compose.material.icons.filled.Settings
 import androidx.compose.material.icons.filled.Star
 import androidx.compose.material.icons.filled.StarBorder
 import androidx.compose.material3.AlertDialog
+import androidx.compose.material3.AssistChip
 import androidx.compose.material3.Card
 import androidx.compose.material3.CardDefaults
 import androidx.compose.material3.DrawerValue
 import androidx.compose.material3.DropdownMenu
 import androidx.compose.material3.DropdownMenuItem
 import androidx.compose.material3.ExperimentalMaterial3Api
+import androidx.compose.material3.FilterChip
 import androidx.compose.material3.FloatingActionButton
 import androidx.compose.material3.HorizontalDivider
 import androidx.compose.material3.Icon
@@ -72,6 +75,7 @@ import androidx.compose.ui.unit.dp
 import androidx.hilt.navigation.compose.hiltViewModel
 import androidx.navigation.NavController
 import com.mucheng.notes.R
+import com.mucheng.notes.data.local.entity.TagCount
 import com.mucheng.notes.presentation.components.FolderItem
 import com.mucheng.notes.presentation.components.FolderTree
 import com.mucheng.notes.presentation.components.SyncStatusIndicator
@@ -98,6 +102,9 @@ fun NotesScreen(
     val folders by viewModel.folders.collectAsState()
     val selectedFolderId by viewModel.selectedFolderId.collectAsState()
     val uiState by viewModel.uiState.collectAsState()
+    val tagCounts by viewModel.tagCounts.collectAsState()
+    val selectedTags by viewModel.selectedTags.collectAsState()
+    val notesWithSelectedTags by viewModel.notesWithSelectedTags.collectAsState()
     
     val drawerState = rememberDrawerState(initialValue = DrawerValue.Closed)
     val scope = rememberCoroutineScope()
@@ -182,11 +189,12 @@ fun NotesScreen(
         }
     }
     
-    // 过滤笔记
+    // 过滤笔记（选中标签时由标签索引查询）
+    val taggedNotes = if (selectedTags.isEmpty()) notes else notesWithSelectedTags
     val filteredNotes = if (selectedFolderId == null) {
-        notes
+        taggedNotes
     } else {
-        notes.filter { it.folderId == selectedFolderId }
+        taggedNotes.filter { it.folderId == selectedFolderId }
     }
     
     // 按置顶排序
@@ -318,52 +326,66 @@ fun NotesScreen(
             },
             snackbarHost = { SnackbarHost(snackbarHostState) }
         ) { paddingValues ->
-            if (sortedNotes.isEmpty()) {
-                Box(
-                    modifier = Modifier
-                        .fillMaxSize()
-                        .padding(paddingValues)
-                        .padding(bottom = bottomPadding.calculateBottomPadding()),
-                    contentAlignment = Alignment.Center
-                ) {
-                    Text(
-                        text = stringResource(R.string.note_empty),
-                        style = MaterialTheme.typography.bodyLarge,
-                        color = MaterialTheme.colorScheme.outline
+            Column(
+                modifier = Modifier
+                    .fillMaxSize()
+                    .padding(paddingValues)
+            ) {
+                // 标签筛选，选中多个标签时只显示同时带有这些标签的笔记
+                if (tagCounts.isNotEmpty() || selectedTags.isNotEmpty()) {
+                    TagFilterRow(
+                        tagCounts = tagCounts,
+                        selectedTags = selectedTags,
+                        onToggleTag = { viewModel.toggleTagFilter(it) },
+                        onClear = { viewModel.clearTagFilter() }
                     )
                 }
-            } else {
-                LazyColumn(
-                    modifier = Modifier
-                        .fillMaxSize()
-                        .padding(paddingValues)
-                        .padding(horizontal = 16.dp),
-                    contentPadding = PaddingValues(bottom = bottomPadding.calculateBottomPadding()),
-                    verticalArrangement = Arrangement.spacedBy(8.dp)
-                ) {
-                    items(sortedNotes) { note ->
-                        NoteCard(
-                            note = note,
-                            onClick = { handleNoteClick(note) },
-                            onLongClick = { contextMenuNote = note },
-                            showContextMenu = contextMenuNote?.id == note.id,
-                            onDismissMenu = { contextMenuNote = null },
-                            onTogglePin = {
-                                viewModel.togglePinned(note.id)
-                                contextMenuNote = null
-                            },
-                            onDelete = {
-                                viewModel.deleteNote(note.id)
-                                contextMenuNote = null
-                            },
-                            onMoveToFolder = {
-                                noteToMove = note
-                                showMoveToFolderDialog = true
-                                contextMenuNote = null
-                            },
-                            isPinned = note.isPinned
+                
+                if (sortedNotes.isEmpty()) {
+                    Box(
+                        modifier = Modifier
+                            .fillMaxSize()
+                            .padding(bottom = bottomPadding.calculateBottomPadding()),
+                        contentAlignment = Alignment.Center
+                    ) {
+                        Text(
+                            text = stringResource(R.string.note_empty),
+                            style = MaterialTheme.typography.bodyLarge,
+                            color = MaterialTheme.colorScheme.outline
                         )
                     }
+                } else {
+                    LazyColumn(
+                        modifier = Modifier
+                            .fillMaxSize()
+                            .padding(horizontal = 16.dp),
+                        contentPadding = PaddingValues(bottom = bottomPadding.calculateBottomPadding()),
+                        verticalArrangement = Arrangement.spacedBy(8.dp)
+                    ) {
+                        items(sortedNotes) { note ->
+                            NoteCard(
+                                note = note,
+                                onClick = { handleNoteClick(note) },
+                                onLongClick = { contextMenuNote = note },
+                                showContextMenu = contextMenuNote?.id == note.id,
+                                onDismissMenu = { contextMenuNote = null },
+                                onTogglePin = {
+                                    viewModel.togglePinned(note.id)
+                                    contextMenuNote = null
+                                },
+                                onDelete = {
+                                    viewModel.deleteNote(note.id)
+                                    contextMenuNote = null
+                                },
+                                onMoveToFolder = {
+                                    noteToMove = note
+                                    showMoveToFolderDialog = true
+                                    contextMenuNote = null
+                                },
+                                isPinned = note.isPinned
+                            )
+                        }
+                    }
                 }
             }
         }
@@ -489,6 +511,41 @@ fun NotesScreen(
     }
 }
 
+/**
+ * 标签筛选行，标签按使用次数降序
+ */
+@OptIn(ExperimentalMaterial3Api::class)
+@Composable
+private fun TagFilterRow(
+    tagCounts: List<TagCount>,
+    selectedTags: List<String>,
+    onToggleTag: (String) -> Unit,
+    onClear: () -> Unit
+) {
+    LazyRow(
+        modifier = Modifier
+            .fillMaxWidth()
+            .padding(horizontal = 16.dp, vertical = 8.dp),
+        horizontalArrangement = Arrangement.spacedBy(8.dp)
+    ) {
+        if (selectedTags.isNotEmpty()) {
+            item {
+                AssistChip(
+                    onClick = onClear,
+                    label = { Text("清除筛选") }
+                )
+            }
+        }
+        items(tagCounts, key = { it.tag }) { tagCount ->
+            FilterChip(
+                selected = tagCount.tag in selectedTags,
+                onClick = { onToggleTag(tagCount.tag) },
+                label = { Text("${tagCount.tag} ${tagCount.count}") }
+            )
+        }
+    }
+}
+
 @OptIn(ExperimentalFoundationApi::class)
 @Composable
 private fun NoteCard(
@@ -401,6 +401,32 @@ fun SyncSettingsScreen(
                     viewModel.setSyncModule("ai", it)
                 }
                 
+                Spacer(modifier = Modifier.height(12.dp))
+                
+                // 按需下载正文
+                SettingsSwitch(
+                    title = "按需下载正文",
+                    subtitle = "同步时只下载标题等信息，笔记、图表和 AI 对话的正文在打开时下载",
+                    checked = uiState.lazyBodies,
+                    onCheckedChange = { viewModel.setLazyBodies(it) }
+                )
+                
+                // 压缩同步数据
+                SettingsSwitch(
+                    title = "压缩同步数据",
+                    subtitle = "上传的数据先压缩再加密，可大幅减少流量。仅在所有设备都支持时生效，电脑端同步后会自动停用",
+                    checked = uiState.compressItems,
+                    onCheckedChange = { viewModel.setCompressItems(it) }
+                )
+                
+                // 远端分目录存储
+                SettingsSwitch(
+                    title = "分目录存储",
+                    subtitle = "数据较多时把远端文件分散到多个子目录，加快同步时的目录扫描。仅在所有设备都支持时生效，电脑端同步后会自动迁回",
+                    checked = uiState.shardedLayout,
+                    onCheckedChange = { viewModel.setShardedLayout(it) }
+                )
+                
                 Spacer(modifier = Modifier.height(24.dp))
                 HorizontalDivider()
                 Spacer(modifier = Modifier.height(24.dp))
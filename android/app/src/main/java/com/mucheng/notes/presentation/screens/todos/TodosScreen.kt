@@ -49,28 +49,16 @@ fun TodosScreen(
     bottomPadding: PaddingValues = PaddingValues(),
     viewModel: TodosViewModel = hiltViewModel()
 ) {
-    val todosByQuadrant by viewModel.todosByQuadrant.collectAsState()
+    val quadrantTodos by viewModel.quadrantTodos.collectAsState()
+    val quadrantCounts by viewModel.quadrantCounts.collectAsState()
+    val expandedQuadrants by viewModel.expandedQuadrants.collectAsState()
+    val completedTodos by viewModel.completedTodos.collectAsState()
+    val completedCount by viewModel.completedCount.collectAsState()
     val uiState by viewModel.uiState.collectAsState()
     
     var showAddDialog by remember { mutableStateOf(false) }
     var showEditDialog by remember { mutableStateOf(false) }
     var selectedTodo by remember { mutableStateOf<TodoItem?>(null) }
-    var showCompletedSection by remember { mutableStateOf(false) }
-    
-    // 各象限展开状态
-    var expandedQuadrants by remember { 
-        mutableStateOf(setOf(
-            TodoQuadrant.URGENT_IMPORTANT,
-            TodoQuadrant.NOT_URGENT_IMPORTANT,
-            TodoQuadrant.URGENT_NOT_IMPORTANT,
-            TodoQuadrant.NOT_URGENT_NOT_IMPORTANT
-        )) 
-    }
-    
-    // 所有待办
-    val allTodos = todosByQuadrant.values.flatten()
-    val completedTodos = allTodos.filter { it.completed }
-    
     Scaffold(
         floatingActionButton = {
             FloatingActionButton(
@@ -96,15 +84,10 @@ fun TodosScreen(
                     quadrant = TodoQuadrant.URGENT_IMPORTANT,
                     title = "紧急重要",
                     color = MaterialTheme.colorScheme.error,
-                    todos = todosByQuadrant[TodoQuadrant.URGENT_IMPORTANT]?.filter { !it.completed } ?: emptyList(),
+                    todos = quadrantTodos[TodoQuadrant.URGENT_IMPORTANT] ?: emptyList(),
+                    count = quadrantCounts[TodoQuadrant.URGENT_IMPORTANT] ?: 0,
                     expanded = TodoQuadrant.URGENT_IMPORTANT in expandedQuadrants,
-                    onToggleExpand = {
-                        expandedQuadrants = if (TodoQuadrant.URGENT_IMPORTANT in expandedQuadrants) {
-                            expandedQuadrants - TodoQuadrant.URGENT_IMPORTANT
-                        } else {
-                            expandedQuadrants + TodoQuadrant.URGENT_IMPORTANT
-                        }
-                    },
+                    onToggleExpand = { viewModel.toggleQuadrantExpanded(TodoQuadrant.URGENT_IMPORTANT) },
                     onTodoClick = { todo ->
                         selectedTodo = todo
                         showEditDialog = true
@@ -120,15 +103,10 @@ fun TodosScreen(
                     quadrant = TodoQuadrant.NOT_URGENT_IMPORTANT,
                     title = "重要不紧急",
                     color = MaterialTheme.colorScheme.primary,
-                    todos = todosByQuadrant[TodoQuadrant.NOT_URGENT_IMPORTANT]?.filter { !it.completed } ?: emptyList(),
+                    todos = quadrantTodos[TodoQuadrant.NOT_URGENT_IMPORTANT] ?: emptyList(),
+                    count = quadrantCounts[TodoQuadrant.NOT_URGENT_IMPORTANT] ?: 0,
                     expanded = TodoQuadrant.NOT_URGENT_IMPORTANT in expandedQuadrants,
-                    onToggleExpand = {
-                        expandedQuadrants = if (TodoQuadrant.NOT_URGENT_IMPORTANT in expandedQuadrants) {
-                            expandedQuadrants - TodoQuadrant.NOT_URGENT_IMPORTANT
-                        } else {
-                            expandedQuadrants + TodoQuadrant.NOT_URGENT_IMPORTANT
-                        }
-                    },
+                    onToggleExpand = { viewModel.toggleQuadrantExpanded(TodoQuadrant.NOT_URGENT_IMPORTANT) },
                     onTodoClick = { todo ->
                         selectedTodo = todo
                         showEditDialog = true
@@ -144,15 +122,10 @@ fun TodosScreen(
                     quadrant = TodoQuadrant.URGENT_NOT_IMPORTANT,
                     title = "紧急不重要",
                     color = MaterialTheme.colorScheme.tertiary,
-                    todos = todosByQuadrant[TodoQuadrant.URGENT_NOT_IMPORTANT]?.filter { !it.completed } ?: emptyList(),
+                    todos = quadrantTodos[TodoQuadrant.URGENT_NOT_IMPORTANT] ?: emptyList(),
+                    count = quadrantCounts[TodoQuadrant.URGENT_NOT_IMPORTANT] ?: 0,
                     expanded = TodoQuadrant.URGENT_NOT_IMPORTANT in expandedQuadrants,
-                    onToggleExpand = {
-                        expandedQuadrants = if (TodoQuadrant.URGENT_NOT_IMPORTANT in expandedQuadrants) {
-                            expandedQuadrants - TodoQuadrant.URGENT_NOT_IMPORTANT
-                        } else {
-                            expandedQuadrants + TodoQuadrant.URGENT_NOT_IMPORTANT
-                        }
-                    },
+                    onToggleExpand = { viewModel.toggleQuadrantExpanded(TodoQuadrant.URGENT_NOT_IMPORTANT) },
                     onTodoClick = { todo ->
                         selectedTodo = todo
                         showEditDialog = true
@@ -168,15 +141,10 @@ fun TodosScreen(
                     quadrant = TodoQuadrant.NOT_URGENT_NOT_IMPORTANT,
                     title = "不紧急不重要",
                     color = MaterialTheme.colorScheme.outline,
-                    todos = todosByQuadrant[TodoQuadrant.NOT_URGENT_NOT_IMPORTANT]?.filter { !it.completed } ?: emptyList(),
+                    todos = quadrantTodos[TodoQuadrant.NOT_URGENT_NOT_IMPORTANT] ?: emptyList(),
+                    count = quadrantCounts[TodoQuadrant.NOT_URGENT_NOT_IMPORTANT] ?: 0,
                     expanded = TodoQuadrant.NOT_URGENT_NOT_IMPORTANT in expandedQuadrants,
-                    onToggleExpand = {
-                        expandedQuadrants = if (TodoQuadrant.NOT_URGENT_NOT_IMPORTANT in expandedQuadrants) {
-                            expandedQuadrants - TodoQuadrant.NOT_URGENT_NOT_IMPORTANT
-                        } else {
-                            expandedQuadrants + TodoQuadrant.NOT_URGENT_NOT_IMPORTANT
-                        }
-                    },
+                    onToggleExpand = { viewModel.toggleQuadrantExpanded(TodoQuadrant.NOT_URGENT_NOT_IMPORTANT) },
                     onTodoClick = { todo ->
                         selectedTodo = todo
                         showEditDialog = true
@@ -187,12 +155,13 @@ fun TodosScreen(
             }
             
             // 已完成
-            if (completedTodos.isNotEmpty()) {
+            if (completedCount > 0) {
                 item {
                     CompletedSection(
                         todos = completedTodos,
-                        expanded = showCompletedSection,
-                        onToggleExpand = { showCompletedSection = !showCompletedSection },
+                        count = completedCount,
+                        expanded = uiState.showCompleted,
+                        onToggleExpand = { viewModel.toggleShowCompleted() },
                         onTodoClick = { todo ->
                             selectedTodo = todo
                             showEditDialog = true
@@ -263,6 +232,7 @@ private fun QuadrantSection(
     title: String,
     color: Color,
     todos: List<TodoItem>,
+    count: Int,
     expanded: Boolean,
     onToggleExpand: () -> Unit,
     onTodoClick: (TodoItem) -> Unit,
@@ -299,7 +269,7 @@ private fun QuadrantSection(
                 )
                 Spacer(modifier = Modifier.width(8.dp))
                 Text(
-                    text = "(${todos.size})",
+                    text = "($count)",
                     style = MaterialTheme.typography.bodyMedium,
                     color = color.copy(alpha = 0.7f)
                 )
@@ -351,6 +321,7 @@ private fun QuadrantSection(
 @Composable
 private fun CompletedSection(
     todos: List<TodoItem>,
+    count: Int,
     expanded: Boolean,
     onToggleExpand: () -> Unit,
     onTodoClick: (TodoItem) -> Unit,
@@ -386,7 +357,7 @@ private fun CompletedSection(
                 )
                 Spacer(modifier = Modifier.width(8.dp))
                 Text(
-                    text = "(${todos.size})",
+                    text = "($count)",
                     style = MaterialTheme.typography.bodyMedium,
                     color = MaterialTheme.colorScheme.outline.copy(alpha = 0.7f)
                 )
@@ -2,21 +2,31 @@ package com.mucheng.notes.presentation.viewmodel
 
 import androidx.lifecycle.ViewModel
 import androidx.lifecycle.viewModelScope
+import com.mucheng.notes.data.sync.BodyHydrator
 import com.mucheng.notes.data.local.entity.ItemEntity
 import com.mucheng.notes.domain.model.ItemType
 import com.mucheng.notes.domain.model.payload.AIConversationPayload
 import com.mucheng.notes.domain.model.payload.AIMessagePayload
 import com.mucheng.notes.domain.repository.ItemRepository
+import com.mucheng.notes.domain.repository.decodePayload
+import com.mucheng.notes.domain.repository.patch
 import dagger.hilt.android.lifecycle.HiltViewModel
+import kotlinx.coroutines.ExperimentalCoroutinesApi
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.SharingStarted
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.distinctUntilChanged
+import kotlinx.coroutines.flow.filter
+import kotlinx.coroutines.flow.filterNotNull
+import kotlinx.coroutines.flow.flatMapLatest
+import kotlinx.coroutines.flow.flowOf
 import kotlinx.coroutines.flow.map
 import kotlinx.coroutines.flow.stateIn
 import kotlinx.coroutines.launch
 import kotlinx.serialization.encodeToString
 import kotlinx.serialization.json.Json
+import kotlinx.serialization.json.JsonPrimitive
 import javax.inject.Inject
 
 /**
@@ -34,9 +44,15 @@ data class AIUiState(
  */
 @HiltViewModel
 class AIViewModel @Inject constructor(
-    private val itemRepository: ItemRepository
+    private val itemRepository: ItemRepository,
+    private val bodyHydrator: BodyHydrator
 ) : ViewModel() {
     
+    companion object {
+        /** 每页加载的消息条数 */
+        const val MESSAGE_PAGE_SIZE = 50
+    }
+    
     private val json = Json { 
         ignoreUnknownKeys = true 
         isLenient = true
@@ -50,22 +66,73 @@ class AIViewModel @Inject constructor(
      * 对话列表（实时流）
      */
     val conversations: StateFlow<List<ConversationItem>> = itemRepository.getByType(ItemType.AI_CONVERSATION)
-        .map { items -> items.map { it.toConversationItem() } }
+        .mapListParallel { it.toConversationItem() }
         .stateIn(viewModelScope, SharingStarted.Lazily, emptyList())
     
     /**
-     * 消息列表（实时流）
+     * 当前对话已加载的消息窗口，窗口从起点消息（含）延伸到最新消息
      */
-    val messages: StateFlow<List<MessageItem>> = itemRepository.getByType(ItemType.AI_MESSAGE)
-        .map { items -> items.map { it.toMessageItem() } }
-        .stateIn(viewModelScope, SharingStarted.Lazily, emptyList())
+    private data class MessageWindow(
+        val conversationId: String,
+        val startCreatedAt: Long,
+        val startId: String,
+        val hasOlder: Boolean
+    )
+    
+    private val _messageWindow = MutableStateFlow<MessageWindow?>(null)
+    
+    /**
+     * 当前选中对话的消息（实时流，按创建时间正序）
+     * 选中时按 keyset 取最新一页确定窗口起点，向上滚动时通过 [loadOlderMessages] 把起点前移一页
+     */
+    @OptIn(ExperimentalCoroutinesApi::class)
+    val currentMessages: StateFlow<List<MessageItem>> = _uiState
+        .map { it.selectedConversationId }
+        .distinctUntilChanged()
+        .flatMapLatest { conversationId ->
+            if (conversationId == null) {
+                _messageWindow.value = null
+                flowOf(emptyList())
+            } else {
+                _messageWindow.value = pageBefore(conversationId, Long.MAX_VALUE, "")
+                    ?: MessageWindow(conversationId, Long.MIN_VALUE, "", hasOlder = false)
+                _messageWindow
+                    .filterNotNull()
+                    .filter { it.conversationId == conversationId }
+                    .flatMapLatest { window ->
+                        itemRepository.observeConversationMessages(conversationId, window.startCreatedAt, window.startId)
+                    }
+            }
+        }
+        .mapListParallel { it.toMessageItem() }
+        .stateIn(viewModelScope, SharingStarted.WhileSubscribed(5000), emptyList())
+    
+    /**
+     * 读取游标之前的一页消息，返回以该页最早一条为起点的窗口，没有更早的消息时返回 null
+     */
+    private suspend fun pageBefore(conversationId: String, beforeCreatedAt: Long, beforeId: String): MessageWindow? {
+        val page = itemRepository.getMessagesBefore(conversationId, beforeCreatedAt, beforeId, MESSAGE_PAGE_SIZE)
+        val oldest = page.firstOrNull() ?: return null
+        return MessageWindow(
+            conversationId = conversationId,
+            startCreatedAt = oldest.createdAt ?: Long.MIN_VALUE,
+            startId = oldest.id,
+            hasOlder = page.size == MESSAGE_PAGE_SIZE
+        )
+    }
     
     /**
-     * 当前对话的消息
+     * 加载当前对话更早的一页消息
      */
-    fun getMessagesForConversation(conversationId: String): List<MessageItem> {
-        return messages.value.filter { it.conversationId == conversationId }
-            .sortedBy { it.createdAt }
+    fun loadOlderMessages() {
+        val window = _messageWindow.value ?: return
+        if (!window.hasOlder) return
+        viewModelScope.launch {
+            val older = pageBefore(window.conversationId, window.startCreatedAt, window.startId)
+                ?: window.copy(hasOlder = false)
+            // 期间切换了对话或已有其他加载完成时放弃本次结果
+            _messageWindow.compareAndSet(window, older)
+        }
     }
     
     /**
@@ -97,6 +164,17 @@ class AIViewModel @Inject constructor(
      */
     fun selectConversation(conversationId: String?) {
         _uiState.value = _uiState.value.copy(selectedConversationId = conversationId)
+        
+        // 按需下载模式下补全消息正文，写入后消息列表自动刷新
+        if (conversationId != null) {
+            viewModelScope.launch {
+                try {
+                    bodyHydrator.hydrateConversation(conversationId)
+                } catch (e: Exception) {
+                    _uiState.value = _uiState.value.copy(error = e.message)
+                }
+            }
+        }
     }
     
     /**
@@ -145,13 +223,8 @@ class AIViewModel @Inject constructor(
      */
     fun deleteConversation(conversationId: String) {
         viewModelScope.launch {
-            // 删除对话
-            itemRepository.softDelete(conversationId)
-            
-            // 删除相关消息
-            messages.value
-                .filter { it.conversationId == conversationId }
-                .forEach { itemRepository.softDelete(it.id) }
+            // 删除对话及相关消息（单个事务）
+            itemRepository.deleteConversationCascade(conversationId)
             
             // 如果删除的是当前选中的对话，清除选择
             if (_uiState.value.selectedConversationId == conversationId) {
@@ -165,15 +238,12 @@ class AIViewModel @Inject constructor(
      */
     fun updateConversationTitle(conversationId: String, title: String) {
         viewModelScope.launch {
-            val existing = itemRepository.getById(conversationId) ?: return@launch
-            val oldPayload = json.decodeFromString<AIConversationPayload>(existing.payload)
-            val newPayload = oldPayload.copy(title = title)
-            itemRepository.update(conversationId, json.encodeToString(newPayload))
+            itemRepository.patch(conversationId, "title", JsonPrimitive(title))
         }
     }
     
     private fun ItemEntity.toConversationItem(): ConversationItem {
-        val payload = json.decodeFromString<AIConversationPayload>(this.payload)
+        val payload = itemRepository.decodePayload<AIConversationPayload>(this)
         return ConversationItem(
             id = this.id,
             title = payload.title,
@@ -184,7 +254,7 @@ class AIViewModel @Inject constructor(
     }
     
     private fun ItemEntity.toMessageItem(): MessageItem {
-        val payload = json.decodeFromString<AIMessagePayload>(this.payload)
+        val payload = itemRepository.decodePayload<AIMessagePayload>(this)
         return MessageItem(
             id = this.id,
             conversationId = payload.conversationId,
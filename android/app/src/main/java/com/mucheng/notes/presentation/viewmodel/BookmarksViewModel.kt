@@ -10,17 +10,19 @@ import com.mucheng.notes.domain.model.ItemType
 import com.mucheng.notes.domain.model.payload.BookmarkFolderPayload
 import com.mucheng.notes.domain.model.payload.BookmarkPayload
 import com.mucheng.notes.domain.repository.ItemRepository
+import com.mucheng.notes.domain.repository.decodePayload
+import com.mucheng.notes.domain.repository.patch
 import dagger.hilt.android.lifecycle.HiltViewModel
 import dagger.hilt.android.qualifiers.ApplicationContext
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.SharingStarted
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
-import kotlinx.coroutines.flow.map
 import kotlinx.coroutines.flow.stateIn
 import kotlinx.coroutines.launch
 import kotlinx.serialization.encodeToString
 import kotlinx.serialization.json.Json
+import kotlinx.serialization.json.JsonPrimitive
 import javax.inject.Inject
 
 /**
@@ -58,14 +60,14 @@ class BookmarksViewModel @Inject constructor(
      * 书签列表（实时流）
      */
     val bookmarks: StateFlow<List<BookmarkItem>> = itemRepository.getByType(ItemType.BOOKMARK)
-        .map { items -> items.map { it.toBookmarkItem() } }
+        .mapListParallel { it.toBookmarkItem() }
         .stateIn(viewModelScope, SharingStarted.Lazily, emptyList())
     
     /**
      * 书签文件夹列表（实时流）
      */
     val folders: StateFlow<List<BookmarkFolderItem>> = itemRepository.getByType(ItemType.BOOKMARK_FOLDER)
-        .map { items -> items.map { it.toBookmarkFolderItem() } }
+        .mapListParallel { it.toBookmarkFolderItem() }
         .stateIn(viewModelScope, SharingStarted.Lazily, emptyList())
     
     /**
@@ -170,10 +172,7 @@ class BookmarksViewModel @Inject constructor(
      */
     fun renameFolder(id: String, newName: String) {
         viewModelScope.launch {
-            val existing = itemRepository.getById(id) ?: return@launch
-            val oldPayload = json.decodeFromString<BookmarkFolderPayload>(existing.payload)
-            val newPayload = oldPayload.copy(name = newName)
-            itemRepository.update(id, json.encodeToString(newPayload))
+            itemRepository.patch(id, "name", JsonPrimitive(newName))
         }
     }
     
@@ -182,26 +181,8 @@ class BookmarksViewModel @Inject constructor(
      */
     fun deleteFolder(id: String) {
         viewModelScope.launch {
-            // 将该文件夹下的书签移到根目录
-            val bookmarksInFolder = bookmarks.value.filter { it.folderId == id }
-            bookmarksInFolder.forEach { bookmark ->
-                val existing = itemRepository.getById(bookmark.id) ?: return@forEach
-                val oldPayload = json.decodeFromString<BookmarkPayload>(existing.payload)
-                val newPayload = oldPayload.copy(folderId = null)
-                itemRepository.update(bookmark.id, json.encodeToString(newPayload))
-            }
-            
-            // 将子文件夹移到根目录
-            val subFolders = folders.value.filter { it.parentId == id }
-            subFolders.forEach { folder ->
-                val existing = itemRepository.getById(folder.id) ?: return@forEach
-                val oldPayload = json.decodeFromString<BookmarkFolderPayload>(existing.payload)
-                val newPayload = oldPayload.copy(parentId = null)
-                itemRepository.update(folder.id, json.encodeToString(newPayload))
-            }
-            
-            // 删除文件夹
-            itemRepository.softDelete(id)
+            // 删除文件夹，其中的书签和子文件夹移到根目录（单个事务）
+            itemRepository.deleteFolderCascade(id, ItemType.BOOKMARK)
         }
     }
     
@@ -210,15 +191,12 @@ class BookmarksViewModel @Inject constructor(
      */
     fun moveBookmarkToFolder(bookmarkId: String, folderId: String?) {
         viewModelScope.launch {
-            val existing = itemRepository.getById(bookmarkId) ?: return@launch
-            val oldPayload = json.decodeFromString<BookmarkPayload>(existing.payload)
-            val newPayload = oldPayload.copy(folderId = folderId)
-            itemRepository.update(bookmarkId, json.encodeToString(newPayload))
+            itemRepository.patch(bookmarkId, "folder_id", JsonPrimitive(folderId))
         }
     }
     
     private fun ItemEntity.toBookmarkItem(): BookmarkItem {
-        val payload = json.decodeFromString<BookmarkPayload>(this.payload)
+        val payload = itemRepository.decodePayload<BookmarkPayload>(this)
         return BookmarkItem(
             id = this.id,
             name = payload.name,
@@ -232,7 +210,7 @@ class BookmarksViewModel @Inject constructor(
     }
     
     private fun ItemEntity.toBookmarkFolderItem(): BookmarkFolderItem {
-        val payload = json.decodeFromString<BookmarkFolderPayload>(this.payload)
+        val payload = itemRepository.decodePayload<BookmarkFolderPayload>(this)
         return BookmarkFolderItem(
             id = this.id,
             name = payload.name,
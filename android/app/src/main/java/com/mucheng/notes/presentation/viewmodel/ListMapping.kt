@@ -0,0 +1,59 @@
+package com.mucheng.notes.presentation.viewmodel
+
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.conflate
+import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.withContext
+import java.util.Collections
+
+/**
+ * 每个并行分块的默认大小
+ */
+const val DEFAULT_MAPPING_CHUNK_SIZE = 64
+
+/**
+ * ViewModel 列表映射操作符
+ *
+ * - 在 [dispatcher]（默认 Dispatchers.Default）上按分块并行执行 [transform]，
+ *   不占用 stateIn 所在的 Main 线程
+ * - 映射进行中到达的新列表会被合并，只处理最新一次
+ * - 结果为只读列表，主线程只需替换引用
+ */
+fun <T, R> Flow<List<T>>.mapListParallel(
+    chunkSize: Int = DEFAULT_MAPPING_CHUNK_SIZE,
+    dispatcher: CoroutineDispatcher = Dispatchers.Default,
+    transform: (T) -> R
+): Flow<List<R>> {
+    require(chunkSize > 0) { "chunkSize must be positive" }
+    
+    return conflate().map { items ->
+        withContext(dispatcher) {
+            mapInChunks(items, chunkSize, transform)
+        }
+    }
+}
+
+private suspend fun <T, R> mapInChunks(
+    items: List<T>,
+    chunkSize: Int,
+    transform: (T) -> R
+): List<R> {
+    if (items.isEmpty()) return emptyList()
+    
+    val mapped = if (items.size <= chunkSize) {
+        items.map(transform)
+    } else {
+        coroutineScope {
+            items.chunked(chunkSize)
+                .map { chunk -> async { chunk.map(transform) } }
+                .awaitAll()
+                .flatten()
+        }
+    }
+    return Collections.unmodifiableList(mapped)
+}
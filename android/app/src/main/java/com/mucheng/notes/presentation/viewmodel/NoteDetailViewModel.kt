@@ -2,18 +2,30 @@ package com.mucheng.notes.presentation.viewmodel
 
 import androidx.lifecycle.ViewModel
 import androidx.lifecycle.viewModelScope
+import com.mucheng.notes.data.sync.BodyHydrator
 import com.mucheng.notes.domain.model.ItemType
 import com.mucheng.notes.domain.model.payload.NotePayload
 import com.mucheng.notes.domain.repository.ItemRepository
+import com.mucheng.notes.domain.repository.decodePayload
+import com.mucheng.notes.domain.repository.patch
 import com.mucheng.notes.security.CryptoEngine
 import dagger.hilt.android.lifecycle.HiltViewModel
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.NonCancellable
+import kotlinx.coroutines.delay
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
 import kotlinx.coroutines.flow.update
 import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.withContext
 import kotlinx.serialization.encodeToString
 import kotlinx.serialization.json.Json
+import kotlinx.serialization.json.JsonNull
+import kotlinx.serialization.json.JsonPrimitive
 import javax.inject.Inject
 
 /**
@@ -32,16 +44,22 @@ data class NoteDetailUiState(
     val isEditing: Boolean = false,
     val hasChanges: Boolean = false,
     val isLoading: Boolean = false,
+    val bodyMissing: Boolean = false, // 按需下载模式下正文尚未下载，不允许编辑
     val error: String? = null
 )
 
 /**
  * 笔记详情 ViewModel
+ *
+ * 编辑时自动保存：第一次修改后等待 [AUTOSAVE_INTERVAL_MS] 写入一次，期间的输入合并到
+ * 同一次写入，因此持续输入时每个间隔最多写一次；界面暂停时立即写入。序列化和哈希在
+ * 后台线程执行，内容哈希与上次写入相同则跳过。
  */
 @HiltViewModel
 class NoteDetailViewModel @Inject constructor(
     private val itemRepository: ItemRepository,
-    private val cryptoEngine: CryptoEngine
+    private val cryptoEngine: CryptoEngine,
+    private val bodyHydrator: BodyHydrator
 ) : ViewModel() {
     
     private val json = Json { 
@@ -57,6 +75,19 @@ class NoteDetailViewModel @Inject constructor(
     private var originalContent = ""
     private var lockPasswordHash: String? = null
     
+    companion object {
+        const val AUTOSAVE_INTERVAL_MS = 2_000L
+    }
+    
+    /** 已排队的自动保存，间隔内的修改合并到这一次 */
+    private var autosaveJob: Job? = null
+    
+    /** 串行化写入，避免新笔记被自动保存和手动保存各创建一次 */
+    private val saveMutex = Mutex()
+    
+    /** 上次写入（或加载）的 payload 内容哈希，与项目的 content_hash 一致 */
+    private var lastSavedHash: String? = null
+    
     /**
      * 加载笔记
      */
@@ -65,13 +96,16 @@ class NoteDetailViewModel @Inject constructor(
             _uiState.update { it.copy(isLoading = true) }
             
             try {
+                // 按需下载模式下先下载正文
+                val hasBody = bodyHydrator.ensureHydrated(noteId)
                 val item = itemRepository.getById(noteId)
                 if (item != null) {
-                    val payload = json.decodeFromString<NotePayload>(item.payload)
+                    val payload = itemRepository.decodePayload<NotePayload>(item)
                     
                     originalTitle = payload.title
                     originalContent = payload.content
                     lockPasswordHash = payload.lockPasswordHash
+                    lastSavedHash = item.contentHash
                     
                     _uiState.update {
                         it.copy(
@@ -84,7 +118,9 @@ class NoteDetailViewModel @Inject constructor(
                             tags = payload.tags,
                             createdTime = item.createdTime,
                             updatedTime = item.updatedTime,
-                            isLoading = false
+                            isLoading = false,
+                            bodyMissing = !hasBody,
+                            error = if (hasBody) null else "正文尚未下载，请联网后重试"
                         )
                     }
                 } else {
@@ -125,6 +161,7 @@ class NoteDetailViewModel @Inject constructor(
         }
         originalTitle = ""
         originalContent = ""
+        lastSavedHash = null
     }
     
     /**
@@ -149,6 +186,7 @@ class NoteDetailViewModel @Inject constructor(
                 hasChanges = title != originalTitle || it.content != originalContent
             )
         }
+        scheduleAutosave()
     }
     
     /**
@@ -161,12 +199,31 @@ class NoteDetailViewModel @Inject constructor(
                 hasChanges = it.title != originalTitle || content != originalContent
             )
         }
+        scheduleAutosave()
+    }
+    
+    /**
+     * 界面暂停时调用：取消排队的自动保存并立即写入
+     */
+    fun flushAutosave() {
+        autosaveJob?.cancel()
+        autosaveJob = null
+        viewModelScope.launch { persist(force = false) }
+    }
+    
+    private fun scheduleAutosave() {
+        if (autosaveJob?.isActive == true) return
+        autosaveJob = viewModelScope.launch {
+            delay(AUTOSAVE_INTERVAL_MS)
+            persist(force = false)
+        }
     }
     
     /**
      * 切换编辑模式
      */
     fun toggleEditing() {
+        if (_uiState.value.bodyMissing) return
         _uiState.update { it.copy(isEditing = !it.isEditing) }
     }
     
@@ -177,7 +234,32 @@ class NoteDetailViewModel @Inject constructor(
         val state = _uiState.value
         if (!state.hasChanges && state.noteId != null) return
         
+        autosaveJob?.cancel()
+        autosaveJob = null
         viewModelScope.launch {
+            if (persist(force = true)) {
+                _uiState.update { it.copy(isEditing = false) }
+            }
+        }
+    }
+    
+    /**
+     * 写入当前编辑内容，返回是否成功（无需写入也算成功）
+     *
+     * 写入过程不可取消，离开界面时 viewModelScope 被取消也会完成本次写入。
+     *
+     * @param force 为 true 时即使是空白新笔记也创建
+     */
+    private suspend fun persist(force: Boolean): Boolean = withContext(NonCancellable) {
+        saveMutex.withLock {
+            val state = _uiState.value
+            // 正文未下载时写入会用空正文覆盖远端
+            if (state.bodyMissing) return@withLock false
+            if (!state.hasChanges && state.noteId != null) return@withLock true
+            if (!force && state.noteId == null && state.title.isBlank() && state.content.isBlank()) {
+                return@withLock true
+            }
+            
             try {
                 val payload = NotePayload(
                     title = state.title,
@@ -189,29 +271,40 @@ class NoteDetailViewModel @Inject constructor(
                     tags = state.tags
                 )
                 
-                val payloadJson = json.encodeToString(payload)
+                // 长笔记的序列化和哈希不占用主线程
+                val (payloadJson, hash) = withContext(Dispatchers.Default) {
+                    val encoded = json.encodeToString(payload)
+                    encoded to itemRepository.computeContentHash(encoded)
+                }
                 
-                if (state.noteId != null) {
-                    // 更新现有笔记
-                    itemRepository.update(state.noteId, payloadJson)
-                } else {
-                    // 创建新笔记
-                    val newItem = itemRepository.create(ItemType.NOTE, payloadJson)
-                    _uiState.update { it.copy(noteId = newItem.id) }
+                // 内容与上次写入相同（如输入后又撤销）时不写入
+                val unchanged = state.noteId != null && hash == lastSavedHash
+                if (!unchanged) {
+                    if (state.noteId != null) {
+                        // 更新现有笔记
+                        itemRepository.update(state.noteId, payloadJson, hash)
+                    } else {
+                        // 创建新笔记
+                        val newItem = itemRepository.create(ItemType.NOTE, payloadJson, hash)
+                        _uiState.update { it.copy(noteId = newItem.id) }
+                    }
                 }
                 
+                lastSavedHash = hash
                 originalTitle = state.title
                 originalContent = state.content
                 
+                // 写入期间继续输入的内容仍算未保存
                 _uiState.update {
                     it.copy(
-                        hasChanges = false,
-                        isEditing = false,
-                        updatedTime = System.currentTimeMillis()
+                        hasChanges = it.title != originalTitle || it.content != originalContent,
+                        updatedTime = if (unchanged) it.updatedTime else System.currentTimeMillis()
                     )
                 }
+                true
             } catch (e: Exception) {
                 _uiState.update { it.copy(error = e.message) }
+                false
             }
         }
     }
@@ -221,6 +314,8 @@ class NoteDetailViewModel @Inject constructor(
      */
     fun deleteNote() {
         val noteId = _uiState.value.noteId ?: return
+        autosaveJob?.cancel()
+        autosaveJob = null
         
         viewModelScope.launch {
             try {
@@ -240,17 +335,8 @@ class NoteDetailViewModel @Inject constructor(
         
         viewModelScope.launch {
             try {
-                val payload = NotePayload(
-                    title = state.title,
-                    content = state.content,
-                    folderId = state.folderId,
-                    isPinned = !state.isPinned,
-                    isLocked = state.isLocked,
-                    lockPasswordHash = lockPasswordHash,
-                    tags = state.tags
-                )
-                
-                itemRepository.update(noteId, json.encodeToString(payload))
+                // 只修改置顶字段，未保存的编辑内容保持原状
+                itemRepository.patch(noteId, "is_pinned", JsonPrimitive(!state.isPinned))
                 
                 _uiState.update { it.copy(isPinned = !state.isPinned) }
             } catch (e: Exception) {
@@ -271,18 +357,14 @@ class NoteDetailViewModel @Inject constructor(
                 val passwordHash = cryptoEngine.computeHash(password)
                 lockPasswordHash = passwordHash
                 
-                val payload = NotePayload(
-                    title = state.title,
-                    content = state.content,
-                    folderId = state.folderId,
-                    isPinned = state.isPinned,
-                    isLocked = true,
-                    lockPasswordHash = passwordHash,
-                    tags = state.tags
+                itemRepository.patch(
+                    noteId,
+                    mapOf(
+                        "is_locked" to JsonPrimitive(true),
+                        "lock_password_hash" to JsonPrimitive(passwordHash)
+                    )
                 )
                 
-                itemRepository.update(noteId, json.encodeToString(payload))
-                
                 _uiState.update { it.copy(isLocked = true) }
             } catch (e: Exception) {
                 _uiState.update { it.copy(error = e.message) }
@@ -301,18 +383,14 @@ class NoteDetailViewModel @Inject constructor(
             try {
                 lockPasswordHash = null
                 
-                val payload = NotePayload(
-                    title = state.title,
-                    content = state.content,
-                    folderId = state.folderId,
-                    isPinned = state.isPinned,
-                    isLocked = false,
-                    lockPasswordHash = null,
-                    tags = state.tags
+                itemRepository.patch(
+                    noteId,
+                    mapOf(
+                        "is_locked" to JsonPrimitive(false),
+                        "lock_password_hash" to JsonNull
+                    )
                 )
                 
-                itemRepository.update(noteId, json.encodeToString(payload))
-                
                 _uiState.update { it.copy(isLocked = false) }
             } catch (e: Exception) {
                 _uiState.update { it.copy(error = e.message) }
@@ -4,25 +4,41 @@ import android.content.Context
 import android.content.SharedPreferences
 import androidx.lifecycle.ViewModel
 import androidx.lifecycle.viewModelScope
+import com.mucheng.notes.data.local.ListSnapshotStore
+import com.mucheng.notes.data.local.SnapshotFolder
+import com.mucheng.notes.data.local.SnapshotNote
 import com.mucheng.notes.data.local.entity.ItemEntity
+import com.mucheng.notes.data.local.entity.TagCount
 import com.mucheng.notes.domain.model.ItemType
 import com.mucheng.notes.domain.model.SyncStatus
 import com.mucheng.notes.domain.model.payload.FolderPayload
 import com.mucheng.notes.domain.model.payload.NotePayload
 import com.mucheng.notes.domain.repository.ItemRepository
+import com.mucheng.notes.domain.repository.decodePayload
+import com.mucheng.notes.domain.repository.patch
 import com.mucheng.notes.domain.repository.SyncRepository
 import com.mucheng.notes.security.CryptoEngine
 import dagger.hilt.android.lifecycle.HiltViewModel
 import dagger.hilt.android.qualifiers.ApplicationContext
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.FlowPreview
+import kotlinx.coroutines.async
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.SharingStarted
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
-import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.flow.combine
+import kotlinx.coroutines.flow.debounce
+import kotlinx.coroutines.flow.filter
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.flow.flatMapLatest
+import kotlinx.coroutines.flow.onEach
+import kotlinx.coroutines.flow.onStart
 import kotlinx.coroutines.flow.stateIn
 import kotlinx.coroutines.launch
 import kotlinx.serialization.encodeToString
 import kotlinx.serialization.json.Json
+import kotlinx.serialization.json.JsonPrimitive
 import javax.inject.Inject
 
 /**
@@ -48,9 +64,17 @@ class NotesViewModel @Inject constructor(
     @ApplicationContext private val context: Context,
     private val itemRepository: ItemRepository,
     private val syncRepository: SyncRepository,
-    private val cryptoEngine: CryptoEngine
+    private val cryptoEngine: CryptoEngine,
+    private val listSnapshotStore: ListSnapshotStore
 ) : ViewModel() {
     
+    companion object {
+        /**
+         * 列表变化后延迟写快照的时间，连续编辑只写一次
+         */
+        private const val SNAPSHOT_SAVE_DEBOUNCE_MS = 2_000L
+    }
+    
     private val json = Json { 
         ignoreUnknownKeys = true 
         isLenient = true
@@ -80,20 +104,116 @@ class NotesViewModel @Inject constructor(
         )
     }
     
+    /**
+     * 冷启动快照，只在进程首次创建时有值
+     */
+    private val coldStartSnapshot = viewModelScope.async { listSnapshotStore.takeColdStartSnapshot() }
+    
+    private val _liveNotesLoaded = MutableStateFlow(false)
+    private val _liveFoldersLoaded = MutableStateFlow(false)
+    
     /**
      * 笔记列表（实时流）
+     *
+     * 冷启动时先发出快照中的摘要，数据库就绪后由实时结果替换。
      */
     val notes: StateFlow<List<NoteItem>> = itemRepository.getByType(ItemType.NOTE)
-        .map { items -> items.map { it.toNoteItem() } }
+        .mapListParallel { it.toNoteItem() }
+        .onEach { notes ->
+            _liveNotesLoaded.value = true
+            if (notes.isNotEmpty()) listSnapshotStore.recordFirstPaint("database")
+        }
+        .onStart {
+            val snapshotNotes = coldStartSnapshot.await()?.notes.orEmpty()
+            if (snapshotNotes.isNotEmpty()) {
+                emit(snapshotNotes.map { it.toNoteItem() })
+                listSnapshotStore.recordFirstPaint("snapshot")
+            }
+        }
+        .stateIn(viewModelScope, SharingStarted.Lazily, emptyList())
+    
+    private val _selectedTags = MutableStateFlow<List<String>>(emptyList())
+    val selectedTags: StateFlow<List<String>> = _selectedTags.asStateFlow()
+    
+    /**
+     * 笔记标签云（标签及使用次数）
+     */
+    val tagCounts: StateFlow<List<TagCount>> = itemRepository.observeTagCounts(ItemType.NOTE)
+        .stateIn(viewModelScope, SharingStarted.Lazily, emptyList())
+    
+    /**
+     * 同时带有所有选中标签的笔记，未选标签时为空
+     */
+    @OptIn(ExperimentalCoroutinesApi::class)
+    val notesWithSelectedTags: StateFlow<List<NoteItem>> = _selectedTags
+        .flatMapLatest { tags -> itemRepository.observeByTags(ItemType.NOTE, tags) }
+        .mapListParallel { it.toNoteItem() }
         .stateIn(viewModelScope, SharingStarted.Lazily, emptyList())
     
     /**
-     * 文件夹列表（实时流）
+     * 切换标签筛选
+     */
+    fun toggleTagFilter(tag: String) {
+        _selectedTags.value = if (tag in _selectedTags.value) {
+            _selectedTags.value - tag
+        } else {
+            _selectedTags.value + tag
+        }
+    }
+    
+    /**
+     * 清除标签筛选
+     */
+    fun clearTagFilter() {
+        _selectedTags.value = emptyList()
+    }
+    
+    /**
+     * 文件夹列表（实时流），冷启动时同样先使用快照
      */
     val folders: StateFlow<List<FolderItem>> = itemRepository.getByType(ItemType.FOLDER)
-        .map { items -> items.map { it.toFolderItem() } }
+        .mapListParallel { it.toFolderItem() }
+        .onEach { _liveFoldersLoaded.value = true }
+        .onStart {
+            coldStartSnapshot.await()?.folders
+                ?.takeIf { it.isNotEmpty() }
+                ?.let { folders -> emit(folders.map { it.toFolderItem() }) }
+        }
         .stateIn(viewModelScope, SharingStarted.Lazily, emptyList())
     
+    /**
+     * 笔记和文件夹都来自数据库（不再是快照）
+     */
+    private val liveListsLoaded = combine(_liveNotesLoaded, _liveFoldersLoaded) { notes, folders ->
+        notes && folders
+    }
+    
+    init {
+        saveListSnapshots()
+    }
+    
+    /**
+     * 实时列表变化后写入快照，供下次冷启动使用
+     */
+    @OptIn(FlowPreview::class)
+    private fun saveListSnapshots() {
+        viewModelScope.launch {
+            combine(notes, folders, liveListsLoaded) { notes, folders, live ->
+                Triple(notes, folders, live)
+            }
+                .filter { (_, _, live) -> live }
+                .debounce(SNAPSHOT_SAVE_DEBOUNCE_MS)
+                .collect { (notes, folders, _) ->
+                    listSnapshotStore.save(
+                        notes = notes.sortedByDescending { it.updatedTime }
+                            .take(ListSnapshotStore.MAX_NOTES)
+                            .map { it.toSnapshotNote() },
+                        folders = folders.map { it.toSnapshotFolder() }
+                    )
+                }
+        }
+    }
+    
     /**
      * 创建笔记
      */
@@ -117,10 +237,10 @@ class NotesViewModel @Inject constructor(
      */
     fun updateNote(id: String, title: String, content: String) {
         viewModelScope.launch {
-            val existing = itemRepository.getById(id) ?: return@launch
-            val oldPayload = json.decodeFromString<NotePayload>(existing.payload)
-            val newPayload = oldPayload.copy(title = title, content = content)
-            itemRepository.update(id, json.encodeToString(newPayload))
+            itemRepository.patch(
+                id,
+                mapOf("title" to JsonPrimitive(title), "content" to JsonPrimitive(content))
+            )
         }
     }
     
@@ -138,10 +258,7 @@ class NotesViewModel @Inject constructor(
      */
     fun togglePinned(id: String) {
         viewModelScope.launch {
-            val existing = itemRepository.getById(id) ?: return@launch
-            val oldPayload = json.decodeFromString<NotePayload>(existing.payload)
-            val newPayload = oldPayload.copy(isPinned = !oldPayload.isPinned)
-            itemRepository.update(id, json.encodeToString(newPayload))
+            itemRepository.toggle(id, "is_pinned")
         }
     }
     
@@ -150,10 +267,7 @@ class NotesViewModel @Inject constructor(
      */
     fun moveNoteToFolder(noteId: String, folderId: String?) {
         viewModelScope.launch {
-            val existing = itemRepository.getById(noteId) ?: return@launch
-            val oldPayload = json.decodeFromString<NotePayload>(existing.payload)
-            val newPayload = oldPayload.copy(folderId = folderId)
-            itemRepository.update(noteId, json.encodeToString(newPayload))
+            itemRepository.patch(noteId, "folder_id", JsonPrimitive(folderId))
         }
     }
     
@@ -256,10 +370,7 @@ class NotesViewModel @Inject constructor(
      */
     fun updateFolderName(folderId: String, newName: String) {
         viewModelScope.launch {
-            val existing = itemRepository.getById(folderId) ?: return@launch
-            val oldPayload = json.decodeFromString<FolderPayload>(existing.payload)
-            val newPayload = oldPayload.copy(name = newName)
-            itemRepository.update(folderId, json.encodeToString(newPayload))
+            itemRepository.patch(folderId, "name", JsonPrimitive(newName))
             _uiState.value = _uiState.value.copy(editingFolderId = null)
         }
     }
@@ -269,6 +380,9 @@ class NotesViewModel @Inject constructor(
      */
     fun deleteFolder(folderId: String) {
         viewModelScope.launch {
+            // 快照只含部分笔记，必须等实时数据到达后再判断
+            liveListsLoaded.first { it }
+            
             // 先检查文件夹下是否有笔记
             val notesInFolder = notes.value.count { it.folderId == folderId }
             val subFolders = folders.value.count { it.parentId == folderId }
@@ -334,7 +448,7 @@ class NotesViewModel @Inject constructor(
     suspend fun verifyNotePassword(noteId: String, password: String): Boolean {
         val note = itemRepository.getById(noteId) ?: return false
         val payload = try {
-            json.decodeFromString<NotePayload>(note.payload)
+            itemRepository.decodePayload<NotePayload>(note)
         } catch (e: Exception) {
             return false
         }
@@ -353,7 +467,7 @@ class NotesViewModel @Inject constructor(
     suspend fun getNotePasswordHash(noteId: String): String? {
         val note = itemRepository.getById(noteId) ?: return null
         val payload = try {
-            json.decodeFromString<NotePayload>(note.payload)
+            itemRepository.decodePayload<NotePayload>(note)
         } catch (e: Exception) {
             return null
         }
@@ -362,7 +476,7 @@ class NotesViewModel @Inject constructor(
     
     private fun ItemEntity.toNoteItem(): NoteItem {
         return try {
-            val payload = json.decodeFromString<NotePayload>(this.payload)
+            val payload = itemRepository.decodePayload<NotePayload>(this)
             NoteItem(
                 id = this.id,
                 title = payload.title,
@@ -389,9 +503,52 @@ class NotesViewModel @Inject constructor(
         }
     }
     
+    private fun SnapshotNote.toNoteItem() = NoteItem(
+        id = id,
+        title = title,
+        content = preview,
+        folderId = folderId,
+        isPinned = isPinned,
+        isLocked = isLocked,
+        tags = tags,
+        updatedTime = updatedTime
+    )
+    
+    private fun SnapshotFolder.toFolderItem() = FolderItem(
+        id = id,
+        name = name,
+        parentId = parentId,
+        icon = icon,
+        color = color
+    )
+    
+    private fun NoteItem.toSnapshotNote() = SnapshotNote(
+        id = id,
+        title = title,
+        // 加锁笔记不在快照里保留任何正文
+        preview = if (isLocked) "" else content
+            .replace(Regex("<[^>]*>"), "")
+            .replace(Regex("\\s+"), " ")
+            .trim()
+            .take(ListSnapshotStore.PREVIEW_LENGTH),
+        folderId = folderId,
+        isPinned = isPinned,
+        isLocked = isLocked,
+        tags = tags,
+        updatedTime = updatedTime
+    )
+    
+    private fun FolderItem.toSnapshotFolder() = SnapshotFolder(
+        id = id,
+        name = name,
+        parentId = parentId,
+        icon = icon,
+        color = color
+    )
+    
     private fun ItemEntity.toFolderItem(): FolderItem {
         return try {
-            val payload = json.decodeFromString<FolderPayload>(this.payload)
+            val payload = itemRepository.decodePayload<FolderPayload>(this)
             android.util.Log.d("NotesViewModel", "Parsed folder: id=${this.id}, name=${payload.name}, parentId=${payload.parentId}")
             FolderItem(
                 id = this.id,
@@ -5,7 +5,8 @@ import android.content.SharedPreferences
 import androidx.lifecycle.ViewModel
 import androidx.lifecycle.viewModelScope
 import com.mucheng.notes.data.sync.SyncEngine
-import com.mucheng.notes.domain.model.SyncConfig
+import com.mucheng.notes.data.sync.SyncScheduler
+import com.mucheng.notes.data.sync.SyncSettings
 import com.mucheng.notes.domain.model.SyncModules
 import com.mucheng.notes.domain.model.SyncStatus
 import com.mucheng.notes.security.AppLockManager
@@ -13,7 +14,6 @@ import com.mucheng.notes.security.AuthResult
 import com.mucheng.notes.security.BiometricManager
 import com.mucheng.notes.security.BiometricManagerImpl
 import com.mucheng.notes.security.BiometricStatus
-import com.mucheng.notes.security.CryptoEngine
 import com.mucheng.notes.security.LockType
 import dagger.hilt.android.lifecycle.HiltViewModel
 import dagger.hilt.android.qualifiers.ApplicationContext
@@ -75,6 +75,9 @@ data class SettingsUiState(
     val encryptionPassword: String = "",
     val syncInterval: SyncInterval = SyncInterval.FIVE_MINUTES,
     val syncModules: SyncModules = SyncModules(),
+    val lazyBodies: Boolean = false, // 按需下载正文
+    val compressItems: Boolean = false, // 压缩同步数据
+    val shardedLayout: Boolean = false, // 远端分目录存储
     val lastSyncTime: Long? = null,
     val syncStatus: SyncStatus = SyncStatus.IDLE,
     val testingConnection: Boolean = false,
@@ -113,7 +116,8 @@ class SettingsViewModel @Inject constructor(
     private val appLockManager: AppLockManager,
     private val biometricManager: BiometricManager,
     private val syncEngine: SyncEngine,
-    private val cryptoEngine: CryptoEngine
+    private val syncScheduler: SyncScheduler,
+    private val syncSettings: SyncSettings
 ) : ViewModel() {
     
     companion object {
@@ -122,23 +126,6 @@ class SettingsViewModel @Inject constructor(
         private const val KEY_TODOS_ENABLED = "todos_enabled"
         private const val KEY_VAULT_ENABLED = "vault_enabled"
         private const val KEY_AI_ENABLED = "ai_enabled"
-        private const val KEY_SYNC_ENABLED = "sync_enabled"
-        private const val KEY_SYNC_TYPE = "sync_type"
-        private const val KEY_WEBDAV_URL = "webdav_url"
-        private const val KEY_USERNAME = "username"
-        private const val KEY_PASSWORD = "password"
-        private const val KEY_SYNC_PATH = "sync_path"
-        private const val KEY_API_KEY = "api_key"
-        private const val KEY_ENCRYPTION_ENABLED = "encryption_enabled"
-        private const val KEY_ENCRYPTION_PASSWORD = "encryption_password"
-        private const val KEY_SYNC_INTERVAL = "sync_interval"
-        private const val KEY_LAST_SYNC_TIME = "last_sync_time"
-        private const val KEY_SYNC_NOTES = "sync_notes"
-        private const val KEY_SYNC_BOOKMARKS = "sync_bookmarks"
-        private const val KEY_SYNC_VAULT = "sync_vault"
-        private const val KEY_SYNC_DIAGRAMS = "sync_diagrams"
-        private const val KEY_SYNC_TODOS = "sync_todos"
-        private const val KEY_SYNC_AI = "sync_ai"
         private const val KEY_LOCK_TIMEOUT = "lock_timeout"
         private const val KEY_FOLLOW_SYSTEM_THEME = "follow_system_theme"
         private const val KEY_DARK_MODE = "dark_mode"
@@ -160,16 +147,16 @@ class SettingsViewModel @Inject constructor(
     }
     
     private fun loadSettings() {
-        val syncIntervalMinutes = prefs.getInt(KEY_SYNC_INTERVAL, 5)
+        val syncIntervalMinutes = prefs.getInt(SyncSettings.KEY_SYNC_INTERVAL, 5)
         val syncInterval = SyncInterval.entries.find { it.minutes == syncIntervalMinutes } ?: SyncInterval.FIVE_MINUTES
         
         val lockTimeoutMillis = appLockManager.getLockTimeout()
         val lockTimeout = LockTimeout.entries.find { it.millis == lockTimeoutMillis } ?: LockTimeout.FIVE_MINUTES
         
         // 调试日志
-        val loadedSyncEnabled = prefs.getBoolean(KEY_SYNC_ENABLED, false)
-        val loadedEncryptionEnabled = prefs.getBoolean(KEY_ENCRYPTION_ENABLED, true)
-        val loadedEncryptionPassword = prefs.getString(KEY_ENCRYPTION_PASSWORD, "") ?: ""
+        val loadedSyncEnabled = prefs.getBoolean(SyncSettings.KEY_SYNC_ENABLED, false)
+        val loadedEncryptionEnabled = prefs.getBoolean(SyncSettings.KEY_ENCRYPTION_ENABLED, true)
+        val loadedEncryptionPassword = prefs.getString(SyncSettings.KEY_ENCRYPTION_PASSWORD, "") ?: ""
         android.util.Log.d("SettingsViewModel", "loadSettings: syncEnabled=$loadedSyncEnabled, encryptionEnabled=$loadedEncryptionEnabled, encryptionPassword=${if (loadedEncryptionPassword.isNotEmpty()) "[SET:${loadedEncryptionPassword.length}chars]" else "[EMPTY]"}")
         
         _uiState.update { state ->
@@ -185,25 +172,28 @@ class SettingsViewModel @Inject constructor(
                 aiEnabled = prefs.getBoolean(KEY_AI_ENABLED, true),
                 
                 // 同步设置
-                syncEnabled = prefs.getBoolean(KEY_SYNC_ENABLED, false),
-                syncType = prefs.getString(KEY_SYNC_TYPE, "webdav") ?: "webdav",
-                webdavUrl = prefs.getString(KEY_WEBDAV_URL, "") ?: "",
-                username = prefs.getString(KEY_USERNAME, "") ?: "",
-                password = prefs.getString(KEY_PASSWORD, "") ?: "",
-                syncPath = prefs.getString(KEY_SYNC_PATH, "/mucheng-notes") ?: "/mucheng-notes",
-                apiKey = prefs.getString(KEY_API_KEY, "") ?: "",
-                encryptionEnabled = prefs.getBoolean(KEY_ENCRYPTION_ENABLED, true),
-                encryptionPassword = prefs.getString(KEY_ENCRYPTION_PASSWORD, "") ?: "",
+                syncEnabled = prefs.getBoolean(SyncSettings.KEY_SYNC_ENABLED, false),
+                syncType = prefs.getString(SyncSettings.KEY_SYNC_TYPE, "webdav") ?: "webdav",
+                webdavUrl = prefs.getString(SyncSettings.KEY_WEBDAV_URL, "") ?: "",
+                username = prefs.getString(SyncSettings.KEY_USERNAME, "") ?: "",
+                password = prefs.getString(SyncSettings.KEY_PASSWORD, "") ?: "",
+                syncPath = prefs.getString(SyncSettings.KEY_SYNC_PATH, SyncSettings.DEFAULT_SYNC_PATH) ?: SyncSettings.DEFAULT_SYNC_PATH,
+                apiKey = prefs.getString(SyncSettings.KEY_API_KEY, "") ?: "",
+                encryptionEnabled = prefs.getBoolean(SyncSettings.KEY_ENCRYPTION_ENABLED, true),
+                encryptionPassword = prefs.getString(SyncSettings.KEY_ENCRYPTION_PASSWORD, "") ?: "",
                 syncInterval = syncInterval,
-                lastSyncTime = prefs.getLong(KEY_LAST_SYNC_TIME, 0).takeIf { it > 0 },
+                lastSyncTime = prefs.getLong(SyncSettings.KEY_LAST_SYNC_TIME, 0).takeIf { it > 0 },
                 syncModules = SyncModules(
-                    notes = prefs.getBoolean(KEY_SYNC_NOTES, true),
-                    bookmarks = prefs.getBoolean(KEY_SYNC_BOOKMARKS, true),
-                    vault = prefs.getBoolean(KEY_SYNC_VAULT, true),
-                    diagrams = prefs.getBoolean(KEY_SYNC_DIAGRAMS, true),
-                    todos = prefs.getBoolean(KEY_SYNC_TODOS, true),
-                    ai = prefs.getBoolean(KEY_SYNC_AI, true)
+                    notes = prefs.getBoolean(SyncSettings.KEY_SYNC_NOTES, true),
+                    bookmarks = prefs.getBoolean(SyncSettings.KEY_SYNC_BOOKMARKS, true),
+                    vault = prefs.getBoolean(SyncSettings.KEY_SYNC_VAULT, true),
+                    diagrams = prefs.getBoolean(SyncSettings.KEY_SYNC_DIAGRAMS, true),
+                    todos = prefs.getBoolean(SyncSettings.KEY_SYNC_TODOS, true),
+                    ai = prefs.getBoolean(SyncSettings.KEY_SYNC_AI, true)
                 ),
+                lazyBodies = prefs.getBoolean(SyncSettings.KEY_LAZY_BODIES, false),
+                compressItems = prefs.getBoolean(SyncSettings.KEY_COMPRESS_ITEMS, false),
+                shardedLayout = prefs.getBoolean(SyncSettings.KEY_SHARDED_LAYOUT, false),
                 
                 // 安全设置 - 应用锁
                 appLockEnabled = appLockManager.isLockEnabled(),
@@ -252,68 +242,85 @@ class SettingsViewModel @Inject constructor(
     
     // 同步设置
     fun setSyncEnabled(enabled: Boolean) {
-        prefs.edit().putBoolean(KEY_SYNC_ENABLED, enabled).apply()
+        prefs.edit().putBoolean(SyncSettings.KEY_SYNC_ENABLED, enabled).apply()
         _uiState.update { it.copy(syncEnabled = enabled) }
+        viewModelScope.launch { syncScheduler.reschedule() }
     }
     
     fun setSyncType(type: String) {
-        prefs.edit().putString(KEY_SYNC_TYPE, type).apply()
+        prefs.edit().putString(SyncSettings.KEY_SYNC_TYPE, type).apply()
         _uiState.update { it.copy(syncType = type) }
     }
     
     fun setWebdavUrl(url: String) {
-        prefs.edit().putString(KEY_WEBDAV_URL, url).apply()
+        prefs.edit().putString(SyncSettings.KEY_WEBDAV_URL, url).apply()
         _uiState.update { it.copy(webdavUrl = url) }
     }
     
     fun setUsername(username: String) {
-        prefs.edit().putString(KEY_USERNAME, username).apply()
+        prefs.edit().putString(SyncSettings.KEY_USERNAME, username).apply()
         _uiState.update { it.copy(username = username) }
     }
     
     fun setPassword(password: String) {
-        prefs.edit().putString(KEY_PASSWORD, password).apply()
+        prefs.edit().putString(SyncSettings.KEY_PASSWORD, password).apply()
         _uiState.update { it.copy(password = password) }
     }
     
     fun setSyncPath(path: String) {
-        prefs.edit().putString(KEY_SYNC_PATH, path).apply()
+        prefs.edit().putString(SyncSettings.KEY_SYNC_PATH, path).apply()
         _uiState.update { it.copy(syncPath = path) }
     }
     
     fun setApiKey(apiKey: String) {
-        prefs.edit().putString(KEY_API_KEY, apiKey).apply()
+        prefs.edit().putString(SyncSettings.KEY_API_KEY, apiKey).apply()
         _uiState.update { it.copy(apiKey = apiKey) }
     }
     
     fun setEncryptionEnabled(enabled: Boolean) {
-        prefs.edit().putBoolean(KEY_ENCRYPTION_ENABLED, enabled).apply()
+        prefs.edit().putBoolean(SyncSettings.KEY_ENCRYPTION_ENABLED, enabled).apply()
         _uiState.update { it.copy(encryptionEnabled = enabled) }
     }
     
     fun setEncryptionPassword(password: String) {
         android.util.Log.d("SettingsViewModel", "setEncryptionPassword: saving password with ${password.length} chars")
-        prefs.edit().putString(KEY_ENCRYPTION_PASSWORD, password).apply()
+        prefs.edit().putString(SyncSettings.KEY_ENCRYPTION_PASSWORD, password).apply()
         _uiState.update { it.copy(encryptionPassword = password) }
         
         // 验证保存是否成功
-        val saved = prefs.getString(KEY_ENCRYPTION_PASSWORD, "") ?: ""
+        val saved = prefs.getString(SyncSettings.KEY_ENCRYPTION_PASSWORD, "") ?: ""
         android.util.Log.d("SettingsViewModel", "setEncryptionPassword: verified saved=${if (saved.isNotEmpty()) "[SET:${saved.length}chars]" else "[EMPTY]"}")
     }
     
     fun setSyncInterval(interval: SyncInterval) {
-        prefs.edit().putInt(KEY_SYNC_INTERVAL, interval.minutes).apply()
+        prefs.edit().putInt(SyncSettings.KEY_SYNC_INTERVAL, interval.minutes).apply()
         _uiState.update { it.copy(syncInterval = interval) }
+        viewModelScope.launch { syncScheduler.reschedule() }
+    }
+    
+    fun setLazyBodies(enabled: Boolean) {
+        prefs.edit().putBoolean(SyncSettings.KEY_LAZY_BODIES, enabled).apply()
+        _uiState.update { it.copy(lazyBodies = enabled) }
+    }
+    
+    fun setCompressItems(enabled: Boolean) {
+        prefs.edit().putBoolean(SyncSettings.KEY_COMPRESS_ITEMS, enabled).apply()
+        _uiState.update { it.copy(compressItems = enabled) }
+    }
+    
+    fun setShardedLayout(enabled: Boolean) {
+        prefs.edit().putBoolean(SyncSettings.KEY_SHARDED_LAYOUT, enabled).apply()
+        _uiState.update { it.copy(shardedLayout = enabled) }
     }
     
     fun setSyncModule(module: String, enabled: Boolean) {
         val key = when (module) {
-            "notes" -> KEY_SYNC_NOTES
-            "bookmarks" -> KEY_SYNC_BOOKMARKS
-            "vault" -> KEY_SYNC_VAULT
-            "diagrams" -> KEY_SYNC_DIAGRAMS
-            "todos" -> KEY_SYNC_TODOS
-            "ai" -> KEY_SYNC_AI
+            "notes" -> SyncSettings.KEY_SYNC_NOTES
+            "bookmarks" -> SyncSettings.KEY_SYNC_BOOKMARKS
+            "vault" -> SyncSettings.KEY_SYNC_VAULT
+            "diagrams" -> SyncSettings.KEY_SYNC_DIAGRAMS
+            "todos" -> SyncSettings.KEY_SYNC_TODOS
+            "ai" -> SyncSettings.KEY_SYNC_AI
             else -> return
         }
         prefs.edit().putBoolean(key, enabled).apply()
@@ -517,11 +524,6 @@ class SettingsViewModel @Inject constructor(
     fun syncNow() {
         viewModelScope.launch {
             val url = _uiState.value.webdavUrl
-            val encryptionEnabled = _uiState.value.encryptionEnabled
-            val encryptionPassword = _uiState.value.encryptionPassword
-            
-            // 调试日志
-            android.util.Log.d("SettingsViewModel", "syncNow: encryptionEnabled=$encryptionEnabled, encryptionPassword=${if (encryptionPassword.isNotEmpty()) "[SET:${encryptionPassword.length}chars]" else "[EMPTY]"}")
             
             // 验证同步配置
             if (!_uiState.value.syncEnabled) {
@@ -539,18 +541,16 @@ class SettingsViewModel @Inject constructor(
                 return@launch
             }
             
-            // 初始化加密引擎的主密钥
-            // 注意：即使用户没有启用全局加密，也需要初始化密钥用于敏感数据（密码库）
-            // 如果用户提供了加密密钥，使用用户密钥；否则使用默认密钥
+            // 同步配置与后台同步共用同一份设置读取，设置项在修改时已写入
+            val syncConfig = syncSettings.loadConfig()
+            if (syncConfig == null) {
+                _uiState.update { it.copy(message = "同步配置无效") }
+                return@launch
+            }
+            
+            // 初始化加密引擎的主密钥（同步密钥可能刚修改，总是重新派生）
             try {
-                if (encryptionPassword.isNotBlank()) {
-                    // 使用用户提供的密钥
-                    cryptoEngine.initMasterKey(encryptionPassword)
-                } else {
-                    // 使用默认密钥（与桌面端保持一致）
-                    // 注意：这不如用户自定义密钥安全，但比明文好
-                    cryptoEngine.initMasterKey("mucheng-default-vault-key-2024")
-                }
+                syncSettings.initMasterKey()
             } catch (e: Exception) {
                 _uiState.update { it.copy(message = "密钥初始化失败: ${e.message}") }
                 return@launch
@@ -559,26 +559,14 @@ class SettingsViewModel @Inject constructor(
             _uiState.update { it.copy(syncStatus = SyncStatus.SYNCING) }
             
             try {
-                // 构建同步配置
-                val syncConfig = SyncConfig(
-                    enabled = true,
-                    type = _uiState.value.syncType,
-                    url = url,
-                    syncPath = _uiState.value.syncPath,
-                    username = _uiState.value.username.ifBlank { null },
-                    password = _uiState.value.password.ifBlank { null },
-                    apiKey = _uiState.value.apiKey.ifBlank { null },
-                    encryptionEnabled = _uiState.value.encryptionEnabled,
-                    syncModules = _uiState.value.syncModules
-                )
-                
                 // 设置同步配置并执行同步
                 syncEngine.setConfig(syncConfig)
                 val result = syncEngine.sync()
+                syncScheduler.onSyncFinished(result)
                 
                 if (result.success) {
                     val now = System.currentTimeMillis()
-                    prefs.edit().putLong(KEY_LAST_SYNC_TIME, now).apply()
+                    syncSettings.recordSyncTime(now)
                     
                     val message = buildString {
                         append("同步成功")
@@ -714,7 +702,7 @@ class SettingsViewModel @Inject constructor(
      */
     fun generateEncryptionKey() {
         val key = java.util.UUID.randomUUID().toString().replace("-", "")
-        prefs.edit().putString(KEY_ENCRYPTION_PASSWORD, key).apply()
+        prefs.edit().putString(SyncSettings.KEY_ENCRYPTION_PASSWORD, key).apply()
         _uiState.update { it.copy(encryptionPassword = key, message = "已生成新密钥") }
     }
     
@@ -739,7 +727,7 @@ class SettingsViewModel @Inject constructor(
             _uiState.update { it.copy(message = "密钥不能为空") }
             return
         }
-        prefs.edit().putString(KEY_ENCRYPTION_PASSWORD, key).apply()
+        prefs.edit().putString(SyncSettings.KEY_ENCRYPTION_PASSWORD, key).apply()
         _uiState.update { it.copy(encryptionPassword = key, message = "密钥导入成功") }
     }
     
@@ -7,16 +7,25 @@ import com.mucheng.notes.domain.model.ItemType
 import com.mucheng.notes.domain.model.payload.TodoPayload
 import com.mucheng.notes.domain.model.payload.TodoQuadrant
 import com.mucheng.notes.domain.repository.ItemRepository
+import com.mucheng.notes.domain.repository.decodePayload
+import com.mucheng.notes.domain.repository.patch
+import com.mucheng.notes.service.ReminderManager
 import dagger.hilt.android.lifecycle.HiltViewModel
+import kotlinx.coroutines.ExperimentalCoroutinesApi
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.SharingStarted
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.combine
+import kotlinx.coroutines.flow.distinctUntilChanged
+import kotlinx.coroutines.flow.flatMapLatest
+import kotlinx.coroutines.flow.flowOf
 import kotlinx.coroutines.flow.map
 import kotlinx.coroutines.flow.stateIn
 import kotlinx.coroutines.launch
 import kotlinx.serialization.encodeToString
 import kotlinx.serialization.json.Json
+import kotlinx.serialization.json.JsonPrimitive
 import javax.inject.Inject
 
 /**
@@ -33,7 +42,8 @@ data class TodosUiState(
  */
 @HiltViewModel
 class TodosViewModel @Inject constructor(
-    private val itemRepository: ItemRepository
+    private val itemRepository: ItemRepository,
+    private val reminderManager: ReminderManager
 ) : ViewModel() {
     
     private val json = Json { 
@@ -45,20 +55,66 @@ class TodosViewModel @Inject constructor(
     private val _uiState = MutableStateFlow(TodosUiState())
     val uiState: StateFlow<TodosUiState> = _uiState.asStateFlow()
     
+    private val _expandedQuadrants = MutableStateFlow(TodoQuadrant.entries.toSet())
+    
     /**
-     * 待办列表（实时流）
+     * 展开的象限
      */
-    val todos: StateFlow<List<TodoItem>> = itemRepository.getByType(ItemType.TODO)
-        .map { items -> items.map { it.toTodoItem() } }
-        .stateIn(viewModelScope, SharingStarted.Lazily, emptyList())
+    val expandedQuadrants: StateFlow<Set<TodoQuadrant>> = _expandedQuadrants.asStateFlow()
+    
+    /**
+     * 展开象限中未完成的待办
+     * 每个象限单独走 type + quadrant + completed 索引查询，折叠的象限不读取也不解码
+     */
+    @OptIn(ExperimentalCoroutinesApi::class)
+    val quadrantTodos: StateFlow<Map<TodoQuadrant, List<TodoItem>>> = _expandedQuadrants
+        .flatMapLatest { expanded ->
+            if (expanded.isEmpty()) {
+                flowOf(emptyMap())
+            } else {
+                combine(expanded.map { quadrant ->
+                    itemRepository.observeTodosInQuadrant(serialNameOf(quadrant), completed = false)
+                        .mapListParallel { it.toTodoItem() }
+                        .map { quadrant to it }
+                }) { it.toMap() }
+            }
+        }
+        .stateIn(viewModelScope, SharingStarted.Lazily, emptyMap())
     
     /**
-     * 按象限分组的待办
+     * 各象限未完成的待办数量（由索引统计，折叠的象限也能显示数量）
      */
-    val todosByQuadrant: StateFlow<Map<TodoQuadrant, List<TodoItem>>> = todos
-        .map { list -> list.groupBy { it.quadrant } }
+    val quadrantCounts: StateFlow<Map<TodoQuadrant, Int>> = itemRepository.observeQuadrantCounts(completed = false)
+        .map { counts ->
+            counts.mapNotNull { count ->
+                count.quadrant?.let(::quadrantOf)?.let { it to count.count }
+            }.toMap()
+        }
         .stateIn(viewModelScope, SharingStarted.Lazily, emptyMap())
     
+    /**
+     * 已完成的待办数量
+     */
+    val completedCount: StateFlow<Int> = itemRepository.observeQuadrantCounts(completed = true)
+        .map { counts -> counts.sumOf { it.count } }
+        .stateIn(viewModelScope, SharingStarted.Lazily, 0)
+    
+    /**
+     * 已完成的待办，只在展开已完成分组时查询
+     */
+    @OptIn(ExperimentalCoroutinesApi::class)
+    val completedTodos: StateFlow<List<TodoItem>> = _uiState
+        .map { it.showCompleted }
+        .distinctUntilChanged()
+        .flatMapLatest { show ->
+            if (show) {
+                itemRepository.observeCompletedTodos().mapListParallel { it.toTodoItem() }
+            } else {
+                flowOf(emptyList())
+            }
+        }
+        .stateIn(viewModelScope, SharingStarted.Lazily, emptyList())
+    
     /**
      * 创建待办
      */
@@ -83,6 +139,7 @@ class TodosViewModel @Inject constructor(
                 tags = emptyList()
             )
             itemRepository.create(ItemType.TODO, json.encodeToString(payload))
+            if (reminderTime != null) reminderManager.rescheduleUpcoming()
         }
     }
     
@@ -125,6 +182,7 @@ class TodosViewModel @Inject constructor(
                 reminderEnabled = reminderTime != null
             )
             itemRepository.update(id, json.encodeToString(newPayload))
+            refreshReminder(id, reminderTime)
         }
     }
     
@@ -133,13 +191,17 @@ class TodosViewModel @Inject constructor(
      */
     fun toggleCompleted(id: String) {
         viewModelScope.launch {
-            val existing = itemRepository.getById(id) ?: return@launch
-            val oldPayload = json.decodeFromString<TodoPayload>(existing.payload)
-            val newPayload = oldPayload.copy(
-                completed = !oldPayload.completed,
-                completedAt = if (!oldPayload.completed) System.currentTimeMillis() else null
+            val todo = itemRepository.getById(id)?.let { itemRepository.decodePayload<TodoPayload>(it) }
+                ?: return@launch
+            val completed = todo.completed
+            itemRepository.patch(
+                id,
+                mapOf(
+                    "completed" to JsonPrimitive(!completed),
+                    "completed_at" to JsonPrimitive(if (!completed) System.currentTimeMillis() else null)
+                )
             )
-            itemRepository.update(id, json.encodeToString(newPayload))
+            refreshReminder(id, if (completed && todo.reminderEnabled) todo.reminderTime else null)
         }
     }
     
@@ -148,10 +210,7 @@ class TodosViewModel @Inject constructor(
      */
     fun changeQuadrant(id: String, quadrant: TodoQuadrant) {
         viewModelScope.launch {
-            val existing = itemRepository.getById(id) ?: return@launch
-            val oldPayload = json.decodeFromString<TodoPayload>(existing.payload)
-            val newPayload = oldPayload.copy(quadrant = quadrant)
-            itemRepository.update(id, json.encodeToString(newPayload))
+            itemRepository.patch(id, "quadrant", json.encodeToJsonElement(TodoQuadrant.serializer(), quadrant))
         }
     }
     
@@ -161,6 +220,7 @@ class TodosViewModel @Inject constructor(
     fun deleteTodo(id: String) {
         viewModelScope.launch {
             itemRepository.softDelete(id)
+            reminderManager.cancelReminder(id)
         }
     }
     
@@ -169,13 +229,36 @@ class TodosViewModel @Inject constructor(
      */
     fun setReminder(id: String, reminderTime: Long?) {
         viewModelScope.launch {
-            val existing = itemRepository.getById(id) ?: return@launch
-            val oldPayload = json.decodeFromString<TodoPayload>(existing.payload)
-            val newPayload = oldPayload.copy(
-                reminderTime = reminderTime,
-                reminderEnabled = reminderTime != null
+            itemRepository.patch(
+                id,
+                mapOf(
+                    "reminder_time" to JsonPrimitive(reminderTime),
+                    "reminder_enabled" to JsonPrimitive(reminderTime != null)
+                )
             )
-            itemRepository.update(id, json.encodeToString(newPayload))
+            refreshReminder(id, reminderTime)
+        }
+    }
+    
+    /**
+     * 待办的提醒变化后更新闹钟，[reminderTime] 为 null 时取消
+     */
+    private suspend fun refreshReminder(id: String, reminderTime: Long?) {
+        if (reminderTime == null) {
+            reminderManager.cancelReminder(id)
+        } else {
+            reminderManager.rescheduleUpcoming()
+        }
+    }
+    
+    /**
+     * 展开或折叠象限
+     */
+    fun toggleQuadrantExpanded(quadrant: TodoQuadrant) {
+        _expandedQuadrants.value = if (quadrant in _expandedQuadrants.value) {
+            _expandedQuadrants.value - quadrant
+        } else {
+            _expandedQuadrants.value + quadrant
         }
     }
     
@@ -186,8 +269,23 @@ class TodosViewModel @Inject constructor(
         _uiState.value = _uiState.value.copy(showCompleted = !_uiState.value.showCompleted)
     }
     
+    /**
+     * 象限的序列化名，即 quadrant 索引列中的值
+     */
+    private fun serialNameOf(quadrant: TodoQuadrant): String {
+        return TodoQuadrant.serializer().descriptor.getElementName(quadrant.ordinal)
+    }
+    
+    /**
+     * 按序列化名（如 urgent-important）查找象限
+     */
+    private fun quadrantOf(serialName: String): TodoQuadrant? {
+        val index = TodoQuadrant.serializer().descriptor.getElementIndex(serialName)
+        return TodoQuadrant.entries.getOrNull(index)
+    }
+    
     private fun ItemEntity.toTodoItem(): TodoItem {
-        val payload = json.decodeFromString<TodoPayload>(this.payload)
+        val payload = itemRepository.decodePayload<TodoPayload>(this)
         return TodoItem(
             id = this.id,
             title = payload.title,
@@ -12,6 +12,7 @@ import com.mucheng.notes.domain.model.payload.VaultEntryPayload
 import com.mucheng.notes.domain.model.payload.VaultEntryType
 import com.mucheng.notes.domain.model.payload.VaultFolderPayload
 import com.mucheng.notes.domain.repository.ItemRepository
+import com.mucheng.notes.domain.repository.decodePayload
 import com.mucheng.notes.security.AuthResult
 import com.mucheng.notes.security.BiometricManager
 import com.mucheng.notes.security.BiometricStatus
@@ -26,7 +27,6 @@ import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.SharingStarted
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
-import kotlinx.coroutines.flow.map
 import kotlinx.coroutines.flow.stateIn
 import kotlinx.coroutines.flow.update
 import kotlinx.coroutines.launch
@@ -131,14 +131,14 @@ class VaultViewModel @Inject constructor(
      * 密码库条目列表（实时流）
      */
     val entries: StateFlow<List<VaultEntryItem>> = itemRepository.getByType(ItemType.VAULT_ENTRY)
-        .map { items -> items.map { it.toVaultEntryItem() } }
+        .mapListParallel { it.toVaultEntryItem() }
         .stateIn(viewModelScope, SharingStarted.Lazily, emptyList())
     
     /**
      * 密码库文件夹列表（实时流）
      */
     val folders: StateFlow<List<VaultFolderItem>> = itemRepository.getByType(ItemType.VAULT_FOLDER)
-        .map { items -> items.map { it.toVaultFolderItem() } }
+        .mapListParallel { it.toVaultFolderItem() }
         .stateIn(viewModelScope, SharingStarted.Lazily, emptyList())
     
     /**
@@ -516,10 +516,7 @@ class VaultViewModel @Inject constructor(
      */
     fun toggleFavorite(id: String) {
         viewModelScope.launch {
-            val existing = itemRepository.getById(id) ?: return@launch
-            val oldPayload = json.decodeFromString<VaultEntryPayload>(existing.payload)
-            val newPayload = oldPayload.copy(favorite = !oldPayload.favorite)
-            itemRepository.update(id, json.encodeToString(newPayload))
+            itemRepository.toggle(id, "favorite")
         }
     }
     
@@ -551,7 +548,7 @@ class VaultViewModel @Inject constructor(
         android.util.Log.d("VaultViewModel", "toVaultEntryItem: id=${this.id}, type=${this.type}")
         android.util.Log.d("VaultViewModel", "toVaultEntryItem: payload=${this.payload}")
         return try {
-            val payload = json.decodeFromString<VaultEntryPayload>(this.payload)
+            val payload = itemRepository.decodePayload<VaultEntryPayload>(this)
             android.util.Log.d("VaultViewModel", "toVaultEntryItem: parsed successfully, name=${payload.name}")
             VaultEntryItem(
                 id = this.id,
@@ -587,7 +584,7 @@ class VaultViewModel @Inject constructor(
     
     private fun ItemEntity.toVaultFolderItem(): VaultFolderItem {
         return try {
-            val payload = json.decodeFromString<VaultFolderPayload>(this.payload)
+            val payload = itemRepository.decodePayload<VaultFolderPayload>(this)
             VaultFolderItem(
                 id = this.id,
                 name = payload.name,
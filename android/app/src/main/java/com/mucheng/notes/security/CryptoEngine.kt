@@ -77,6 +77,17 @@ interface CryptoEngine {
      */
     fun decryptPayload(encryptedPayload: String): String
     
+    /**
+     * 加密二进制数据
+     * @return IV (12 bytes) + 密文 + AuthTag (16 bytes)，不做 Base64
+     */
+    fun encryptBytes(data: ByteArray): ByteArray
+    
+    /**
+     * 解密 [encryptBytes] 的结果
+     */
+    fun decryptBytes(data: ByteArray): ByteArray
+    
     /**
      * 计算内容哈希（SHA-256 前 16 字符）
      */
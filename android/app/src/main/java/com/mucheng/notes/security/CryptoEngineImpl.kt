@@ -115,6 +115,26 @@ class CryptoEngineImpl @Inject constructor() : CryptoEngine {
         return decrypt(encrypted)
     }
     
+    override fun encryptBytes(data: ByteArray): ByteArray {
+        val key = masterKey ?: throw IllegalStateException("Master key not set")
+        
+        val iv = generateIV()
+        val cipher = Cipher.getInstance(ALGORITHM)
+        cipher.init(Cipher.ENCRYPT_MODE, SecretKeySpec(key, "AES"), GCMParameterSpec(AUTH_TAG_SIZE, iv))
+        // GCM 模式下 authTag 已附加在密文末尾
+        return iv + cipher.doFinal(data)
+    }
+    
+    override fun decryptBytes(data: ByteArray): ByteArray {
+        val key = masterKey ?: throw IllegalStateException("Master key not set")
+        require(data.size >= IV_SIZE + AUTH_TAG_SIZE / 8) { "Encrypted data too short" }
+        
+        val iv = data.copyOfRange(0, IV_SIZE)
+        val cipher = Cipher.getInstance(ALGORITHM)
+        cipher.init(Cipher.DECRYPT_MODE, SecretKeySpec(key, "AES"), GCMParameterSpec(AUTH_TAG_SIZE, iv))
+        return cipher.doFinal(data, IV_SIZE, data.size - IV_SIZE)
+    }
+    
     override fun computeHash(content: String): String {
         val digest = MessageDigest.getInstance("SHA-256")
         val hashBytes = digest.digest(content.toByteArray(Charsets.UTF_8))
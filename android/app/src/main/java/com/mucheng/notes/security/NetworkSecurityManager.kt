@@ -25,9 +25,14 @@ interface NetworkSecurityManager {
 /**
  * 网络安全管理器实现
  * 提供 Certificate Pinning 和安全的 HTTP 客户端
+ *
+ * 客户端都由共享的基础客户端派生，共用连接池和调度器；连接池按证书固定配置区分连接，
+ * 固定证书的客户端不会复用未经校验的连接。
  */
 @Singleton
-class NetworkSecurityManagerImpl @Inject constructor() : NetworkSecurityManager {
+class NetworkSecurityManagerImpl @Inject constructor(
+    private val baseClient: OkHttpClient
+) : NetworkSecurityManager {
     
     companion object {
         // OpenAI API 证书指纹 (需要定期更新)
@@ -51,7 +56,7 @@ class NetworkSecurityManagerImpl @Inject constructor() : NetworkSecurityManager
     }
     
     private val secureClient: OkHttpClient by lazy {
-        OkHttpClient.Builder()
+        baseClient.newBuilder()
             // 证书固定
             .certificatePinner(_certificatePinner)
             // 仅使用现代 TLS
@@ -83,7 +88,7 @@ class NetworkSecurityManagerImpl @Inject constructor() : NetworkSecurityManager
             }
         }
         
-        return OkHttpClient.Builder()
+        return baseClient.newBuilder()
             .certificatePinner(pinnerBuilder.build())
             .connectionSpecs(listOf(ConnectionSpec.MODERN_TLS))
             .connectTimeout(30, TimeUnit.SECONDS)
@@ -97,7 +102,7 @@ class NetworkSecurityManagerImpl @Inject constructor() : NetworkSecurityManager
      * 注意：仅在用户明确选择时使用
      */
     fun createClientWithoutPinning(): OkHttpClient {
-        return OkHttpClient.Builder()
+        return baseClient.newBuilder()
             .connectionSpecs(listOf(ConnectionSpec.MODERN_TLS, ConnectionSpec.COMPATIBLE_TLS))
             .connectTimeout(30, TimeUnit.SECONDS)
             .readTimeout(60, TimeUnit.SECONDS)
@@ -0,0 +1,97 @@
+package com.mucheng.notes.service
+
+import android.app.job.JobInfo
+import android.app.job.JobParameters
+import android.app.job.JobScheduler
+import android.app.job.JobService
+import android.content.ComponentName
+import android.content.Context
+import android.util.Log
+import com.mucheng.notes.data.local.DatabaseMaintenance
+import dagger.hilt.android.AndroidEntryPoint
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.launch
+import java.util.concurrent.TimeUnit
+import javax.inject.Inject
+
+/**
+ * 数据库维护任务
+ *
+ * 注册两个每日周期任务，分别要求设备空闲、正在充电，任一满足即执行；
+ * [DatabaseMaintenance.runIfDue] 保证一天内只真正执行一次。
+ */
+@AndroidEntryPoint
+class MaintenanceJobService : JobService() {
+    
+    @Inject
+    lateinit var databaseMaintenance: DatabaseMaintenance
+    
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+    
+    private val runningJobs = mutableMapOf<Int, Job>()
+    
+    override fun onStartJob(params: JobParameters): Boolean {
+        val job = scope.launch {
+            try {
+                databaseMaintenance.runIfDue()
+            } catch (e: Exception) {
+                Log.e(TAG, "Database maintenance failed", e)
+            } finally {
+                synchronized(runningJobs) { runningJobs.remove(params.jobId) }
+                jobFinished(params, false)
+            }
+        }
+        synchronized(runningJobs) { runningJobs[params.jobId] = job }
+        return true
+    }
+    
+    override fun onStopJob(params: JobParameters): Boolean {
+        // 条件不再满足（如拔掉电源），取消后由下个周期继续
+        synchronized(runningJobs) { runningJobs.remove(params.jobId) }?.cancel()
+        return false
+    }
+    
+    override fun onDestroy() {
+        scope.cancel()
+        super.onDestroy()
+    }
+    
+    companion object {
+        private const val TAG = "MaintenanceJobService"
+        private const val JOB_ID_IDLE = 1001
+        private const val JOB_ID_CHARGING = 1002
+        
+        /**
+         * 注册维护任务（已注册时跳过）
+         */
+        fun schedule(context: Context) {
+            val scheduler = context.getSystemService(JobScheduler::class.java) ?: return
+            val component = ComponentName(context, MaintenanceJobService::class.java)
+            val period = TimeUnit.DAYS.toMillis(1)
+            
+            if (scheduler.getPendingJob(JOB_ID_IDLE) == null) {
+                scheduler.schedule(
+                    JobInfo.Builder(JOB_ID_IDLE, component)
+                        .setRequiresDeviceIdle(true)
+                        .setRequiresBatteryNotLow(true)
+                        .setPeriodic(period)
+                        .setPersisted(true)
+                        .build()
+                )
+            }
+            if (scheduler.getPendingJob(JOB_ID_CHARGING) == null) {
+                scheduler.schedule(
+                    JobInfo.Builder(JOB_ID_CHARGING, component)
+                        .setRequiresCharging(true)
+                        .setPeriodic(period)
+                        .setPersisted(true)
+                        .build()
+                )
+            }
+        }
+    }
+}
@@ -8,11 +8,21 @@ import android.content.BroadcastReceiver
 import android.content.Context
 import android.content.Intent
 import android.os.Build
+import android.util.Log
 import androidx.core.app.NotificationCompat
 import com.mucheng.notes.R
+import com.mucheng.notes.data.local.entity.TodoReminder
+import com.mucheng.notes.domain.repository.ItemRepository
 import com.mucheng.notes.presentation.MainActivity
 import dagger.hilt.android.AndroidEntryPoint
+import dagger.hilt.android.qualifiers.ApplicationContext
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.launch
+import java.util.concurrent.TimeUnit
 import javax.inject.Inject
+import javax.inject.Singleton
 
 /**
  * 待办提醒广播接收器
@@ -73,10 +83,51 @@ class ReminderReceiver : BroadcastReceiver() {
     }
 }
 
+/**
+ * 开机广播接收器
+ * 重启后闹钟全部失效，按提醒时间索引重新调度
+ */
+@AndroidEntryPoint
+class ReminderBootReceiver : BroadcastReceiver() {
+    
+    @Inject
+    lateinit var reminderManager: ReminderManager
+    
+    override fun onReceive(context: Context, intent: Intent) {
+        if (intent.action != Intent.ACTION_BOOT_COMPLETED) return
+        
+        val pendingResult = goAsync()
+        CoroutineScope(SupervisorJob() + Dispatchers.IO).launch {
+            try {
+                reminderManager.rescheduleUpcoming()
+            } catch (e: Exception) {
+                Log.e(TAG, "Failed to reschedule reminders after boot", e)
+            } finally {
+                pendingResult.finish()
+            }
+        }
+    }
+    
+    companion object {
+        private const val TAG = "ReminderBootReceiver"
+    }
+}
+
 /**
  * 提醒管理器
  */
-class ReminderManager(private val context: Context) {
+@Singleton
+class ReminderManager @Inject constructor(
+    @ApplicationContext private val context: Context,
+    private val itemRepository: ItemRepository
+) {
+    
+    companion object {
+        private const val TAG = "ReminderManager"
+        
+        /** 每次重新调度覆盖的时间窗口，应用启动、开机、同步后都会重新调度 */
+        private val RESCHEDULE_WINDOW_MS = TimeUnit.DAYS.toMillis(7)
+    }
     
     private val alarmManager = context.getSystemService(Context.ALARM_SERVICE) as AlarmManager
     
@@ -96,8 +147,14 @@ class ReminderManager(private val context: Context) {
             PendingIntent.FLAG_UPDATE_CURRENT or PendingIntent.FLAG_IMMUTABLE
         )
         
-        // 使用精确闹钟
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+        // 使用精确闹钟，未获得精确闹钟权限时退回普通闹钟
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S && !alarmManager.canScheduleExactAlarms()) {
+            alarmManager.setAndAllowWhileIdle(
+                AlarmManager.RTC_WAKEUP,
+                triggerTime,
+                pendingIntent
+            )
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
             alarmManager.setExactAndAllowWhileIdle(
                 AlarmManager.RTC_WAKEUP,
                 triggerTime,
@@ -112,6 +169,28 @@ class ReminderManager(private val context: Context) {
         }
     }
     
+    /**
+     * 批量设置提醒（如开机或同步后按索引查询出的时间窗口重新调度）
+     * 已过去的提醒会被跳过
+     */
+    fun scheduleAll(reminders: List<TodoReminder>) {
+        val now = System.currentTimeMillis()
+        reminders
+            .filter { it.reminderTime > now }
+            .forEach { setReminder(it.id, it.title ?: "待办提醒", it.reminderTime) }
+    }
+    
+    /**
+     * 按提醒时间索引重新调度未来一段时间内的提醒
+     * 同一待办的 PendingIntent 相同，重复调度只会覆盖
+     */
+    suspend fun rescheduleUpcoming() {
+        val now = System.currentTimeMillis()
+        val reminders = itemRepository.getUpcomingReminders(now, now + RESCHEDULE_WINDOW_MS)
+        scheduleAll(reminders)
+        Log.d(TAG, "Scheduled ${reminders.size} reminders")
+    }
+    
     /**
      * 取消提醒
      */
@@ -0,0 +1,117 @@
+package com.mucheng.notes.service
+
+import android.app.job.JobParameters
+import android.app.job.JobService
+import android.net.ConnectivityManager
+import android.util.Log
+import com.mucheng.notes.data.local.DatabaseInitializer
+import com.mucheng.notes.data.remote.HttpMetrics
+import com.mucheng.notes.data.sync.BodyHydrator
+import com.mucheng.notes.data.sync.SyncEngine
+import com.mucheng.notes.data.sync.SyncScheduler
+import com.mucheng.notes.data.sync.SyncSettings
+import com.mucheng.notes.domain.model.SyncResult
+import com.mucheng.notes.domain.repository.SyncRepository
+import dagger.hilt.android.AndroidEntryPoint
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.launch
+import javax.inject.Inject
+
+/**
+ * 后台同步任务
+ *
+ * 由 [SyncScheduler] 安排的单次任务，执行一次完整同步后按结果安排下一次。
+ */
+@AndroidEntryPoint
+class SyncJobService : JobService() {
+    
+    @Inject
+    lateinit var syncSettings: SyncSettings
+    
+    @Inject
+    lateinit var syncEngine: SyncEngine
+    
+    @Inject
+    lateinit var syncRepository: SyncRepository
+    
+    @Inject
+    lateinit var syncScheduler: SyncScheduler
+    
+    @Inject
+    lateinit var databaseInitializer: DatabaseInitializer
+    
+    @Inject
+    lateinit var bodyHydrator: BodyHydrator
+    
+    @Inject
+    lateinit var httpMetrics: HttpMetrics
+    
+    @Inject
+    lateinit var reminderManager: ReminderManager
+    
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+    
+    private var running: Job? = null
+    
+    override fun onStartJob(params: JobParameters): Boolean {
+        running = scope.launch {
+            try {
+                val config = syncSettings.loadConfig()
+                if (config == null) {
+                    syncScheduler.reschedule()
+                    return@launch
+                }
+                
+                databaseInitializer.await()
+                syncSettings.ensureMasterKey()
+                syncEngine.setConfig(config)
+                
+                // SyncRepository 记录结果并安排下一次
+                val httpBefore = httpMetrics.snapshot()
+                val result = syncRepository.sync()
+                if (result.success) {
+                    syncSettings.recordSyncTime(System.currentTimeMillis())
+                    Log.d(TAG, "Background sync done: ${result.bytesUploaded} bytes up, ${result.bytesDownloaded} bytes down")
+                    Log.d(TAG, "HTTP: ${httpMetrics.snapshot() - httpBefore}")
+                    
+                    // 同步可能带来其他设备设置的提醒
+                    reminderManager.rescheduleUpcoming()
+                    
+                    // 按需下载模式下，在不计流量的网络上顺带补全一批正文
+                    val metered = getSystemService(ConnectivityManager::class.java)?.isActiveNetworkMetered ?: true
+                    if (config.lazyBodies && !metered) {
+                        bodyHydrator.hydrateInBackground()
+                    }
+                }
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: Exception) {
+                Log.e(TAG, "Background sync failed", e)
+                syncScheduler.onSyncFinished(SyncResult(error = e.message))
+            } finally {
+                jobFinished(params, false)
+            }
+        }
+        return true
+    }
+    
+    override fun onStopJob(params: JobParameters): Boolean {
+        // 约束不再满足时取消，由系统按原任务重新调度
+        running?.cancel()
+        return true
+    }
+    
+    override fun onDestroy() {
+        scope.cancel()
+        super.onDestroy()
+    }
+    
+    companion object {
+        private const val TAG = "SyncJobService"
+    }
+}
@@ -0,0 +1,39 @@
+package com.mucheng.notes
+
+import com.mucheng.notes.data.local.GatedExecutor
+import io.kotest.core.spec.style.StringSpec
+import io.kotest.matchers.shouldBe
+
+/**
+ * 数据库启动闸门测试
+ *
+ * 数据库打开前提交的查询必须排队，打开后按提交顺序全部执行，之后的任务直接执行。
+ */
+class GatedExecutorTest : StringSpec({
+    
+    "Tasks are held until the gate opens" {
+        val executed = mutableListOf<Int>()
+        val gate = GatedExecutor { it.run() }
+        
+        gate.execute { executed.add(1) }
+        gate.execute { executed.add(2) }
+        executed shouldBe emptyList()
+        
+        gate.open()
+        executed shouldBe listOf(1, 2)
+        
+        gate.execute { executed.add(3) }
+        executed shouldBe listOf(1, 2, 3)
+    }
+    
+    "Opening twice does not rerun queued tasks" {
+        var count = 0
+        val gate = GatedExecutor { it.run() }
+        
+        gate.execute { count++ }
+        gate.open()
+        gate.open()
+        
+        count shouldBe 1
+    }
+})
@@ -0,0 +1,45 @@
+package com.mucheng.notes
+
+import com.mucheng.notes.data.remote.HttpMetrics
+import com.mucheng.notes.data.remote.HttpStats
+import io.kotest.core.spec.style.StringSpec
+import io.kotest.matchers.shouldBe
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+
+/**
+ * HTTP 连接复用统计测试
+ */
+class HttpMetricsTest : StringSpec({
+    
+    "Derived clients share the pool and count reused connections" {
+        val server = MockWebServer()
+        server.start()
+        try {
+            val metrics = HttpMetrics()
+            val base = OkHttpClient.Builder().eventListenerFactory(metrics).build()
+            val derived = base.newBuilder().build()
+            val before = metrics.snapshot()
+            
+            repeat(2) {
+                server.enqueue(MockResponse().setBody("ok"))
+            }
+            base.newCall(Request.Builder().url(server.url("/a")).build()).execute().use { it.body?.string() }
+            derived.newCall(Request.Builder().url(server.url("/b")).build()).execute().use { it.body?.string() }
+            
+            val stats = metrics.snapshot() - before
+            stats.calls shouldBe 2
+            stats.connectionsOpened shouldBe 1
+            stats.connectionsReused shouldBe 1
+            stats.tlsHandshakes shouldBe 0
+        } finally {
+            server.shutdown()
+        }
+    }
+    
+    "Reused count never goes negative" {
+        HttpStats(connectionsAcquired = 1, connectionsOpened = 2).connectionsReused shouldBe 0
+    }
+})
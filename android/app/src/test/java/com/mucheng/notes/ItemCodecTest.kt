@@ -0,0 +1,79 @@
+package com.mucheng.notes
+
+import com.mucheng.notes.data.local.entity.ItemEntity
+import com.mucheng.notes.data.remote.ItemCodec
+import com.mucheng.notes.security.CryptoEngineImpl
+import io.kotest.assertions.throwables.shouldThrowAny
+import io.kotest.core.spec.style.StringSpec
+import io.kotest.matchers.ints.shouldBeLessThan
+import io.kotest.matchers.shouldBe
+import kotlinx.serialization.encodeToString
+import kotlinx.serialization.json.Json
+
+/**
+ * 项目文件压缩编码测试
+ */
+class ItemCodecTest : StringSpec({
+    
+    val cryptoEngine = CryptoEngineImpl()
+    val json = Json { ignoreUnknownKeys = true; encodeDefaults = true }
+    
+    beforeSpec {
+        cryptoEngine.setMasterKey(ByteArray(32) { it.toByte() })
+    }
+    
+    afterSpec {
+        cryptoEngine.clearMasterKey()
+    }
+    
+    val paragraph = "<p>今天的会议讨论了同步协议的压缩方案，结论是先压缩再加密。</p>"
+    val item = ItemEntity(
+        id = "note-1",
+        type = "note",
+        createdTime = 1_000L,
+        updatedTime = 2_000L,
+        payload = """{"title":"会议记录","content":"${paragraph.repeat(200)}","tags":["sync"]}""",
+        contentHash = "0123456789abcdef",
+        syncStatus = "clean",
+        localRev = 3,
+        remoteRev = "\"etag-1\""
+    )
+    
+    "Plain items round-trip" {
+        val encoded = ItemCodec.encode(item)
+        
+        ItemCodec.isEncoded(encoded) shouldBe true
+        ItemCodec.decode(encoded) shouldBe item
+    }
+    
+    "Encrypted items round-trip and come back as plaintext" {
+        val encoded = ItemCodec.encode(item, cryptoEngine::encryptBytes)
+        val decoded = ItemCodec.decode(encoded, cryptoEngine::decryptBytes)
+        
+        decoded.payload shouldBe item.payload
+        decoded.encryptionApplied shouldBe 0
+        decoded.contentHash shouldBe item.contentHash
+        shouldThrowAny { ItemCodec.decode(encoded) }
+    }
+    
+    "Compressed encrypted items are much smaller than encrypted JSON" {
+        val encryptedJson = json.encodeToString(
+            item.copy(payload = cryptoEngine.encryptPayload(item.payload), encryptionApplied = 1)
+        ).toByteArray()
+        val encoded = ItemCodec.encode(item, cryptoEngine::encryptBytes)
+        
+        encoded.size shouldBeLessThan encryptedJson.size / 5
+    }
+    
+    "JSON files are not mistaken for the binary encoding" {
+        ItemCodec.isEncoded(json.encodeToString(item).toByteArray()) shouldBe false
+        ItemCodec.isEncoded(ByteArray(0)) shouldBe false
+    }
+    
+    "Tampered ciphertext is rejected" {
+        val encoded = ItemCodec.encode(item, cryptoEngine::encryptBytes)
+        encoded[encoded.size - 1] = (encoded[encoded.size - 1].toInt() xor 1).toByte()
+        
+        shouldThrowAny { ItemCodec.decode(encoded, cryptoEngine::decryptBytes) }
+    }
+})
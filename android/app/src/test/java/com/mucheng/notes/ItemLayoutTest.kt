@@ -0,0 +1,29 @@
+package com.mucheng.notes
+
+import com.mucheng.notes.data.remote.ItemLayout
+import io.kotest.core.spec.style.StringSpec
+import io.kotest.matchers.shouldBe
+
+/**
+ * 远端分目录命名测试
+ */
+class ItemLayoutTest : StringSpec({
+    
+    "UUIDs shard by their first two characters" {
+        ItemLayout.shardOf("3fa85f64-5717-4562-b3fc-2c963f66afa6") shouldBe "3f"
+        ItemLayout.shardOf("AB12") shouldBe "ab"
+    }
+    
+    "Short or unusual ids still map to a valid shard" {
+        ItemLayout.shardOf("x") shouldBe "x_"
+        ItemLayout.shardOf("") shouldBe "__"
+        ItemLayout.shardOf("-.abc") shouldBe "__"
+        ItemLayout.isShardName(ItemLayout.shardOf("é-1")) shouldBe true
+    }
+    
+    "Only two-character names count as shards" {
+        ItemLayout.isShardName("3f") shouldBe true
+        ItemLayout.isShardName("items") shouldBe false
+        ItemLayout.isShardName("3F") shouldBe false
+    }
+})
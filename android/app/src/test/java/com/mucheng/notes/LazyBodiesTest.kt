@@ -0,0 +1,63 @@
+package com.mucheng.notes
+
+import com.mucheng.notes.data.sync.LazyBodies
+import com.mucheng.notes.domain.model.payload.DiagramPayload
+import com.mucheng.notes.domain.model.payload.NotePayload
+import io.kotest.core.spec.style.StringSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.shouldNotBe
+import io.kotest.matchers.string.shouldNotContain
+import kotlinx.serialization.json.Json
+
+/**
+ * 按需下载正文的清单内容与合并测试
+ */
+class LazyBodiesTest : StringSpec({
+    
+    val json = Json { ignoreUnknownKeys = true }
+    
+    "Note stub drops the body but still decodes as NotePayload" {
+        val payload = """{"title":"Plan","content":"<p>long body</p>","folder_id":"f1","is_pinned":true,"tags":["a"]}"""
+        val stub = LazyBodies.stub("note", payload)!!
+        
+        stub shouldNotContain "long body"
+        val decoded = json.decodeFromString<NotePayload>(stub)
+        decoded.title shouldBe "Plan"
+        decoded.content shouldBe ""
+        decoded.folderId shouldBe "f1"
+        decoded.isPinned shouldBe true
+        decoded.tags shouldBe listOf("a")
+    }
+    
+    "Diagram stub drops data, thumbnail and blob markers" {
+        val payload = """{"name":"D","diagram_type":"mindmap","data":"{}","_blob_thumbnail":true,"folder_id":null}"""
+        val stub = LazyBodies.stub("diagram", payload)!!
+        
+        stub shouldNotContain "_blob_"
+        val decoded = json.decodeFromString<DiagramPayload>(stub)
+        decoded.name shouldBe "D"
+        decoded.data shouldBe ""
+        decoded.thumbnail shouldBe null
+    }
+    
+    "Types without a body are never stubbed" {
+        LazyBodies.stub("todo", """{"title":"t"}""") shouldBe null
+        LazyBodies.stub("vault_entry", """{"name":"n"}""") shouldBe null
+        LazyBodies.isLazyType("note") shouldBe true
+        LazyBodies.isLazyType("folder") shouldBe false
+    }
+    
+    "Merging keeps local list fields and takes the remote body" {
+        val local = """{"title":"Plan","content":"","is_pinned":true,"tags":[]}"""
+        val remote = """{"title":"Plan","content":"<p>body</p>","is_pinned":false,"tags":[]}"""
+        val merged = json.decodeFromString<NotePayload>(LazyBodies.mergeBody("note", local, remote))
+        
+        merged.isPinned shouldBe true
+        merged.content shouldBe "<p>body</p>"
+    }
+    
+    "Unparseable payloads fall back to a full download" {
+        LazyBodies.stub("note", "not json") shouldBe null
+        LazyBodies.mergeBody("note", "not json", """{"title":"x","content":"y"}""") shouldNotBe "not json"
+    }
+})
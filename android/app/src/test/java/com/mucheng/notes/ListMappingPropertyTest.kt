@@ -0,0 +1,50 @@
+package com.mucheng.notes
+
+import com.mucheng.notes.presentation.viewmodel.mapListParallel
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.StringSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.property.Arb
+import io.kotest.property.arbitrary.int
+import io.kotest.property.arbitrary.list
+import io.kotest.property.checkAll
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.flow.flowOf
+import kotlinx.coroutines.flow.toList
+
+/**
+ * 列表并行映射属性测试
+ *
+ * 对于任意列表和分块大小，分块并行映射的结果应与顺序映射完全一致（包括顺序），
+ * 且结果列表不可修改。
+ */
+class ListMappingPropertyTest : StringSpec({
+    
+    "Parallel chunked mapping preserves order and content" {
+        checkAll(Arb.list(Arb.int(), 0..500), Arb.int(1, 50)) { items, chunkSize ->
+            val mapped = flowOf(items)
+                .mapListParallel(chunkSize) { it.toLong() * 2 }
+                .first()
+            
+            mapped shouldBe items.map { it.toLong() * 2 }
+        }
+    }
+    
+    "Mapped lists are read-only" {
+        val mapped = flowOf(listOf(1, 2, 3))
+            .mapListParallel(chunkSize = 1) { it + 1 }
+            .first()
+        
+        shouldThrow<UnsupportedOperationException> {
+            (mapped as MutableList<Int>).add(4)
+        }
+    }
+    
+    "Latest emission is always mapped" {
+        val emissions = flowOf(listOf(1), listOf(1, 2), listOf(1, 2, 3))
+            .mapListParallel { it * 10 }
+            .toList()
+        
+        emissions.last() shouldBe listOf(10, 20, 30)
+    }
+})
@@ -0,0 +1,30 @@
+package com.mucheng.notes
+
+import com.mucheng.notes.data.local.entity.OutboxEntity
+import io.kotest.core.spec.style.StringSpec
+import io.kotest.matchers.longs.shouldBeLessThanOrEqual
+import io.kotest.matchers.shouldBe
+import io.kotest.property.Arb
+import io.kotest.property.arbitrary.int
+import io.kotest.property.checkAll
+
+/**
+ * 发件箱重试退避测试
+ *
+ * 重试间隔从 30 秒起随失败次数翻倍，不超过 6 小时，且不随次数减小。
+ */
+class OutboxBackoffTest : StringSpec({
+    
+    "Backoff starts at 30 seconds and doubles" {
+        OutboxEntity.backoffMs(1) shouldBe 30_000L
+        OutboxEntity.backoffMs(2) shouldBe 60_000L
+        OutboxEntity.backoffMs(3) shouldBe 120_000L
+    }
+    
+    "Backoff is capped and monotonic" {
+        checkAll(Arb.int(1, 1000)) { attempts ->
+            OutboxEntity.backoffMs(attempts) shouldBeLessThanOrEqual 6L * 60 * 60 * 1000
+            OutboxEntity.backoffMs(attempts) shouldBeLessThanOrEqual OutboxEntity.backoffMs(attempts + 1)
+        }
+    }
+})
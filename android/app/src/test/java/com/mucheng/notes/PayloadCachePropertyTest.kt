@@ -0,0 +1,78 @@
+package com.mucheng.notes
+
+import com.mucheng.notes.data.local.entity.ItemEntity
+import com.mucheng.notes.data.repository.DecodedPayloadCache
+import com.mucheng.notes.domain.model.payload.NotePayload
+import io.kotest.core.spec.style.StringSpec
+import io.kotest.matchers.ints.shouldBeLessThanOrEqual
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeSameInstanceAs
+import io.kotest.property.Arb
+import io.kotest.property.arbitrary.string
+import io.kotest.property.checkAll
+import kotlinx.serialization.encodeToString
+import kotlinx.serialization.json.Json
+import java.util.UUID
+
+/**
+ * 已解码 Payload 缓存属性测试
+ *
+ * 对于任意 payload，经缓存解码的结果应与直接解码一致；
+ * 内容哈希变化后必须重新解码，缓存大小不超过上限。
+ */
+class PayloadCachePropertyTest : StringSpec({
+    
+    val json = Json { encodeDefaults = true }
+    
+    fun noteEntity(id: String, title: String, hash: String): ItemEntity {
+        val payload = json.encodeToString(NotePayload(title = title, content = "content of $title"))
+        return ItemEntity(
+            id = id,
+            type = "note",
+            createdTime = 0L,
+            updatedTime = 0L,
+            payload = payload,
+            contentHash = hash
+        )
+    }
+    
+    "Cached decode equals direct decode" {
+        val cache = DecodedPayloadCache()
+        checkAll(Arb.string(0, 100)) { title ->
+            val item = noteEntity(UUID.randomUUID().toString(), title, "hash0000hash0000")
+            cache.decode(item, NotePayload.serializer()) shouldBe
+                json.decodeFromString<NotePayload>(item.payload)
+        }
+    }
+    
+    "Unchanged rows are served from cache" {
+        val cache = DecodedPayloadCache()
+        val item = noteEntity("note-1", "Title", "aaaaaaaaaaaaaaaa")
+        
+        val first = cache.decode(item, NotePayload.serializer())
+        val second = cache.decode(item.copy(), NotePayload.serializer())
+        
+        second shouldBeSameInstanceAs first
+        cache.getStats().hits shouldBe 1L
+        cache.getStats().misses shouldBe 1L
+    }
+    
+    "Changed content hash forces a fresh decode" {
+        val cache = DecodedPayloadCache()
+        val original = noteEntity("note-1", "Old", "aaaaaaaaaaaaaaaa")
+        val edited = noteEntity("note-1", "New", "bbbbbbbbbbbbbbbb")
+        
+        cache.decode(original, NotePayload.serializer()).title shouldBe "Old"
+        cache.decode(edited, NotePayload.serializer()).title shouldBe "New"
+        cache.getStats().size shouldBe 1
+    }
+    
+    "Cache size stays within the configured bound" {
+        val cache = DecodedPayloadCache()
+        cache.resize(16)
+        repeat(100) { i ->
+            cache.decode(noteEntity("note-$i", "Note $i", "hash$i"), NotePayload.serializer())
+            cache.getStats().size shouldBeLessThanOrEqual 16
+        }
+    }
+})
@@ -0,0 +1,119 @@
+package com.mucheng.notes
+
+import android.util.Log
+import com.mucheng.notes.data.local.entity.ItemEntity
+import com.mucheng.notes.data.remote.ServerAdapter
+import com.mucheng.notes.data.remote.SyncCursor
+import com.mucheng.notes.domain.model.SyncConfig
+import io.kotest.core.spec.style.StringSpec
+import io.kotest.matchers.collections.shouldContainExactlyInAnyOrder
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.string.shouldContain
+import io.kotest.matchers.string.shouldNotContain
+import io.mockk.every
+import io.mockk.mockkStatic
+import io.mockk.unmockkStatic
+import kotlinx.serialization.encodeToString
+import kotlinx.serialization.json.Json
+import okhttp3.OkHttpClient
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+
+/**
+ * 同步服务器适配器测试（本地模拟服务器）
+ */
+class ServerAdapterTest : StringSpec({
+    
+    lateinit var server: MockWebServer
+    lateinit var adapter: ServerAdapter
+    
+    // 适配器在请求失败时写日志，单元测试中 android.util.Log 没有实现
+    beforeSpec {
+        mockkStatic(Log::class)
+        every { Log.d(any(), any()) } returns 0
+        every { Log.e(any(), any()) } returns 0
+    }
+    
+    afterSpec {
+        unmockkStatic(Log::class)
+    }
+    
+    beforeTest {
+        server = MockWebServer()
+        server.start()
+        adapter = ServerAdapter(OkHttpClient())
+        adapter.initialize(SyncConfig(type = "server", url = server.url("/").toString(), apiKey = "secret"))
+    }
+    
+    afterTest {
+        server.shutdown()
+    }
+    
+    fun change(id: Long, itemId: String, hash: String) =
+        """{"change_id":$id,"item_id":"$itemId","type":"note","updated_time":$id,"deleted_time":null,"content_hash":"$hash"}"""
+    
+    "Item listing pages through the change log and keeps the latest change per item" {
+        server.enqueue(MockResponse().setBody("""{"changes":[${change(1, "a", "h1")},${change(2, "b", "h2")}],"nextCursor":"2","hasMore":true}"""))
+        server.enqueue(MockResponse().setBody("""{"changes":[${change(3, "a", "h3")}],"nextCursor":"3","hasMore":false}"""))
+        
+        val files = adapter.listItemFiles(null)
+        
+        files.map { Triple(it.id, it.etag, it.modified) } shouldContainExactlyInAnyOrder listOf(
+            Triple("a", "h3", 3L),
+            Triple("b", "h2", 2L)
+        )
+        val first = server.takeRequest()
+        first.path!! shouldNotContain "cursor="
+        first.getHeader("X-API-Key") shouldBe "secret"
+        server.takeRequest().path!! shouldContain "cursor=2"
+    }
+    
+    "Engine cursors map to the last processed change id on the server" {
+        server.enqueue(MockResponse().setBody("""{"changes":[${change(10, "a", "h")}],"nextCursor":"10","hasMore":false}"""))
+        adapter.listItemFiles("10").map { it.id } shouldBe listOf("a")
+        server.takeRequest().path!! shouldContain "cursor=9"
+        
+        server.enqueue(MockResponse())
+        adapter.setSyncCursor(SyncCursor("11", 5)) shouldBe true
+        server.takeRequest().body.readUtf8() shouldContain "\"cursor\":\"10\""
+        
+        server.enqueue(MockResponse().setBody("""{"cursor":"10","timestamp":5}"""))
+        adapter.getSyncCursor() shouldBe SyncCursor("11", 5)
+    }
+    
+    "Missing items read as null and uploads report the server revision" {
+        server.enqueue(MockResponse().setResponseCode(404))
+        adapter.getItemData("gone") shouldBe null
+        server.takeRequest()
+        
+        val item = ItemEntity(
+            id = "n1",
+            type = "note",
+            createdTime = 1,
+            updatedTime = 2,
+            payload = "{}",
+            contentHash = "abc"
+        )
+        server.enqueue(MockResponse().setBody("""{"remoteRev":"server-rev"}"""))
+        adapter.putItemData(item.id, Json.encodeToString(item).toByteArray()).getOrNull() shouldBe "server-rev"
+        val put = server.takeRequest()
+        put.method shouldBe "PUT"
+        put.path shouldBe "/api/items/n1"
+        
+        // 服务端未返回 remoteRev 时退回内容哈希
+        server.enqueue(MockResponse().setBody("{}"))
+        adapter.putItemData(item.id, Json.encodeToString(item).toByteArray()).getOrNull() shouldBe "abc"
+    }
+    
+    "Lock requests follow the desktop contract" {
+        server.enqueue(MockResponse().setBody("""{"acquired":true}"""))
+        adapter.acquireLock("device", 120_000) shouldBe true
+        val request = server.takeRequest()
+        request.method shouldBe "POST"
+        request.path shouldBe "/api/sync/lock"
+        request.body.readUtf8() shouldContain "\"deviceId\":\"device\""
+        
+        server.enqueue(MockResponse().setResponseCode(500))
+        adapter.acquireLock("device", 120_000) shouldBe false
+    }
+})
@@ -0,0 +1,61 @@
+package com.mucheng.notes
+
+import com.mucheng.notes.data.local.entity.ItemEntity
+import com.mucheng.notes.data.sync.SnapshotBundle
+import io.kotest.assertions.throwables.shouldThrowAny
+import io.kotest.core.spec.style.StringSpec
+import io.kotest.matchers.ints.shouldBeLessThan
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.string.shouldStartWith
+import kotlinx.serialization.encodeToString
+import kotlinx.serialization.json.Json
+
+/**
+ * 快照分片打包测试
+ */
+class SnapshotBundleTest : StringSpec({
+    
+    val json = Json { ignoreUnknownKeys = true; encodeDefaults = true }
+    
+    val items = (1..300).map { i ->
+        ItemEntity(
+            id = "item-$i",
+            type = if (i % 3 == 0) "todo" else "note",
+            createdTime = 1_000L + i,
+            updatedTime = 2_000L + i,
+            deletedTime = if (i == 7) 3_000L else null,
+            payload = """{"title":"Note $i","content":"<p>same paragraph repeated</p>"}""",
+            contentHash = "hash$i",
+            syncStatus = "clean",
+            remoteRev = "\"etag-$i\""
+        )
+    }
+    
+    "Packed parts round-trip with remote revisions and tombstones" {
+        val unpacked = SnapshotBundle.unpack(SnapshotBundle.pack(items, json), json)
+        
+        unpacked shouldBe items
+        unpacked[6].deletedTime shouldBe 3_000L
+        unpacked[0].remoteRev shouldBe "\"etag-1\""
+    }
+    
+    "Parts are compressed" {
+        val raw = json.encodeToString(items).toByteArray().size
+        SnapshotBundle.pack(items, json).size shouldBeLessThan raw / 4
+    }
+    
+    "Encrypted parts need the matching decrypt function" {
+        val encrypt: (String) -> String = { "enc:" + it.reversed() }
+        val decrypt: (String) -> String = { it.removePrefix("enc:").reversed() }
+        val sealed = SnapshotBundle.pack(items, json, encrypt)
+        
+        sealed.toString(Charsets.UTF_8) shouldStartWith "enc:"
+        SnapshotBundle.unpack(sealed, json, decrypt) shouldBe items
+        shouldThrowAny { SnapshotBundle.unpack(sealed, json) }
+    }
+    
+    "Part names are unique per snapshot" {
+        SnapshotBundle.partName(100L, 0) shouldBe "snapshot-100-0.bin"
+        (SnapshotBundle.partName(100L, 1) == SnapshotBundle.partName(200L, 1)) shouldBe false
+    }
+})
@@ -0,0 +1,31 @@
+package com.mucheng.notes
+
+import com.mucheng.notes.domain.model.ItemType
+import com.mucheng.notes.domain.model.SyncPullPriority
+import io.kotest.core.spec.style.StringSpec
+import io.kotest.matchers.collections.shouldContainExactlyInAnyOrder
+import io.kotest.matchers.ints.shouldBeLessThan
+import io.kotest.matchers.shouldBe
+
+/**
+ * 拉取优先级分层测试
+ */
+class SyncPullPriorityTest : StringSpec({
+    
+    "Every item type belongs to exactly one tier" {
+        SyncPullPriority.TIERS.flatten() shouldContainExactlyInAnyOrder ItemType.entries.map { it.value }
+    }
+    
+    "Notes and folders are applied before todos, bookmarks and AI history" {
+        val notes = SyncPullPriority.tierOf(ItemType.NOTE.value)
+        SyncPullPriority.tierOf(ItemType.FOLDER.value) shouldBe notes
+        notes shouldBeLessThan SyncPullPriority.tierOf(ItemType.TODO.value)
+        notes shouldBeLessThan SyncPullPriority.tierOf(ItemType.BOOKMARK.value)
+        SyncPullPriority.tierOf(ItemType.TODO.value) shouldBeLessThan SyncPullPriority.tierOf(ItemType.AI_MESSAGE.value)
+        SyncPullPriority.tierOf(ItemType.BOOKMARK.value) shouldBeLessThan SyncPullPriority.tierOf(ItemType.VAULT_ENTRY.value)
+    }
+    
+    "Unknown types go to the last tier" {
+        SyncPullPriority.tierOf("something_new") shouldBe SyncPullPriority.TIERS.lastIndex
+    }
+})
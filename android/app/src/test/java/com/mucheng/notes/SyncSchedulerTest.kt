@@ -0,0 +1,36 @@
+package com.mucheng.notes
+
+import com.mucheng.notes.data.sync.SyncScheduler
+import io.kotest.core.spec.style.StringSpec
+import io.kotest.matchers.longs.shouldBeLessThanOrEqual
+import io.kotest.matchers.shouldBe
+import io.kotest.property.Arb
+import io.kotest.property.arbitrary.boolean
+import io.kotest.property.arbitrary.int
+import io.kotest.property.checkAll
+
+/**
+ * 后台同步间隔计算测试
+ */
+class SyncSchedulerTest : StringSpec({
+    
+    "Pending local changes use the configured interval" {
+        SyncScheduler.computeDelayMs(5, failures = 0, quietStreak = 3, hasPending = true) shouldBe 5 * 60_000L
+    }
+    
+    "Quiet syncs stretch the interval up to 8x" {
+        SyncScheduler.computeDelayMs(5, failures = 0, quietStreak = 1, hasPending = false) shouldBe 10 * 60_000L
+        SyncScheduler.computeDelayMs(5, failures = 0, quietStreak = 10, hasPending = false) shouldBe 40 * 60_000L
+    }
+    
+    "Failures back off exponentially even with pending changes" {
+        SyncScheduler.computeDelayMs(1, failures = 1, quietStreak = 0, hasPending = true) shouldBe 2 * 60_000L
+        SyncScheduler.computeDelayMs(1, failures = 3, quietStreak = 0, hasPending = true) shouldBe 8 * 60_000L
+    }
+    
+    "Delay never exceeds the cap" {
+        checkAll(Arb.int(1, 60), Arb.int(0, 100), Arb.int(0, 100), Arb.boolean()) { interval, failures, quiet, pending ->
+            SyncScheduler.computeDelayMs(interval, failures, quiet, pending) shouldBeLessThanOrEqual SyncScheduler.MAX_DELAY_MS
+        }
+    }
+})
@@ -0,0 +1,117 @@
+package com.mucheng.notes
+
+import com.mucheng.notes.data.remote.WorkspaceClient
+import com.mucheng.notes.data.remote.WorkspaceMeta
+import com.mucheng.notes.data.sync.WorkspaceCapabilities
+import io.kotest.core.spec.style.StringSpec
+import io.kotest.matchers.collections.shouldContain
+import io.kotest.matchers.collections.shouldNotContain
+import io.kotest.matchers.shouldBe
+
+/**
+ * 工作区能力协商测试
+ */
+class WorkspaceCapabilitiesTest : StringSpec({
+    
+    val day = 24 * 60 * 60 * 1000L
+    val now = 1_000 * day
+    val deflate = setOf(WorkspaceCapabilities.ITEM_DEFLATE)
+    
+    "A requesting client enables compression on a fresh workspace" {
+        val result = WorkspaceCapabilities.negotiate(WorkspaceMeta(), "a", requestedCapabilities = deflate, now = now)
+        
+        result.itemDeflate shouldBe true
+        result.meta.capabilities shouldContain WorkspaceCapabilities.ITEM_DEFLATE
+        result.meta.clients["a"]?.capabilities shouldBe WorkspaceCapabilities.SUPPORTED
+    }
+    
+    "Compression stays off until some client requests it" {
+        val result = WorkspaceCapabilities.negotiate(WorkspaceMeta(), "a", requestedCapabilities = emptySet(), now = now)
+        
+        result.itemDeflate shouldBe false
+        result.meta.capabilities shouldBe WorkspaceCapabilities.BASE
+    }
+    
+    "A registered client without support keeps compression off" {
+        val meta = WorkspaceMeta(
+            clients = mapOf("old" to WorkspaceClient(WorkspaceCapabilities.BASE, seen_at = now - day))
+        )
+        
+        WorkspaceCapabilities.negotiate(meta, "a", requestedCapabilities = deflate, now = now).itemDeflate shouldBe false
+    }
+    
+    "Clients that stopped syncing no longer take part" {
+        val meta = WorkspaceMeta(
+            clients = mapOf("old" to WorkspaceClient(WorkspaceCapabilities.BASE, seen_at = now - 120 * day))
+        )
+        val result = WorkspaceCapabilities.negotiate(meta, "a", requestedCapabilities = deflate, now = now)
+        
+        result.itemDeflate shouldBe true
+        result.meta.clients.keys shouldBe setOf("a")
+    }
+    
+    "A legacy client sync disables compression and schedules the rewrite" {
+        val enabled = WorkspaceCapabilities.negotiate(WorkspaceMeta(), "a", requestedCapabilities = deflate, now = now).meta
+        // 桌面端同步时只改写 last_sync_time
+        val afterDesktop = enabled.copy(last_sync_time = now + day)
+        val result = WorkspaceCapabilities.negotiate(afterDesktop, "b", requestedCapabilities = emptySet(), now = now + day)
+        
+        result.itemDeflate shouldBe false
+        result.meta.capabilities shouldNotContain WorkspaceCapabilities.ITEM_DEFLATE
+        result.meta.deflate_cleanup shouldBe true
+        result.meta.legacy_seen_at shouldBe now + day
+        
+        // 保持期内即使没有新的桌面端同步也不重新启用
+        val later = WorkspaceCapabilities.negotiate(result.meta, "a", requestedCapabilities = deflate, now = now + 30 * day)
+        later.itemDeflate shouldBe false
+    }
+    
+    "An earlier sync seen at the first registration starts the legacy hold" {
+        // 桌面端同步过的工作区，还没有客户端登记
+        val meta = WorkspaceMeta(last_sync_time = now - day)
+        val result = WorkspaceCapabilities.negotiate(meta, "a", requestedCapabilities = deflate, now = now)
+        
+        result.itemDeflate shouldBe false
+        result.meta.legacy_sync_time shouldBe now - day
+        result.meta.legacy_seen_at shouldBe now
+        
+        // 整个保持期内没有再发现未登记的客户端同步后才启用
+        val during = WorkspaceCapabilities.negotiate(result.meta, "a", requestedCapabilities = deflate, now = now + 89 * day)
+        during.itemDeflate shouldBe false
+        val holdEnd = now + WorkspaceCapabilities.LEGACY_HOLD_MS
+        val after = WorkspaceCapabilities.negotiate(during.meta, "a", requestedCapabilities = deflate, now = holdEnd)
+        after.itemDeflate shouldBe true
+    }
+    
+    "A sync time written together with its baseline is not a legacy sync" {
+        // 本端写入 key_identifier 时同时写入 last_sync_time 和 legacy_sync_time
+        val meta = WorkspaceMeta(last_sync_time = now - day, legacy_sync_time = now - day)
+        val result = WorkspaceCapabilities.negotiate(meta, "a", requestedCapabilities = deflate, now = now)
+        
+        result.itemDeflate shouldBe true
+        result.meta.legacy_seen_at shouldBe null
+    }
+    
+    "Nothing changes when the registration is fresh" {
+        val first = WorkspaceCapabilities.negotiate(WorkspaceMeta(), "a", requestedCapabilities = deflate, now = now).meta
+        
+        WorkspaceCapabilities.negotiate(first, "a", requestedCapabilities = deflate, now = now + 60_000).meta shouldBe first
+    }
+    
+    "Optional capabilities are negotiated independently" {
+        val meta = WorkspaceMeta(
+            clients = mapOf(
+                "b" to WorkspaceClient(
+                    WorkspaceCapabilities.SUPPORTED,
+                    requested = listOf(WorkspaceCapabilities.SHARDED_LAYOUT),
+                    seen_at = now - day
+                )
+            )
+        )
+        val result = WorkspaceCapabilities.negotiate(meta, "a", requestedCapabilities = deflate, now = now)
+        
+        result.itemDeflate shouldBe true
+        result.shardedLayout shouldBe true
+        result.meta.capabilities shouldBe WorkspaceCapabilities.BASE + WorkspaceCapabilities.OPTIONAL
+    }
+})